@@ -19,6 +19,7 @@
 package org.apache.storm.perf;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.storm.Config;
@@ -68,7 +69,7 @@ public class LowThroughputTopo {
 
     public static void main(String[] args) throws Exception {
         int runTime = -1;
-        Map<String, Object> topoConf = Utils.findAndReadConfigFile(args[1]);
+        Map<String, Object> topoConf = new HashMap<>();
         topoConf.put(Config.TOPOLOGY_SPOUT_RECVQ_SKIPS, 1);
         if (args.length > 0) {
             long sleepMs = Integer.parseInt(args[0]);
@@ -78,7 +79,10 @@ public class LowThroughputTopo {
             runTime = Integer.parseInt(args[1]);
         }
         if (args.length > 2) {
-            System.err.println("args: spoutSleepMs [runDurationSec] ");
+            topoConf.putAll(Utils.findAndReadConfigFile(args[2]));
+        }
+        if (args.length > 3) {
+            System.err.println("args: spoutSleepMs [runDurationSec] [optionalConfFile]");
             return;
         }
         topoConf.putAll(Utils.readCommandLineOpts());
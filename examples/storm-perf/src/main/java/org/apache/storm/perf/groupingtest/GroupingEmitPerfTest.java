@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package org.apache.storm.perf.groupingtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.storm.daemon.GrouperFactory;
+import org.apache.storm.generated.Grouping;
+import org.apache.storm.generated.NodeInfo;
+import org.apache.storm.generated.NullStruct;
+import org.apache.storm.grouping.ConsistentHashGrouping;
+import org.apache.storm.grouping.HotKeyFieldsGrouping;
+import org.apache.storm.grouping.LoadAwareCustomStreamGrouping;
+import org.apache.storm.grouping.PartialKeyGrouping;
+import org.apache.storm.grouping.PrimitiveCustomStreamGrouping;
+import org.apache.storm.grouping.PrimitiveGroupingAdapter;
+import org.apache.storm.perf.serializationtest.TupleSerializationPerfTest;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Utils;
+
+/**
+ * Measures the cost of choosing the target tasks of an emit for every built-in grouping type, comparing the boxed
+ * {@code chooseTasks} path with the primitive {@code chooseTaskIds} path used by the executors. A grouping that only implements
+ * {@code CustomStreamGrouping} goes through the adapter, so its primitive numbers show the cost of the compatibility path.
+ *
+ * <p>Usage: GroupingEmitPerfTest [iterations] [numTargetTasks]
+ */
+public class GroupingEmitPerfTest {
+    private static final String SPOUT_ID = "spout";
+    private static final String BOLT_ID = "bolt";
+    private static final int SPOUT_TASK = 1;
+    private static final Fields OUT_FIELDS = new Fields("key", "value");
+    private static final int NUM_KEYS = 1024;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int numTargetTasks = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        Map<String, Object> conf = Utils.readDefaultConfig();
+        List<Integer> targetTasks = new ArrayList<>();
+        for (int i = 0; i < numTargetTasks; i++) {
+            targetTasks.add(SPOUT_TASK + 1 + i);
+        }
+        WorkerTopologyContext context = mkContext(conf, targetTasks);
+
+        List<List<Object>> tuples = new ArrayList<>();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            tuples.add(new Values("key-" + i, i));
+        }
+
+        Map<String, Grouping> groupings = new LinkedHashMap<>();
+        groupings.put("shuffle", Grouping.shuffle(new NullStruct()));
+        groupings.put("fields", Grouping.fields(Collections.singletonList("key")));
+        groupings.put("global", Grouping.fields(Collections.emptyList()));
+        groupings.put("all", Grouping.all(new NullStruct()));
+        groupings.put("none", Grouping.none(new NullStruct()));
+        groupings.put("partialKey", Grouping.custom_serialized(Utils.javaSerialize(new PartialKeyGrouping(new Fields("key")))));
+        groupings.put("consistentHash", Grouping.custom_serialized(Utils.javaSerialize(new ConsistentHashGrouping(new Fields("key")))));
+        groupings.put("hotKeyFields", Grouping.custom_serialized(Utils.javaSerialize(new HotKeyFieldsGrouping(new Fields("key")))));
+
+        for (Map.Entry<String, Grouping> entry : groupings.entrySet()) {
+            LoadAwareCustomStreamGrouping grouper = GrouperFactory.mkGrouper(context, SPOUT_ID, Utils.DEFAULT_STREAM_ID, OUT_FIELDS,
+                entry.getValue(), targetTasks, conf);
+            PrimitiveCustomStreamGrouping primitive = PrimitiveGroupingAdapter.adapt(grouper);
+
+            // warm up both paths before measuring
+            runBoxed(grouper, tuples, iterations / 10);
+            runPrimitive(primitive, tuples, iterations / 10);
+
+            TupleSerializationPerfTest.report(entry.getKey() + "-boxed", iterations, () -> runBoxed(grouper, tuples, iterations));
+            TupleSerializationPerfTest.report(entry.getKey() + "-int[]", iterations, () -> runPrimitive(primitive, tuples, iterations));
+        }
+    }
+
+    private static void runBoxed(LoadAwareCustomStreamGrouping grouper, List<List<Object>> tuples, int iterations) {
+        long sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            List<Integer> tasks = grouper.chooseTasks(SPOUT_TASK, tuples.get(i & (NUM_KEYS - 1)));
+            for (int j = 0; j < tasks.size(); j++) {
+                sum += tasks.get(j);
+            }
+        }
+        sink = sum;
+    }
+
+    private static void runPrimitive(PrimitiveCustomStreamGrouping grouper, List<List<Object>> tuples, int iterations) {
+        long sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            int[] tasks = grouper.chooseTaskIds(SPOUT_TASK, tuples.get(i & (NUM_KEYS - 1)));
+            for (int j = 0; j < tasks.length; j++) {
+                sum += tasks[j];
+            }
+        }
+        sink = sum;
+    }
+
+    /**
+     * Builds a context for a single worker running the spout task and all the target tasks.
+     */
+    static WorkerTopologyContext mkContext(Map<String, Object> conf, List<Integer> targetTasks) {
+        final TopologyBuilder builder = new TopologyBuilder();
+        Map<Integer, String> taskToComponent = new HashMap<>();
+        taskToComponent.put(SPOUT_TASK, SPOUT_ID);
+        Map<Integer, NodeInfo> taskToNodePort = new HashMap<>();
+        NodeInfo node = new NodeInfo("node", Collections.singleton(6700L));
+        taskToNodePort.put(SPOUT_TASK, node);
+        for (Integer task : targetTasks) {
+            taskToComponent.put(task, BOLT_ID);
+            taskToNodePort.put(task, node);
+        }
+        Map<String, List<Integer>> componentToSortedTasks = new HashMap<>();
+        componentToSortedTasks.put(SPOUT_ID, Collections.singletonList(SPOUT_TASK));
+        componentToSortedTasks.put(BOLT_ID, targetTasks);
+        Map<String, Map<String, Fields>> componentToStreamToFields = new HashMap<>();
+        componentToStreamToFields.put(SPOUT_ID, Collections.singletonMap(Utils.DEFAULT_STREAM_ID, OUT_FIELDS));
+        List<Integer> workerTasks = new ArrayList<>(taskToComponent.keySet());
+        return new WorkerTopologyContext(builder.createTopology(), conf, taskToComponent, componentToSortedTasks,
+            componentToStreamToFields, "perf-topology", null, null, 6700, workerTasks, null, null,
+            new AtomicReference<>(taskToNodePort), "node", new AtomicReference<>(Collections.singletonMap("node", "localhost")));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package org.apache.storm.perf.groupingtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.Config;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.grouping.LoadAwareShuffleGrouping;
+import org.apache.storm.grouping.LoadMapping;
+import org.apache.storm.perf.serializationtest.TupleSerializationPerfTest;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.utils.Utils;
+
+/**
+ * Measures the cost of choosing a task with {@link LoadAwareShuffleGrouping} and how evenly it spreads tuples under skewed load, for
+ * both the ring of choices and the power of two choices. A quarter of the target tasks are overloaded. Once the weights have adapted,
+ * one of the idle tasks becomes overloaded too, and the share it still gets before the next load refresh shows how quickly each mode
+ * reacts.
+ *
+ * <p>Usage: LoadAwareShufflePerfTest [iterations] [numTargetTasks]
+ */
+public class LoadAwareShufflePerfTest {
+    private static final int SPOUT_TASK = 1;
+    private static final double HOT_LOAD = 0.9;
+    private static final double IDLE_LOAD = 0.1;
+    private static final int REFRESHES = 20;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int numTargetTasks = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        List<Integer> targetTasks = new ArrayList<>();
+        for (int i = 0; i < numTargetTasks; i++) {
+            targetTasks.add(SPOUT_TASK + 1 + i);
+        }
+        int numHot = Math.max(1, numTargetTasks / 4);
+        Map<Integer, Double> loads = new HashMap<>();
+        for (int i = 0; i < numTargetTasks; i++) {
+            loads.put(targetTasks.get(i), i < numHot ? HOT_LOAD : IDLE_LOAD);
+        }
+
+        for (boolean twoChoices : new boolean[]{ false, true }) {
+            final String mode = twoChoices ? "two-choices" : "ring";
+            Map<String, Object> conf = Utils.readDefaultConfig();
+            conf.put(Config.TOPOLOGY_LOADAWARE_SHUFFLE_TWO_CHOICES, twoChoices);
+            WorkerTopologyContext context = GroupingEmitPerfTest.mkContext(conf, targetTasks);
+            LoadAwareShuffleGrouping grouping = new LoadAwareShuffleGrouping();
+            grouping.prepare(context, new GlobalStreamId("spout", Utils.DEFAULT_STREAM_ID), targetTasks);
+
+            LoadMapping loadMapping = new LoadMapping();
+            loadMapping.setLocal(loads);
+            for (int i = 0; i < REFRESHES; i++) {
+                grouping.refreshLoad(loadMapping);
+            }
+
+            run(grouping, iterations / 10);
+            TupleSerializationPerfTest.report(mode + "-choose", iterations, () -> run(grouping, iterations));
+
+            int[] counts = count(grouping, targetTasks, iterations);
+            double hotShare = 0;
+            for (int i = 0; i < numHot; i++) {
+                hotShare += counts[i];
+            }
+            double min = Double.MAX_VALUE;
+            double max = 0;
+            for (int i = numHot; i < numTargetTasks; i++) {
+                min = Math.min(min, counts[i]);
+                max = Math.max(max, counts[i]);
+            }
+            System.out.printf("%s: %.2f%% to the %d overloaded tasks, idle tasks get between %.2f%% and %.2f%%%n", mode,
+                100 * hotShare / iterations, numHot, 100 * min / iterations, 100 * max / iterations);
+
+            // one more task turns hot, but no refresh has happened yet
+            Map<Integer, Double> shifted = new HashMap<>(loads);
+            shifted.put(targetTasks.get(numHot), HOT_LOAD);
+            loadMapping.setLocal(shifted);
+            counts = count(grouping, targetTasks, iterations);
+            System.out.printf("%s: %.2f%% to the newly overloaded task before the next refresh%n", mode,
+                100.0 * counts[numHot] / iterations);
+        }
+    }
+
+    private static void run(LoadAwareShuffleGrouping grouping, int iterations) {
+        List<Object> values = Collections.emptyList();
+        long sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            sum += grouping.chooseTaskIds(SPOUT_TASK, values)[0];
+        }
+        sink = sum;
+    }
+
+    private static int[] count(LoadAwareShuffleGrouping grouping, List<Integer> targetTasks, int iterations) {
+        List<Object> values = Collections.emptyList();
+        int first = targetTasks.get(0);
+        int[] counts = new int[targetTasks.size()];
+        for (int i = 0; i < iterations; i++) {
+            counts[grouping.chooseTaskIds(SPOUT_TASK, values)[0] - first]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package org.apache.storm.perf.pendingmaptest;
+
+import java.util.Random;
+import org.apache.storm.perf.serializationtest.TupleSerializationPerfTest;
+import org.apache.storm.utils.RotatingLongMap;
+import org.apache.storm.utils.RotatingMap;
+
+/**
+ * Compares {@link RotatingMap} with {@link RotatingLongMap} on the access pattern of the acker and the spout pending map: with a
+ * steady number of tuples in flight, every operation looks up and removes the oldest root id and puts a new random one. The map is
+ * rotated every rotateEvery operations, so most entries are removed long before they would expire.
+ *
+ * <p>Usage: PendingMapPerfTest [iterations] [rotateEvery]
+ */
+public class PendingMapPerfTest {
+    private static final int[] PENDING = {10_000, 100_000, 1_000_000};
+    private static final Object VALUE = new Object();
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int rotateEvery = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        for (int pending : PENDING) {
+            long[] ids = new long[pending];
+            Random random = new Random(pending);
+            for (int i = 0; i < pending; i++) {
+                ids[i] = random.nextLong();
+            }
+
+            // warm up both maps before measuring
+            runRotatingMap(ids.clone(), iterations / 10, rotateEvery);
+            runRotatingLongMap(ids.clone(), iterations / 10, rotateEvery);
+
+            TupleSerializationPerfTest.report("RotatingMap-" + pending, iterations,
+                () -> runRotatingMap(ids.clone(), iterations, rotateEvery));
+            TupleSerializationPerfTest.report("RotatingLongMap-" + pending, iterations,
+                () -> runRotatingLongMap(ids.clone(), iterations, rotateEvery));
+        }
+    }
+
+    private static void runRotatingMap(long[] ids, int iterations, int rotateEvery) {
+        RotatingMap<Long, Object> map = new RotatingMap<>(3);
+        for (long id : ids) {
+            map.put(id, VALUE);
+        }
+        Random random = new Random();
+        long found = 0;
+        for (int i = 0; i < iterations; i++) {
+            int slot = i % ids.length;
+            if (map.get(ids[slot]) != null) {
+                found++;
+                map.remove(ids[slot]);
+            }
+            ids[slot] = random.nextLong();
+            map.put(ids[slot], VALUE);
+            if (i % rotateEvery == rotateEvery - 1) {
+                map.rotate();
+            }
+        }
+        sink = found;
+    }
+
+    private static void runRotatingLongMap(long[] ids, int iterations, int rotateEvery) {
+        RotatingLongMap<Object> map = new RotatingLongMap<>(3);
+        for (long id : ids) {
+            map.put(id, VALUE);
+        }
+        Random random = new Random();
+        long found = 0;
+        for (int i = 0; i < iterations; i++) {
+            int slot = i % ids.length;
+            if (map.get(ids[slot]) != null) {
+                found++;
+                map.remove(ids[slot]);
+            }
+            ids[slot] = random.nextLong();
+            map.put(ids[slot], VALUE);
+            if (i % rotateEvery == rotateEvery - 1) {
+                map.rotate();
+            }
+        }
+        sink = found;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package org.apache.storm.perf.serializationtest;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.serialization.KryoTupleSerializer;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.PooledByteBufAllocator;
+import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.BasicOutputCollector;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.topology.base.BaseBasicBolt;
+import org.apache.storm.topology.base.BaseRichSpout;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Utils;
+
+/**
+ * Compares the byte[] based remote serialization path with the pooled direct buffer path enabled by
+ * {@code topology.transfer.direct.buffers}. Both variants end by copying the payload into an outbound pooled buffer, the way
+ * MessageBatch does, so the numbers reflect the whole worker-transfer side of a tuple.
+ *
+ * <p>Usage: TupleSerializationPerfTest [iterations] [payloadSize]
+ */
+public class TupleSerializationPerfTest {
+    static final String SPOUT_ID = "spout";
+    static final int SPOUT_TASK = 1;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int payloadSize = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        Map<String, Object> conf = Utils.readDefaultConfig();
+        GeneralTopologyContext context = mkContext(conf, new Fields("str"));
+        Tuple tuple = new TupleImpl(context, new Values(mkString(payloadSize)), SPOUT_ID, SPOUT_TASK, Utils.DEFAULT_STREAM_ID);
+        KryoTupleSerializer serializer = new KryoTupleSerializer(conf, context);
+
+        // warm up both paths before measuring
+        runByteArray(serializer, tuple, iterations / 10);
+        runDirect(serializer, tuple, iterations / 10);
+
+        report("byte[]", iterations, () -> runByteArray(serializer, tuple, iterations));
+        report("direct", iterations, () -> runDirect(serializer, tuple, iterations));
+    }
+
+    private static void runByteArray(KryoTupleSerializer serializer, Tuple tuple, int iterations) {
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
+        for (int i = 0; i < iterations; i++) {
+            byte[] bytes = serializer.serialize(tuple);
+            out.clear();
+            out.writeBytes(bytes);
+        }
+        out.release();
+    }
+
+    private static void runDirect(KryoTupleSerializer serializer, Tuple tuple, int iterations) {
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
+        for (int i = 0; i < iterations; i++) {
+            ByteBuf payload = serializer.serializeToBuffer(tuple, PooledByteBufAllocator.DEFAULT);
+            out.clear();
+            out.writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+            payload.release();
+        }
+        out.release();
+    }
+
+    public static void report(String name, int iterations, Runnable run) {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long allocBefore = threadBean.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        run.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getThreadAllocatedBytes(tid) - allocBefore;
+        System.out.printf("%-10s %8.1f ns/tuple %8.1f bytes allocated/tuple %12.0f tuples/sec%n", name,
+            (double) elapsed / iterations, (double) allocated / iterations, iterations * 1e9 / elapsed);
+    }
+
+    static String mkString(int size) {
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds a minimal context with a single spout task emitting the given fields on the default stream.
+     */
+    static GeneralTopologyContext mkContext(Map<String, Object> conf, Fields fields) {
+        TopologyBuilder builder = new TopologyBuilder();
+        builder.setSpout(SPOUT_ID, new SourceSpout(fields));
+        builder.setBolt("sink", new SinkBolt()).shuffleGrouping(SPOUT_ID);
+
+        Map<Integer, String> taskToComponent = new HashMap<>();
+        taskToComponent.put(SPOUT_TASK, SPOUT_ID);
+        Map<String, List<Integer>> componentToSortedTasks = new HashMap<>();
+        componentToSortedTasks.put(SPOUT_ID, Collections.singletonList(SPOUT_TASK));
+        Map<String, Map<String, Fields>> componentToStreamToFields = new HashMap<>();
+        componentToStreamToFields.put(SPOUT_ID, Collections.singletonMap(Utils.DEFAULT_STREAM_ID, fields));
+        return new GeneralTopologyContext(builder.createTopology(), conf, taskToComponent, componentToSortedTasks,
+            componentToStreamToFields, "perf-topology");
+    }
+
+    private static class SinkBolt extends BaseBasicBolt {
+        @Override
+        public void execute(Tuple input, BasicOutputCollector collector) {
+        }
+
+        @Override
+        public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        }
+    }
+
+    private static class SourceSpout extends BaseRichSpout {
+        private final Fields fields;
+
+        SourceSpout(Fields fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        public void open(Map<String, Object> conf, TopologyContext context, SpoutOutputCollector collector) {
+        }
+
+        @Override
+        public void nextTuple() {
+        }
+
+        @Override
+        public void declareOutputFields(OutputFieldsDeclarer declarer) {
+            declarer.declare(fields);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package org.apache.storm.perf.serializationtest;
+
+import java.util.Map;
+import org.apache.storm.serialization.KryoTupleDeserializer;
+import org.apache.storm.serialization.KryoTupleSerializer;
+import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.tuple.FieldType;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.TypedFields;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Utils;
+
+/**
+ * Compares the serialization of a numeric telemetry tuple declared with plain {@link Fields}, which uses kryo, against the same tuple
+ * declared with {@link TypedFields}, which uses the codec generated from the field types. Each iteration serializes and deserializes one
+ * tuple.
+ *
+ * <p>Usage: TypedTupleSerializationPerfTest [iterations]
+ */
+public class TypedTupleSerializationPerfTest {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+        TypedFields typed = TypedFields.builder()
+            .add("timestamp", FieldType.LONG)
+            .add("host", FieldType.STRING)
+            .add("metric", FieldType.INT)
+            .add("value", FieldType.DOUBLE)
+            .add("count", FieldType.LONG)
+            .add("valid", FieldType.BOOLEAN)
+            .build();
+        Values values = new Values(System.currentTimeMillis(), "host-17", 42, 0.75, 1234L, true);
+
+        Map<String, Object> conf = Utils.readDefaultConfig();
+        Runnable kryo = mkRoundTrip(conf, new Fields(typed.toList()), values, iterations);
+        Runnable schema = mkRoundTrip(conf, typed, values, iterations);
+
+        // warm up both paths before measuring
+        kryo.run();
+        schema.run();
+
+        TupleSerializationPerfTest.report("kryo", iterations, kryo);
+        TupleSerializationPerfTest.report("typed", iterations, schema);
+    }
+
+    private static Runnable mkRoundTrip(Map<String, Object> conf, Fields fields, Values values, int iterations) {
+        GeneralTopologyContext context = TupleSerializationPerfTest.mkContext(conf, fields);
+        Tuple tuple = new TupleImpl(context, values, TupleSerializationPerfTest.SPOUT_ID, TupleSerializationPerfTest.SPOUT_TASK,
+            Utils.DEFAULT_STREAM_ID);
+        KryoTupleSerializer serializer = new KryoTupleSerializer(conf, context);
+        KryoTupleDeserializer deserializer = new KryoTupleDeserializer(conf, context);
+        byte[] serialized = serializer.serialize(tuple);
+        if (!deserializer.deserialize(serialized).getValues().equals(values)) {
+            throw new IllegalStateException("Round trip failed for " + fields);
+        }
+        System.out.printf("%-10s %d bytes/tuple%n", fields instanceof TypedFields ? "typed" : "kryo", serialized.length);
+        return () -> {
+            for (int i = 0; i < iterations; i++) {
+                deserializer.deserialize(serializer.serialize(tuple));
+            }
+        };
+    }
+}
@@ -20,9 +20,16 @@ package org.apache.storm.redis.common.adapter;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import org.apache.storm.redis.common.commands.RedisCommands;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.PipeliningBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
 import redis.clients.jedis.params.ScanParams;
 import redis.clients.jedis.resps.ScanResult;
 
@@ -61,6 +68,11 @@ public class RedisCommandsAdapterJedis implements RedisCommands, Closeable {
         return jedis.hmset(key, fieldValues);
     }
 
+    @Override
+    public List<byte[]> hmget(byte[] key, byte[]... fields) {
+        return jedis.hmget(key, fields);
+    }
+
     @Override
     public Map<byte[], byte[]> hgetAll(byte[] key) {
         return jedis.hgetAll(key);
@@ -101,6 +113,25 @@ public class RedisCommandsAdapterJedis implements RedisCommands, Closeable {
         return jedis.hscan(key, cursor, params);
     }
 
+    @Override
+    public void batch(Function<PipeliningBase, List<Response<?>>> commands) {
+        try (Transaction transaction = jedis.multi()) {
+            commands.apply(transaction);
+            // a failed command does not fail exec, its error is returned in place of its response
+            List<Object> results = transaction.exec();
+            if (results == null) {
+                throw new JedisException("The transaction was aborted");
+            }
+            for (Object result : results) {
+                if (result instanceof JedisDataException) {
+                    throw (JedisDataException) result;
+                } else if (result instanceof Exception) {
+                    throw new JedisException((Exception) result);
+                }
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException {
         jedis.close();
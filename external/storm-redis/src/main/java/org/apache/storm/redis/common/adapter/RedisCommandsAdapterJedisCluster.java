@@ -20,9 +20,14 @@ package org.apache.storm.redis.common.adapter;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import org.apache.storm.redis.common.commands.RedisCommands;
+import redis.clients.jedis.ClusterPipeline;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.PipeliningBase;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.params.ScanParams;
 import redis.clients.jedis.resps.ScanResult;
 
@@ -62,6 +67,11 @@ public class RedisCommandsAdapterJedisCluster implements RedisCommands, Closeabl
         return jedisCluster.hmset(key, fieldValues);
     }
 
+    @Override
+    public List<byte[]> hmget(byte[] key, byte[]... fields) {
+        return jedisCluster.hmget(key, fields);
+    }
+
     @Override
     public Map<byte[], byte[]> hgetAll(byte[] key) {
         return jedisCluster.hgetAll(key);
@@ -102,6 +112,18 @@ public class RedisCommandsAdapterJedisCluster implements RedisCommands, Closeabl
         return jedisCluster.hscan(key, cursor, params);
     }
 
+    @Override
+    public void batch(Function<PipeliningBase, List<Response<?>>> commands) {
+        try (ClusterPipeline pipeline = jedisCluster.pipelined()) {
+            List<Response<?>> responses = commands.apply(pipeline);
+            pipeline.sync();
+            // a failed command does not fail sync, getting its response throws its error
+            for (Response<?> response : responses) {
+                response.get();
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException {
         jedisCluster.close();
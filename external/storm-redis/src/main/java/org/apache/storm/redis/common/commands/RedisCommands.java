@@ -18,8 +18,12 @@
 
 package org.apache.storm.redis.common.commands;
 
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
+import redis.clients.jedis.PipeliningBase;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.params.ScanParams;
 import redis.clients.jedis.resps.ScanResult;
 
@@ -46,6 +50,8 @@ public interface RedisCommands {
     // hash
     byte[] hget(byte[] key, byte[] field);
 
+    List<byte[]> hmget(byte[] key, byte[]... fields);
+
     Map<byte[], byte[]> hgetAll(byte[] key);
 
     Map<String, String> hgetAll(String key);
@@ -57,4 +63,15 @@ public interface RedisCommands {
     Long hdel(byte[] key, byte[]... fields);
 
     ScanResult<Map.Entry<byte[], byte[]>> hscan(byte[] key, byte[] cursor, ScanParams params);
+
+    // batch
+
+    /**
+     * Sends the commands issued by the function together, in a single round trip per node. With a single Redis instance they are sent
+     * as a MULTI/EXEC transaction, and applied atomically.
+     *
+     * @param commands issues the commands and returns their responses, which are not available until this method returns
+     * @throws redis.clients.jedis.exceptions.JedisException if any of the commands failed, or the transaction was aborted
+     */
+    void batch(Function<PipeliningBase, List<Response<?>>> commands);
 }
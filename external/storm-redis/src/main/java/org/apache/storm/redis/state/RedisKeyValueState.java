@@ -35,6 +35,7 @@ import org.apache.storm.state.KeyValueState;
 import org.apache.storm.state.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.util.SafeEncoder;
 
 /**
@@ -54,6 +55,7 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
     private final DefaultStateEncoder<K, V> encoder;
 
     private final RedisCommandsInstanceContainer container;
+    private final StateReadCache cache;
     private ConcurrentNavigableMap<byte[], byte[]> pendingPrepare;
     private NavigableMap<byte[], byte[]> pendingCommit;
 
@@ -79,6 +81,22 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
 
     public RedisKeyValueState(String namespace, RedisCommandsInstanceContainer container,
                               Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this(namespace, container, keySerializer, valueSerializer, 0, 0);
+    }
+
+    /**
+     * Create a state with a cache of the committed values in front of Redis.
+     *
+     * @param namespace the namespace of the state
+     * @param container the container of the Redis commands
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @param cacheMaxEntries the maximum number of keys to cache the committed value of, 0 to disable the cache
+     * @param cacheMaxBytes the maximum size of the cached keys and values, 0 for no limit
+     */
+    public RedisKeyValueState(String namespace, RedisCommandsInstanceContainer container,
+                              Serializer<K> keySerializer, Serializer<V> valueSerializer, int cacheMaxEntries, long cacheMaxBytes) {
+        this.cache = cacheMaxEntries > 0 ? new StateReadCache(cacheMaxEntries, cacheMaxBytes > 0 ? cacheMaxBytes : Long.MAX_VALUE) : null;
         this.namespace = SafeEncoder.encode(namespace);
         this.prepareNamespace = SafeEncoder.encode(namespace + "$prepare");
         this.txidNamespace = namespace + "$txid";
@@ -141,13 +159,7 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
         } else if (pendingCommit.containsKey(redisKey)) {
             redisValue = pendingCommit.get(redisKey);
         } else {
-            RedisCommands commands = null;
-            try {
-                commands = container.getInstance();
-                redisValue = commands.hget(namespace, redisKey);
-            } finally {
-                container.returnInstance(commands);
-            }
+            redisValue = getCommitted(redisKey);
         }
         V value = null;
         if (redisValue != null) {
@@ -163,6 +175,50 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
         return val != null ? val : defaultValue;
     }
 
+    @Override
+    public List<V> multiGet(List<K> keys) {
+        LOG.debug("multiGet keys '{}'", keys);
+        byte[][] redisValues = new byte[keys.size()][];
+        List<byte[]> missingKeys = new ArrayList<>();
+        List<Integer> missingIndexes = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] redisKey = encoder.encodeKey(keys.get(i));
+            byte[] redisValue = pendingPrepare.get(redisKey);
+            if (redisValue == null) {
+                redisValue = pendingCommit.get(redisKey);
+            }
+            if (redisValue == null && cache != null) {
+                redisValue = cache.get(redisKey);
+            }
+            if (redisValue == null) {
+                missingKeys.add(redisKey);
+                missingIndexes.add(i);
+            }
+            redisValues[i] = redisValue;
+        }
+        if (!missingKeys.isEmpty()) {
+            List<byte[]> loaded;
+            RedisCommands commands = null;
+            try {
+                commands = container.getInstance();
+                loaded = commands.hmget(namespace, missingKeys.toArray(new byte[0][]));
+            } finally {
+                container.returnInstance(commands);
+            }
+            for (int i = 0; i < missingKeys.size(); i++) {
+                redisValues[missingIndexes.get(i)] = loaded.get(i);
+                if (cache != null) {
+                    cache.put(missingKeys.get(i), loaded.get(i));
+                }
+            }
+        }
+        List<V> values = new ArrayList<>(keys.size());
+        for (byte[] redisValue : redisValues) {
+            values.add(redisValue == null || redisValue == StateReadCache.ABSENT ? null : encoder.decodeValue(redisValue));
+        }
+        return values;
+    }
+
     @Override
     public V delete(K key) {
         LOG.debug("delete key '{}'", key);
@@ -187,8 +243,8 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
         try {
             ConcurrentNavigableMap<byte[], byte[]> currentPending = pendingPrepare;
             pendingPrepare = createPendingPrepareMap();
-            commands = container.getInstance();
-            if (commands.exists(prepareNamespace)) {
+            // pendingCommit holds what is in the prepare namespace, since the last prepare or since it was loaded
+            if (!pendingCommit.isEmpty()) {
                 LOG.debug("Prepared txn already exists, will merge", txid);
                 for (Map.Entry<byte[], byte[]> e : pendingCommit.entrySet()) {
                     if (!currentPending.containsKey(e.getKey())) {
@@ -196,14 +252,20 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
                     }
                 }
             }
-            if (!currentPending.isEmpty()) {
-                commands.hmset(prepareNamespace, currentPending);
-            } else {
+            if (currentPending.isEmpty()) {
                 LOG.debug("Nothing to save for prepareCommit, txid {}.", txid);
             }
             txIds.put(PREPARE_TXID_KEY, String.valueOf(txid));
 
-            commands.hmset(txidNamespace, txIds);
+            commands = container.getInstance();
+            commands.batch(batch -> {
+                List<Response<?>> responses = new ArrayList<>();
+                if (!currentPending.isEmpty()) {
+                    responses.add(batch.hmset(prepareNamespace, currentPending));
+                }
+                responses.add(batch.hmset(txidNamespace, txIds));
+                return responses;
+            });
             pendingCommit = Maps.unmodifiableNavigableMap(currentPending);
         } finally {
             container.returnInstance(commands);
@@ -216,31 +278,35 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
         validateCommitTxid(txid);
         RedisCommands commands = null;
         try {
-            commands = container.getInstance();
-            if (!pendingCommit.isEmpty()) {
-                List<byte[]> keysToDelete = new ArrayList<>();
-                Map<byte[], byte[]> keysToAdd = new HashMap<>();
-                for (Map.Entry<byte[], byte[]> entry : pendingCommit.entrySet()) {
-                    byte[] key = entry.getKey();
-                    byte[] value = entry.getValue();
-                    if (Arrays.equals(encoder.getTombstoneValue(), value)) {
-                        keysToDelete.add(key);
-                    } else {
-                        keysToAdd.put(key, value);
-                    }
+            List<byte[]> keysToDelete = new ArrayList<>();
+            Map<byte[], byte[]> keysToAdd = new HashMap<>();
+            for (Map.Entry<byte[], byte[]> entry : pendingCommit.entrySet()) {
+                byte[] key = entry.getKey();
+                byte[] value = entry.getValue();
+                if (Arrays.equals(encoder.getTombstoneValue(), value)) {
+                    keysToDelete.add(key);
+                } else {
+                    keysToAdd.put(key, value);
                 }
+            }
+            if (pendingCommit.isEmpty()) {
+                LOG.debug("Nothing to save for commit, txid {}.", txid);
+            }
+            txIds.put(COMMIT_TXID_KEY, String.valueOf(txid));
+            commands = container.getInstance();
+            commands.batch(batch -> {
+                List<Response<?>> responses = new ArrayList<>();
                 if (!keysToAdd.isEmpty()) {
-                    commands.hmset(namespace, keysToAdd);
+                    responses.add(batch.hmset(namespace, keysToAdd));
                 }
                 if (!keysToDelete.isEmpty()) {
-                    commands.hdel(namespace, keysToDelete.toArray(new byte[0][]));
+                    responses.add(batch.hdel(namespace, keysToDelete.toArray(new byte[0][])));
                 }
-            } else {
-                LOG.debug("Nothing to save for commit, txid {}.", txid);
-            }
-            txIds.put(COMMIT_TXID_KEY, String.valueOf(txid));
-            commands.hmset(txidNamespace, txIds);
-            commands.del(prepareNamespace);
+                responses.add(batch.hmset(txidNamespace, txIds));
+                responses.add(batch.del(prepareNamespace));
+                return responses;
+            });
+            updateCache(pendingCommit);
             pendingCommit = EMPTY_PENDING_COMMIT_MAP;
         } finally {
             container.returnInstance(commands);
@@ -254,6 +320,7 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
             commands = container.getInstance();
             if (!pendingPrepare.isEmpty()) {
                 commands.hmset(namespace, pendingPrepare);
+                updateCache(pendingPrepare);
             } else {
                 LOG.debug("Nothing to save for commit");
             }
@@ -268,10 +335,7 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
         LOG.debug("rollback");
         RedisCommands commands = null;
         try {
-            commands = container.getInstance();
-            if (commands.exists(prepareNamespace)) {
-                commands.del(prepareNamespace);
-            } else {
+            if (pendingCommit.isEmpty()) {
                 LOG.debug("Nothing to rollback, prepared data is empty");
             }
             Long lastCommittedId = lastCommittedTxid();
@@ -280,10 +344,16 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
             } else {
                 txIds.remove(PREPARE_TXID_KEY);
             }
-            if (!txIds.isEmpty()) {
-                LOG.debug("hmset txidNamespace {}, txIds {}", txidNamespace, txIds);
-                commands.hmset(txidNamespace, txIds);
-            }
+            commands = container.getInstance();
+            commands.batch(batch -> {
+                List<Response<?>> responses = new ArrayList<>();
+                responses.add(batch.del(prepareNamespace));
+                if (!txIds.isEmpty()) {
+                    LOG.debug("hmset txidNamespace {}, txIds {}", txidNamespace, txIds);
+                    responses.add(batch.hmset(txidNamespace, txIds));
+                }
+                return responses;
+            });
             pendingCommit = EMPTY_PENDING_COMMIT_MAP;
             pendingPrepare = createPendingPrepareMap();
         } finally {
@@ -291,6 +361,33 @@ public class RedisKeyValueState<K, V> implements KeyValueState<K, V> {
         }
     }
 
+    private byte[] getCommitted(byte[] redisKey) {
+        byte[] redisValue = cache != null ? cache.get(redisKey) : null;
+        if (redisValue == null) {
+            RedisCommands commands = null;
+            try {
+                commands = container.getInstance();
+                redisValue = commands.hget(namespace, redisKey);
+            } finally {
+                container.returnInstance(commands);
+            }
+            if (cache != null) {
+                cache.put(redisKey, redisValue);
+            }
+        }
+        return redisValue == StateReadCache.ABSENT ? null : redisValue;
+    }
+
+    private void updateCache(Map<byte[], byte[]> committed) {
+        if (cache == null) {
+            return;
+        }
+        for (Map.Entry<byte[], byte[]> entry : committed.entrySet()) {
+            cache.put(entry.getKey(), Arrays.equals(encoder.getTombstoneValue(), entry.getValue()) ? null : entry.getValue());
+        }
+        LOG.debug("Read cache of {} has {} hits and {} misses", txidNamespace, cache.getHits(), cache.getMisses());
+    }
+
     /*
      * Same txid can be prepared again, but the next txid cannot be prepared
      * when previous one is not committed yet.
@@ -20,6 +20,8 @@ import java.util.Map;
 import org.apache.storm.Config;
 import org.apache.storm.redis.common.config.JedisClusterConfig;
 import org.apache.storm.redis.common.config.JedisPoolConfig;
+import org.apache.storm.redis.common.container.RedisCommandsContainerBuilder;
+import org.apache.storm.redis.common.container.RedisCommandsInstanceContainer;
 import org.apache.storm.state.DefaultStateSerializer;
 import org.apache.storm.state.Serializer;
 import org.apache.storm.state.State;
@@ -67,13 +69,10 @@ public class RedisKeyValueStateProvider implements StateProvider {
             jedisPoolConfig = buildDefaultJedisPoolConfig();
         }
 
-        if (jedisPoolConfig != null) {
-            return new RedisKeyValueState(namespace, jedisPoolConfig,
-                                          getKeySerializer(topoConf, context, config), getValueSerializer(topoConf, context, config));
-        } else {
-            return new RedisKeyValueState(namespace, jedisClusterConfig,
-                                          getKeySerializer(topoConf, context, config), getValueSerializer(topoConf, context, config));
-        }
+        RedisCommandsInstanceContainer container = jedisPoolConfig != null
+            ? RedisCommandsContainerBuilder.build(jedisPoolConfig) : RedisCommandsContainerBuilder.build(jedisClusterConfig);
+        return new RedisKeyValueState(namespace, container, getKeySerializer(topoConf, context, config),
+                                      getValueSerializer(topoConf, context, config), config.cacheMaxEntries, config.cacheMaxBytes);
     }
 
     private Serializer getKeySerializer(Map<String, Object> topoConf, TopologyContext context, StateConfig config) throws Exception {
@@ -121,6 +120,8 @@ public class RedisKeyValueStateProvider implements StateProvider {
         public String valueSerializerClass;
         public JedisPoolConfig jedisPoolConfig;
         public JedisClusterConfig jedisClusterConfig;
+        public int cacheMaxEntries;
+        public long cacheMaxBytes;
 
         @Override
         public String toString() {
@@ -131,6 +132,8 @@ public class RedisKeyValueStateProvider implements StateProvider {
                     + ", valueSerializerClass='" + valueSerializerClass + '\''
                     + ", jedisPoolConfig=" + jedisPoolConfig
                     + ", jedisClusterConfig=" + jedisClusterConfig
+                    + ", cacheMaxEntries=" + cacheMaxEntries
+                    + ", cacheMaxBytes=" + cacheMaxBytes
                     + '}';
         }
     }
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.redis.state;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of the committed values of a {@link RedisKeyValueState}, by encoded key. Keys that are known not to exist are cached too, so
+ * that looking up new keys does not go to Redis every time. Entries are evicted once there are more than maxEntries of them, or once
+ * the keys and values take more than maxBytes.
+ *
+ * <p>The state is the only writer of its namespace, so the cache is kept up to date by the state on commit and never expires.
+ */
+class StateReadCache {
+    static final byte[] ABSENT = new byte[0];
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<ByteBuffer, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    StateReadCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached value, {@link #ABSENT} if the key is known not to exist, or null if the key is not cached.
+     */
+    synchronized byte[] get(byte[] key) {
+        byte[] value = entries.get(ByteBuffer.wrap(key));
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Cache the value of the key, null meaning that the key does not exist.
+     */
+    synchronized void put(byte[] key, byte[] value) {
+        byte[] cached = value == null ? ABSENT : value;
+        byte[] previous = entries.put(ByteBuffer.wrap(key), cached);
+        bytes += cached.length + (previous == null ? key.length : -previous.length);
+        Iterator<Map.Entry<ByteBuffer, byte[]>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<ByteBuffer, byte[]> entry = eldest.next();
+            bytes -= entry.getKey().remaining() + entry.getValue().length;
+            eldest.remove();
+        }
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,149 @@
+package org.apache.storm.redis.common.adapter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.ClusterPipeline;
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.args.Rawable;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.providers.ClusterConnectionProvider;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RedisCommandsAdapterBatchTest {
+    private static final byte[] OK = "OK".getBytes(StandardCharsets.UTF_8);
+
+    private static String describe(CommandArguments args) {
+        List<String> parts = new ArrayList<>();
+        for (Rawable arg : args) {
+            parts.add(SafeEncoder.encode(arg.getRaw()));
+        }
+        return String.join(" ", parts);
+    }
+
+    /** a connection that records the commands sent on it, and replies with the given responses */
+    private static Connection connection(List<String> sent, Object... replies) {
+        Connection connection = mock(Connection.class);
+        doAnswer(invocation -> {
+            sent.add(describe(invocation.getArgument(0)));
+            return null;
+        }).when(connection).sendCommand(any(CommandArguments.class));
+        when(connection.getMany(anyInt())).thenReturn(Arrays.asList(replies));
+        return connection;
+    }
+
+    private static RedisCommandsAdapterJedis jedis(List<String> sent, List<Object> execResult) {
+        Transaction transaction = new Transaction(connection(sent), false, false) {
+            @Override
+            public List<Object> exec() {
+                sent.add("EXEC");
+                return execResult;
+            }
+        };
+        Jedis jedis = mock(Jedis.class);
+        when(jedis.multi()).thenReturn(transaction);
+        return new RedisCommandsAdapterJedis(jedis);
+    }
+
+    private static List<Response<?>> commands(redis.clients.jedis.PipeliningBase batch) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("f", "v");
+        return Arrays.asList(batch.hmset("h1", fields), batch.del("h2"));
+    }
+
+    @Test
+    public void testSingleInstanceSendsATransaction() {
+        List<String> sent = new ArrayList<>();
+        jedis(sent, Arrays.asList("OK", 1L)).batch(RedisCommandsAdapterBatchTest::commands);
+        Assert.assertEquals(Arrays.asList("HMSET h1 f v", "DEL h2", "EXEC"), sent);
+    }
+
+    @Test
+    public void testSingleInstanceFailsOnAFailedCommand() {
+        List<String> sent = new ArrayList<>();
+        JedisDataException error = new JedisDataException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        try {
+            jedis(sent, Arrays.asList("OK", error)).batch(RedisCommandsAdapterBatchTest::commands);
+            Assert.fail("expected the batch to fail");
+        } catch (JedisDataException e) {
+            Assert.assertSame(error, e);
+        }
+    }
+
+    @Test
+    public void testSingleInstanceFailsOnAnAbortedTransaction() {
+        try {
+            jedis(new ArrayList<>(), null).batch(RedisCommandsAdapterBatchTest::commands);
+            Assert.fail("expected the batch to fail");
+        } catch (JedisException e) {
+            Assert.assertEquals("The transaction was aborted", e.getMessage());
+        }
+    }
+
+    /** a cluster of two nodes, h1 living on the first one and h2 on the second one */
+    private static RedisCommandsAdapterJedisCluster cluster(Connection first, Connection second) {
+        HostAndPort firstNode = new HostAndPort("first", 6379);
+        HostAndPort secondNode = new HostAndPort("second", 6379);
+        ClusterPipeline pipeline = new ClusterPipeline(mock(ClusterConnectionProvider.class)) {
+            @Override
+            protected HostAndPort getNodeKey(CommandArguments args) {
+                return describe(args).contains("h1") ? firstNode : secondNode;
+            }
+
+            @Override
+            protected Connection getConnection(HostAndPort nodeKey) {
+                return nodeKey == firstNode ? first : second;
+            }
+        };
+        JedisCluster jedisCluster = mock(JedisCluster.class);
+        when(jedisCluster.pipelined()).thenReturn(pipeline);
+        return new RedisCommandsAdapterJedisCluster(jedisCluster);
+    }
+
+    @Test
+    public void testClusterPipelinesTheCommandsOfEachNode() {
+        List<String> firstSent = new ArrayList<>();
+        List<String> secondSent = new ArrayList<>();
+        Connection first = connection(firstSent, OK);
+        Connection second = connection(secondSent, 1L);
+        cluster(first, second).batch(RedisCommandsAdapterBatchTest::commands);
+        // no transaction, the responses of each node are read at once
+        Assert.assertEquals(Collections.singletonList("HMSET h1 f v"), firstSent);
+        Assert.assertEquals(Collections.singletonList("DEL h2"), secondSent);
+        verify(first, times(1)).getMany(1);
+        verify(second, times(1)).getMany(1);
+    }
+
+    @Test
+    public void testClusterFailsOnAFailedCommand() {
+        JedisDataException error = new JedisDataException("MOVED 1234 other:6379");
+        try {
+            cluster(connection(new ArrayList<>(), OK), connection(new ArrayList<>(), error)).batch(RedisCommandsAdapterBatchTest::commands);
+            Assert.fail("expected the batch to fail");
+        } catch (JedisDataException e) {
+            Assert.assertSame(error, e);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.apache.storm.redis.state;
+
+import org.apache.storm.redis.common.commands.RedisCommands;
+import org.apache.storm.redis.common.container.RedisCommandsInstanceContainer;
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.CommandObjects;
+import redis.clients.jedis.PipeliningBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.args.Rawable;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * In-memory {@link RedisCommands}, which counts the round trips to the server. A batch is applied at once when its function returns,
+ * as a MULTI/EXEC transaction would be.
+ */
+class FakeRedisCommands implements RedisCommands, RedisCommandsInstanceContainer {
+    private final Map<ByteBuffer, Map<ByteBuffer, byte[]>> hashes = new HashMap<>();
+    private final List<String> commands = new ArrayList<>();
+    private int roundTrips;
+    private boolean failNextBatch;
+
+    /** the commands sent since the last call, each as its name and key */
+    List<String> takeCommands() {
+        List<String> taken = new ArrayList<>(commands);
+        commands.clear();
+        return taken;
+    }
+
+    int takeRoundTrips() {
+        int taken = roundTrips;
+        roundTrips = 0;
+        return taken;
+    }
+
+    /** aborts the next batch, without applying any of its commands */
+    void failNextBatch() {
+        failNextBatch = true;
+    }
+
+    Map<ByteBuffer, byte[]> hash(String key) {
+        return hashes.getOrDefault(wrap(SafeEncoder.encode(key)), new HashMap<>());
+    }
+
+    private static ByteBuffer wrap(byte[] bytes) {
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private Map<ByteBuffer, byte[]> hashForWrite(byte[] key) {
+        return hashes.computeIfAbsent(wrap(key), k -> new HashMap<>());
+    }
+
+    private void sent(String command, byte[] key) {
+        roundTrips++;
+        commands.add(command + " " + SafeEncoder.encode(key));
+    }
+
+    @Override
+    public RedisCommands getInstance() {
+        return this;
+    }
+
+    @Override
+    public void returnInstance(RedisCommands redisCommands) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Boolean exists(byte[] key) {
+        sent("EXISTS", key);
+        return hashes.containsKey(wrap(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return exists(SafeEncoder.encode(key));
+    }
+
+    @Override
+    public Long del(byte[] key) {
+        sent("DEL", key);
+        return hashes.remove(wrap(key)) != null ? 1L : 0L;
+    }
+
+    @Override
+    public Long del(String key) {
+        return del(SafeEncoder.encode(key));
+    }
+
+    @Override
+    public String rename(byte[] oldkey, byte[] newkey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String rename(String oldkey, String newkey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] hget(byte[] key, byte[] field) {
+        sent("HGET", key);
+        Map<ByteBuffer, byte[]> hash = hashes.get(wrap(key));
+        return hash == null ? null : hash.get(wrap(field));
+    }
+
+    @Override
+    public List<byte[]> hmget(byte[] key, byte[]... fields) {
+        sent("HMGET", key);
+        Map<ByteBuffer, byte[]> hash = hashes.getOrDefault(wrap(key), new HashMap<>());
+        List<byte[]> values = new ArrayList<>();
+        for (byte[] field : fields) {
+            values.add(hash.get(wrap(field)));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<byte[], byte[]> hgetAll(byte[] key) {
+        sent("HGETALL", key);
+        Map<byte[], byte[]> all = new LinkedHashMap<>();
+        hashes.getOrDefault(wrap(key), new HashMap<>()).forEach((field, value) -> all.put(field.array(), value));
+        return all;
+    }
+
+    @Override
+    public Map<String, String> hgetAll(String key) {
+        Map<String, String> all = new LinkedHashMap<>();
+        hgetAll(SafeEncoder.encode(key)).forEach((field, value) -> all.put(SafeEncoder.encode(field), SafeEncoder.encode(value)));
+        return all;
+    }
+
+    @Override
+    public String hmset(byte[] key, Map<byte[], byte[]> fieldValues) {
+        sent("HMSET", key);
+        fieldValues.forEach((field, value) -> hashForWrite(key).put(wrap(field), value));
+        return "OK";
+    }
+
+    @Override
+    public String hmset(String key, Map<String, String> fieldValues) {
+        Map<byte[], byte[]> encoded = new LinkedHashMap<>();
+        fieldValues.forEach((field, value) -> encoded.put(SafeEncoder.encode(field), SafeEncoder.encode(value)));
+        return hmset(SafeEncoder.encode(key), encoded);
+    }
+
+    @Override
+    public Long hdel(byte[] key, byte[]... fields) {
+        sent("HDEL", key);
+        Map<ByteBuffer, byte[]> hash = hashes.get(wrap(key));
+        long deleted = 0;
+        for (byte[] field : fields) {
+            if (hash != null && hash.remove(wrap(field)) != null) {
+                deleted++;
+            }
+        }
+        if (hash != null && hash.isEmpty()) {
+            hashes.remove(wrap(key));
+        }
+        return deleted;
+    }
+
+    @Override
+    public ScanResult<Map.Entry<byte[], byte[]>> hscan(byte[] key, byte[] cursor, ScanParams params) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void batch(Function<PipeliningBase, List<Response<?>>> function) {
+        List<CommandObject<?>> queued = new ArrayList<>();
+        function.apply(new PipeliningBase(new CommandObjects()) {
+            @Override
+            protected <T> Response<T> appendCommand(CommandObject<T> commandObject) {
+                queued.add(commandObject);
+                return new Response<>(commandObject.getBuilder());
+            }
+        });
+        if (failNextBatch) {
+            failNextBatch = false;
+            roundTrips++;
+            throw new JedisException("The transaction was aborted");
+        }
+        int roundTripsBefore = roundTrips;
+        for (CommandObject<?> command : queued) {
+            List<byte[]> args = new ArrayList<>();
+            for (Rawable arg : command.getArguments()) {
+                args.add(arg.getRaw());
+            }
+            byte[] key = args.get(1);
+            List<byte[]> rest = args.subList(2, args.size());
+            String name = SafeEncoder.encode(args.get(0));
+            switch (name) {
+                case "HMSET":
+                    Map<byte[], byte[]> fieldValues = new LinkedHashMap<>();
+                    for (int i = 0; i < rest.size(); i += 2) {
+                        fieldValues.put(rest.get(i), rest.get(i + 1));
+                    }
+                    hmset(key, fieldValues);
+                    break;
+                case "HDEL":
+                    hdel(key, rest.toArray(new byte[0][]));
+                    break;
+                case "DEL":
+                    del(key);
+                    break;
+                default:
+                    throw new UnsupportedOperationException(name);
+            }
+        }
+        // the whole batch is a single round trip
+        roundTrips = roundTripsBefore + 1;
+    }
+}
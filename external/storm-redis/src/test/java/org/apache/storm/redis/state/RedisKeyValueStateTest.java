@@ -0,0 +1,187 @@
+package org.apache.storm.redis.state;
+
+import org.apache.storm.state.DefaultStateEncoder;
+import org.apache.storm.state.DefaultStateSerializer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class RedisKeyValueStateTest {
+    private FakeRedisCommands redis;
+
+    @Before
+    public void setUp() {
+        redis = new FakeRedisCommands();
+    }
+
+    private RedisKeyValueState<String, String> state(int cacheMaxEntries) {
+        RedisKeyValueState<String, String> state = new RedisKeyValueState<>("ns", redis, new DefaultStateSerializer<>(),
+                                                                            new DefaultStateSerializer<>(), cacheMaxEntries, 0);
+        redis.takeRoundTrips();
+        redis.takeCommands();
+        return state;
+    }
+
+    /** the value of the key in the committed namespace */
+    private String committed(String key) {
+        DefaultStateEncoder<String, String> encoder = new DefaultStateEncoder<>(new DefaultStateSerializer<>(),
+                                                                                new DefaultStateSerializer<>());
+        byte[] value = redis.hash("ns").get(ByteBuffer.wrap(encoder.encodeKey(key)));
+        return value == null ? null : encoder.decodeValue(value);
+    }
+
+    private void assertRoundTrips(int expected) {
+        Assert.assertEquals(expected, redis.takeRoundTrips());
+    }
+
+    @Test
+    public void testPrepareAndCommitAreOneRoundTripEach() {
+        RedisKeyValueState<String, String> state = state(0);
+        state.put("a", "1");
+        state.put("b", "2");
+        state.prepareCommit(1);
+        assertRoundTrips(1);
+        Assert.assertEquals(Arrays.asList("HMSET ns$prepare", "HMSET ns$txid"), redis.takeCommands());
+        Assert.assertEquals(2, redis.hash("ns$prepare").size());
+
+        state.commit(1);
+        assertRoundTrips(1);
+        Assert.assertEquals(Arrays.asList("HMSET ns", "HMSET ns$txid", "DEL ns$prepare"), redis.takeCommands());
+        Assert.assertEquals(2, redis.hash("ns").size());
+        Assert.assertTrue(redis.hash("ns$prepare").isEmpty());
+
+        state.delete("a");
+        state.prepareCommit(2);
+        state.commit(2);
+        assertRoundTrips(3);
+        Assert.assertEquals(Arrays.asList("HGET ns", "HMSET ns$prepare", "HMSET ns$txid", "HDEL ns", "HMSET ns$txid", "DEL ns$prepare"),
+                            redis.takeCommands());
+        Assert.assertEquals(1, redis.hash("ns").size());
+
+        state.prepareCommit(3);
+        state.rollback();
+        assertRoundTrips(2);
+        Assert.assertEquals(Arrays.asList("HMSET ns$txid", "DEL ns$prepare", "HMSET ns$txid"), redis.takeCommands());
+    }
+
+    @Test
+    public void testMultiGetReadsTheMissingKeysWithOneHmget() {
+        RedisKeyValueState<String, String> state = state(0);
+        state.put("a", "1");
+        state.put("b", "2");
+        state.put("c", "3");
+        state.prepareCommit(1);
+        state.commit(1);
+        state.put("b", "pending");
+        state.delete("c");
+        state.put("d", "4");
+        state.prepareCommit(2);
+        state.put("e", "5");
+        redis.takeRoundTrips();
+        redis.takeCommands();
+
+        Assert.assertEquals(Arrays.asList("1", "pending", null, "4", "5", null),
+                            state.multiGet(Arrays.asList("a", "b", "c", "d", "e", "missing")));
+        Assert.assertEquals(Collections.singletonList("HMGET ns"), redis.takeCommands());
+        Assert.assertEquals(Collections.emptyList(), state.multiGet(Collections.emptyList()));
+        Assert.assertEquals(Arrays.asList("5", "4"), state.multiGet(Arrays.asList("e", "d")));
+        assertRoundTrips(1);
+    }
+
+    @Test
+    public void testCacheKnowsAbsentKeysAndTombstonesAcrossCommitAndRollback() {
+        RedisKeyValueState<String, String> state = state(100);
+        Assert.assertNull(state.get("x"));
+        assertRoundTrips(1);
+        // the key is known not to exist
+        Assert.assertNull(state.get("x"));
+        Assert.assertEquals(Collections.singletonList(null), state.multiGet(Collections.singletonList("x")));
+        assertRoundTrips(0);
+
+        state.put("x", "1");
+        state.prepareCommit(1);
+        Assert.assertEquals("1", state.get("x"));
+        state.rollback();
+        redis.takeRoundTrips();
+        // rolled back, it still does not exist
+        Assert.assertNull(state.get("x"));
+        assertRoundTrips(0);
+
+        state.put("x", "1");
+        state.prepareCommit(1);
+        state.commit(1);
+        redis.takeRoundTrips();
+        Assert.assertEquals("1", state.get("x"));
+        assertRoundTrips(0);
+
+        // a tombstone hides the committed value until it is rolled back
+        Assert.assertEquals("1", state.delete("x"));
+        Assert.assertNull(state.get("x"));
+        state.prepareCommit(2);
+        Assert.assertNull(state.get("x"));
+        Assert.assertEquals(Collections.singletonList(null), state.multiGet(Collections.singletonList("x")));
+        state.rollback();
+        redis.takeRoundTrips();
+        Assert.assertEquals("1", state.get("x"));
+        Assert.assertEquals(Collections.singletonList("1"), state.multiGet(Collections.singletonList("x")));
+        assertRoundTrips(0);
+
+        // and once committed the key is absent again
+        state.delete("x");
+        state.prepareCommit(2);
+        state.commit(2);
+        redis.takeRoundTrips();
+        Assert.assertNull(state.get("x"));
+        Assert.assertEquals(Collections.singletonList(null), state.multiGet(Collections.singletonList("x")));
+        assertRoundTrips(0);
+        Assert.assertNull(state(0).get("x"));
+        Assert.assertTrue(redis.hash("ns").isEmpty());
+    }
+
+    @Test
+    public void testFailedCommitCanBeRetried() {
+        RedisKeyValueState<String, String> state = state(100);
+        state.put("a", "1");
+        state.prepareCommit(1);
+        state.commit(1);
+        state.put("a", "2");
+        state.prepareCommit(2);
+
+        redis.failNextBatch();
+        try {
+            state.commit(2);
+            Assert.fail("expected the commit to fail");
+        } catch (JedisException e) {
+            // expected
+        }
+        // nothing was applied, and the cache was not updated
+        Assert.assertEquals("1", committed("a"));
+        Assert.assertEquals("2", state.get("a"));
+        state.commit(2);
+        Assert.assertEquals("2", committed("a"));
+        Assert.assertEquals("2", state.get("a"));
+        Assert.assertEquals("2", state(0).get("a"));
+    }
+
+    @Test
+    public void testPreparedTxidSurvivesARestart() {
+        RedisKeyValueState<String, String> state = state(100);
+        state.put("a", "1");
+        state.prepareCommit(1);
+        state.commit(1);
+        state.put("a", "2");
+        state.put("b", "3");
+        state.prepareCommit(2);
+
+        RedisKeyValueState<String, String> restarted = state(100);
+        Assert.assertEquals(Arrays.asList("2", "3"), restarted.multiGet(Arrays.asList("a", "b")));
+        assertRoundTrips(0);
+        restarted.commit(2);
+        Assert.assertEquals(Arrays.asList("2", "3"), state(0).multiGet(Arrays.asList("a", "b")));
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.rocksdb.state;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable store that the checkpoints of a {@link RocksDbKeyValueState} are uploaded to, so that the state can be restored on another
+ * host. Objects are addressed by '/' separated names and are never modified once written, except for the small marker objects which are
+ * replaced as a whole.
+ *
+ * <p>Implementations need a public no-arg constructor, and are configured with the {@code checkpointStoreConfig} map of the provider
+ * config.
+ */
+public interface CheckpointStore extends Closeable {
+
+    /**
+     * Called once before the store is used.
+     *
+     * @param topoConf the topology config
+     * @param storeConf the {@code checkpointStoreConfig} of the provider config, may be empty
+     */
+    void prepare(Map<String, Object> topoConf, Map<String, Object> storeConf) throws IOException;
+
+    /**
+     * Upload the file under the given name, replacing the object that may already exist. Readers must never see a partial object.
+     */
+    void upload(Path source, String name) throws IOException;
+
+    /**
+     * Download the object to the given file, replacing it if it exists.
+     *
+     * @return false if there is no object with that name
+     */
+    boolean download(String name, Path dest) throws IOException;
+
+    /**
+     * List the names of the objects whose name starts with the prefix.
+     */
+    List<String> list(String prefix) throws IOException;
+
+    /**
+     * Delete the object, if it exists.
+     */
+    void delete(String name) throws IOException;
+}
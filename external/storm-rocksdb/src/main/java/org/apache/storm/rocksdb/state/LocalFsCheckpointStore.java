@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.rocksdb.state;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.storm.Config;
+import org.apache.storm.utils.ConfigUtils;
+
+/**
+ * A {@link CheckpointStore} on a local or mounted file system, mostly meant for testing. Objects are stored as files under the
+ * {@code dir} of the store config, which defaults to the state-checkpoints directory under {@link Config#STORM_LOCAL_DIR}.
+ */
+public class LocalFsCheckpointStore implements CheckpointStore {
+    public static final String DIR = "dir";
+
+    private Path root;
+
+    @Override
+    public void prepare(Map<String, Object> topoConf, Map<String, Object> storeConf) throws IOException {
+        Object dir = storeConf.get(DIR);
+        root = dir != null ? Paths.get(dir.toString()) : Paths.get(ConfigUtils.absoluteStormLocalDir(topoConf), "state-checkpoints");
+        Files.createDirectories(root);
+    }
+
+    @Override
+    public void upload(Path source, String name) throws IOException {
+        Path dest = resolve(name);
+        Files.createDirectories(dest.getParent());
+        Path tmp = Files.createTempFile(dest.getParent(), dest.getFileName().toString(), ".tmp");
+        try {
+            Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public boolean download(String name, Path dest) throws IOException {
+        try {
+            Files.copy(resolve(name), dest, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public List<String> list(String prefix) throws IOException {
+        Path dir = resolve(prefix).getParent();
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile)
+                .map(path -> root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/"))
+                .filter(name -> name.startsWith(prefix) && !name.endsWith(".tmp"))
+                .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        Files.deleteIfExists(resolve(name));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private Path resolve(String name) {
+        return root.resolve(name.replace("/", root.getFileSystem().getSeparator()));
+    }
+}
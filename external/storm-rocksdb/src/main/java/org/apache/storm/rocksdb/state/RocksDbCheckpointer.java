@@ -0,0 +1,317 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.rocksdb.state;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.rocksdb.Checkpoint;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Takes incremental checkpoints of a RocksDB instance and restores them. A checkpoint is first created locally, with hard links to the
+ * sst files of the db, and then uploaded to a {@link CheckpointStore}. Sst and blob files are never modified once written, so only the
+ * ones that are not part of the checkpoint the db was last restored from or checkpointed to are uploaded.
+ *
+ * <p>Layout of the store, under the namespace of the state:
+ * <ul>
+ *     <li>shared/SEQ-NAME: the sst and blob files, SEQ being the checkpoint they were first uploaded with</li>
+ *     <li>private/SEQ/NAME: the other files of a checkpoint, such as the MANIFEST</li>
+ *     <li>checkpoints/SEQ: the files of a checkpoint, as lines of: name remoteName size</li>
+ *     <li>COMMITTED and PREPARED: the seq and txid of the last committed and prepared checkpoints</li>
+ * </ul>
+ */
+class RocksDbCheckpointer {
+    static final String COMMITTED = "COMMITTED";
+    static final String PREPARED = "PREPARED";
+    private static final Logger LOG = LoggerFactory.getLogger(RocksDbCheckpointer.class);
+
+    private final CheckpointStore store;
+    private final String prefix;
+    private final Path localDir;
+    private long nextSeq;
+
+    /**
+     * Create a checkpointer.
+     *
+     * @param store the store to upload the checkpoints to
+     * @param namespace the namespace of the state
+     * @param localDir the directory to keep the local copies of the checkpoints in
+     */
+    RocksDbCheckpointer(CheckpointStore store, String namespace, Path localDir) {
+        this.store = store;
+        this.prefix = namespace + "/";
+        this.localDir = localDir;
+    }
+
+    /**
+     * Read the checkpoint the marker points to, or null if there is none.
+     */
+    Snapshot read(String marker) throws IOException {
+        Properties props = new Properties();
+        if (!readObject(marker, props::load)) {
+            return null;
+        }
+        long seq = Long.parseLong(props.getProperty("seq"));
+        String txid = props.getProperty("txid");
+        Map<String, FileRef> files = new LinkedHashMap<>();
+        boolean found = readObject("checkpoints/" + seq, reader -> {
+            try (BufferedReader lines = new BufferedReader(reader)) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    String[] fields = line.split(" ");
+                    files.put(fields[0], new FileRef(fields[1], Long.parseLong(fields[2])));
+                }
+            }
+        });
+        if (!found) {
+            throw new IOException("Checkpoint " + seq + " of " + prefix + " referenced by " + marker + " does not exist");
+        }
+        nextSeq = Math.max(nextSeq, seq + 1);
+        return new Snapshot(seq, txid == null ? null : Long.valueOf(txid), files);
+    }
+
+    /**
+     * Point the marker to the checkpoint, or delete the marker if the snapshot is null.
+     */
+    void mark(String marker, Snapshot snapshot) throws IOException {
+        if (snapshot == null) {
+            store.delete(prefix + marker);
+            return;
+        }
+        Properties props = new Properties();
+        props.setProperty("seq", String.valueOf(snapshot.seq));
+        if (snapshot.txid != null) {
+            props.setProperty("txid", String.valueOf(snapshot.txid));
+        }
+        writeObject(marker, writer -> props.store(writer, null));
+    }
+
+    /**
+     * Checkpoint the db and upload the files that the base checkpoint does not have.
+     *
+     * @param db the db
+     * @param base the checkpoint the db was restored from or last checkpointed to, may be null
+     * @param txid the txid to record with the checkpoint, may be null
+     */
+    Snapshot checkpoint(RocksDB db, Snapshot base, Long txid) throws IOException, RocksDBException {
+        final long start = System.currentTimeMillis();
+        // not reusing the seq of a checkpoint that was uploaded but never marked, possibly from another host
+        long seq = Math.max(nextSeq, System.currentTimeMillis());
+        nextSeq = seq + 1;
+        Path dir = localDir.resolve(String.valueOf(seq));
+        deleteRecursively(dir);
+        Files.createDirectories(localDir);
+        try (Checkpoint checkpoint = Checkpoint.create(db)) {
+            checkpoint.createCheckpoint(dir.toString());
+        }
+        Map<String, FileRef> files = new LinkedHashMap<>();
+        long uploaded = 0;
+        for (Path file : listFiles(dir)) {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+            FileRef ref = base == null ? null : base.files.get(name);
+            if (ref == null || !isImmutable(name) || ref.size != size) {
+                ref = new FileRef(isImmutable(name) ? "shared/" + seq + "-" + name : "private/" + seq + "/" + name, size);
+                store.upload(file, prefix + ref.remoteName);
+                uploaded += size;
+            }
+            files.put(name, ref);
+        }
+        writeObject("checkpoints/" + seq, writer -> {
+            for (Map.Entry<String, FileRef> entry : files.entrySet()) {
+                writer.write(entry.getKey() + " " + entry.getValue().remoteName + " " + entry.getValue().size + "\n");
+            }
+        });
+        LOG.debug("Checkpoint {} of {} took {} ms, uploaded {} of {} bytes", seq, prefix, System.currentTimeMillis() - start, uploaded,
+                  files.values().stream().mapToLong(ref -> ref.size).sum());
+        return new Snapshot(seq, txid, files);
+    }
+
+    /**
+     * Replace the contents of the db directory with the checkpoint. Files that are already in the local copy of the checkpoint are not
+     * downloaded again.
+     */
+    void restore(Snapshot snapshot, Path dbDir) throws IOException {
+        Path dir = localDir.resolve(String.valueOf(snapshot.seq));
+        Files.createDirectories(dir);
+        for (Path file : listFiles(dir)) {
+            FileRef ref = snapshot.files.get(file.getFileName().toString());
+            if (ref == null || !isImmutable(file.getFileName().toString()) || Files.size(file) != ref.size) {
+                Files.delete(file);
+            }
+        }
+        long downloaded = 0;
+        for (Map.Entry<String, FileRef> entry : snapshot.files.entrySet()) {
+            Path file = dir.resolve(entry.getKey());
+            if (!Files.exists(file)) {
+                if (!store.download(prefix + entry.getValue().remoteName, file)) {
+                    throw new IOException("File " + entry.getValue().remoteName + " of checkpoint " + snapshot.seq + " of " + prefix
+                                          + " does not exist");
+                }
+                downloaded += entry.getValue().size;
+            }
+        }
+        deleteRecursively(dbDir);
+        Files.createDirectories(dbDir);
+        for (String name : snapshot.files.keySet()) {
+            Path source = dir.resolve(name);
+            Path dest = dbDir.resolve(name);
+            if (isImmutable(name)) {
+                try {
+                    Files.createLink(dest, source);
+                    continue;
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    LOG.debug("Unable to link {}, copying it", source, e);
+                }
+            }
+            // the db rewrites the other files in place, so they must not be shared with the local checkpoint
+            Files.copy(source, dest, StandardCopyOption.REPLACE_EXISTING);
+        }
+        LOG.info("Restored checkpoint {} of {} with txid {}, downloaded {} bytes", snapshot.seq, prefix, snapshot.txid, downloaded);
+    }
+
+    /**
+     * Delete all the files, local and in the store, that the given checkpoints do not need.
+     */
+    void retainOnly(Snapshot... snapshots) throws IOException {
+        Set<String> keep = new HashSet<>();
+        Set<String> keepLocal = new HashSet<>();
+        for (Snapshot snapshot : snapshots) {
+            if (snapshot != null) {
+                keep.add(prefix + "checkpoints/" + snapshot.seq);
+                snapshot.files.values().forEach(ref -> keep.add(prefix + ref.remoteName));
+                keepLocal.add(String.valueOf(snapshot.seq));
+            }
+        }
+        for (String dir : new String[]{ "shared/", "private/", "checkpoints/" }) {
+            for (String name : store.list(prefix + dir)) {
+                if (!keep.contains(name)) {
+                    store.delete(name);
+                }
+            }
+        }
+        if (Files.isDirectory(localDir)) {
+            try (Stream<Path> dirs = Files.list(localDir)) {
+                for (Path dir : dirs.collect(Collectors.toList())) {
+                    if (!keepLocal.contains(dir.getFileName().toString())) {
+                        deleteRecursively(dir);
+                    }
+                }
+            }
+        }
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private static boolean isImmutable(String name) {
+        return name.endsWith(".sst") || name.endsWith(".blob");
+    }
+
+    private static Collection<Path> listFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    private boolean readObject(String name, ObjectReader reader) throws IOException {
+        Path tmp = Files.createTempFile("storm-state-", ".tmp");
+        try {
+            if (!store.download(prefix + name, tmp)) {
+                return false;
+            }
+            try (Reader in = Files.newBufferedReader(tmp, StandardCharsets.UTF_8)) {
+                reader.read(in);
+            }
+            return true;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void writeObject(String name, ObjectWriter writer) throws IOException {
+        Path tmp = Files.createTempFile("storm-state-", ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(out);
+            }
+            store.upload(tmp, prefix + name);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private interface ObjectReader {
+        void read(Reader reader) throws IOException;
+    }
+
+    private interface ObjectWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    /**
+     * A checkpoint in the store.
+     */
+    static class Snapshot {
+        final long seq;
+        final Long txid;
+        final Map<String, FileRef> files;
+
+        Snapshot(long seq, Long txid, Map<String, FileRef> files) {
+            this.seq = seq;
+            this.txid = txid;
+            this.files = files;
+        }
+
+        Snapshot withTxid(Long txid) {
+            return new Snapshot(seq, txid, files);
+        }
+    }
+
+    private static class FileRef {
+        final String remoteName;
+        final long size;
+
+        FileRef(String remoteName, long size) {
+            this.remoteName = remoteName;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.rocksdb.state;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.storm.rocksdb.state.RocksDbCheckpointer.Snapshot;
+import org.apache.storm.state.DefaultStateEncoder;
+import org.apache.storm.state.KeyValueState;
+import org.apache.storm.state.Serializer;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link KeyValueState} kept in an embedded RocksDB instance on the local disk, so that it can be much larger than the heap.
+ *
+ * <p>Updates are buffered in memory until {@link #prepareCommit(long)}, which writes them to the db and takes a checkpoint of it. The
+ * checkpoint is uploaded to a {@link CheckpointStore}, but only the files that changed since the previous checkpoint. {@link #commit(long)}
+ * then only has to mark the prepared checkpoint as committed, and {@link #rollback()} restores the db from the last committed checkpoint,
+ * which is normally still on the local disk. When the state is created on a host that does not have it yet, it is downloaded from the
+ * store.
+ *
+ * <p>The db does not use a write ahead log, since it is always restored from a checkpoint after a failure.
+ */
+public class RocksDbKeyValueState<K, V> implements KeyValueState<K, V>, Closeable {
+    public static final int ITERATOR_CHUNK_SIZE = 100;
+    private static final Logger LOG = LoggerFactory.getLogger(RocksDbKeyValueState.class);
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    private final String namespace;
+    private final Path dbDir;
+    private final CheckpointStore store;
+    private final RocksDbCheckpointer checkpointer;
+    private final DefaultStateEncoder<K, V> encoder;
+    private final Options options;
+    private final WriteOptions writeOptions;
+    private RocksDB db;
+    private ConcurrentNavigableMap<byte[], byte[]> pendingPrepare;
+    private Snapshot committed;
+    private Snapshot prepared;
+    // the checkpoint the db was restored from or last checkpointed to
+    private Snapshot base;
+    // whether the db has writes that are not part of the committed checkpoint
+    private boolean uncommitted;
+
+    /**
+     * Create the state, restoring it from the last committed or prepared checkpoint if there is one.
+     *
+     * @param namespace the namespace of the state
+     * @param localDir the local directory to keep the db and the local copies of its checkpoints in
+     * @param store the store to upload the checkpoints to
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     */
+    public RocksDbKeyValueState(String namespace, Path localDir, CheckpointStore store, Serializer<K> keySerializer,
+                                Serializer<V> valueSerializer) {
+        this.namespace = namespace;
+        this.dbDir = localDir.resolve("db");
+        this.store = store;
+        this.checkpointer = new RocksDbCheckpointer(store, namespace, localDir.resolve("checkpoints"));
+        this.encoder = new DefaultStateEncoder<>(keySerializer, valueSerializer);
+        this.options = new Options().setCreateIfMissing(true);
+        this.writeOptions = new WriteOptions().setDisableWAL(true);
+        this.pendingPrepare = createPendingPrepareMap();
+        try {
+            committed = checkpointer.read(RocksDbCheckpointer.COMMITTED);
+            prepared = checkpointer.read(RocksDbCheckpointer.PREPARED);
+            if (prepared != null && committed != null && prepared.seq <= committed.seq) {
+                // committed, but the prepared marker was not deleted yet
+                prepared = null;
+            }
+            open(prepared != null ? prepared : committed);
+            checkpointer.retainOnly(committed, prepared);
+        } catch (IOException | RocksDBException e) {
+            close();
+            throw new RuntimeException("Unable to initialize state " + namespace, e);
+        }
+        LOG.info("Opened state {} in {}, committed txid {}, prepared txid {}", namespace, dbDir, lastCommittedTxid(), lastPreparedTxid());
+    }
+
+    @Override
+    public void put(K key, V value) {
+        LOG.debug("put key '{}', value '{}'", key, value);
+        pendingPrepare.put(encoder.encodeKey(key), encoder.encodeValue(value));
+    }
+
+    @Override
+    public V get(K key) {
+        LOG.debug("get key '{}'", key);
+        byte[] encodedKey = encoder.encodeKey(key);
+        byte[] encodedValue = pendingPrepare.get(encodedKey);
+        if (encodedValue == null) {
+            try {
+                encodedValue = db.get(encodedKey);
+            } catch (RocksDBException e) {
+                throw new RuntimeException("Unable to get key " + key + " of state " + namespace, e);
+            }
+        }
+        V value = encodedValue == null ? null : encoder.decodeValue(encodedValue);
+        LOG.debug("Value for key '{}' is '{}'", key, value);
+        return value;
+    }
+
+    @Override
+    public V get(K key, V defaultValue) {
+        V val = get(key);
+        return val != null ? val : defaultValue;
+    }
+
+    @Override
+    public List<V> multiGet(List<K> keys) {
+        LOG.debug("multiGet keys '{}'", keys);
+        List<byte[]> encodedValues = new ArrayList<>(keys.size());
+        List<byte[]> missingKeys = new ArrayList<>();
+        for (K key : keys) {
+            byte[] encodedKey = encoder.encodeKey(key);
+            byte[] encodedValue = pendingPrepare.get(encodedKey);
+            if (encodedValue == null) {
+                missingKeys.add(encodedKey);
+            }
+            encodedValues.add(encodedValue);
+        }
+        if (!missingKeys.isEmpty()) {
+            List<byte[]> loaded;
+            try {
+                loaded = db.multiGetAsList(missingKeys);
+            } catch (RocksDBException e) {
+                throw new RuntimeException("Unable to get keys " + keys + " of state " + namespace, e);
+            }
+            Iterator<byte[]> loadedValues = loaded.iterator();
+            for (int i = 0; i < encodedValues.size(); i++) {
+                if (encodedValues.get(i) == null) {
+                    encodedValues.set(i, loadedValues.next());
+                }
+            }
+        }
+        List<V> values = new ArrayList<>(keys.size());
+        for (byte[] encodedValue : encodedValues) {
+            values.add(encodedValue == null ? null : encoder.decodeValue(encodedValue));
+        }
+        return values;
+    }
+
+    @Override
+    public V delete(K key) {
+        LOG.debug("delete key '{}'", key);
+        V curr = get(key);
+        pendingPrepare.put(encoder.encodeKey(key), encoder.getTombstoneValue());
+        return curr;
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new RocksDbKeyValueStateIterator<>(this, pendingPrepare.entrySet().iterator(), Collections.emptyIterator(),
+                                                  ITERATOR_CHUNK_SIZE, encoder);
+    }
+
+    @Override
+    public void prepareCommit(long txid) {
+        LOG.debug("prepareCommit txid {}", txid);
+        validatePrepareTxid(txid);
+        try {
+            uncommitted = true;
+            write(pendingPrepare);
+            pendingPrepare = createPendingPrepareMap();
+            Snapshot snapshot = checkpointer.checkpoint(db, base, txid);
+            checkpointer.mark(RocksDbCheckpointer.PREPARED, snapshot);
+            prepared = snapshot;
+            base = snapshot;
+        } catch (IOException | RocksDBException e) {
+            throw new RuntimeException("Unable to prepare txid " + txid + " of state " + namespace, e);
+        }
+    }
+
+    @Override
+    public void commit(long txid) {
+        LOG.debug("commit txid {}", txid);
+        validateCommitTxid(txid);
+        try {
+            Snapshot snapshot;
+            if (prepared != null) {
+                snapshot = prepared;
+            } else if (committed != null) {
+                LOG.debug("Nothing prepared for commit, txid {}.", txid);
+                snapshot = committed.withTxid(txid);
+            } else {
+                snapshot = checkpointer.checkpoint(db, base, txid);
+                base = snapshot;
+            }
+            markCommitted(snapshot);
+        } catch (IOException | RocksDBException e) {
+            throw new RuntimeException("Unable to commit txid " + txid + " of state " + namespace, e);
+        }
+    }
+
+    @Override
+    public void commit() {
+        try {
+            uncommitted = true;
+            write(pendingPrepare);
+            pendingPrepare = createPendingPrepareMap();
+            Snapshot snapshot = checkpointer.checkpoint(db, base, lastCommittedTxid());
+            base = snapshot;
+            markCommitted(snapshot);
+        } catch (IOException | RocksDBException e) {
+            throw new RuntimeException("Unable to commit state " + namespace, e);
+        }
+    }
+
+    @Override
+    public void rollback() {
+        LOG.debug("rollback");
+        pendingPrepare = createPendingPrepareMap();
+        if (!uncommitted) {
+            LOG.debug("Nothing to rollback, the db only has committed data");
+            return;
+        }
+        try {
+            db.close();
+            db = null;
+            open(committed);
+            checkpointer.mark(RocksDbCheckpointer.PREPARED, null);
+            prepared = null;
+            checkpointer.retainOnly(committed);
+        } catch (IOException | RocksDBException e) {
+            throw new RuntimeException("Unable to rollback state " + namespace, e);
+        }
+    }
+
+    /**
+     * Close the db. The state can not be used anymore afterwards.
+     */
+    @Override
+    public void close() {
+        if (db != null) {
+            db.close();
+            db = null;
+        }
+        writeOptions.close();
+        options.close();
+        try {
+            store.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close the checkpoint store of state {}", namespace, e);
+        }
+    }
+
+    RocksDB getDb() {
+        return db;
+    }
+
+    private void open(Snapshot snapshot) throws IOException, RocksDBException {
+        if (snapshot != null) {
+            checkpointer.restore(snapshot, dbDir);
+        } else {
+            RocksDbCheckpointer.deleteRecursively(dbDir);
+            Files.createDirectories(dbDir);
+        }
+        db = RocksDB.open(options, dbDir.toString());
+        base = snapshot;
+        uncommitted = snapshot != committed;
+    }
+
+    private void write(Map<byte[], byte[]> updates) throws RocksDBException {
+        if (updates.isEmpty()) {
+            return;
+        }
+        try (WriteBatch batch = new WriteBatch()) {
+            for (Map.Entry<byte[], byte[]> entry : updates.entrySet()) {
+                if (Arrays.equals(encoder.getTombstoneValue(), entry.getValue())) {
+                    batch.delete(entry.getKey());
+                } else {
+                    batch.put(entry.getKey(), entry.getValue());
+                }
+            }
+            db.write(writeOptions, batch);
+        }
+    }
+
+    private void markCommitted(Snapshot snapshot) throws IOException {
+        checkpointer.mark(RocksDbCheckpointer.COMMITTED, snapshot);
+        checkpointer.mark(RocksDbCheckpointer.PREPARED, null);
+        committed = snapshot;
+        prepared = null;
+        uncommitted = false;
+        checkpointer.retainOnly(committed);
+    }
+
+    /*
+     * Same txid can be prepared again, but the next txid cannot be prepared
+     * when previous one is not committed yet.
+     */
+    private void validatePrepareTxid(long txid) {
+        Long committedTxid = lastCommittedTxid();
+        if (committedTxid != null && txid <= committedTxid) {
+            throw new RuntimeException("Invalid txid '" + txid + "' for prepare. Txid '" + committedTxid + "' is already committed");
+        }
+    }
+
+    /*
+     * Same txid can be committed again but the
+     * txid to be committed must be the last prepared one.
+     */
+    private void validateCommitTxid(long txid) {
+        Long committedTxid = lastCommittedTxid();
+        if (committedTxid != null && txid < committedTxid) {
+            throw new RuntimeException("Invalid txid '" + txid + "' txid '" + committedTxid + "' is already committed");
+        }
+        Long preparedTxid = lastPreparedTxid();
+        if (preparedTxid != null && txid != preparedTxid) {
+            throw new RuntimeException("Invalid txid '" + txid + "' not same as prepared txid '" + preparedTxid + "'");
+        }
+    }
+
+    private Long lastCommittedTxid() {
+        return committed == null ? null : committed.txid;
+    }
+
+    private Long lastPreparedTxid() {
+        return prepared == null ? null : prepared.txid;
+    }
+
+    private ConcurrentNavigableMap<byte[], byte[]> createPendingPrepareMap() {
+        return new ConcurrentSkipListMap<>(Arrays::compareUnsigned);
+    }
+}
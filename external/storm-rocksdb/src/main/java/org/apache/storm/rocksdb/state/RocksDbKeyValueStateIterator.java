@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.rocksdb.state;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.state.BaseBinaryStateIterator;
+import org.apache.storm.state.StateEncoder;
+import org.rocksdb.RocksIterator;
+
+/**
+ * An iterator over {@link RocksDbKeyValueState}. The entries of the db are read in chunks, so that no db iterator is held open between
+ * calls.
+ */
+public class RocksDbKeyValueStateIterator<K, V> extends BaseBinaryStateIterator<K, V> {
+
+    private final RocksDbKeyValueState<K, V> state;
+    private final int chunkSize;
+    private final StateEncoder<K, V, byte[], byte[]> encoder;
+
+    private Iterator<Map.Entry<byte[], byte[]>> cachedResultIterator;
+    private byte[] lastKey;
+    private boolean endOfData;
+
+    /**
+     * Constructor.
+     *
+     * @param state The state to iterate over
+     * @param pendingPrepareIterator The iterator of pendingPrepare
+     * @param pendingCommitIterator The iterator of pendingCommit
+     * @param chunkSize The number of entries to read from the db at once
+     * @param encoder The encoder of the state
+     */
+    public RocksDbKeyValueStateIterator(RocksDbKeyValueState<K, V> state,
+                                        Iterator<Map.Entry<byte[], byte[]>> pendingPrepareIterator,
+                                        Iterator<Map.Entry<byte[], byte[]>> pendingCommitIterator,
+                                        int chunkSize, StateEncoder<K, V, byte[], byte[]> encoder) {
+        super(pendingPrepareIterator, pendingCommitIterator);
+        this.state = state;
+        this.chunkSize = chunkSize;
+        this.encoder = encoder;
+    }
+
+    @Override
+    protected Iterator<Map.Entry<byte[], byte[]>> loadChunkFromStateStorage() {
+        List<Map.Entry<byte[], byte[]>> chunk = new ArrayList<>(chunkSize);
+        try (RocksIterator iterator = state.getDb().newIterator()) {
+            if (lastKey == null) {
+                iterator.seekToFirst();
+            } else {
+                iterator.seek(lastKey);
+                if (iterator.isValid() && Arrays.equals(iterator.key(), lastKey)) {
+                    iterator.next();
+                }
+            }
+            while (iterator.isValid() && chunk.size() < chunkSize) {
+                chunk.add(new AbstractMap.SimpleImmutableEntry<>(iterator.key(), iterator.value()));
+                iterator.next();
+            }
+            endOfData = !iterator.isValid();
+        }
+        if (!chunk.isEmpty()) {
+            lastKey = chunk.get(chunk.size() - 1).getKey();
+        }
+        cachedResultIterator = chunk.iterator();
+        return cachedResultIterator;
+    }
+
+    @Override
+    protected boolean isEndOfDataFromStorage() {
+        return (cachedResultIterator == null || !cachedResultIterator.hasNext()) && endOfData;
+    }
+
+    @Override
+    protected K decodeKey(byte[] key) {
+        return encoder.decodeKey(key);
+    }
+
+    @Override
+    protected V decodeValue(byte[] value) {
+        return encoder.decodeValue(value);
+    }
+
+    @Override
+    protected boolean isTombstoneValue(byte[] value) {
+        return Arrays.equals(value, encoder.getTombstoneValue());
+    }
+}
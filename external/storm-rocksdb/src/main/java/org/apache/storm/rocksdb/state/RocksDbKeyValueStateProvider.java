@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.rocksdb.state;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.storm.Config;
+import org.apache.storm.state.DefaultStateSerializer;
+import org.apache.storm.state.Serializer;
+import org.apache.storm.state.State;
+import org.apache.storm.state.StateProvider;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.utils.ConfigUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides {@link RocksDbKeyValueState}.
+ */
+public class RocksDbKeyValueStateProvider implements StateProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(RocksDbKeyValueStateProvider.class);
+    // a worker restarted in the same JVM, as in local mode, has to close the db of the previous worker first
+    private static final Map<Path, RocksDbKeyValueState<?, ?>> OPEN_STATES = new HashMap<>();
+
+    @Override
+    public State newState(String namespace, Map<String, Object> topoConf, TopologyContext context) {
+        try {
+            return getRocksDbKeyValueState(namespace, topoConf, context, getStateConfig(topoConf));
+        } catch (Exception ex) {
+            LOG.error("Error loading config from storm conf {}", topoConf);
+            throw new RuntimeException(ex);
+        }
+    }
+
+    StateConfig getStateConfig(Map<String, Object> topoConf) throws Exception {
+        StateConfig stateConfig;
+        String providerConfig;
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        if (topoConf.containsKey(Config.TOPOLOGY_STATE_PROVIDER_CONFIG)) {
+            providerConfig = (String) topoConf.get(Config.TOPOLOGY_STATE_PROVIDER_CONFIG);
+            stateConfig = mapper.readValue(providerConfig, StateConfig.class);
+        } else {
+            stateConfig = new StateConfig();
+        }
+        return stateConfig;
+    }
+
+    private RocksDbKeyValueState getRocksDbKeyValueState(String namespace, Map<String, Object> topoConf, TopologyContext context,
+                                                         StateConfig config) throws Exception {
+        Path localDir = config.localDir != null ? Paths.get(config.localDir)
+            : Paths.get(ConfigUtils.absoluteStormLocalDir(topoConf), "state");
+        localDir = localDir.resolve(context.getStormId()).resolve(namespace);
+        Serializer keySerializer = getKeySerializer(topoConf, context, config);
+        Serializer valueSerializer = getValueSerializer(topoConf, context, config);
+        synchronized (OPEN_STATES) {
+            RocksDbKeyValueState<?, ?> previous = OPEN_STATES.remove(localDir);
+            if (previous != null) {
+                LOG.info("Closing the previous instance of state {}", namespace);
+                previous.close();
+            }
+            RocksDbKeyValueState state = new RocksDbKeyValueState(namespace, localDir, getCheckpointStore(topoConf, config),
+                                                                  keySerializer, valueSerializer);
+            OPEN_STATES.put(localDir, state);
+            return state;
+        }
+    }
+
+    private CheckpointStore getCheckpointStore(Map<String, Object> topoConf, StateConfig config) throws Exception {
+        CheckpointStore store;
+        if (config.checkpointStoreClass != null) {
+            store = Class.forName(config.checkpointStoreClass).asSubclass(CheckpointStore.class).getDeclaredConstructor().newInstance();
+        } else {
+            store = new LocalFsCheckpointStore();
+        }
+        store.prepare(topoConf, config.checkpointStoreConfig != null ? config.checkpointStoreConfig : Collections.emptyMap());
+        return store;
+    }
+
+    private Serializer getKeySerializer(Map<String, Object> topoConf, TopologyContext context, StateConfig config) throws Exception {
+        Serializer serializer;
+        if (config.keySerializerClass != null) {
+            serializer = Class.forName(config.keySerializerClass).asSubclass(Serializer.class).getDeclaredConstructor().newInstance();
+        } else if (config.keyClass != null) {
+            serializer = new DefaultStateSerializer(topoConf, context, Collections.singletonList(Class.forName(config.keyClass)));
+        } else {
+            serializer = new DefaultStateSerializer(topoConf, context);
+        }
+        return serializer;
+    }
+
+    private Serializer getValueSerializer(Map<String, Object> topoConf, TopologyContext context, StateConfig config) throws Exception {
+        Serializer serializer;
+        if (config.valueSerializerClass != null) {
+            serializer = Class.forName(config.valueSerializerClass).asSubclass(Serializer.class).getDeclaredConstructor().newInstance();
+        } else if (config.valueClass != null) {
+            serializer = new DefaultStateSerializer(topoConf, context, Collections.singletonList(Class.forName(config.valueClass)));
+        } else {
+            serializer = new DefaultStateSerializer(topoConf, context);
+        }
+        return serializer;
+    }
+
+    public static class StateConfig {
+        public String keyClass;
+        public String valueClass;
+        public String keySerializerClass;
+        public String valueSerializerClass;
+        public String localDir;
+        public String checkpointStoreClass;
+        public Map<String, Object> checkpointStoreConfig;
+
+        @Override
+        public String toString() {
+            return "StateConfig{"
+                    + "keyClass='" + keyClass + '\''
+                    + ", valueClass='" + valueClass + '\''
+                    + ", keySerializerClass='" + keySerializerClass + '\''
+                    + ", valueSerializerClass='" + valueSerializerClass + '\''
+                    + ", localDir='" + localDir + '\''
+                    + ", checkpointStoreClass='" + checkpointStoreClass + '\''
+                    + ", checkpointStoreConfig=" + checkpointStoreConfig
+                    + '}';
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.apache.storm.rocksdb.state;
+
+import org.apache.storm.Config;
+import org.apache.storm.state.KeyValueState;
+import org.apache.storm.state.Serializer;
+import org.apache.storm.task.TopologyContext;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RocksDbKeyValueStateProviderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public static class StringSerializer implements Serializer<String> {
+        @Override
+        public byte[] serialize(String obj) {
+            return obj.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String deserialize(byte[] b) {
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testConfiguredClasses() throws Exception {
+        Path localDir = folder.newFolder("local").toPath();
+        Path storeDir = folder.newFolder("store").toPath();
+        Map<String, Object> topoConf = new HashMap<>();
+        topoConf.put(Config.TOPOLOGY_STATE_PROVIDER_CONFIG, "{"
+            + "\"keySerializerClass\": \"" + StringSerializer.class.getName() + "\","
+            + "\"valueSerializerClass\": \"" + StringSerializer.class.getName() + "\","
+            + "\"localDir\": \"" + localDir + "\","
+            + "\"checkpointStoreClass\": \"" + LocalFsCheckpointStore.class.getName() + "\","
+            + "\"checkpointStoreConfig\": {\"" + LocalFsCheckpointStore.DIR + "\": \"" + storeDir + "\"}}");
+        TopologyContext context = mock(TopologyContext.class);
+        when(context.getStormId()).thenReturn("topo-1");
+
+        KeyValueState<String, String> state =
+            (KeyValueState<String, String>) new RocksDbKeyValueStateProvider().newState("ns", topoConf, context);
+        try {
+            state.put("key", "value");
+            state.prepareCommit(1);
+            state.commit(1);
+        } finally {
+            ((RocksDbKeyValueState<String, String>) state).close();
+        }
+        Assert.assertTrue(Files.isDirectory(localDir.resolve("topo-1").resolve("ns").resolve("db")));
+        // the checkpoint went to the configured store
+        Assert.assertTrue(Files.exists(storeDir.resolve("ns").resolve(RocksDbCheckpointer.COMMITTED)));
+        KeyValueState<String, String> reopened =
+            (KeyValueState<String, String>) new RocksDbKeyValueStateProvider().newState("ns", topoConf, context);
+        try {
+            Assert.assertEquals("value", reopened.get("key"));
+        } finally {
+            ((RocksDbKeyValueState<String, String>) reopened).close();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.apache.storm.rocksdb.state;
+
+import org.apache.storm.state.DefaultStateSerializer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class RocksDbKeyValueStateTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path storeDir;
+    private final List<RocksDbKeyValueState<String, String>> states = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        storeDir = folder.newFolder("store").toPath();
+    }
+
+    @After
+    public void tearDown() {
+        states.forEach(RocksDbKeyValueState::close);
+    }
+
+    /** opens the state as a worker on the given host would, with the checkpoints in the shared store */
+    private RocksDbKeyValueState<String, String> open(String host) throws IOException {
+        LocalFsCheckpointStore store = new LocalFsCheckpointStore();
+        store.prepare(Collections.emptyMap(), Collections.singletonMap(LocalFsCheckpointStore.DIR, storeDir.toString()));
+        RocksDbKeyValueState<String, String> state = new RocksDbKeyValueState<>("test", folder.getRoot().toPath().resolve(host), store,
+                                                                                new DefaultStateSerializer<>(),
+                                                                                new DefaultStateSerializer<>());
+        states.add(state);
+        return state;
+    }
+
+    private void close(RocksDbKeyValueState<String, String> state) {
+        states.remove(state);
+        state.close();
+    }
+
+    private static Map<String, String> contents(RocksDbKeyValueState<String, String> state) {
+        Map<String, String> contents = new TreeMap<>();
+        Iterator<Map.Entry<String, String>> it = state.iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, String> entry = it.next();
+            Assert.assertNull("key " + entry.getKey() + " returned twice", contents.put(entry.getKey(), entry.getValue()));
+        }
+        return contents;
+    }
+
+    private static Map<String, String> map(String... keysAndValues) {
+        Map<String, String> map = new TreeMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    @Test
+    public void testPrepareCommitAndRollback() throws IOException {
+        RocksDbKeyValueState<String, String> state = open("host");
+        state.put("a", "1");
+        state.put("b", "2");
+        Assert.assertEquals("1", state.get("a"));
+        state.prepareCommit(1);
+        Assert.assertEquals("1", state.get("a"));
+        state.commit(1);
+
+        state.put("a", "10");
+        state.put("c", "3");
+        state.prepareCommit(2);
+        state.put("d", "4");
+        Assert.assertEquals(map("a", "10", "b", "2", "c", "3", "d", "4"), contents(state));
+        // the prepared txid and the pending updates are dropped
+        state.rollback();
+        Assert.assertEquals(map("a", "1", "b", "2"), contents(state));
+        Assert.assertEquals("1", state.get("a"));
+        Assert.assertNull(state.get("c"));
+        Assert.assertEquals("none", state.get("d", "none"));
+
+        state.put("e", "5");
+        state.prepareCommit(2);
+        state.commit(2);
+        state.rollback();
+        Assert.assertEquals(map("a", "1", "b", "2", "e", "5"), contents(state));
+        Assert.assertEquals(Arrays.asList("5", null, "1"), state.multiGet(Arrays.asList("e", "c", "a")));
+    }
+
+    @Test
+    public void testTxidValidation() throws IOException {
+        RocksDbKeyValueState<String, String> state = open("host");
+        state.put("a", "1");
+        state.prepareCommit(1);
+        // the same txid can be prepared again
+        state.prepareCommit(1);
+        state.commit(1);
+        // and committed again
+        state.commit(1);
+        assertFails(() -> state.prepareCommit(1));
+        assertFails(() -> state.commit(0));
+
+        state.prepareCommit(2);
+        assertFails(() -> state.commit(3));
+        state.commit(2);
+        Assert.assertEquals("1", state.get("a"));
+    }
+
+    private static void assertFails(Runnable runnable) {
+        try {
+            runnable.run();
+            Assert.fail("expected the txid to be rejected");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid txid"));
+        }
+    }
+
+    @Test
+    public void testTombstones() throws IOException {
+        RocksDbKeyValueState<String, String> state = open("host");
+        state.put("a", "1");
+        state.put("b", "2");
+        state.prepareCommit(1);
+        state.commit(1);
+
+        Assert.assertEquals("1", state.delete("a"));
+        Assert.assertNull(state.delete("missing"));
+        // the tombstone hides the value in the db until it is committed
+        Assert.assertNull(state.get("a"));
+        Assert.assertEquals(Arrays.asList(null, "2"), state.multiGet(Arrays.asList("a", "b")));
+        Assert.assertEquals(map("b", "2"), contents(state));
+        state.prepareCommit(2);
+        Assert.assertNull(state.get("a"));
+        Assert.assertEquals(map("b", "2"), contents(state));
+        state.rollback();
+        Assert.assertEquals("1", state.get("a"));
+
+        state.delete("a");
+        state.prepareCommit(2);
+        state.commit(2);
+        Assert.assertNull(state.get("a"));
+        Assert.assertEquals(map("b", "2"), contents(state));
+        // a key can come back after it was deleted
+        state.put("a", "again");
+        Assert.assertEquals(map("a", "again", "b", "2"), contents(state));
+    }
+
+    @Test
+    public void testIteratorMergesPendingUpdatesWithTheDb() throws IOException {
+        RocksDbKeyValueState<String, String> state = open("host");
+        Assert.assertFalse(state.iterator().hasNext());
+        Map<String, String> expected = new TreeMap<>();
+        // several chunks of the db
+        for (int i = 0; i < 3 * RocksDbKeyValueState.ITERATOR_CHUNK_SIZE + 7; i++) {
+            String key = String.format("key-%04d", i);
+            state.put(key, "v" + i);
+            expected.put(key, "v" + i);
+        }
+        state.prepareCommit(1);
+        state.commit(1);
+        Assert.assertEquals(expected, contents(state));
+
+        for (int i = 0; i < 3 * RocksDbKeyValueState.ITERATOR_CHUNK_SIZE; i += 3) {
+            String key = String.format("key-%04d", i);
+            state.put(key, "updated");
+            expected.put(key, "updated");
+            String deleted = String.format("key-%04d", i + 1);
+            state.delete(deleted);
+            expected.remove(deleted);
+        }
+        state.put("new", "n");
+        expected.put("new", "n");
+        Assert.assertEquals(expected, contents(state));
+        state.prepareCommit(2);
+        Assert.assertEquals(expected, contents(state));
+        state.commit(2);
+        Assert.assertEquals(expected, contents(state));
+    }
+
+    @Test
+    public void testRestoreAfterCrash() throws IOException {
+        RocksDbKeyValueState<String, String> state = open("first");
+        state.put("a", "1");
+        state.put("b", "2");
+        state.prepareCommit(1);
+        state.commit(1);
+        state.delete("b");
+        state.put("c", "3");
+        state.prepareCommit(2);
+        // never prepared, lost in the crash
+        state.put("d", "4");
+        close(state);
+
+        // the worker comes back on another host, with the prepared txid that the spout may still commit or roll back
+        RocksDbKeyValueState<String, String> restored = open("second");
+        Assert.assertEquals(map("a", "1", "c", "3"), contents(restored));
+        restored.rollback();
+        Assert.assertEquals(map("a", "1", "b", "2"), contents(restored));
+        restored.put("e", "5");
+        restored.prepareCommit(2);
+        restored.commit(2);
+        close(restored);
+
+        // and then back on the first host, which still has an older local copy of the db
+        RocksDbKeyValueState<String, String> back = open("first");
+        Assert.assertEquals(map("a", "1", "b", "2", "e", "5"), contents(back));
+        back.rollback();
+        Assert.assertEquals(map("a", "1", "b", "2", "e", "5"), contents(back));
+        assertFails(() -> back.prepareCommit(2));
+        back.put("f", "6");
+        back.prepareCommit(3);
+        back.commit(3);
+        Assert.assertEquals("6", back.get("f"));
+    }
+}
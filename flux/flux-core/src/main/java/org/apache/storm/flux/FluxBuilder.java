@@ -264,6 +264,9 @@ public class FluxBuilder {
                 case NONE:
                     declarer.noneGrouping(stream.getFrom(), streamId);
                     break;
+                case CONSISTENT_HASH:
+                    declarer.consistentHashGrouping(stream.getFrom(), streamId, new Fields(grouping.getArgs()));
+                    break;
                 case CUSTOM:
                     declarer.customGrouping(stream.getFrom(), streamId,
                             buildCustomStreamGrouping(stream.getGrouping().getCustomClass(), context));
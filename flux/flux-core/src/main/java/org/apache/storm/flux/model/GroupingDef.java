@@ -36,7 +36,8 @@ public class GroupingDef {
         LOCAL_OR_SHUFFLE,
         FIELDS,
         GLOBAL,
-        NONE
+        NONE,
+        CONSISTENT_HASH
     }
 
     private Type type;
@@ -101,6 +101,12 @@ public class Config extends HashMap<String, Object> {
     @IsPositiveNumber
     @NotNull
     public static final String TOPOLOGY_LOCALITYAWARE_LOWER_BOUND = "topology.localityaware.lower.bound";
+    /**
+     * Whether LoadAwareShuffleGrouping picks the less loaded of two random target tasks in scope for every tuple, instead of walking a
+     * ring of choices weighted by load. This reacts to load changes between refreshes, at the cost of two load lookups per tuple.
+     */
+    @IsBoolean
+    public static final String TOPOLOGY_LOADAWARE_SHUFFLE_TWO_CHOICES = "topology.loadaware.shuffle.two.choices";
     /**
      * Try to serialize all tuples, even for local transfers.  This should only be used for testing, as a sanity check that all of your
      * tuples are setup properly.
@@ -456,6 +462,29 @@ public class Config extends HashMap<String, Object> {
     @IsPositiveNumber(includeZero = true)
     public static final String TOPOLOGY_RAS_ACKER_EXECUTORS_PER_WORKER = "topology.ras.acker.executors.per.worker";
 
+    /**
+     * Whether bolts and ackers exchange acks in batches. When enabled, the ack updates a bolt sends to the same acker task are coalesced
+     * into a single tuple until the next flush tuple, and ackers answer spouts in batches the same way. Ignored if flush tuples are
+     * disabled by setting {@link Config#TOPOLOGY_BATCH_FLUSH_INTERVAL_MILLIS} to 0.
+     */
+    @IsBoolean
+    public static final String TOPOLOGY_ACKER_BATCH_ENABLE = "topology.acker.batch.enable";
+
+    /**
+     * The maximum number of acks in a batch when {@link Config#TOPOLOGY_ACKER_BATCH_ENABLE} is set. A full batch is sent right away.
+     */
+    @IsInteger
+    @IsPositiveNumber
+    public static final String TOPOLOGY_ACKER_BATCH_SIZE = "topology.acker.batch.size";
+
+    /**
+     * Whether tuple trees that stay within a worker are acked by the worker itself instead of an acker task. A spout tracks a tree in the
+     * worker when all the tasks it sends the root tuple to are local, and the tree is handed over to the acker as soon as one of its tuples
+     * is sent to another worker. Mostly useful when the components of a topology are packed into few workers.
+     */
+    @IsBoolean
+    public static final String TOPOLOGY_ACKER_WORKER_LOCAL = "topology.acker.worker.local";
+
     /**
      * A list of classes implementing IEventLogger (See storm.yaml.example for exact config format). Each listed class will be routed all
      * the events sampled from emitting tuples. If there's no class provided to the option, default event logger will be initialized and
@@ -517,6 +546,20 @@ public class Config extends HashMap<String, Object> {
      */
     @IsBoolean
     public static final String TOPOLOGY_SKIP_MISSING_KRYO_REGISTRATIONS = "topology.skip.missing.kryo.registrations";
+    /**
+     * The field types of the streams a component declared with {@link org.apache.storm.tuple.TypedFields}, as a map from stream id to
+     * the list of {@link org.apache.storm.tuple.FieldType} names. This is set in the component configuration by
+     * {@link org.apache.storm.topology.TopologyBuilder} and is not meant to be set directly.
+     */
+    @IsMapEntryType(keyType = String.class, valueType = List.class)
+    public static final String TOPOLOGY_STREAM_SCHEMAS = "topology.stream.schemas";
+    /**
+     * The output buffer of a tuple serializer grows to fit the largest tuple it has written. Once it is larger than this many bytes, it
+     * is shrunk back to its initial size after a run of much smaller tuples. 0 disables shrinking.
+     */
+    @IsInteger
+    @IsPositiveNumber(includeZero = true)
+    public static final String TOPOLOGY_SERIALIZER_BUFFER_SHRINK_BYTES = "topology.serializer.buffer.shrink.bytes";
     /**
      * List of classes to register during state serialization.
      */
@@ -679,6 +722,41 @@ public class Config extends HashMap<String, Object> {
      */
     @IsString
     public static final String TOPOLOGY_BOLTS_MESSAGE_ID_FIELD_NAME = "topology.bolts.message.id.field.name";
+    /**
+     * Bolt-specific configuration for windowed bolts to keep the tuples of the window serialized outside of the heap, in segments that
+     * are spilled to local disk once there are more than topology.bolts.window.offheap.max.memory.segments of them. The tuples are
+     * acked as soon as they are added to the window and the emits of the bolt are not anchored, so the window length is not bounded by
+     * topology.message.timeout.secs and topology.max.spout.pending. When acking is enabled, this at most once processing has to be
+     * accepted with topology.bolts.window.at.most.once. Stateful windowed bolts do not support it and fail to prepare when
+     * it is set, so in a topology that has them, set it for the other windowed bolts only, with
+     * {@link org.apache.storm.topology.base.BaseWindowedBolt#withOffHeapWindow()}.
+     */
+    @IsBoolean
+    public static final String TOPOLOGY_BOLTS_WINDOW_OFFHEAP_ENABLE = "topology.bolts.window.offheap.enable";
+    /**
+     * The size of a segment of an off heap window. A larger tuple gets a segment of its own.
+     */
+    @IsInteger
+    @IsPositiveNumber
+    public static final String TOPOLOGY_BOLTS_WINDOW_OFFHEAP_SEGMENT_BYTES = "topology.bolts.window.offheap.segment.bytes";
+    /**
+     * The number of segments of an off heap window that are kept in direct memory. Older segments are written to memory-mapped files.
+     */
+    @IsInteger
+    @IsPositiveNumber
+    public static final String TOPOLOGY_BOLTS_WINDOW_OFFHEAP_MAX_MEMORY_SEGMENTS = "topology.bolts.window.offheap.max.memory.segments";
+    /**
+     * The directory to create the files of the spilled segments of off heap windows in. Defaults to the worker's tmp directory.
+     */
+    @IsString
+    public static final String TOPOLOGY_BOLTS_WINDOW_OFFHEAP_SPILL_DIR = "topology.bolts.window.offheap.spill.dir";
+    /**
+     * Bolt-specific configuration for windowed bolts to accept that the tuples of the window are acked as soon as they arrive, before
+     * the window they are in is processed, so that they are not replayed if the worker dies. Off heap windows and windows with an
+     * aggregator ack their tuples this way and fail to prepare unless it is set, or acking is disabled.
+     */
+    @IsBoolean
+    public static final String TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE = "topology.bolts.window.at.most.once";
     /**
      * This config is available for TransactionalSpouts, and contains the id ( a String) for the transactional topology. This id is used to
      * store the state of the transactional topology in Zookeeper.
@@ -709,6 +787,37 @@ public class Config extends HashMap<String, Object> {
     @IsPositiveNumber
     @IsInteger
     public static final String TOPOLOGY_TRANSFER_BATCH_SIZE = "topology.transfer.batch.size";
+    /**
+     * The number of threads sending msgs to other workers. Every thread owns its own transfer queue and serves a disjoint set of
+     * destination workers, so the order of the msgs sent to a task is preserved.
+     */
+    @IsInteger
+    @IsPositiveNumber
+    public static final String TOPOLOGY_TRANSFER_THREADS = "topology.transfer.threads";
+    /**
+     * How a worker places its executor and transfer threads on the CPUs it is allowed to run on. Only supported on Linux, where the
+     * CPU topology is read from sysfs and threads are pinned with taskset. Executors of components that are connected to each other are
+     * kept on the same L3 cache domain, or NUMA node when the cache layout is not known.
+     *
+     * <p>"none" leaves placement to the OS. "domain" pins every thread to all the CPUs of its domain. "core" pins every thread to a single
+     * CPU of its domain, sharing CPUs only when there are more threads than CPUs.
+     */
+    @IsString(acceptedValues = { "none", "domain", "core" })
+    public static final String TOPOLOGY_WORKER_THREAD_PLACEMENT = "topology.worker.thread.placement";
+    /**
+     * Whether tuples destined to other workers are serialized into pooled, reference counted direct buffers instead of a newly
+     * allocated byte[] per tuple. The buffers travel through the worker transfer queue to the messaging layer and are released once
+     * they have been written to the outbound batch, which removes the per-tuple garbage on the send path.
+     */
+    @IsBoolean
+    public static final String TOPOLOGY_TRANSFER_DIRECT_BUFFERS = "topology.transfer.direct.buffers";
+    /**
+     * Whether the netty server hands tuples received from other workers to deserialization as views over the inbound network buffer
+     * instead of copying every payload into a new byte[]. The inbound buffer is released once the whole received batch has been
+     * deserialized.
+     */
+    @IsBoolean
+    public static final String TOPOLOGY_RECEIVE_DIRECT_BUFFERS = "topology.receive.direct.buffers";
     /**
      * How often a tick tuple from the "__system" component and "__tick" stream should be sent to tasks. Meant to be used as a
      * component-specific configuration.
@@ -722,6 +831,21 @@ public class Config extends HashMap<String, Object> {
     @IsPositiveNumber
     @NotNull
     public static final String TOPOLOGY_PRODUCER_BATCH_SIZE = "topology.producer.batch.size";
+    /**
+     * If true, every producer tunes its batch size online instead of always filling a batch of topology.producer.batch.size
+     * (topology.transfer.batch.size for the worker transfer queue). The batch size is derived from the arrival rate observed by the
+     * producer, so that a batch fills within topology.producer.batch.latency.target.micros, and is bounded by 1 and the configured
+     * batch size. A batch is also published once its oldest tuple has waited for that long, so slow streams are not held back until the
+     * next flush tuple.
+     */
+    @IsBoolean
+    public static final String TOPOLOGY_PRODUCER_BATCH_ADAPTIVE = "topology.producer.batch.adaptive";
+    /**
+     * The longest a tuple should wait in a producer batch when topology.producer.batch.adaptive is enabled.
+     */
+    @IsInteger
+    @IsPositiveNumber
+    public static final String TOPOLOGY_PRODUCER_BATCH_LATENCY_TARGET_MICROS = "topology.producer.batch.latency.target.micros";
     /**
      * If number of items in task's overflowQ exceeds this, new messages coming from other workers to this task will be dropped This
      * prevents OutOfMemoryException that can occur in rare scenarios in the presence of BackPressure. This affects only inter-worker
@@ -731,6 +855,68 @@ public class Config extends HashMap<String, Object> {
     @IsPositiveNumber(includeZero = true)
     @NotNull
     public static final String TOPOLOGY_EXECUTOR_OVERFLOW_LIMIT = "topology.executor.overflow.limit";
+    /**
+     * What to do with messages coming from other workers once a task's overflowQ holds topology.executor.overflow.limit items. "drop"
+     * drops them, "block" makes the receiving netty thread wait for the executor to catch up, so back pressure reaches the sending
+     * workers through the connection, and "spill" serializes them into a bounded ring of memory-mapped files, dropping them only when
+     * the ring is full. With "block" and "spill", a limit of 0 is replaced by topology.executor.receive.buffer.size.
+     *
+     * <p>A netty thread serves many connections, so with "block" a single slow executor also holds up the messages for every other
+     * task, including back pressure updates, that arrive on the connections of that thread. The wait is bounded by
+     * topology.executor.overflow.block.timeout.ms.
+     */
+    @IsString(acceptedValues = {"drop", "block", "spill"})
+    public static final String TOPOLOGY_EXECUTOR_OVERFLOW_POLICY = "topology.executor.overflow.policy";
+    /**
+     * The longest time a netty thread waits for room in a task's overflowQ with the "block" overflow policy. Once exceeded, messages
+     * for that task are dropped and counted in dropped_messages until its overflowQ has room again.
+     */
+    @IsInteger
+    @IsPositiveNumber(includeZero = true)
+    public static final String TOPOLOGY_EXECUTOR_OVERFLOW_BLOCK_TIMEOUT_MS = "topology.executor.overflow.block.timeout.ms";
+    /**
+     * The directory to create the spill files of the "spill" overflow policy in. Defaults to the worker's tmp directory.
+     */
+    @IsString
+    public static final String TOPOLOGY_EXECUTOR_OVERFLOW_SPILL_DIR = "topology.executor.overflow.spill.dir";
+    /**
+     * The size of a segment of the spill ring of an executor. A single message larger than this can not be spilled.
+     */
+    @IsInteger
+    @IsPositiveNumber
+    public static final String TOPOLOGY_EXECUTOR_OVERFLOW_SPILL_SEGMENT_BYTES = "topology.executor.overflow.spill.segment.bytes";
+    /**
+     * The maximum number of segments of the spill ring of an executor. Segments are only mapped when needed.
+     */
+    @IsInteger
+    @IsPositiveNumber
+    public static final String TOPOLOGY_EXECUTOR_OVERFLOW_SPILL_MAX_SEGMENTS = "topology.executor.overflow.spill.max.segments";
+    /**
+     * Whether the executors of a worker should share a pool of threads instead of each running on a thread of its own. A pooled executor
+     * only runs when its receive queue has msgs, or when its spouts may have something to emit, and gives up its thread after
+     * topology.executor.pool.batch.size msgs. This saves CPU and threads in workers with many executors that are mostly idle.
+     */
+    @IsBoolean
+    public static final String TOPOLOGY_EXECUTOR_POOL_ENABLE = "topology.executor.pool.enable";
+    /**
+     * The number of threads of the executor pool. 0 sizes it to the number of CPUs available to the worker.
+     */
+    @IsInteger
+    @IsPositiveNumber(includeZero = true)
+    public static final String TOPOLOGY_EXECUTOR_POOL_THREADS = "topology.executor.pool.threads";
+    /**
+     * The maximum number of msgs a pooled executor consumes from its receive queue before giving up its thread to other executors.
+     */
+    @IsInteger
+    @IsPositiveNumber
+    public static final String TOPOLOGY_EXECUTOR_POOL_BATCH_SIZE = "topology.executor.pool.batch.size";
+    /**
+     * The longest a pooled spout with nothing to emit, or an executor under back pressure, waits before it is run again. The wait starts
+     * short and doubles every time the executor finds nothing to do.
+     */
+    @IsInteger
+    @IsPositiveNumber
+    public static final String TOPOLOGY_EXECUTOR_POOL_IDLE_MAX_MICROS = "topology.executor.pool.idle.max.micros";
     /**
      * How often a worker should check and notify upstream workers about its tasks that are no longer experiencing BP and able to receive
      * new messages.
@@ -914,6 +1100,14 @@ public class Config extends HashMap<String, Object> {
      */
     @IsString
     public static final String TOPOLOGY_BOLT_WAIT_STRATEGY = "topology.bolt.wait.strategy";
+    /**
+     * The maximum number of tuples handed over in a single call to bolts that implement
+     * {@link org.apache.storm.task.IBatchExecuteBolt}. A batch holds the tuples drained from the receive queue in one pass. Set it to 1
+     * to execute such bolts one tuple at a time.
+     */
+    @IsInteger
+    @IsPositiveNumber
+    public static final String TOPOLOGY_BOLT_EXECUTE_BATCH_MAX = "topology.bolt.execute.batch.max";
     /**
      * Configures park time for WaitStrategyPark.  If set to 0, returns immediately (i.e busy wait).
      */
@@ -1455,6 +1649,34 @@ public class Config extends HashMap<String, Object> {
      */
     @IsBoolean
     public static final String STORM_MESSAGING_NETTY_AUTHENTICATION = "storm.messaging.netty.authentication";
+    /**
+     * Netty based messaging: Whether task messages are sent as compact batches. Messages in a compact batch are grouped by
+     * destination task, and the source task and stream id of consecutive tuples for the same destination are written only once.
+     * Task ids and lengths are varint encoded, which also lifts the limit of Short.MAX_VALUE task ids. The receiving worker
+     * advertises support when a connection is established, so a client only switches to the compact format if both ends enable it.
+     */
+    @IsBoolean
+    public static final String STORM_MESSAGING_NETTY_COMPACT_BATCH = "storm.messaging.netty.compact.batch";
+    /**
+     * Netty based messaging: The codec used to compress message batches between workers, one of "none", "snappy" or "deflate".
+     * Compression is only used on connections where the receiving worker has advertised support for it.
+     */
+    @IsString(acceptedValues = { "none", "snappy", "deflate" })
+    public static final String STORM_MESSAGING_NETTY_COMPRESSION_CODEC = "storm.messaging.netty.compression.codec";
+    /**
+     * Netty based messaging: Message batches with a smaller encoded size than this are sent uncompressed.
+     */
+    @IsInteger
+    @IsPositiveNumber(includeZero = true)
+    public static final String STORM_MESSAGING_NETTY_COMPRESSION_THRESHOLD_BYTES = "storm.messaging.netty.compression.threshold.bytes";
+    /**
+     * Netty based messaging: The number of message batches sampled to train a preset dictionary for the deflate codec.
+     * 0 disables the dictionary.
+     */
+    @IsInteger
+    @IsPositiveNumber(includeZero = true)
+    public static final String STORM_MESSAGING_NETTY_COMPRESSION_DICTIONARY_SAMPLES =
+        "storm.messaging.netty.compression.dictionary.samples";
     /**
      * Netty based messaging: The buffer size for send/recv buffer.
      */
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.daemon;
+
+import java.util.Arrays;
+
+/**
+ * Coalesces the messages of the batched ack protocol by destination task. Every message is a fixed size record of longs, and the
+ * records for a task are sent together as a single long[] once the batch is full or {@link #flush()} is called.
+ *
+ * <p>Not thread safe, each executor keeps its own instance.
+ */
+public class AckBatches {
+    private final int recordLength;
+    private final int maxBatchLength;
+    private final Sender sender;
+    // indexed by task id
+    private long[][] batches = new long[0][];
+    private int[] lengths = new int[0];
+    private boolean[] dirty = new boolean[0];
+    private int[] dirtyTasks = new int[8];
+    private int dirtyCount;
+
+    /**
+     * Create batches of records of the given length.
+     *
+     * @param recordLength the number of longs in a record
+     * @param maxRecords the number of records after which a batch is sent right away
+     * @param sender sends a batch to a task
+     */
+    public AckBatches(int recordLength, int maxRecords, Sender sender) {
+        this.recordLength = recordLength;
+        this.maxBatchLength = recordLength * Math.max(1, maxRecords);
+        this.sender = sender;
+    }
+
+    public void add(int task, long first, long second) {
+        long[] batch = reserve(task);
+        int length = lengths[task];
+        batch[length] = first;
+        batch[length + 1] = second;
+        added(task, length + 2);
+    }
+
+    public void add(int task, long first, long second, long third) {
+        long[] batch = reserve(task);
+        int length = lengths[task];
+        batch[length] = first;
+        batch[length + 1] = second;
+        batch[length + 2] = third;
+        added(task, length + 3);
+    }
+
+    /**
+     * Send all the pending batches.
+     */
+    public void flush() {
+        for (int i = 0; i < dirtyCount; i++) {
+            dirty[dirtyTasks[i]] = false;
+            send(dirtyTasks[i]);
+        }
+        dirtyCount = 0;
+    }
+
+    private long[] reserve(int task) {
+        if (task >= batches.length) {
+            int size = Math.max(task + 1, 2 * batches.length);
+            batches = Arrays.copyOf(batches, size);
+            lengths = Arrays.copyOf(lengths, size);
+            dirty = Arrays.copyOf(dirty, size);
+        }
+        long[] batch = batches[task];
+        if (batch == null) {
+            batch = new long[maxBatchLength];
+            batches[task] = batch;
+        }
+        if (!dirty[task]) {
+            dirty[task] = true;
+            if (dirtyCount == dirtyTasks.length) {
+                dirtyTasks = Arrays.copyOf(dirtyTasks, 2 * dirtyCount);
+            }
+            dirtyTasks[dirtyCount++] = task;
+        }
+        return batch;
+    }
+
+    private void added(int task, int length) {
+        lengths[task] = length;
+        if (length + recordLength > maxBatchLength) {
+            send(task);
+        }
+    }
+
+    private void send(int task) {
+        int length = lengths[task];
+        if (length > 0) {
+            lengths[task] = 0;
+            // the batch is handed over to another executor, so it needs its own copy
+            sender.send(task, Arrays.copyOf(batches[task], length));
+        }
+    }
+
+    /**
+     * Sends a batch of records to a task.
+     */
+    public interface Sender {
+        void send(int task, long[] batch);
+    }
+}
@@ -13,13 +13,15 @@
 package org.apache.storm.daemon;
 
 import java.util.Map;
+import org.apache.storm.Config;
 import org.apache.storm.Constants;
 import org.apache.storm.task.IBolt;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
-import org.apache.storm.utils.RotatingMap;
+import org.apache.storm.utils.ObjectReader;
+import org.apache.storm.utils.RotatingLongMap;
 import org.apache.storm.utils.Time;
 import org.apache.storm.utils.TupleUtils;
 import org.apache.storm.utils.Utils;
@@ -32,29 +34,79 @@ public class Acker implements IBolt {
     public static final String ACKER_ACK_STREAM_ID = "__ack_ack";
     public static final String ACKER_FAIL_STREAM_ID = "__ack_fail";
     public static final String ACKER_RESET_TIMEOUT_STREAM_ID = "__ack_reset_timeout";
+    /**
+     * Carries batches of acks when {@link Config#TOPOLOGY_ACKER_BATCH_ENABLE} is set. From bolts to ackers, the batch is a long[] of
+     * (id, ack-val) pairs. From ackers to spouts, it is a long[] of (id, time-delta-ms, status) triples, see {@link #BATCH_ACKED}.
+     */
+    public static final String ACKER_BATCH_STREAM_ID = "__ack_batch";
+    public static final long BATCH_ACKED = 0;
+    public static final long BATCH_FAILED = 1;
     public static final int TIMEOUT_BUCKET_NUM = 3;
     private static final Logger LOG = LoggerFactory.getLogger(Acker.class);
     private static final long serialVersionUID = 4430906880683183091L;
     private OutputCollector collector;
-    private RotatingMap<Object, AckObject> pending;
+    private RotatingLongMap<AckObject> pending;
+    private AckBatches replies;
+
+    /**
+     * Whether acks are batched. Batches are only sent out by flush tuples, so this is never the case if they are disabled.
+     */
+    public static boolean isBatchEnabled(Map<String, Object> topoConf) {
+        return ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_ACKER_BATCH_ENABLE), false)
+               && ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_BATCH_FLUSH_INTERVAL_MILLIS), 0) > 0;
+    }
+
+    /**
+     * The maximum number of acks in a batch, if acks are batched.
+     */
+    public static int getBatchSize(Map<String, Object> topoConf) {
+        return ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_ACKER_BATCH_SIZE), 512);
+    }
 
     @Override
     public void prepare(Map<String, Object> topoConf, TopologyContext context, OutputCollector collector) {
         this.collector = collector;
-        this.pending = new RotatingMap<>(TIMEOUT_BUCKET_NUM);
+        this.pending = new RotatingLongMap<>(TIMEOUT_BUCKET_NUM);
+        if (isBatchEnabled(topoConf)) {
+            this.replies = new AckBatches(3, getBatchSize(topoConf),
+                (task, batch) -> collector.emitDirect(task, ACKER_BATCH_STREAM_ID, new Values(batch)));
+        }
     }
 
     @Override
     public void execute(Tuple input) {
         if (TupleUtils.isTick(input)) {
-            Map<Object, AckObject> tmp = pending.rotate();
-            LOG.debug("Number of timeout tuples:{}", tmp.size());
+            int timedOut = pending.rotate();
+            LOG.debug("Number of timeout tuples:{}", timedOut);
             return;
         }
 
-        boolean resetTimeout = false;
         String streamId = input.getSourceStreamId();
-        Object id = input.getValue(0);
+        if (Constants.SYSTEM_FLUSH_STREAM_ID.equals(streamId)) {
+            if (replies != null) {
+                replies.flush();
+            }
+            collector.flush();
+            return;
+        }
+        if (ACKER_BATCH_STREAM_ID.equals(streamId)) {
+            long[] batch = (long[]) input.getValue(0);
+            for (int i = 0; i + 1 < batch.length; i += 2) {
+                long id = batch[i];
+                AckObject curr = pending.get(id);
+                if (curr == null) {
+                    curr = new AckObject();
+                    pending.put(id, curr);
+                }
+                curr.updateAck(batch[i + 1]);
+                complete(id, curr, false);
+            }
+            collector.ack(input);
+            return;
+        }
+
+        boolean resetTimeout = false;
+        long id = input.getLong(0);
         AckObject curr = pending.get(id);
         if (ACKER_INIT_STREAM_ID.equals(streamId)) {
             if (curr == null) {
@@ -63,6 +115,10 @@ public class Acker implements IBolt {
             }
             curr.updateAck(input.getLong(1));
             curr.spoutTask = input.getInteger(2);
+            if (input.size() > 3) {
+                // a tree handed over by a worker local ack ledger, it started before it got here
+                curr.startTime = Time.currentTimeMillis() - input.getLong(3);
+            }
         } else if (ACKER_ACK_STREAM_ID.equals(streamId)) {
             if (curr == null) {
                 curr = new AckObject();
@@ -82,31 +138,42 @@ public class Acker implements IBolt {
                 curr = new AckObject();
             }
             pending.put(id, curr);
-        } else if (Constants.SYSTEM_FLUSH_STREAM_ID.equals(streamId)) {
-            collector.flush();
-            return;
         } else {
             LOG.warn("Unknown source stream {} from task-{}", streamId, input.getSourceTask());
             return;
         }
 
+        complete(id, curr, resetTimeout);
+        collector.ack(input);
+    }
+
+    /**
+     * Tell the spout about the tuple tree if it is done, or if its timeout should be reset.
+     */
+    private void complete(long id, AckObject curr, boolean resetTimeout) {
         int task = curr.spoutTask;
         if (task >= 0 && (curr.val == 0 || curr.failed || resetTimeout)) {
-            Values tuple = new Values(id, getTimeDeltaMillis(curr.startTime));
+            long timeDelta = getTimeDeltaMillis(curr.startTime);
             if (curr.val == 0) {
                 pending.remove(id);
-                collector.emitDirect(task, ACKER_ACK_STREAM_ID, tuple);
+                if (replies != null) {
+                    replies.add(task, id, timeDelta, BATCH_ACKED);
+                } else {
+                    collector.emitDirect(task, ACKER_ACK_STREAM_ID, new Values(id, timeDelta));
+                }
             } else if (curr.failed) {
                 pending.remove(id);
-                collector.emitDirect(task, ACKER_FAIL_STREAM_ID, tuple);
+                if (replies != null) {
+                    replies.add(task, id, timeDelta, BATCH_FAILED);
+                } else {
+                    collector.emitDirect(task, ACKER_FAIL_STREAM_ID, new Values(id, timeDelta));
+                }
             } else if (resetTimeout) {
-                collector.emitDirect(task, ACKER_RESET_TIMEOUT_STREAM_ID, tuple);
+                collector.emitDirect(task, ACKER_RESET_TIMEOUT_STREAM_ID, new Values(id, timeDelta));
             } else {
                 throw new IllegalStateException("The checks are inconsistent we reach what should be unreachable code.");
             }
         }
-
-        collector.ack(input);
     }
 
     @Override
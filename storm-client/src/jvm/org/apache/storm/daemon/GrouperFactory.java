@@ -26,7 +26,10 @@ import org.apache.storm.grouping.CustomStreamGrouping;
 import org.apache.storm.grouping.LoadAwareCustomStreamGrouping;
 import org.apache.storm.grouping.LoadAwareShuffleGrouping;
 import org.apache.storm.grouping.LoadMapping;
+import org.apache.storm.grouping.PrimitiveCustomStreamGrouping;
+import org.apache.storm.grouping.PrimitiveGroupingAdapter;
 import org.apache.storm.grouping.ShuffleGrouping;
+import org.apache.storm.grouping.TaskIdList;
 import org.apache.storm.shade.com.google.common.collect.Ordering;
 import org.apache.storm.shade.com.google.common.collect.Sets;
 import org.apache.storm.task.WorkerTopologyContext;
@@ -37,7 +40,7 @@ import org.apache.storm.utils.Utils;
 public class GrouperFactory {
 
     // A no-op grouper
-    public static final LoadAwareCustomStreamGrouping DIRECT = new LoadAwareCustomStreamGrouping() {
+    public static final LoadAwareCustomStreamGrouping DIRECT = new PrimitiveLoadAwareGrouping() {
         @Override
         public void refreshLoad(LoadMapping loadMapping) {
 
@@ -49,7 +52,7 @@ public class GrouperFactory {
         }
 
         @Override
-        public List<Integer> chooseTasks(int taskId, List<Object> values) {
+        public int[] chooseTaskIds(int taskId, List<Object> values) {
             return null;
         }
 
@@ -120,15 +123,27 @@ public class GrouperFactory {
         }
     }
 
+    /**
+     * A grouping that is both load aware and able to choose its tasks without boxing them.
+     */
+    private interface PrimitiveLoadAwareGrouping extends LoadAwareCustomStreamGrouping, PrimitiveCustomStreamGrouping {
+        @Override
+        default List<Integer> chooseTasks(int taskId, List<Object> values) {
+            return TaskIdList.of(chooseTaskIds(taskId, values));
+        }
+    }
+
     /**
      * A bridge between CustomStreamGrouping and LoadAwareCustomStreamGrouping.
      */
-    public static class BasicLoadAwareCustomStreamGrouping implements LoadAwareCustomStreamGrouping {
+    public static class BasicLoadAwareCustomStreamGrouping implements LoadAwareCustomStreamGrouping, PrimitiveCustomStreamGrouping {
 
         private final CustomStreamGrouping customStreamGrouping;
+        private final PrimitiveCustomStreamGrouping primitiveGrouping;
 
         public BasicLoadAwareCustomStreamGrouping(CustomStreamGrouping customStreamGrouping) {
             this.customStreamGrouping = customStreamGrouping;
+            this.primitiveGrouping = PrimitiveGroupingAdapter.adapt(customStreamGrouping);
         }
 
         @Override
@@ -145,13 +160,24 @@ public class GrouperFactory {
         public List<Integer> chooseTasks(int taskId, List<Object> values) {
             return customStreamGrouping.chooseTasks(taskId, values);
         }
+
+        @Override
+        public int[] chooseTaskIds(int taskId, List<Object> values) {
+            return primitiveGrouping.chooseTaskIds(taskId, values);
+        }
+
+        public CustomStreamGrouping getCustomStreamGrouping() {
+            return customStreamGrouping;
+        }
     }
 
-    public static class FieldsGrouper implements CustomStreamGrouping {
+    public static class FieldsGrouper implements PrimitiveCustomStreamGrouping {
 
         private Fields outFields;
         private List<List<Integer>> targetTasks;
+        private int[][] targetTaskIds;
         private Fields groupFields;
+        private int[] groupFieldIndices;
         private int numTasks;
 
         public FieldsGrouper(Fields outFields, Grouping thriftGrouping) {
@@ -163,23 +189,34 @@ public class GrouperFactory {
         @Override
         public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
             this.targetTasks = new ArrayList<List<Integer>>();
+            this.targetTaskIds = new int[targetTasks.size()][];
             for (Integer targetTask : targetTasks) {
+                this.targetTaskIds[this.targetTasks.size()] = new int[]{ targetTask };
                 this.targetTasks.add(Collections.singletonList(targetTask));
             }
             this.numTasks = targetTasks.size();
+            this.groupFieldIndices = new int[groupFields.size()];
+            for (int i = 0; i < groupFieldIndices.length; i++) {
+                groupFieldIndices[i] = outFields.fieldIndex(groupFields.get(i));
+            }
         }
 
         @Override
         public List<Integer> chooseTasks(int taskId, List<Object> values) {
-            int targetTaskIndex = TupleUtils.chooseTaskIndex(outFields.select(groupFields, values), numTasks);
-            return targetTasks.get(targetTaskIndex);
+            return targetTasks.get(TupleUtils.chooseTaskIndex(values, groupFieldIndices, numTasks));
+        }
+
+        @Override
+        public int[] chooseTaskIds(int taskId, List<Object> values) {
+            return targetTaskIds[TupleUtils.chooseTaskIndex(values, groupFieldIndices, numTasks)];
         }
 
     }
 
-    public static class GlobalGrouper implements CustomStreamGrouping {
+    public static class GlobalGrouper implements PrimitiveCustomStreamGrouping {
 
         private List<Integer> targetTasks;
+        private int[] targetTaskIds;
 
         public GlobalGrouper() {
         }
@@ -187,6 +224,8 @@ public class GrouperFactory {
         @Override
         public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
             this.targetTasks = targetTasks;
+            // It's possible for target to have multiple tasks if it reads multiple sources
+            this.targetTaskIds = targetTasks.isEmpty() ? null : new int[]{ targetTasks.get(0) };
         }
 
         @Override
@@ -194,15 +233,20 @@ public class GrouperFactory {
             if (targetTasks.isEmpty()) {
                 return null;
             }
-            // It's possible for target to have multiple tasks if it reads multiple sources
             return Collections.singletonList(targetTasks.get(0));
         }
+
+        @Override
+        public int[] chooseTaskIds(int taskId, List<Object> values) {
+            return targetTaskIds;
+        }
     }
 
-    public static class NoneGrouper implements CustomStreamGrouping {
+    public static class NoneGrouper implements PrimitiveCustomStreamGrouping {
 
         private final Random random;
         private List<Integer> targetTasks;
+        private int[][] targetTaskIds;
         private int numTasks;
 
         public NoneGrouper() {
@@ -213,6 +257,10 @@ public class GrouperFactory {
         public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
             this.targetTasks = targetTasks;
             this.numTasks = targetTasks.size();
+            this.targetTaskIds = new int[numTasks][];
+            for (int i = 0; i < numTasks; i++) {
+                targetTaskIds[i] = new int[]{ targetTasks.get(i) };
+            }
         }
 
         @Override
@@ -220,21 +268,33 @@ public class GrouperFactory {
             int index = random.nextInt(numTasks);
             return Collections.singletonList(targetTasks.get(index));
         }
+
+        @Override
+        public int[] chooseTaskIds(int taskId, List<Object> values) {
+            return targetTaskIds[random.nextInt(numTasks)];
+        }
     }
 
-    public static class AllGrouper implements CustomStreamGrouping {
+    public static class AllGrouper implements PrimitiveCustomStreamGrouping {
 
         private List<Integer> targetTasks;
+        private int[] targetTaskIds;
 
         @Override
         public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
             this.targetTasks = targetTasks;
+            this.targetTaskIds = TaskIdList.toArray(targetTasks);
         }
 
         @Override
         public List<Integer> chooseTasks(int taskId, List<Object> values) {
             return targetTasks;
         }
+
+        @Override
+        public int[] chooseTaskIds(int taskId, List<Object> values) {
+            return targetTaskIds;
+        }
     }
 
 }
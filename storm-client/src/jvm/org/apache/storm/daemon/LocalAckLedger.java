@@ -0,0 +1,257 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.daemon;
+
+import com.codahale.metrics.Gauge;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.storm.Config;
+import org.apache.storm.Constants;
+import org.apache.storm.grouping.TaskIdList;
+import org.apache.storm.metrics2.StormMetricRegistry;
+import org.apache.storm.utils.ObjectReader;
+import org.apache.storm.utils.RotatingLongMap;
+import org.apache.storm.utils.Time;
+import org.apache.storm.utils.TupleUtils;
+
+/**
+ * Tracks the tuple trees that have not left the worker, so that they can be acked without going through an acker task. A spout
+ * registers a tree here when all the tasks it emits the root tuple to run in this worker, and bolts xor their acks into the ledger instead
+ * of sending them to an acker. The tree is handed over to its acker task, with an ack init carrying the current ack value and the time
+ * since the tree was started, as soon as a tuple of the tree is sent to a task in another worker. Acks that arrive after that go to the
+ * acker as usual, since they no longer find the tree here.
+ *
+ * <p>Entries expire like the pending trees of an acker, the spout times the tuple out on its own. Thread safe, shared by all the
+ * executors of a worker.
+ */
+public class LocalAckLedger {
+    private static final int STRIPES = 64;
+    // returned for the acks that do not complete their tree, so that only one ack can see a tree complete
+    private static final Entry PENDING = new Entry(1, -1);
+
+    private final Object[] locks = new Object[STRIPES];
+    private final RotatingLongMap<Entry>[] stripes;
+    private final boolean[] localTasks;
+    private final int[] ackerTasks;
+    private final LongAdder localTrees = new LongAdder();
+    private final LongAdder migratedTrees = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public LocalAckLedger(Collection<Integer> localTaskIds, List<Integer> ackerTaskIds) {
+        stripes = new RotatingLongMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+            stripes[i] = new RotatingLongMap<>(Acker.TIMEOUT_BUCKET_NUM);
+        }
+        int maxTask = 0;
+        for (int task : localTaskIds) {
+            maxTask = Math.max(maxTask, task);
+        }
+        localTasks = new boolean[maxTask + 1];
+        for (int task : localTaskIds) {
+            if (task >= 0) { // not the system task
+                localTasks[task] = true;
+            }
+        }
+        ackerTasks = TaskIdList.toArray(ackerTaskIds);
+    }
+
+    /**
+     * Whether tuple trees that stay in a worker are acked by the worker itself. Requires ackers, since trees that leave the worker are
+     * still acked by them.
+     */
+    public static boolean isEnabled(Map<String, Object> topoConf) {
+        return ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_ACKER_WORKER_LOCAL), false) && StormCommon.hasAckers(topoConf);
+    }
+
+    public boolean isLocal(int task) {
+        return task >= 0 && task < localTasks.length && localTasks[task];
+    }
+
+    /**
+     * Whether all the given tasks run in this worker.
+     */
+    public boolean isLocal(int[] tasks) {
+        for (int i = 0; i < tasks.length; i++) {
+            if (!isLocal(tasks[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The acker task that handles the tree once it leaves the worker, the same one the fields grouping on the root id picks. Replies
+     * to the spout are sent on its behalf.
+     */
+    public int getAckerTask(long rootId) {
+        return ackerTasks[TupleUtils.chooseTaskIndex(rootId, ackerTasks.length)];
+    }
+
+    /**
+     * Start tracking a tree. Must be called before any tuple of the tree is sent, so that acks cannot get ahead of it.
+     *
+     * @param rootId the root id of the tree
+     * @param ackVal the xor of the edge ids of the root tuples
+     * @param spoutTask the task that emitted the root tuples
+     * @return true if the tree is already complete, because no tuple was sent
+     */
+    public boolean init(long rootId, long ackVal, int spoutTask) {
+        localTrees.increment();
+        if (ackVal == 0) {
+            return true;
+        }
+        Entry entry = new Entry(ackVal, spoutTask);
+        int stripe = stripe(rootId);
+        synchronized (locks[stripe]) {
+            stripes[stripe].put(rootId, entry);
+        }
+        return false;
+    }
+
+    /**
+     * Xor an ack into a tree of this worker. If that completes the tree it is removed.
+     *
+     * @return null if the tree is not tracked here, in which case the ack must go to the acker, the entry of the tree if this ack
+     *     completed it, or an entry that is not complete otherwise
+     */
+    public Entry ack(long rootId, long ackVal) {
+        int stripe = stripe(rootId);
+        synchronized (locks[stripe]) {
+            RotatingLongMap<Entry> map = stripes[stripe];
+            Entry entry = map.get(rootId);
+            if (entry != null) {
+                entry.val ^= ackVal;
+                if (entry.val != 0) {
+                    return PENDING;
+                }
+                map.remove(rootId);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Stop tracking a tree, because it failed.
+     *
+     * @return the entry of the tree, or null if it is not tracked here
+     */
+    public Entry remove(long rootId) {
+        int stripe = stripe(rootId);
+        synchronized (locks[stripe]) {
+            return stripes[stripe].remove(rootId);
+        }
+    }
+
+    /**
+     * Stop tracking a tree, because one of its tuples is sent to another worker.
+     *
+     * @return the entry of the tree, whose value must be handed over to the acker, or null if it is not tracked here
+     */
+    public Entry migrate(long rootId) {
+        Entry entry = remove(rootId);
+        if (entry != null) {
+            migratedTrees.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Restart the timeout of a tree.
+     *
+     * @return the spout task of the tree, or -1 if it is not tracked here
+     */
+    public int resetTimeout(long rootId) {
+        int stripe = stripe(rootId);
+        synchronized (locks[stripe]) {
+            RotatingLongMap<Entry> map = stripes[stripe];
+            Entry entry = map.get(rootId);
+            if (entry == null) {
+                return -1;
+            }
+            map.put(rootId, entry);
+            return entry.spoutTask;
+        }
+    }
+
+    /**
+     * Expire the trees that have not completed over the last buckets, like the acker does on every tick.
+     *
+     * @return the number of expired trees
+     */
+    public int rotate() {
+        int expired = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            synchronized (locks[i]) {
+                expired += stripes[i].rotate();
+            }
+        }
+        return expired;
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            synchronized (locks[i]) {
+                size += stripes[i].size();
+            }
+        }
+        return size;
+    }
+
+    public void registerMetrics(StormMetricRegistry metricRegistry) {
+        register(metricRegistry, "__ack-ledger-local-trees", localTrees::sum);
+        register(metricRegistry, "__ack-ledger-migrated-trees", migratedTrees::sum);
+        register(metricRegistry, "__ack-ledger-pending-trees", () -> (long) size());
+    }
+
+    private static void register(StormMetricRegistry metricRegistry, String name, Gauge<Long> gauge) {
+        metricRegistry.gauge(name, gauge, Constants.SYSTEM_COMPONENT_ID, (int) Constants.SYSTEM_TASK_ID);
+    }
+
+    private static int stripe(long rootId) {
+        return (int) (rootId ^ (rootId >>> 32)) & (STRIPES - 1);
+    }
+
+    /**
+     * A tree tracked by the ledger.
+     */
+    public static class Entry {
+        private final long startTime = Time.currentTimeMillis();
+        private final int spoutTask;
+        private long val;
+
+        Entry(long val, int spoutTask) {
+            this.val = val;
+            this.spoutTask = spoutTask;
+        }
+
+        public boolean isComplete() {
+            return val == 0;
+        }
+
+        public long getVal() {
+            return val;
+        }
+
+        public int getSpoutTask() {
+            return spoutTask;
+        }
+
+        public long getTimeDeltaMs() {
+            return Time.currentTimeMillis() - startTime;
+        }
+    }
+}
@@ -259,6 +259,10 @@ public class StormCommon {
         outputStreams.put(Acker.ACKER_ACK_STREAM_ID, Thrift.directOutputFields(Arrays.asList("id", "time-delta-ms")));
         outputStreams.put(Acker.ACKER_FAIL_STREAM_ID, Thrift.directOutputFields(Arrays.asList("id", "time-delta-ms")));
         outputStreams.put(Acker.ACKER_RESET_TIMEOUT_STREAM_ID, Thrift.directOutputFields(Arrays.asList("id", "time-delta-ms")));
+        final boolean batchAcks = Acker.isBatchEnabled(conf);
+        if (batchAcks) {
+            outputStreams.put(Acker.ACKER_BATCH_STREAM_ID, Thrift.directOutputFields(Arrays.asList("batch")));
+        }
 
         Map<String, Object> ackerConf = new HashMap<>();
         int ackerNum =
@@ -267,6 +271,16 @@ public class StormCommon {
         ackerConf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, ObjectReader.getInt(conf.get(Config.TOPOLOGY_MESSAGE_TIMEOUT_SECS)));
 
         Map<GlobalStreamId, Grouping> inputs = ackerInputs(topology);
+        final boolean workerLocalAcks = LocalAckLedger.isEnabled(conf);
+        for (String id : topology.get_bolts().keySet()) {
+            if (batchAcks) {
+                inputs.put(Utils.getGlobalStreamId(id, Acker.ACKER_BATCH_STREAM_ID), Thrift.prepareDirectGrouping());
+            }
+            if (workerLocalAcks) {
+                // bolts hand the trees that leave their worker over to the ackers
+                inputs.put(Utils.getGlobalStreamId(id, Acker.ACKER_INIT_STREAM_ID), Thrift.prepareFieldsGrouping(Arrays.asList("id")));
+            }
+        }
         Bolt acker = Thrift.prepareSerializedBoltDetails(inputs, makeAckerBolt(), outputStreams, ackerNum, ackerConf);
 
         for (Bolt bolt : topology.get_bolts().values()) {
@@ -274,6 +288,14 @@ public class StormCommon {
             common.put_to_streams(Acker.ACKER_ACK_STREAM_ID, Thrift.outputFields(Arrays.asList("id", "ack-val")));
             common.put_to_streams(Acker.ACKER_FAIL_STREAM_ID, Thrift.outputFields(Arrays.asList("id")));
             common.put_to_streams(Acker.ACKER_RESET_TIMEOUT_STREAM_ID, Thrift.outputFields(Arrays.asList("id")));
+            if (batchAcks) {
+                common.put_to_streams(Acker.ACKER_BATCH_STREAM_ID, Thrift.directOutputFields(Arrays.asList("batch")));
+            }
+            if (workerLocalAcks) {
+                // trees handed over by the worker local ack ledger carry how long ago they were started
+                common.put_to_streams(Acker.ACKER_INIT_STREAM_ID,
+                                      Thrift.outputFields(Arrays.asList("id", "init-val", "spout-task", "time-delta-ms")));
+            }
         }
 
         for (SpoutSpec spout : topology.get_spouts().values()) {
@@ -290,6 +312,10 @@ public class StormCommon {
                                  Thrift.prepareDirectGrouping());
             common.put_to_inputs(Utils.getGlobalStreamId(Acker.ACKER_COMPONENT_ID, Acker.ACKER_RESET_TIMEOUT_STREAM_ID),
                                  Thrift.prepareDirectGrouping());
+            if (batchAcks) {
+                common.put_to_inputs(Utils.getGlobalStreamId(Acker.ACKER_COMPONENT_ID, Acker.ACKER_BATCH_STREAM_ID),
+                                     Thrift.prepareDirectGrouping());
+            }
         }
 
         topology.put_to_bolts(Acker.ACKER_COMPONENT_ID, acker);
@@ -14,6 +14,7 @@ package org.apache.storm.daemon;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -36,6 +37,9 @@ import org.apache.storm.generated.SpoutSpec;
 import org.apache.storm.generated.StateSpoutSpec;
 import org.apache.storm.generated.StormTopology;
 import org.apache.storm.grouping.LoadAwareCustomStreamGrouping;
+import org.apache.storm.grouping.PrimitiveCustomStreamGrouping;
+import org.apache.storm.grouping.PrimitiveGroupingAdapter;
+import org.apache.storm.grouping.TaskIdList;
 import org.apache.storm.hooks.ITaskHook;
 import org.apache.storm.hooks.info.EmitInfo;
 import org.apache.storm.metrics2.TaskMetrics;
@@ -69,7 +73,11 @@ public class Task {
     private final BooleanSupplier emitSampler;
     private final CommonStats executorStats;
     private final Map<String, Map<String, LoadAwareCustomStreamGrouping>> streamComponentToGrouper;
-    private final HashMap<String, ArrayList<LoadAwareCustomStreamGrouping>> streamToGroupers;
+    private final HashMap<String, PrimitiveCustomStreamGrouping[]> streamToGroupers;
+    // reused across emits by the executor thread, indexed by the number of target tasks
+    private int[][] scratchTaskIds = new int[16][];
+    private final int[][] chosenTaskIds;
+    private final int[] directTaskId = new int[1];
     private final boolean debug;
 
     public Task(Executor executor, Integer taskId) throws IOException {
@@ -80,6 +88,7 @@ public class Task {
         this.componentId = executor.getComponentId();
         this.streamComponentToGrouper = executor.getStreamToComponentToGrouper();
         this.streamToGroupers = getGroupersPerStream(streamComponentToGrouper);
+        this.chosenTaskIds = new int[streamToGroupers.values().stream().mapToInt(groupers -> groupers.length).max().orElse(0)][];
         this.executorStats = executor.getStats();
         this.workerTopologyContext = executor.getWorkerTopologyContext();
         this.emitSampler = ConfigUtils.mkStatsSampler(topoConf);
@@ -92,46 +101,63 @@ public class Task {
                 workerData.getMetricRegistry(), topoConf);
     }
 
-    private static HashMap<String, ArrayList<LoadAwareCustomStreamGrouping>> getGroupersPerStream(
+    private static HashMap<String, PrimitiveCustomStreamGrouping[]> getGroupersPerStream(
         Map<String, Map<String, LoadAwareCustomStreamGrouping>> streamComponentToGrouper) {
-        HashMap<String, ArrayList<LoadAwareCustomStreamGrouping>> result = new HashMap<>(streamComponentToGrouper.size());
+        HashMap<String, PrimitiveCustomStreamGrouping[]> result = new HashMap<>(streamComponentToGrouper.size());
 
         for (Entry<String, Map<String, LoadAwareCustomStreamGrouping>> entry : streamComponentToGrouper.entrySet()) {
             String stream = entry.getKey();
             Map<String, LoadAwareCustomStreamGrouping> groupers = entry.getValue();
-            ArrayList<LoadAwareCustomStreamGrouping> perStreamGroupers = new ArrayList<>();
+            ArrayList<PrimitiveCustomStreamGrouping> perStreamGroupers = new ArrayList<>();
             if (groupers != null) { // null for __system bolt
                 for (LoadAwareCustomStreamGrouping grouper : groupers.values()) {
-                    perStreamGroupers.add(grouper);
+                    perStreamGroupers.add(PrimitiveGroupingAdapter.adapt(grouper));
                 }
             }
-            result.put(stream, perStreamGroupers);
+            result.put(stream, perStreamGroupers.toArray(new PrimitiveCustomStreamGrouping[0]));
         }
         return result;
     }
 
     public List<Integer> getOutgoingTasks(Integer outTaskId, String stream, List<Object> values) {
+        return toTaskList(getOutgoingTaskIds(outTaskId, stream, values));
+    }
+
+    public List<Integer> getOutgoingTasks(String stream, List<Object> values) {
+        return toTaskList(getOutgoingTaskIds(stream, values));
+    }
+
+    /**
+     * Same as {@link #getOutgoingTasks(Integer, String, List)}, without boxing the task ids. The returned array may be a scratch buffer of
+     * this task, which is only valid until the next emit and must not be modified.
+     */
+    public int[] getOutgoingTaskIds(int outTaskId, String stream, List<Object> values) {
         if (debug) {
             LOG.info("Emitting direct: {}; {} {} {} ", outTaskId, componentId, stream, values);
         }
         String targetComponent = workerTopologyContext.getComponentId(outTaskId);
         Map<String, LoadAwareCustomStreamGrouping> componentGrouping = streamComponentToGrouper.get(stream);
         LoadAwareCustomStreamGrouping grouping = componentGrouping.get(targetComponent);
-        if (null == grouping) {
-            outTaskId = null;
-        }
         if (grouping != null && grouping != GrouperFactory.DIRECT) {
             throw new IllegalArgumentException("Cannot emitDirect to a task expecting a regular grouping");
         }
+        int[] outTasks;
+        if (null == grouping) {
+            outTasks = TaskIdList.NO_TASKS;
+        } else {
+            outTasks = directTaskId;
+            outTasks[0] = outTaskId;
+        }
         if (!userTopologyContext.getHooks().isEmpty()) {
-            new EmitInfo(values, stream, taskId, Collections.singletonList(outTaskId)).applyOn(userTopologyContext);
+            new EmitInfo(values, stream, taskId, Collections.singletonList(null == grouping ? null : outTaskId))
+                .applyOn(userTopologyContext);
         }
 
         try {
             if (emitSampler.getAsBoolean()) {
                 executorStats.emittedTuple(stream);
                 this.taskMetrics.emittedTuple(stream);
-                if (null != outTaskId) {
+                if (null != grouping) {
                     executorStats.transferredTuples(stream, 1);
                     this.taskMetrics.transferredTuples(stream, 1);
                 }
@@ -139,42 +165,51 @@ public class Task {
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        if (null != outTaskId) {
-            return Collections.singletonList(outTaskId);
-        }
-        return new ArrayList<>(0);
+        return outTasks;
     }
 
-    public List<Integer> getOutgoingTasks(String stream, List<Object> values) {
+    /**
+     * Same as {@link #getOutgoingTasks(String, List)}, without boxing the task ids. The returned array may be a scratch buffer of this
+     * task, which is only valid until the next emit, or an array shared by the grouping. It must not be modified.
+     */
+    public int[] getOutgoingTaskIds(String stream, List<Object> values) {
         if (debug) {
             LOG.info("Emitting Tuple: taskId={} componentId={} stream={} values={}", taskId, componentId, stream, values);
         }
 
-        ArrayList<Integer> outTasks = new ArrayList<>();
-
-        ArrayList<LoadAwareCustomStreamGrouping> groupers = streamToGroupers.get(stream);
-        if (null != groupers) {
-            for (int i = 0; i < groupers.size(); ++i) {
-                LoadAwareCustomStreamGrouping grouper = groupers.get(i);
-                if (grouper == GrouperFactory.DIRECT) {
-                    throw new IllegalArgumentException("Cannot do regular emit to direct stream");
-                }
-                List<Integer> compTasks = grouper.chooseTasks(taskId, values);
-                outTasks.addAll(compTasks);
-            }
-        } else {
+        PrimitiveCustomStreamGrouping[] groupers = streamToGroupers.get(stream);
+        if (null == groupers) {
             throw new IllegalArgumentException("Unknown stream ID: " + stream);
         }
+        int[] outTasks;
+        if (groupers.length == 1) {
+            outTasks = chooseTaskIds(groupers[0], values);
+        } else {
+            // the groupers return shared arrays, so concatenate them into a scratch buffer of the right size
+            int count = 0;
+            for (int i = 0; i < groupers.length; ++i) {
+                int[] compTasks = chooseTaskIds(groupers[i], values);
+                chosenTaskIds[i] = compTasks;
+                count += compTasks.length;
+            }
+            outTasks = scratchTaskIds(count);
+            int pos = 0;
+            for (int i = 0; i < groupers.length; ++i) {
+                System.arraycopy(chosenTaskIds[i], 0, outTasks, pos, chosenTaskIds[i].length);
+                pos += chosenTaskIds[i].length;
+                chosenTaskIds[i] = null;
+            }
+        }
 
         if (!userTopologyContext.getHooks().isEmpty()) {
-            new EmitInfo(values, stream, taskId, outTasks).applyOn(userTopologyContext);
+            new EmitInfo(values, stream, taskId, new ArrayList<>(TaskIdList.of(outTasks))).applyOn(userTopologyContext);
         }
         try {
             if (emitSampler.getAsBoolean()) {
                 executorStats.emittedTuple(stream);
                 this.taskMetrics.emittedTuple(stream);
-                executorStats.transferredTuples(stream, outTasks.size());
-                this.taskMetrics.transferredTuples(stream, outTasks.size());
+                executorStats.transferredTuples(stream, outTasks.length);
+                this.taskMetrics.transferredTuples(stream, outTasks.length);
             }
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -182,6 +217,46 @@ public class Task {
         return outTasks;
     }
 
+    /**
+     * View task ids returned by {@link #getOutgoingTaskIds} as a list that stays valid after the next emit.
+     */
+    public List<Integer> toTaskList(int[] taskIds) {
+        if (taskIds == directTaskId) {
+            return Collections.singletonList(taskIds[0]);
+        }
+        if (isScratch(taskIds)) {
+            return TaskIdList.of(taskIds.clone());
+        }
+        return TaskIdList.of(taskIds);
+    }
+
+    private int[] chooseTaskIds(PrimitiveCustomStreamGrouping grouper, List<Object> values) {
+        if (grouper == GrouperFactory.DIRECT) {
+            throw new IllegalArgumentException("Cannot do regular emit to direct stream");
+        }
+        int[] taskIds = grouper.chooseTaskIds(taskId, values);
+        return taskIds == null ? TaskIdList.NO_TASKS : taskIds;
+    }
+
+    private int[] scratchTaskIds(int count) {
+        if (count == 0) {
+            return TaskIdList.NO_TASKS;
+        }
+        if (count >= scratchTaskIds.length) {
+            scratchTaskIds = Arrays.copyOf(scratchTaskIds, Math.max(count + 1, 2 * scratchTaskIds.length));
+        }
+        int[] scratch = scratchTaskIds[count];
+        if (scratch == null) {
+            scratch = new int[count];
+            scratchTaskIds[count] = scratch;
+        }
+        return scratch;
+    }
+
+    private boolean isScratch(int[] taskIds) {
+        return taskIds.length > 0 && taskIds.length < scratchTaskIds.length && scratchTaskIds[taskIds.length] == taskIds;
+    }
+
     public Tuple getTuple(String stream, List values) {
         return new TupleImpl(systemTopologyContext, values, executor.getComponentId(), systemTopologyContext.getThisTaskId(), stream);
     }
@@ -209,13 +284,34 @@ public class Task {
     // Non Blocking call. If cannot emit to destination immediately, such tuples will be added to `pendingEmits` argument
     public void sendUnanchored(String stream, List<Object> values, ExecutorTransfer transfer, Queue<AddressedTuple> pendingEmits) {
         Tuple tuple = getTuple(stream, values);
-        List<Integer> tasks = getOutgoingTasks(stream, values);
-        for (int i = 0; i < tasks.size(); i++) {
-            AddressedTuple addressedTuple = new AddressedTuple(tasks.get(i), tuple);
+        int[] tasks = getOutgoingTaskIds(stream, values);
+        for (int i = 0; i < tasks.length; i++) {
+            AddressedTuple addressedTuple = new AddressedTuple(tasks[i], tuple);
             transfer.tryTransfer(addressedTuple, pendingEmits);
         }
     }
 
+    // Non Blocking call, same as sendUnanchored for a direct stream
+    public void sendUnanchoredDirect(int outTaskId, String stream, List<Object> values, ExecutorTransfer transfer,
+                                     Queue<AddressedTuple> pendingEmits) {
+        Tuple tuple = getTuple(stream, values);
+        int[] tasks = getOutgoingTaskIds(outTaskId, stream, values);
+        for (int i = 0; i < tasks.length; i++) {
+            transfer.tryTransfer(new AddressedTuple(tasks[i], tuple), pendingEmits);
+        }
+    }
+
+    /**
+     * Send a reply of the acker protocol about a tree of the {@link LocalAckLedger} to the spout task, on behalf of the acker task that
+     * would otherwise have sent it. The spout task runs in this worker.
+     */
+    public void sendAckerReply(int spoutTask, String stream, long rootId, long timeDeltaMs, ExecutorTransfer transfer,
+                               Queue<AddressedTuple> pendingEmits) {
+        int ackerTask = workerData.getLocalAckLedger().getAckerTask(rootId);
+        Tuple tuple = new TupleImpl(systemTopologyContext, new Values(rootId, timeDeltaMs), Acker.ACKER_COMPONENT_ID, ackerTask, stream);
+        transfer.tryTransfer(new AddressedTuple(spoutTask, tuple), pendingEmits);
+    }
+
     /**
      * Send sampled data to the eventlogger if the global or component level debug flag is set (via nimbus api).
      */
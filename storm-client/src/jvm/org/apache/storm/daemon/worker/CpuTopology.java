@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package org.apache.storm.daemon.worker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The CPUs a worker is allowed to run on, grouped into the domains that share an L3 cache. Read from sysfs, so it is only known on Linux.
+ * Without cache information, the CPUs of a NUMA node, then the CPUs of a physical package, make up a domain.
+ *
+ * <p>The allowed CPUs are the affinity of the worker process, which already reflects its cgroup cpuset, narrowed down to the effective
+ * cpuset of its cgroup in case that changed after the worker started. The cgroup is the one /proc/self/cgroup lists for the process,
+ * under the cgroup v2 hierarchy or else the v1 cpuset hierarchy.
+ */
+public class CpuTopology {
+    private static final Logger LOG = LoggerFactory.getLogger(CpuTopology.class);
+    private static final Pattern CPU_DIR = Pattern.compile("cpu[0-9]+");
+    private static final Pattern NODE_DIR = Pattern.compile("node[0-9]+");
+
+    private final List<Domain> domains;
+
+    CpuTopology(List<Domain> domains) {
+        this.domains = Collections.unmodifiableList(domains);
+    }
+
+    /**
+     * Read the CPU topology of this machine. Returns an empty topology when it cannot be read.
+     */
+    public static CpuTopology detect() {
+        return read(Paths.get("/sys/devices/system/cpu"), Paths.get("/proc/self/status"), Paths.get("/proc/self/cgroup"),
+                    Paths.get("/sys/fs/cgroup"));
+    }
+
+    static CpuTopology read(Path cpuRoot, Path procStatus, Path procCgroup, Path cgroupRoot) {
+        try {
+            BitSet allowed = readOnlineCpus(cpuRoot);
+            BitSet affinity = readAffinity(procStatus);
+            if (affinity != null) {
+                allowed.and(affinity);
+            }
+            Path cpuset = findCpuset(procCgroup, cgroupRoot);
+            String effective = cpuset == null ? null : readFirstLine(cpuset);
+            if (effective != null && !effective.isEmpty()) {
+                allowed.and(parseCpuList(effective));
+            }
+
+            Map<String, List<Integer>> domainCpus = new LinkedHashMap<>();
+            Map<String, Integer> domainNodes = new LinkedHashMap<>();
+            for (int cpu = allowed.nextSetBit(0); cpu >= 0; cpu = allowed.nextSetBit(cpu + 1)) {
+                Path dir = cpuRoot.resolve("cpu" + cpu);
+                int node = readNode(dir);
+                String key = readL3Key(dir);
+                if (key == null) {
+                    key = node >= 0 ? "node" + node : "package" + readFirstLine(dir.resolve("topology/physical_package_id"));
+                }
+                domainCpus.computeIfAbsent(key, k -> new ArrayList<>()).add(cpu);
+                domainNodes.putIfAbsent(key, node);
+            }
+
+            List<Domain> domains = new ArrayList<>(domainCpus.size());
+            for (Map.Entry<String, List<Integer>> entry : domainCpus.entrySet()) {
+                int[] cpus = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+                domains.add(new Domain(domains.size(), domainNodes.get(entry.getKey()), cpus));
+            }
+            return new CpuTopology(domains);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to read the CPU topology from {}", cpuRoot, e);
+            return new CpuTopology(Collections.emptyList());
+        }
+    }
+
+    /**
+     * Parse a CPU list in the format used by sysfs and procfs, like 0-3,8,10-11.
+     */
+    static BitSet parseCpuList(String list) {
+        BitSet cpus = new BitSet();
+        for (String range : list.trim().split(",")) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            if (dash < 0) {
+                cpus.set(Integer.parseInt(range));
+            } else {
+                cpus.set(Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1)) + 1);
+            }
+        }
+        return cpus;
+    }
+
+    /**
+     * Format CPUs as a CPU list, like 0-3,8,10-11.
+     */
+    static String toCpuList(int[] cpus) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < cpus.length; i++) {
+            int last = i;
+            while (last + 1 < cpus.length && cpus[last + 1] == cpus[last] + 1) {
+                last++;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(cpus[i]);
+            if (last > i) {
+                sb.append('-').append(cpus[last]);
+            }
+            i = last;
+        }
+        return sb.toString();
+    }
+
+    private static BitSet readOnlineCpus(Path cpuRoot) throws IOException {
+        String online = readFirstLine(cpuRoot.resolve("online"));
+        if (online != null) {
+            return parseCpuList(online);
+        }
+        BitSet cpus = new BitSet();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(cpuRoot)) {
+            for (Path dir : dirs) {
+                String name = dir.getFileName().toString();
+                if (CPU_DIR.matcher(name).matches()) {
+                    cpus.set(Integer.parseInt(name.substring(3)));
+                }
+            }
+        }
+        return cpus;
+    }
+
+    /**
+     * The effective cpuset file of the cgroup of the process, from its entry in the cgroup v2 hierarchy ("0::/path"), or else in the
+     * v1 cpuset hierarchy ("id:cpuset,...:/path"). Returns null if the process is in neither, or the file is not visible, e.g. because
+     * the process runs in a cgroup namespace without the cgroup filesystem mounted.
+     */
+    static Path findCpuset(Path procCgroup, Path cgroupRoot) throws IOException {
+        if (!Files.isReadable(procCgroup)) {
+            return null;
+        }
+        Path v1 = null;
+        for (String line : Files.readAllLines(procCgroup, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(":", 3);
+            if (fields.length < 3) {
+                continue;
+            }
+            String path = fields[2].startsWith("/") ? fields[2].substring(1) : fields[2];
+            if ("0".equals(fields[0]) && fields[1].isEmpty()) {
+                Path file = cgroupRoot.resolve(path).resolve("cpuset.cpus.effective");
+                if (Files.isReadable(file)) {
+                    return file;
+                }
+            } else if (Arrays.asList(fields[1].split(",")).contains("cpuset")) {
+                v1 = cgroupRoot.resolve("cpuset").resolve(path).resolve("cpuset.effective_cpus");
+            }
+        }
+        return v1 != null && Files.isReadable(v1) ? v1 : null;
+    }
+
+    private static BitSet readAffinity(Path procStatus) throws IOException {
+        if (!Files.isReadable(procStatus)) {
+            return null;
+        }
+        for (String line : Files.readAllLines(procStatus, StandardCharsets.UTF_8)) {
+            if (line.startsWith("Cpus_allowed_list:")) {
+                return parseCpuList(line.substring("Cpus_allowed_list:".length()));
+            }
+        }
+        return null;
+    }
+
+    private static int readNode(Path cpuDir) throws IOException {
+        if (!Files.isDirectory(cpuDir)) {
+            return -1;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(cpuDir)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (NODE_DIR.matcher(name).matches()) {
+                    return Integer.parseInt(name.substring(4));
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String readL3Key(Path cpuDir) throws IOException {
+        Path cacheDir = cpuDir.resolve("cache");
+        if (!Files.isDirectory(cacheDir)) {
+            return null;
+        }
+        try (DirectoryStream<Path> indexes = Files.newDirectoryStream(cacheDir, "index*")) {
+            for (Path index : indexes) {
+                if ("3".equals(readFirstLine(index.resolve("level")))) {
+                    String shared = readFirstLine(index.resolve("shared_cpu_list"));
+                    return shared == null ? null : "l3-" + shared;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String readFirstLine(Path file) throws IOException {
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        return lines.isEmpty() ? null : lines.get(0).trim();
+    }
+
+    public List<Domain> getDomains() {
+        return domains;
+    }
+
+    public int getNumCpus() {
+        int count = 0;
+        for (Domain domain : domains) {
+            count += domain.cpus.length;
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return domains.toString();
+    }
+
+    /**
+     * CPUs that share an L3 cache, or a NUMA node.
+     */
+    public static class Domain {
+        private final int id;
+        private final int node;
+        private final int[] cpus;
+
+        Domain(int id, int node, int[] cpus) {
+            this.id = id;
+            this.node = node;
+            this.cpus = cpus;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * The NUMA node of the domain, or -1 if not known.
+         */
+        public int getNode() {
+            return node;
+        }
+
+        public int[] getCpus() {
+            return cpus;
+        }
+
+        @Override
+        public String toString() {
+            return "domain" + id + "(node " + node + ", cpus " + toCpuList(cpus) + ")";
+        }
+    }
+}
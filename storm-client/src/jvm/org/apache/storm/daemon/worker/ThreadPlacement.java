@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package org.apache.storm.daemon.worker;
+
+import com.codahale.metrics.Gauge;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.storm.Config;
+import org.apache.storm.Constants;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.metrics2.StormMetricRegistry;
+import org.apache.storm.utils.ObjectReader;
+import org.apache.storm.utils.ShellUtils.ShellCommandExecutor;
+import org.apache.storm.utils.ThriftTopologyUtils;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Places the executor and transfer threads of a worker on the CPUs of its {@link CpuTopology}, see
+ * {@link Config#TOPOLOGY_WORKER_THREAD_PLACEMENT}.
+ *
+ * <p>Executors of components that are connected by a stream within the worker form a group, which is kept on one domain when it fits.
+ * Every domain takes a share of the threads in proportion to its CPUs. A group that does not fit in any domain is split across the
+ * domains with the most room left, in stream order, so that neighbouring components still end up together. Threads pin themselves
+ * with taskset when they start, since Java cannot set the affinity of a thread.
+ */
+public class ThreadPlacement {
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadPlacement.class);
+    private static final Path THREAD_SELF = Paths.get("/proc/thread-self");
+
+    private final Mode mode;
+    private final Map<List<Long>, int[]> executorCpus = new HashMap<>();
+    private final List<int[]> transferCpus = new ArrayList<>();
+    private final AtomicLong pinned = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    ThreadPlacement(Mode mode, CpuTopology cpuTopology, Map<String, List<List<Long>>> componentToExecutors,
+                    Map<String, Set<String>> componentLinks, int transferThreads) {
+        this.mode = mode;
+        List<CpuTopology.Domain> domains = cpuTopology.getDomains();
+        int threads = transferThreads;
+        for (List<List<Long>> executors : componentToExecutors.values()) {
+            threads += executors.size();
+        }
+        int[] room = new int[domains.size()];
+        int numCpus = cpuTopology.getNumCpus();
+        for (int d = 0; d < room.length; d++) {
+            room[d] = (threads * domains.get(d).getCpus().length + numCpus - 1) / numCpus;
+        }
+        int[] nextCpu = new int[domains.size()];
+
+        for (List<List<Long>> group : groupExecutors(componentToExecutors, componentLinks)) {
+            int domain = bestFit(room, group.size());
+            for (List<Long> executor : group) {
+                if (domain < 0 || room[domain] == 0) {
+                    domain = mostRoom(room);
+                }
+                room[domain]--;
+                executorCpus.put(executor, cpusFor(domains.get(domain), nextCpu));
+            }
+        }
+        for (int i = 0; i < transferThreads; i++) {
+            int domain = mostRoom(room);
+            room[domain]--;
+            transferCpus.add(cpusFor(domains.get(domain), nextCpu));
+        }
+    }
+
+    /**
+     * Plan the placement of the threads of a worker. Returns null if placement is disabled or the CPU topology is not known.
+     */
+    public static ThreadPlacement create(Map<String, Object> topoConf, StormTopology systemTopology, Collection<List<Long>> executors,
+                                         Map<Integer, String> taskToComponent) {
+        Mode mode = Mode.fromConfig(topoConf);
+        return mode == Mode.NONE ? null : create(mode, topoConf, systemTopology, executors, taskToComponent, CpuTopology.detect());
+    }
+
+    static ThreadPlacement create(Mode mode, Map<String, Object> topoConf, StormTopology systemTopology, Collection<List<Long>> executors,
+                                  Map<Integer, String> taskToComponent, CpuTopology cpuTopology) {
+        if (cpuTopology.getDomains().isEmpty()) {
+            LOG.warn("{} is {} but the CPU topology is not known, leaving thread placement to the OS",
+                     Config.TOPOLOGY_WORKER_THREAD_PLACEMENT, mode);
+            return null;
+        }
+        Map<String, List<List<Long>>> componentToExecutors = new TreeMap<>();
+        for (List<Long> executor : executors) {
+            if (!Constants.SYSTEM_EXECUTOR_ID.equals(executor)) {
+                componentToExecutors.computeIfAbsent(taskToComponent.get(executor.get(0).intValue()), c -> new ArrayList<>()).add(executor);
+            }
+        }
+        componentToExecutors.values().forEach(e -> e.sort(Comparator.comparing(id -> id.get(0))));
+
+        Map<String, Set<String>> componentLinks = new HashMap<>();
+        for (String component : componentToExecutors.keySet()) {
+            if (Utils.isSystemId(component)) {
+                continue;
+            }
+            for (GlobalStreamId input : ThriftTopologyUtils.getComponentCommon(systemTopology, component).get_inputs().keySet()) {
+                String source = input.get_componentId();
+                if (!source.equals(component) && !Utils.isSystemId(source) && componentToExecutors.containsKey(source)) {
+                    componentLinks.computeIfAbsent(component, c -> new HashSet<>()).add(source);
+                    componentLinks.computeIfAbsent(source, c -> new HashSet<>()).add(component);
+                }
+            }
+        }
+        int transferThreads = Math.max(1, ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_TRANSFER_THREADS), 1));
+        ThreadPlacement placement = new ThreadPlacement(mode, cpuTopology, componentToExecutors, componentLinks, transferThreads);
+        LOG.info("Placing threads with mode {} on {}: executors {}, transfer threads {}", mode, cpuTopology,
+                 placement.describe(placement.executorCpus), placement.describe(placement.transferCpus));
+        return placement;
+    }
+
+    /**
+     * Split the executors into groups of connected components, largest first. The system components, which talk to every other
+     * component, are a group of their own each. Within a group, the executors are listed in the order of a walk along the streams.
+     */
+    private static List<List<List<Long>>> groupExecutors(Map<String, List<List<Long>>> componentToExecutors,
+                                                         Map<String, Set<String>> componentLinks) {
+        List<List<List<Long>>> groups = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        for (String start : componentToExecutors.keySet()) {
+            if (!visited.add(start)) {
+                continue;
+            }
+            List<List<Long>> group = new ArrayList<>();
+            ArrayDeque<String> toVisit = new ArrayDeque<>();
+            toVisit.add(start);
+            while (!toVisit.isEmpty()) {
+                String component = toVisit.poll();
+                group.addAll(componentToExecutors.get(component));
+                for (String next : new TreeSet<>(componentLinks.getOrDefault(component, Collections.emptySet()))) {
+                    if (visited.add(next)) {
+                        toVisit.add(next);
+                    }
+                }
+            }
+            groups.add(group);
+        }
+        groups.sort(Comparator.comparingInt(g -> -g.size()));
+        return groups;
+    }
+
+    private static int bestFit(int[] room, int size) {
+        int best = -1;
+        for (int d = 0; d < room.length; d++) {
+            if (room[d] >= size && (best < 0 || room[d] < room[best])) {
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    private static int mostRoom(int[] room) {
+        int most = 0;
+        for (int d = 1; d < room.length; d++) {
+            if (room[d] > room[most]) {
+                most = d;
+            }
+        }
+        return most;
+    }
+
+    private int[] cpusFor(CpuTopology.Domain domain, int[] nextCpu) {
+        if (mode == Mode.DOMAIN) {
+            return domain.getCpus();
+        }
+        int[] cpus = domain.getCpus();
+        return new int[]{ cpus[nextCpu[domain.getId()]++ % cpus.length] };
+    }
+
+    /**
+     * Pin the calling thread, which runs the given executor.
+     */
+    public void pinExecutor(String name, List<Long> executorId) {
+        int[] cpus = executorCpus.get(executorId);
+        if (cpus != null) {
+            pinCurrentThread(name, cpus);
+        }
+    }
+
+    /**
+     * Pin the calling thread, which is the given transfer thread.
+     */
+    public void pinTransferThread(String name, int index) {
+        if (index < transferCpus.size()) {
+            pinCurrentThread(name, transferCpus.get(index));
+        }
+    }
+
+    private void pinCurrentThread(String name, int[] cpus) {
+        String cpuList = CpuTopology.toCpuList(cpus);
+        try {
+            // resolves to <pid>/task/<tid> for the calling thread
+            String tid = Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+            new ShellCommandExecutor(new String[]{ "taskset", "-p", "-c", cpuList, tid }).execute();
+            pinned.incrementAndGet();
+            LOG.info("Pinned {} (tid {}) to cpus {}", name, tid, cpuList);
+        } catch (IOException | RuntimeException e) {
+            if (failed.getAndIncrement() == 0) {
+                LOG.warn("Unable to pin {} to cpus {}, it will run on any cpu", name, cpuList, e);
+            } else {
+                LOG.debug("Unable to pin {} to cpus {}", name, cpuList, e);
+            }
+        }
+    }
+
+    /**
+     * Register the gauges counting the threads that were pinned and the threads that could not be. The CPUs every thread was pinned
+     * to are logged when it pins itself.
+     */
+    public void registerMetrics(StormMetricRegistry metricRegistry) {
+        register(metricRegistry, "__thread-placement-pinned", pinned::get);
+        register(metricRegistry, "__thread-placement-failed", failed::get);
+    }
+
+    private static void register(StormMetricRegistry metricRegistry, String name, Gauge<Long> gauge) {
+        metricRegistry.gauge(name, gauge, Constants.SYSTEM_COMPONENT_ID, (int) Constants.SYSTEM_TASK_ID);
+    }
+
+    int[] getExecutorCpus(List<Long> executorId) {
+        return executorCpus.get(executorId);
+    }
+
+    List<int[]> getTransferCpus() {
+        return transferCpus;
+    }
+
+    private String describe(Map<List<Long>, int[]> cpus) {
+        Map<String, String> described = new TreeMap<>();
+        cpus.forEach((executor, c) -> described.put(executor.toString(), CpuTopology.toCpuList(c)));
+        return described.toString();
+    }
+
+    private String describe(List<int[]> cpus) {
+        List<String> described = new ArrayList<>();
+        cpus.forEach(c -> described.add(CpuTopology.toCpuList(c)));
+        return described.toString();
+    }
+
+    public enum Mode {
+        NONE,
+        DOMAIN,
+        CORE;
+
+        static Mode fromConfig(Map<String, Object> topoConf) {
+            Object mode = topoConf.get(Config.TOPOLOGY_WORKER_THREAD_PLACEMENT);
+            return mode == null ? NONE : valueOf(mode.toString().toUpperCase(Locale.ROOT));
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.nio.charset.Charset;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,10 +41,13 @@ import org.apache.storm.cluster.ClusterUtils;
 import org.apache.storm.cluster.DaemonType;
 import org.apache.storm.cluster.IStateStorage;
 import org.apache.storm.cluster.IStormClusterState;
+import org.apache.storm.daemon.Acker;
 import org.apache.storm.daemon.DaemonCommon;
+import org.apache.storm.daemon.LocalAckLedger;
 import org.apache.storm.daemon.Shutdownable;
 import org.apache.storm.daemon.StormCommon;
 import org.apache.storm.executor.Executor;
+import org.apache.storm.executor.ExecutorPool;
 import org.apache.storm.executor.ExecutorShutdown;
 import org.apache.storm.executor.IRunningExecutor;
 import org.apache.storm.executor.LocalExecutor;
@@ -71,6 +75,7 @@ import org.apache.storm.utils.SupervisorClient;
 import org.apache.storm.utils.SupervisorIfaceFactory;
 import org.apache.storm.utils.Time;
 import org.apache.storm.utils.Utils;
+import org.apache.storm.utils.Utils.SmartThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -92,7 +97,7 @@ public class Worker implements Shutdownable, DaemonCommon {
 
     private WorkerState workerState;
     private AtomicReference<List<IRunningExecutor>> executorsAtom;
-    private Thread transferThread;
+    private List<SmartThread> transferThreads = Collections.emptyList();
 
     private Subject subject;
     private Collection<IAutoCredentials> autoCreds;
@@ -276,8 +281,10 @@ public class Worker implements Shutdownable, DaemonCommon {
         // This thread will send out messages destined for remote tasks (on other workers)
         // If there are no remote outbound tasks, don't start the thread.
         if (workerState.hasRemoteOutboundTasks()) {
-            transferThread = workerState.makeTransferThread();
-            transferThread.setName("Worker-Transfer");
+            transferThreads = workerState.makeTransferThreads();
+            for (int i = 0; i < transferThreads.size(); i++) {
+                transferThreads.get(i).setName(i == 0 ? "Worker-Transfer" : "Worker-Transfer-" + i);
+            }
         }
 
         establishLogSettingCallback();
@@ -334,6 +341,7 @@ public class Worker implements Shutdownable, DaemonCommon {
 
         setupFlushTupleTimer(topologyConf, newExecutors);
         setupBackPressureCheckTimer(topologyConf);
+        setupLocalAckLedgerTimer(topologyConf);
 
         LOG.info("Worker has topology config {}", ConfigUtils.maskPasswords(topologyConf));
         LOG.info("Worker {} for storm {} on {}:{}  has finished loading", workerId, topologyId, assignmentId, port);
@@ -341,12 +349,13 @@ public class Worker implements Shutdownable, DaemonCommon {
     }
 
     private void setupFlushTupleTimer(final Map<String, Object> topologyConf, final List<IRunningExecutor> executors) {
-        final Integer producerBatchSize = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_PRODUCER_BATCH_SIZE));
-        final Integer xferBatchSize = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_TRANSFER_BATCH_SIZE));
+        final Integer producerBatchSize = ExecutorPool.getProducerBatchSize(topologyConf, Config.TOPOLOGY_PRODUCER_BATCH_SIZE);
+        final Integer xferBatchSize = ExecutorPool.getProducerBatchSize(topologyConf, Config.TOPOLOGY_TRANSFER_BATCH_SIZE);
         final Long flushIntervalMillis = ObjectReader.getLong(topologyConf.get(Config.TOPOLOGY_BATCH_FLUSH_INTERVAL_MILLIS));
-        if ((producerBatchSize == 1 && xferBatchSize == 1) || flushIntervalMillis == 0) {
-            LOG.info("Flush Tuple generation disabled. producerBatchSize={}, xferBatchSize={}, flushIntervalMillis={}",
-                     producerBatchSize, xferBatchSize, flushIntervalMillis);
+        final boolean ackBatching = StormCommon.hasAckers(topologyConf) && Acker.isBatchEnabled(topologyConf);
+        if ((producerBatchSize == 1 && xferBatchSize == 1 && !ackBatching) || flushIntervalMillis == 0) {
+            LOG.info("Flush Tuple generation disabled. producerBatchSize={}, xferBatchSize={}, ackBatching={}, flushIntervalMillis={}",
+                     producerBatchSize, xferBatchSize, ackBatching, flushIntervalMillis);
             return;
         }
 
@@ -364,6 +373,20 @@ public class Worker implements Shutdownable, DaemonCommon {
         LOG.info("Flush tuple will be generated every {} millis", flushIntervalMillis);
     }
 
+    private void setupLocalAckLedgerTimer(final Map<String, Object> topologyConf) {
+        final LocalAckLedger ledger = workerState.getLocalAckLedger();
+        if (ledger == null || !ObjectReader.getBoolean(topologyConf.get(Config.TOPOLOGY_ENABLE_MESSAGE_TIMEOUTS), true)) {
+            return;
+        }
+        // expire the trees of the ledger at the same pace the ackers expire theirs
+        final int timeoutSecs = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_MESSAGE_TIMEOUT_SECS));
+        workerState.getUserTimer().scheduleRecurring(timeoutSecs, timeoutSecs, () -> {
+            int expired = ledger.rotate();
+            LOG.debug("Number of timeout tuples in the local ack ledger:{}", expired);
+        });
+        LOG.info("Acking tuple trees local to the worker, they time out after {} secs", timeoutSecs);
+    }
+
     private void setupBackPressureCheckTimer(final Map<String, Object> topologyConf) {
         if (workerState.isSingleWorker()) {
             LOG.info("BackPressure change checking is disabled as there is only one worker");
@@ -517,13 +540,18 @@ public class Worker implements Shutdownable, DaemonCommon {
                     ((ExecutorShutdown) executor).shutdown();
                 }
                 LOG.info("Shut down executors");
+                if (workerState.getExecutorPool() != null) {
+                    workerState.getExecutorPool().shutdown();
+                }
 
                 LOG.info("Shutting down transfer thread");
                 workerState.haltWorkerTransfer();
 
-                if (transferThread != null) {
+                for (SmartThread transferThread : transferThreads) {
                     transferThread.interrupt();
                     transferThread.join();
+                }
+                if (!transferThreads.isEmpty()) {
                     LOG.info("Shut down transfer thread");
                 }
 
@@ -14,6 +14,8 @@ package org.apache.storm.daemon.worker;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -39,9 +41,12 @@ import org.apache.storm.StormTimer;
 import org.apache.storm.cluster.IStateStorage;
 import org.apache.storm.cluster.IStormClusterState;
 import org.apache.storm.cluster.VersionedData;
+import org.apache.storm.daemon.Acker;
+import org.apache.storm.daemon.LocalAckLedger;
 import org.apache.storm.daemon.StormCommon;
 import org.apache.storm.daemon.supervisor.AdvancedFSOps;
 import org.apache.storm.daemon.worker.BackPressureTracker.BackpressureState;
+import org.apache.storm.executor.ExecutorPool;
 import org.apache.storm.executor.IRunningExecutor;
 import org.apache.storm.generated.Assignment;
 import org.apache.storm.generated.Credentials;
@@ -68,8 +73,11 @@ import org.apache.storm.policy.IWaitStrategy;
 import org.apache.storm.security.auth.IAutoCredentials;
 import org.apache.storm.serialization.ITupleSerializer;
 import org.apache.storm.serialization.KryoTupleSerializer;
+import org.apache.storm.serialization.TupleSerializerPool;
 import org.apache.storm.shade.com.google.common.collect.ImmutableMap;
 import org.apache.storm.shade.com.google.common.collect.Sets;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.Unpooled;
 import org.apache.storm.task.WorkerTopologyContext;
 import org.apache.storm.task.WorkerUserContext;
 import org.apache.storm.tuple.AddressedTuple;
@@ -77,6 +85,7 @@ import org.apache.storm.tuple.Fields;
 import org.apache.storm.utils.ConfigUtils;
 import org.apache.storm.utils.JCQueue;
 import org.apache.storm.utils.ObjectReader;
+import org.apache.storm.utils.SpillRing;
 import org.apache.storm.utils.SupervisorIfaceFactory;
 import org.apache.storm.utils.ThriftTopologyUtils;
 import org.apache.storm.utils.Utils;
@@ -155,6 +164,10 @@ public class WorkerState {
     private final Collection<IAutoCredentials> autoCredentials;
     private final AtomicReference<Credentials> credentialsAtom;
     private final StormMetricRegistry metricRegistry;
+    private final TupleSerializerPool serializerPool;
+    private final LocalAckLedger localAckLedger;
+    private final ThreadPlacement threadPlacement;
+    private final ExecutorPool executorPool;
 
     public WorkerState(Map<String, Object> conf,
             IContext mqContext,
@@ -231,15 +244,39 @@ public class WorkerState {
         if (trySerializeLocal) {
             LOG.warn("WILL TRY TO SERIALIZE ALL TUPLES (Turn off {} for production", Config.TOPOLOGY_TESTING_ALWAYS_TRY_SERIALIZE);
         }
+        this.serializerPool = new TupleSerializerPool(topologyConf, getWorkerTopologyContext());
+        if (metricRegistry != null) {
+            serializerPool.registerMetrics(metricRegistry);
+        }
+        if (LocalAckLedger.isEnabled(topologyConf)) {
+            this.localAckLedger = new LocalAckLedger(localTaskIds, componentToSortedTasks.get(Acker.ACKER_COMPONENT_ID));
+            if (metricRegistry != null) {
+                localAckLedger.registerMetrics(metricRegistry);
+            }
+        } else {
+            this.localAckLedger = null;
+        }
         int maxTaskId = getMaxTaskId(componentToSortedTasks);
         this.workerTransfer = new WorkerTransfer(this, topologyConf, maxTaskId);
+        this.threadPlacement = ThreadPlacement.create(topologyConf, systemTopology, localExecutors, taskToComponent);
+        if (ExecutorPool.isEnabled(topologyConf)) {
+            this.executorPool = new ExecutorPool(topologyConf);
+            if (metricRegistry != null) {
+                executorPool.registerMetrics(metricRegistry);
+            }
+        } else {
+            this.executorPool = null;
+        }
+        if (threadPlacement != null && metricRegistry != null) {
+            threadPlacement.registerMetrics(metricRegistry);
+        }
 
         this.bpTracker = new BackPressureTracker(workerId, taskToExecutorQueue, metricRegistry, taskToComponent);
         this.deserializedWorkerHooks = deserializeWorkerHooks();
         LOG.info("Registering IConnectionCallbacks for {}:{}", assignmentId, port);
         IConnectionCallback cb = new DeserializingConnectionCallback(topologyConf,
             getWorkerTopologyContext(),
-            this::transferLocalBatch);
+            this::transferLocalBatch, serializerPool);
         Supplier<Object> newConnectionResponse = () -> {
             BackPressureStatus bpStatus = bpTracker.getCurrStatus();
             LOG.info("Sending BackPressure status to new client. BPStatus: {}", bpStatus);
@@ -382,8 +419,8 @@ public class WorkerState {
         return userTimer;
     }
 
-    public SmartThread makeTransferThread() {
-        return workerTransfer.makeTransferThread();
+    public List<SmartThread> makeTransferThreads() {
+        return workerTransfer.makeTransferThreads();
     }
 
     public void suicideIfLocalAssignmentsChanged(Assignment assignment) {
@@ -669,6 +706,7 @@ public class WorkerState {
     public void closeResources() {
         LOG.info("Shutting down default resources");
         ((ExecutorService) defaultSharedResources.get(WorkerTopologyContext.SHARED_EXECUTOR)).shutdownNow();
+        serializerPool.close();
         LOG.info("Shut down default resources");
     }
 
@@ -723,7 +761,7 @@ public class WorkerState {
     private Map<List<Long>, JCQueue> mkReceiveQueueMap(Map<String, Object> topologyConf,
                                                        Set<List<Long>> executors, Map<Integer, String> taskToComponent) {
         Integer recvQueueSize = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_EXECUTOR_RECEIVE_BUFFER_SIZE));
-        Integer recvBatchSize = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_PRODUCER_BATCH_SIZE));
+        Integer recvBatchSize = ExecutorPool.getProducerBatchSize(topologyConf, Config.TOPOLOGY_PRODUCER_BATCH_SIZE);
         Integer overflowLimit = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_EXECUTOR_OVERFLOW_LIMIT));
 
         if (recvBatchSize > recvQueueSize / 2) {
@@ -732,7 +770,14 @@ public class WorkerState {
                     + recvQueueSize);
         }
 
+        JCQueue.OverflowPolicy overflowPolicy = JCQueue.OverflowPolicy.fromConfig(topologyConf);
+        if (overflowPolicy != JCQueue.OverflowPolicy.DROP && overflowLimit == 0) {
+            overflowLimit = recvQueueSize;
+        }
+
+        int overflowBlockTimeoutMs = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_EXECUTOR_OVERFLOW_BLOCK_TIMEOUT_MS), 100);
         IWaitStrategy backPressureWaitStrategy = IWaitStrategy.createBackPressureWaitStrategy(topologyConf);
+        int batchLatencyTargetMicros = JCQueue.getBatchLatencyTargetMicros(topologyConf);
         Map<List<Long>, JCQueue> receiveQueueMap = new HashMap<>();
 
         for (List<Long> executor : executors) {
@@ -744,14 +789,26 @@ public class WorkerState {
             } else {
                 compId = taskToComponent.get(taskId);
             }
-            receiveQueueMap.put(executor, new JCQueue("receive-queue" + executor.toString(), "receive-queue",
-                                                      recvQueueSize, overflowLimit, recvBatchSize, backPressureWaitStrategy,
+            String queueName = "receive-queue" + executor.toString();
+            SpillRing spill = overflowPolicy == JCQueue.OverflowPolicy.SPILL ? mkSpillRing(topologyConf, queueName) : null;
+            receiveQueueMap.put(executor, new JCQueue(queueName, "receive-queue",
+                                                      recvQueueSize, overflowLimit, overflowPolicy, spill, overflowBlockTimeoutMs,
+                                                      recvBatchSize,
+                                                      batchLatencyTargetMicros, backPressureWaitStrategy,
                 this.getTopologyId(), compId, taskIds, this.getPort(), metricRegistry));
 
         }
         return receiveQueueMap;
     }
 
+    private SpillRing mkSpillRing(Map<String, Object> topologyConf, String queueName) {
+        Object dir = topologyConf.get(Config.TOPOLOGY_EXECUTOR_OVERFLOW_SPILL_DIR);
+        Path spillDir = dir != null ? Paths.get(dir.toString()) : Paths.get(ConfigUtils.workerTmpRoot(conf, workerId));
+        int segmentBytes = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_EXECUTOR_OVERFLOW_SPILL_SEGMENT_BYTES), 16 * 1024 * 1024);
+        int maxSegments = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_EXECUTOR_OVERFLOW_SPILL_MAX_SEGMENTS), 16);
+        return new SpillRing(spillDir, queueName, segmentBytes, maxSegments, new SpillCodec());
+    }
+
     private Map<String, Object> makeDefaultResources() {
         int threadPoolSize = ObjectReader.getInt(conf.get(Config.TOPOLOGY_WORKER_SHARED_THREAD_POOL_SIZE));
         return ImmutableMap.of(WorkerTopologyContext.SHARED_EXECUTOR, Executors.newFixedThreadPool(threadPoolSize));
@@ -818,8 +875,36 @@ public class WorkerState {
         workerTransfer.haltTransferThd();
     }
 
-    public JCQueue getTransferQueue() {
-        return workerTransfer.getTransferQueue();
+    public List<JCQueue> getTransferQueues() {
+        return workerTransfer.getTransferQueues();
+    }
+
+    /**
+     * The pool of tuple serializers shared by all the executor and netty threads of this worker.
+     */
+    public TupleSerializerPool getSerializerPool() {
+        return serializerPool;
+    }
+
+    /**
+     * The ledger of the tuple trees that have not left this worker, or null if they are acked by the ackers like any other.
+     */
+    /**
+     * The placement of the executor and transfer threads on CPUs, or null if it is left to the OS.
+     */
+    public ThreadPlacement getThreadPlacement() {
+        return threadPlacement;
+    }
+
+    /**
+     * The pool of threads shared by the executors, or null if every executor has a thread of its own.
+     */
+    public ExecutorPool getExecutorPool() {
+        return executorPool;
+    }
+
+    public LocalAckLedger getLocalAckLedger() {
+        return localAckLedger;
     }
 
     public StormMetricRegistry getMetricRegistry() {
@@ -829,4 +914,24 @@ public class WorkerState {
     public interface ILocalTransferCallback {
         void transfer(ArrayList<AddressedTuple> tupleBatch);
     }
+
+    /**
+     * Spills tuples received from other workers in their serialized form, prefixed with the destination task. Uses the serializers of
+     * the calling threads, i.e. of the netty threads when spilling and of the executor threads when reading back.
+     */
+    private class SpillCodec implements SpillRing.Codec {
+        @Override
+        public byte[] encode(Object obj) {
+            AddressedTuple tuple = (AddressedTuple) obj;
+            byte[] payload = serializerPool.getSerializer().serialize(tuple.getTuple());
+            return ByteBuffer.allocate(4 + payload.length).putInt(tuple.getDest()).put(payload).array();
+        }
+
+        @Override
+        public Object decode(byte[] record) {
+            int dest = ByteBuffer.wrap(record).getInt();
+            ByteBuf payload = Unpooled.wrappedBuffer(record, 4, record.length - 4);
+            return new AddressedTuple(dest, serializerPool.getDeserializer().deserialize(payload));
+        }
+    }
 }
@@ -18,16 +18,25 @@
 
 package org.apache.storm.daemon.worker;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.storm.Config;
 import org.apache.storm.Constants;
+import org.apache.storm.executor.ExecutorPool;
+import org.apache.storm.generated.NodeInfo;
 import org.apache.storm.messaging.TaskMessage;
 import org.apache.storm.policy.IWaitStrategy;
 import org.apache.storm.serialization.ITupleSerializer;
+import org.apache.storm.shade.io.netty.buffer.PooledByteBufAllocator;
 import org.apache.storm.tuple.AddressedTuple;
 import org.apache.storm.utils.JCQueue;
 import org.apache.storm.utils.ObjectReader;
@@ -37,74 +46,90 @@ import org.apache.storm.utils.Utils.SmartThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-// Transfers messages destined to other workers
-public class WorkerTransfer implements JCQueue.Consumer {
+// Transfers messages destined to other workers. The destination workers are split into topology.transfer.threads shards, each with its
+// own transfer queue and thread, so all msgs to a given worker go through the same queue and thread and keep their order.
+public class WorkerTransfer {
     static final Logger LOG = LoggerFactory.getLogger(WorkerTransfer.class);
 
-    private final TransferDrainer drainer;
     private final WorkerState workerState;
 
     private final IWaitStrategy backPressureWaitStrategy;
 
-    private JCQueue transferQueue; // [remoteTaskId] -> JCQueue. Some entries maybe null (if no emits to those tasksIds from this worker)
+    private final boolean directBuffers;
+
+    private final TransferShard[] shards;
+
+    private volatile ShardIndex shardIndex = new ShardIndex(null, new int[0]);
 
     private final AtomicBoolean[] remoteBackPressureStatus; // [[remoteTaskId] -> true/false : indicates if remote task is under BP.
 
     public WorkerTransfer(WorkerState workerState, Map<String, Object> topologyConf, int maxTaskIdInTopo) {
         this.workerState = workerState;
         this.backPressureWaitStrategy = IWaitStrategy.createBackPressureWaitStrategy(topologyConf);
-        this.drainer = new TransferDrainer();
+        this.directBuffers = ObjectReader.getBoolean(topologyConf.get(Config.TOPOLOGY_TRANSFER_DIRECT_BUFFERS), false);
         this.remoteBackPressureStatus = new AtomicBoolean[maxTaskIdInTopo + 1];
         for (int i = 0; i < remoteBackPressureStatus.length; i++) {
             remoteBackPressureStatus[i] = new AtomicBoolean(false);
         }
 
         Integer xferQueueSz = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_TRANSFER_BUFFER_SIZE));
-        Integer xferBatchSz = ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_TRANSFER_BATCH_SIZE));
+        Integer xferBatchSz = ExecutorPool.getProducerBatchSize(topologyConf, Config.TOPOLOGY_TRANSFER_BATCH_SIZE);
         if (xferBatchSz > xferQueueSz / 2) {
             throw new IllegalArgumentException(Config.TOPOLOGY_TRANSFER_BATCH_SIZE + ":" + xferBatchSz + " must be no more than half of "
                                                + Config.TOPOLOGY_TRANSFER_BUFFER_SIZE + ":" + xferQueueSz);
         }
 
-        this.transferQueue = new JCQueue("worker-transfer-queue", "worker-transfer-queue",
-            xferQueueSz, 0, xferBatchSz, backPressureWaitStrategy,
-            workerState.getTopologyId(), Constants.SYSTEM_COMPONENT_ID, Collections.singletonList(-1), workerState.getPort(),
-            workerState.getMetricRegistry());
+        // hand a batch over to its connection as soon as it holds as much as the netty client sends at once
+        int maxBatchBytes = ObjectReader.getInt(topologyConf.get(Config.STORM_NETTY_MESSAGE_BATCH_SIZE), 262144);
+        int threads = Math.max(1, ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_TRANSFER_THREADS), 1));
+        this.shards = new TransferShard[threads];
+        for (int i = 0; i < threads; i++) {
+            String name = i == 0 ? "worker-transfer-queue" : "worker-transfer-queue-" + i;
+            JCQueue queue = new JCQueue(name, name,
+                xferQueueSz, 0, xferBatchSz, JCQueue.getBatchLatencyTargetMicros(topologyConf), backPressureWaitStrategy,
+                workerState.getTopologyId(), Constants.SYSTEM_COMPONENT_ID, Collections.singletonList(-1), workerState.getPort(),
+                workerState.getMetricRegistry());
+            shards[i] = new TransferShard(queue, new TransferDrainer(maxBatchBytes));
+        }
     }
 
-    public JCQueue getTransferQueue() {
-        return transferQueue;
+    public List<JCQueue> getTransferQueues() {
+        List<JCQueue> queues = new ArrayList<>(shards.length);
+        for (TransferShard shard : shards) {
+            queues.add(shard.transferQueue);
+        }
+        return queues;
     }
 
     AtomicBoolean[] getRemoteBackPressureStatus() {
         return remoteBackPressureStatus;
     }
 
-    public SmartThread makeTransferThread() {
-        return Utils.asyncLoop(() -> {
-            if (transferQueue.consume(this) == 0) {
-                return 1L;
+    /**
+     * Create one transfer thread per shard.
+     */
+    public List<SmartThread> makeTransferThreads() {
+        List<SmartThread> threads = new ArrayList<>(shards.length);
+        ThreadPlacement placement = workerState.getThreadPlacement();
+        for (int i = 0; i < shards.length; i++) {
+            TransferShard shard = shards[i];
+            Callable<Long> loop = () -> {
+                if (shard.transferQueue.consume(shard) == 0) {
+                    return 1L;
+                }
+                return 0L;
+            };
+            if (placement == null) {
+                threads.add(Utils.asyncLoop(loop));
+            } else {
+                final int index = i;
+                threads.add(Utils.asyncLoop(() -> {
+                    placement.pinTransferThread("worker-transfer-" + index, index);
+                    return loop;
+                }, false, null, Thread.NORM_PRIORITY, true, true, null));
             }
-            return 0L;
-        });
-    }
-
-    @Override
-    public void accept(Object tuple) {
-        TaskMessage tm = (TaskMessage) tuple;
-        drainer.add(tm);
-    }
-
-    @Override
-    public void flush() throws InterruptedException {
-        ReentrantReadWriteLock.ReadLock readLock = workerState.endpointSocketLock.readLock();
-        try {
-            readLock.lock();
-            drainer.send(workerState.cachedTaskToNodePort.get(), workerState.cachedNodeToPortSocket.get());
-        } finally {
-            readLock.unlock();
         }
-        drainer.clear();
+        return threads;
     }
 
     /* Not a Blocking call. If cannot emit, will add 'tuple' to 'pendingEmits' and return 'false'. 'pendingEmits' can be null */
@@ -115,10 +140,17 @@ public class WorkerTransfer implements JCQueue.Consumer {
         }
 
         if (!remoteBackPressureStatus[addressedTuple.dest].get()) {
-            TaskMessage tm = new TaskMessage(addressedTuple.getDest(), serializer.serialize(addressedTuple.getTuple()));
-            if (transferQueue.tryPublish(tm)) {
+            TaskMessage tm;
+            if (directBuffers) {
+                tm = TaskMessage.fromBuffer(addressedTuple.getDest(),
+                    serializer.serializeToBuffer(addressedTuple.getTuple(), PooledByteBufAllocator.DEFAULT));
+            } else {
+                tm = new TaskMessage(addressedTuple.getDest(), serializer.serialize(addressedTuple.getTuple()));
+            }
+            if (shardOf(addressedTuple.getDest()).transferQueue.tryPublish(tm)) {
                 return true;
             }
+            tm.release();
         } else {
             LOG.debug("Noticed Back Pressure in remote task {}", addressedTuple.dest);
         }
@@ -129,16 +161,102 @@ public class WorkerTransfer implements JCQueue.Consumer {
     }
 
     public void flushRemotes() throws InterruptedException {
-        transferQueue.flush();
+        for (TransferShard shard : shards) {
+            shard.transferQueue.flush();
+        }
     }
 
     public boolean tryFlushRemotes() {
-        return transferQueue.tryFlush();
+        boolean flushed = true;
+        for (TransferShard shard : shards) {
+            flushed &= shard.transferQueue.tryFlush();
+        }
+        return flushed;
     }
 
-
     public void haltTransferThd() {
-        transferQueue.close();
+        for (TransferShard shard : shards) {
+            shard.transferQueue.close();
+        }
     }
 
-}
\ No newline at end of file
+    private TransferShard shardOf(int task) {
+        if (shards.length == 1) {
+            return shards[0];
+        }
+        Map<Integer, NodeInfo> taskToNode = workerState.cachedTaskToNodePort.get();
+        ShardIndex index = shardIndex;
+        if (index.taskToNode != taskToNode) {
+            index = ShardIndex.build(taskToNode, shards.length);
+            shardIndex = index;
+        }
+        return shards[task < index.taskToShard.length ? index.taskToShard[task] : 0];
+    }
+
+    /**
+     * Maps every remote task to the shard of the worker hosting it. The workers are spread over the shards round robin, in a stable
+     * order, so each shard serves about the same number of connections.
+     */
+    private static class ShardIndex {
+        private final Map<Integer, NodeInfo> taskToNode;
+        private final int[] taskToShard;
+
+        ShardIndex(Map<Integer, NodeInfo> taskToNode, int[] taskToShard) {
+            this.taskToNode = taskToNode;
+            this.taskToShard = taskToShard;
+        }
+
+        static ShardIndex build(Map<Integer, NodeInfo> taskToNode, int shardCount) {
+            TreeSet<NodeInfo> nodes = new TreeSet<>(Comparator.comparing(NodeInfo::toString));
+            nodes.addAll(taskToNode.values());
+            Map<NodeInfo, Integer> nodeToShard = new HashMap<>();
+            for (NodeInfo node : nodes) {
+                nodeToShard.put(node, nodeToShard.size() % shardCount);
+            }
+            int maxTask = -1;
+            for (Integer task : taskToNode.keySet()) {
+                maxTask = Math.max(maxTask, task);
+            }
+            int[] taskToShard = new int[maxTask + 1];
+            for (Map.Entry<Integer, NodeInfo> entry : taskToNode.entrySet()) {
+                taskToShard[entry.getKey()] = nodeToShard.get(entry.getValue());
+            }
+            return new ShardIndex(taskToNode, taskToShard);
+        }
+    }
+
+    // Drains one transfer queue and sends its msgs to the connections of the shard
+    private class TransferShard implements JCQueue.Consumer {
+        private final JCQueue transferQueue;
+        private final TransferDrainer drainer;
+
+        TransferShard(JCQueue transferQueue, TransferDrainer drainer) {
+            this.transferQueue = transferQueue;
+            this.drainer = drainer;
+        }
+
+        @Override
+        public void accept(Object tuple) {
+            TaskMessage tm = (TaskMessage) tuple;
+            if (drainer.add(tm, workerState.cachedTaskToNodePort.get())) {
+                sendBatches();
+            }
+        }
+
+        @Override
+        public void flush() throws InterruptedException {
+            sendBatches();
+        }
+
+        private void sendBatches() {
+            ReentrantReadWriteLock.ReadLock readLock = workerState.endpointSocketLock.readLock();
+            try {
+                readLock.lock();
+                drainer.send(workerState.cachedTaskToNodePort.get(), workerState.cachedNodeToPortSocket.get());
+            } finally {
+                readLock.unlock();
+            }
+            drainer.clear();
+        }
+    }
+}
@@ -50,6 +50,10 @@ public interface LinearDRPCInputDeclarer extends ComponentConfigurationDeclarer<
 
     LinearDRPCInputDeclarer partialKeyGrouping(String streamId, Fields fields);
 
+    LinearDRPCInputDeclarer consistentHashGrouping(Fields fields);
+
+    LinearDRPCInputDeclarer consistentHashGrouping(String streamId, Fields fields);
+
     LinearDRPCInputDeclarer customGrouping(CustomStreamGrouping grouping);
 
     LinearDRPCInputDeclarer customGrouping(String streamId, CustomStreamGrouping grouping);
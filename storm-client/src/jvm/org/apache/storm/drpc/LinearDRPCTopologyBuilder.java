@@ -29,6 +29,7 @@ import org.apache.storm.coordination.IBatchBolt;
 import org.apache.storm.generated.SharedMemory;
 import org.apache.storm.generated.StormTopology;
 import org.apache.storm.generated.StreamInfo;
+import org.apache.storm.grouping.ConsistentHashGrouping;
 import org.apache.storm.grouping.CustomStreamGrouping;
 import org.apache.storm.grouping.PartialKeyGrouping;
 import org.apache.storm.topology.BaseConfigurationDeclarer;
@@ -362,6 +363,16 @@ public class LinearDRPCTopologyBuilder {
             return customGrouping(streamId, new PartialKeyGrouping(fields));
         }
 
+        @Override
+        public LinearDRPCInputDeclarer consistentHashGrouping(Fields fields) {
+            return customGrouping(new ConsistentHashGrouping(fields));
+        }
+
+        @Override
+        public LinearDRPCInputDeclarer consistentHashGrouping(String streamId, Fields fields) {
+            return customGrouping(streamId, new ConsistentHashGrouping(fields));
+        }
+
         @Override
         public LinearDRPCInputDeclarer customGrouping(final CustomStreamGrouping grouping) {
             addDeclaration(new InputDeclaration() {
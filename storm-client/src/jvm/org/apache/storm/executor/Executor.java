@@ -49,6 +49,7 @@ import org.apache.storm.daemon.Acker;
 import org.apache.storm.daemon.GrouperFactory;
 import org.apache.storm.daemon.StormCommon;
 import org.apache.storm.daemon.Task;
+import org.apache.storm.daemon.worker.ThreadPlacement;
 import org.apache.storm.daemon.worker.WorkerState;
 import org.apache.storm.executor.bolt.BoltExecutor;
 import org.apache.storm.executor.error.IReportError;
@@ -61,6 +62,8 @@ import org.apache.storm.generated.DebugOptions;
 import org.apache.storm.generated.Grouping;
 import org.apache.storm.generated.SpoutSpec;
 import org.apache.storm.generated.StormTopology;
+import org.apache.storm.grouping.CustomStreamGrouping;
+import org.apache.storm.grouping.HotKeyFieldsGrouping;
 import org.apache.storm.grouping.LoadAwareCustomStreamGrouping;
 import org.apache.storm.grouping.LoadMapping;
 import org.apache.storm.metric.api.IMetric;
@@ -111,6 +114,7 @@ public abstract class Executor implements Callable, JCQueue.Consumer {
     protected final Map<String, Map<String, LoadAwareCustomStreamGrouping>> streamToComponentToGrouper;
     protected final List<LoadAwareCustomStreamGrouping> groupers;
     protected final ReportErrorAndDie reportErrorDie;
+    protected final ExecutorPool executorPool; // null when the executor has a thread of its own
     protected final BooleanSupplier sampler;
     protected final String type;
     protected final IReportError reportError;
@@ -171,6 +175,7 @@ public abstract class Executor implements Callable, JCQueue.Consumer {
         }
         this.reportError = new ReportError(topoConf, stormClusterState, stormId, componentId, workerTopologyContext);
         this.reportErrorDie = new ReportErrorAndDie(reportError, suicideFn);
+        this.executorPool = workerData.getExecutorPool();
         this.sampler = ConfigUtils.mkStatsSampler(topoConf);
         this.isDebug = ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_DEBUG), false);
         this.rand = new Random(Utils.secureRandomLong());
@@ -270,8 +275,22 @@ public abstract class Executor implements Callable, JCQueue.Consumer {
         LOG.info("Loading executor tasks " + componentId + ":" + executorId);
 
         String handlerName = componentId + "-executor" + executorId;
+        if (executorPool != null) {
+            ExecutorPool.PooledExecutor pooled =
+                executorPool.submit(handlerName, () -> (Callable<Long>) call(), receiveQueue, reportErrorDie);
+            LOG.info("Finished loading executor " + componentId + ":" + executorId + " on the executor pool");
+            return new ExecutorShutdown(this, Collections.emptyList(), pooled, idToTask, receiveQueue);
+        }
+        ThreadPlacement placement = workerData.getThreadPlacement();
+        Callable<?> loop = this;
+        if (placement != null) {
+            loop = () -> {
+                placement.pinExecutor(handlerName, executorId);
+                return call();
+            };
+        }
         Utils.SmartThread handler =
-            Utils.asyncLoop(this, false, reportErrorDie, Thread.NORM_PRIORITY, true, true, handlerName);
+            Utils.asyncLoop(loop, false, reportErrorDie, Thread.NORM_PRIORITY, true, true, handlerName);
 
         LOG.info("Finished loading executor " + componentId + ":" + executorId);
         return new ExecutorShutdown(this, Lists.newArrayList(handler), idToTask, receiveQueue);
@@ -567,6 +586,13 @@ public abstract class Executor implements Callable, JCQueue.Consumer {
                 List<Integer> outTasks = workerTopologyContext.getComponentTasks(component);
                 LoadAwareCustomStreamGrouping grouper = GrouperFactory.mkGrouper(
                     workerTopologyContext, componentId, streamId, outFields, grouping, outTasks, topoConf);
+                if (grouper instanceof GrouperFactory.BasicLoadAwareCustomStreamGrouping) {
+                    CustomStreamGrouping custom = ((GrouperFactory.BasicLoadAwareCustomStreamGrouping) grouper).getCustomStreamGrouping();
+                    if (custom instanceof HotKeyFieldsGrouping) {
+                        ((HotKeyFieldsGrouping) custom).registerMetrics(workerData.getMetricRegistry(), componentId, taskIds.get(0),
+                                                                        streamId, component);
+                    }
+                }
                 componentGrouper.put(component, grouper);
             }
             if (componentGrouper.size() > 0) {
@@ -606,6 +632,11 @@ public abstract class Executor implements Callable, JCQueue.Consumer {
         keysToRemove.remove(Config.TOPOLOGY_STATE_PROVIDER);
         keysToRemove.remove(Config.TOPOLOGY_STATE_PROVIDER_CONFIG);
         keysToRemove.remove(Config.TOPOLOGY_BOLTS_LATE_TUPLE_STREAM);
+        keysToRemove.remove(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_ENABLE);
+        keysToRemove.remove(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_SEGMENT_BYTES);
+        keysToRemove.remove(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_MAX_MEMORY_SEGMENTS);
+        keysToRemove.remove(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_SPILL_DIR);
+        keysToRemove.remove(Config.TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE);
 
         Map<String, Object> componentConf;
         String specJsonConf = topologyContext.getComponentCommon(componentId).get_json_conf();
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.storm.Config;
+import org.apache.storm.Constants;
+import org.apache.storm.metrics2.StormMetricRegistry;
+import org.apache.storm.utils.JCQueue;
+import org.apache.storm.utils.JCQueue.ExitCondition;
+import org.apache.storm.utils.ObjectReader;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of threads shared by the executors of a worker, see {@link Config#TOPOLOGY_EXECUTOR_POOL_ENABLE}.
+ *
+ * <p>Each executor takes turns on the pool threads. A turn is one call of the loop returned by {@link Executor#call()}, which must
+ * not wait when it has nothing to do. Instead it returns when it wants its next turn: {@link #RUN_AGAIN} to be queued again behind
+ * the other executors, a number of microseconds to wait before its next turn, or {@link #WAIT_FOR_INPUT} to get its next turn only
+ * when msgs are published to its receive queue. Msgs arriving during a wait end the wait early.
+ *
+ * <p>Pooled executors must never block on a full downstream queue, since its consumer may be waiting for their thread.
+ */
+public class ExecutorPool {
+    public static final long RUN_AGAIN = 0L;
+    public static final long WAIT_FOR_INPUT = -1L;
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutorPool.class);
+    private static final long MIN_IDLE_MICROS = 16;
+
+    private final LinkedBlockingQueue<PooledExecutor> runQueue = new LinkedBlockingQueue<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final ScheduledExecutorService timer;
+    private final int batchSize;
+    private final long maxIdleMicros;
+
+    public ExecutorPool(Map<String, Object> topoConf) {
+        int numThreads = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_EXECUTOR_POOL_THREADS), 0);
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+        this.batchSize = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_EXECUTOR_POOL_BATCH_SIZE), 1000);
+        int maxIdleMicros = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_EXECUTOR_POOL_IDLE_MAX_MICROS), 1000);
+        this.maxIdleMicros = Math.max(MIN_IDLE_MICROS, maxIdleMicros);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "executor-pool-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < numThreads; i++) {
+            Thread thread = new Thread(this::runTurns, "executor-pool-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        LOG.info("Started executor pool with {} threads", numThreads);
+    }
+
+    public static boolean isEnabled(Map<String, Object> topoConf) {
+        return ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_EXECUTOR_POOL_ENABLE), false);
+    }
+
+    /**
+     * The batch size to use for the producers of a receive or transfer queue, given by batchSizeConfig. Producer batches belong to a
+     * thread while pooled executors move from thread to thread, which could reorder their msgs, so the pool turns producer batching off.
+     */
+    public static int getProducerBatchSize(Map<String, Object> topoConf, String batchSizeConfig) {
+        return isEnabled(topoConf) ? 1 : ObjectReader.getInt(topoConf.get(batchSizeConfig));
+    }
+
+    /**
+     * The maximum number of msgs an executor should consume in one turn.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * A condition that ends a consume of the receive queue once exitCond does, or once the executor has consumed its batch size of msgs
+     * in the turn, so that it gives up its thread to the other executors.
+     */
+    public TurnBudget newTurnBudget(ExitCondition exitCond) {
+        return new TurnBudget(batchSize, exitCond);
+    }
+
+    /**
+     * How long an executor that found nothing to do idleCount times in a row should wait before its next turn, in microseconds.
+     */
+    public long idleMicros(int idleCount) {
+        return Math.min(maxIdleMicros, MIN_IDLE_MICROS << Math.min(idleCount, 20));
+    }
+
+    /**
+     * Start running an executor on the pool. Its first turn calls init, which returns the loop of the executor.
+     */
+    public PooledExecutor submit(String name, Callable<Callable<Long>> init, JCQueue receiveQueue,
+                                 Thread.UncaughtExceptionHandler errorHandler) {
+        PooledExecutor executor = new PooledExecutor(name, init, receiveQueue, errorHandler);
+        receiveQueue.setConsumerWakeup(executor::wake);
+        executor.wake();
+        return executor;
+    }
+
+    public void registerMetrics(StormMetricRegistry metricRegistry) {
+        metricRegistry.gauge("__executor-pool-runnable", () -> (long) runQueue.size(), Constants.SYSTEM_COMPONENT_ID,
+                             (int) Constants.SYSTEM_TASK_ID);
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    private void runTurns() {
+        try {
+            while (true) {
+                runQueue.take().runTurn();
+            }
+        } catch (InterruptedException e) {
+            LOG.info("Executor pool thread {} interrupted", Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * Counts the msgs an executor consumes in a turn. {@link #start()} must be called at the beginning of every turn.
+     */
+    public static class TurnBudget implements ExitCondition {
+        private final int size;
+        private final ExitCondition exitCond;
+        private int left;
+
+        TurnBudget(int size, ExitCondition exitCond) {
+            this.size = size;
+            this.exitCond = exitCond;
+        }
+
+        public void start() {
+            left = size;
+        }
+
+        @Override
+        public boolean keepRunning() {
+            return exitCond.keepRunning() && left-- > 0;
+        }
+    }
+
+    /**
+     * An executor running on the pool.
+     */
+    public class PooledExecutor {
+        private static final int IDLE = 0;
+        private static final int QUEUED = 1; // queued or running
+        private final String name;
+        private final Callable<Callable<Long>> init;
+        private final JCQueue receiveQueue;
+        private final Thread.UncaughtExceptionHandler errorHandler;
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        private Callable<Long> loop;
+        private volatile Thread runner;
+        private volatile boolean cancelled;
+
+        PooledExecutor(String name, Callable<Callable<Long>> init, JCQueue receiveQueue, Thread.UncaughtExceptionHandler errorHandler) {
+            this.name = name;
+            this.init = init;
+            this.receiveQueue = receiveQueue;
+            this.errorHandler = errorHandler;
+        }
+
+        /**
+         * Queue the executor for a turn, unless it is queued already. Called by the producers of its receive queue.
+         */
+        void wake() {
+            if (state.get() == IDLE && state.compareAndSet(IDLE, QUEUED)) {
+                runQueue.add(this);
+            }
+        }
+
+        private void runTurn() {
+            if (cancelled) {
+                return;
+            }
+            long next;
+            runner = Thread.currentThread();
+            try {
+                if (loop == null) {
+                    loop = init.call();
+                }
+                next = loop.call();
+            } catch (Throwable t) {
+                // the executor is done, it is not queued again
+                if (Utils.exceptionCauseIsInstanceOf(InterruptedException.class, t)) {
+                    LOG.info("Executor {} interrupted", name);
+                } else {
+                    LOG.error("Async loop died!", t);
+                    errorHandler.uncaughtException(Thread.currentThread(), t);
+                }
+                return;
+            } finally {
+                runner = null;
+            }
+            if (next == RUN_AGAIN) {
+                runQueue.add(this);
+                return;
+            }
+            state.set(IDLE);
+            if (next > 0 && !timer.isShutdown()) {
+                try {
+                    timer.schedule(this::wake, next, TimeUnit.MICROSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // the pool is shutting down
+                }
+            }
+            // msgs published before the executor went idle did not queue it
+            if (receiveQueue.size() > 0) {
+                wake();
+            }
+        }
+
+        /**
+         * Stop giving the executor turns, waiting for up to waitMs for a turn in progress to end.
+         */
+        public void cancel(long waitMs) throws InterruptedException {
+            cancelled = true;
+            receiveQueue.setConsumerWakeup(null);
+            long end = System.currentTimeMillis() + waitMs;
+            while (runner != null && System.currentTimeMillis() < end) {
+                Thread.sleep(1);
+            }
+            if (runner != null) {
+                LOG.warn("Executor {} is still running ({} ms after it was cancelled). Stop waiting for it.", name, waitMs);
+            }
+        }
+    }
+}
@@ -40,10 +40,20 @@ public class ExecutorShutdown implements Shutdownable, IRunningExecutor {
     private final List<Utils.SmartThread> threads;
     private final ArrayList<Task> taskDatas;
     private final JCQueue receiveQueue;
+    private final ExecutorPool.PooledExecutor pooledExecutor;
 
     public ExecutorShutdown(Executor executor, List<Utils.SmartThread> threads, ArrayList<Task> taskDatas, JCQueue recvQueue) {
+        this(executor, threads, null, taskDatas, recvQueue);
+    }
+
+    /**
+     * Shutdown for an executor running on the threads given, or on the executor pool if pooledExecutor is not null.
+     */
+    public ExecutorShutdown(Executor executor, List<Utils.SmartThread> threads, ExecutorPool.PooledExecutor pooledExecutor,
+                            ArrayList<Task> taskDatas, JCQueue recvQueue) {
         this.executor = executor;
         this.threads = threads;
+        this.pooledExecutor = pooledExecutor;
         this.taskDatas = taskDatas;
         this.receiveQueue = recvQueue;
     }
@@ -83,6 +93,9 @@ public class ExecutorShutdown implements Shutdownable, IRunningExecutor {
         try {
             LOG.info("Shutting down executor " + executor.getComponentId() + ":" + executor.getExecutorId());
             executor.getReceiveQueue().close();
+            if (pooledExecutor != null) {
+                pooledExecutor.cancel(100);
+            }
             for (Utils.SmartThread t : threads) {
                 t.interrupt();
             }
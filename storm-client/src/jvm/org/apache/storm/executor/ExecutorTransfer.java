@@ -18,8 +18,7 @@ import java.util.Queue;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.storm.Config;
 import org.apache.storm.daemon.worker.WorkerState;
-import org.apache.storm.serialization.KryoTupleSerializer;
-import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.serialization.TupleSerializerPool;
 import org.apache.storm.tuple.AddressedTuple;
 import org.apache.storm.utils.JCQueue;
 import org.apache.storm.utils.ObjectReader;
@@ -32,8 +31,8 @@ public class ExecutorTransfer {
     private static final Logger LOG = LoggerFactory.getLogger(ExecutorTransfer.class);
 
     private final WorkerState workerData;
-    // one serializer per thread to avoid data corruption
-    private final ThreadLocal<KryoTupleSerializer> threadLocalSerializer;
+    // one serializer per thread to avoid data corruption, shared with the other executors in the worker
+    private final TupleSerializerPool serializerPool;
     private final boolean isDebug;
     private int indexingBase = 0;
     private ArrayList<JCQueue> localReceiveQueues; // [taskId-indexingBase] => queue : List of all recvQs local to this worker
@@ -42,8 +41,7 @@ public class ExecutorTransfer {
 
     public ExecutorTransfer(WorkerState workerData, Map<String, Object> topoConf) {
         this.workerData = workerData;
-        WorkerTopologyContext workerTopologyContext = workerData.getWorkerTopologyContext();
-        this.threadLocalSerializer = ThreadLocal.withInitial(() -> new KryoTupleSerializer(topoConf, workerTopologyContext));
+        this.serializerPool = workerData.getSerializerPool();
         this.isDebug = ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_DEBUG), false);
     }
 
@@ -65,7 +63,7 @@ public class ExecutorTransfer {
         if (localQueue != null) {
             return tryTransferLocal(addressedTuple, localQueue, pendingEmits);
         }
-        return workerData.tryTransferRemote(addressedTuple, pendingEmits, threadLocalSerializer.get());
+        return workerData.tryTransferRemote(addressedTuple, pendingEmits, serializerPool.getSerializer());
     }
 
 
@@ -98,7 +96,7 @@ public class ExecutorTransfer {
      * Returns false if unable to add to localQueue.
      */
     public boolean tryTransferLocal(AddressedTuple tuple, JCQueue localQueue, Queue<AddressedTuple> pendingEmits) {
-        workerData.checkSerialize(threadLocalSerializer.get(), tuple);
+        workerData.checkSerialize(serializerPool.getSerializer(), tuple);
         if (pendingEmits != null) {
             if (pendingEmits.isEmpty() && localQueue.tryPublish(tuple)) {
                 queuesToFlush.set(tuple.dest - indexingBase, localQueue);
@@ -16,16 +16,20 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Callable;
 import java.util.function.BooleanSupplier;
 import org.apache.storm.Config;
 import org.apache.storm.Constants;
 import org.apache.storm.ICredentialsListener;
+import org.apache.storm.daemon.AckBatches;
+import org.apache.storm.daemon.Acker;
 import org.apache.storm.daemon.StormCommon;
 import org.apache.storm.daemon.Task;
 import org.apache.storm.daemon.metrics.BuiltinMetricsUtil;
 import org.apache.storm.daemon.worker.WorkerState;
 import org.apache.storm.executor.Executor;
+import org.apache.storm.executor.ExecutorPool;
 import org.apache.storm.generated.NodeInfo;
 import org.apache.storm.hooks.info.BoltExecuteInfo;
 import org.apache.storm.messaging.IConnection;
@@ -36,11 +40,13 @@ import org.apache.storm.policy.WaitStrategyPark;
 import org.apache.storm.security.auth.IAutoCredentials;
 import org.apache.storm.stats.BoltExecutorStats;
 import org.apache.storm.stats.ClientStatsUtil;
+import org.apache.storm.task.IBatchExecuteBolt;
 import org.apache.storm.task.IBolt;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.AddressedTuple;
 import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.Values;
 import org.apache.storm.utils.ConfigUtils;
 import org.apache.storm.utils.JCQueue.ExitCondition;
 import org.apache.storm.utils.ObjectReader;
@@ -61,11 +67,17 @@ public class BoltExecutor extends Executor {
     private final IWaitStrategy backPressureWaitStrategy;  // employed when outbound path is congested
     private final BoltExecutorStats stats;
     private BoltOutputCollectorImpl outputCollector;
+    private final boolean isBatchingAcker;
+    private AckBatches ackBatches;
+    private final int executeBatchMax;
+    private ExecuteBatches executeBatches; // null when no task executes in batches
 
     public BoltExecutor(WorkerState workerData, List<Long> executorId, Map<String, String> credentials) {
         super(workerData, executorId, credentials, ClientStatsUtil.BOLT);
         this.executeSampler = ConfigUtils.mkStatsSampler(topoConf);
         this.isSystemBoltExecutor = (executorId == Constants.SYSTEM_EXECUTOR_ID);
+        this.isBatchingAcker = Acker.ACKER_COMPONENT_ID.equals(componentId) && Acker.isBatchEnabled(topoConf);
+        this.executeBatchMax = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_BOLT_EXECUTE_BATCH_MAX), 1);
         if (isSystemBoltExecutor) {
             this.consumeWaitStrategy = makeSystemBoltWaitStrategy();
         } else {
@@ -100,6 +112,13 @@ public class BoltExecutor extends Executor {
         }
 
         LOG.info("Preparing bolt {}:{}", componentId, getTaskIds());
+        if (ackingEnabled && Acker.isBatchEnabled(topoConf)
+            && workerTopologyContext.getComponentStreams(componentId).contains(Acker.ACKER_BATCH_STREAM_ID)) {
+            Task sender = idToTask.stream().filter(Objects::nonNull).findFirst().get();
+            this.ackBatches = new AckBatches(2, Acker.getBatchSize(topoConf),
+                (ackerTask, batch) -> sender.sendUnanchoredDirect(ackerTask, Acker.ACKER_BATCH_STREAM_ID, new Values(batch),
+                                                                  executorTransfer, pendingEmits));
+        }
         for (Task taskData : idToTask) {
             if (taskData == null) {
                 //This happens if the min id is too small
@@ -124,8 +143,15 @@ public class BoltExecutor extends Executor {
                 }
             }
 
-            this.outputCollector = new BoltOutputCollectorImpl(this, taskData, rand, hasEventLoggers, ackingEnabled, isDebug);
+            this.outputCollector = new BoltOutputCollectorImpl(this, taskData, rand, hasEventLoggers, ackingEnabled, isDebug,
+                                                               ackBatches);
             boltObject.prepare(topoConf, userContext, new OutputCollector(outputCollector));
+            if (boltObject instanceof IBatchExecuteBolt && executeBatchMax > 1) {
+                if (executeBatches == null) {
+                    executeBatches = new ExecuteBatches(idToTask.size(), idToTaskBase, executeBatchMax, this::executeDone);
+                }
+                executeBatches.setBolt(taskData.getTaskId(), (IBatchExecuteBolt) boltObject);
+            }
         }
         openOrPrepareWasCalled.set(true);
         LOG.info("Prepared bolt {}:{}", componentId, taskIds);
@@ -141,6 +167,9 @@ public class BoltExecutor extends Executor {
             int bpIdleCount = 0;
             int consumeIdleCounter = 0;
             private final ExitCondition tillNoPendingEmits = () -> pendingEmits.isEmpty();
+            // a pooled executor also gives up its thread after a batch of tuples
+            private final ExecutorPool.TurnBudget turnBudget = executorPool == null ? null
+                : executorPool.newTurnBudget(tillNoPendingEmits);
 
             @Override
             public Long call() throws Exception {
@@ -151,8 +180,17 @@ public class BoltExecutor extends Executor {
                         LOG.debug("Ending Back Pressure Wait stretch : {}", bpIdleCount);
                     }
                     bpIdleCount = 0;
-                    int consumeCount = receiveQueue.consume(BoltExecutor.this, tillNoPendingEmits);
+                    int consumeCount;
+                    if (turnBudget == null) {
+                        consumeCount = receiveQueue.consume(BoltExecutor.this, tillNoPendingEmits);
+                    } else {
+                        turnBudget.start();
+                        consumeCount = receiveQueue.consume(BoltExecutor.this, turnBudget);
+                    }
                     if (consumeCount == 0) {
+                        if (executorPool != null) {
+                            return ExecutorPool.WAIT_FOR_INPUT;
+                        }
                         if (consumeIdleCounter == 0) {
                             LOG.debug("Invoking consume wait strategy");
                         }
@@ -167,6 +205,9 @@ public class BoltExecutor extends Executor {
                         consumeIdleCounter = 0;
                     }
                 } else {
+                    if (executorPool != null) {
+                        return executorPool.idleMicros(bpIdleCount++);
+                    }
                     if (bpIdleCount == 0) { // check avoids multiple log msgs when spinning in a idle loop
                         LOG.debug("Experiencing Back Pressure. Entering BackPressure Wait. PendingEmits = {}", pendingEmits.size());
                     }
@@ -195,11 +236,19 @@ public class BoltExecutor extends Executor {
     public void tupleActionFn(int taskId, TupleImpl tuple) throws Exception {
         String streamId = tuple.getSourceStreamId();
         if (Constants.SYSTEM_FLUSH_STREAM_ID.equals(streamId)) {
+            // the output of pending batches must make it into this flush
+            executeBatches();
+            if (ackBatches != null) {
+                ackBatches.flush();
+            }
+            if (isBatchingAcker) {
+                // the acker sends its answers to the spouts in batches too
+                ((IBolt) idToTask.get(taskId - idToTaskBase).getTaskObject()).execute(tuple);
+            }
             outputCollector.flush();
         } else if (Constants.METRICS_TICK_STREAM_ID.equals(streamId)) {
             metricsTick(idToTask.get(taskId - idToTaskBase), tuple);
         } else {
-            IBolt boltObject = (IBolt) idToTask.get(taskId - idToTaskBase).getTaskObject();
             boolean isSampled = sampler.getAsBoolean();
             boolean isExecuteSampler = executeSampler.getAsBoolean();
             Long now = (isSampled || isExecuteSampler) ? Time.currentTimeMillis() : null;
@@ -209,25 +258,47 @@ public class BoltExecutor extends Executor {
             if (isExecuteSampler) {
                 tuple.setExecuteSampleStartTime(now);
             }
+            if (executeBatches != null && executeBatches.add(taskId, tuple)) {
+                return;
+            }
+            IBolt boltObject = (IBolt) idToTask.get(taskId - idToTaskBase).getTaskObject();
             boltObject.execute(tuple);
 
             Long ms = tuple.getExecuteSampleStartTime();
             long delta = (ms != null) ? Time.deltaMs(ms) : -1;
-            if (isDebug) {
-                LOG.info("Execute done TUPLE {} TASK: {} DELTA: {}", tuple, taskId, delta);
-            }
-            TopologyContext topologyContext = idToTask.get(taskId - idToTaskBase).getUserContext();
-            if (!topologyContext.getHooks().isEmpty()) {
-                // perf critical check to avoid unnecessary allocation
-                new BoltExecuteInfo(tuple, taskId, delta).applyOn(topologyContext);
-            }
-            if (delta >= 0) {
-                Task firstTask = idToTask.get(taskIds.get(0) - idToTaskBase);
-                stats.boltExecuteTuple(tuple.getSourceComponent(), tuple.getSourceStreamId(), delta,
-                        workerData.getUptime().upTime(), firstTask);
-                Task currentTask = idToTask.get(taskId - idToTaskBase);
-                currentTask.getTaskMetrics().boltExecuteTuple(tuple.getSourceComponent(), tuple.getSourceStreamId(), delta);
-            }
+            executeDone(taskId, tuple, delta);
+        }
+    }
+
+    /**
+     * Called at the end of every pass over the receive queue. Executes what the pass has batched.
+     */
+    @Override
+    public void flush() {
+        executeBatches();
+    }
+
+    private void executeBatches() {
+        if (executeBatches != null) {
+            executeBatches.executeAll();
+        }
+    }
+
+    private void executeDone(int taskId, TupleImpl tuple, long delta) {
+        if (isDebug) {
+            LOG.info("Execute done TUPLE {} TASK: {} DELTA: {}", tuple, taskId, delta);
+        }
+        TopologyContext topologyContext = idToTask.get(taskId - idToTaskBase).getUserContext();
+        if (!topologyContext.getHooks().isEmpty()) {
+            // perf critical check to avoid unnecessary allocation
+            new BoltExecuteInfo(tuple, taskId, delta).applyOn(topologyContext);
+        }
+        if (delta >= 0) {
+            Task firstTask = idToTask.get(taskIds.get(0) - idToTaskBase);
+            stats.boltExecuteTuple(tuple.getSourceComponent(), tuple.getSourceStreamId(), delta,
+                    workerData.getUptime().upTime(), firstTask);
+            Task currentTask = idToTask.get(taskId - idToTaskBase);
+            currentTask.getTaskMetrics().boltExecuteTuple(tuple.getSourceComponent(), tuple.getSourceStreamId(), delta);
         }
     }
 }
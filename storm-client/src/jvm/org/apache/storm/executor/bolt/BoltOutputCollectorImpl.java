@@ -13,14 +13,19 @@
 package org.apache.storm.executor.bolt;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.RandomAccess;
 import java.util.Set;
+import org.apache.storm.daemon.AckBatches;
 import org.apache.storm.daemon.Acker;
+import org.apache.storm.daemon.LocalAckLedger;
 import org.apache.storm.daemon.Task;
 import org.apache.storm.executor.ExecutorTransfer;
+import org.apache.storm.grouping.TaskIdList;
 import org.apache.storm.hooks.info.BoltAckInfo;
 import org.apache.storm.hooks.info.BoltFailInfo;
 import org.apache.storm.task.IOutputCollector;
@@ -30,6 +35,7 @@ import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.TupleImpl;
 import org.apache.storm.tuple.Values;
 import org.apache.storm.utils.Time;
+import org.apache.storm.utils.TupleUtils;
 import org.apache.storm.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,10 +51,22 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
     private final boolean isEventLoggers;
     private final ExecutorTransfer xsfer;
     private final boolean isDebug;
+    private final AckBatches ackBatches;
+    private final int[] ackerTasks;
+    private final LocalAckLedger ackLedger;
     private boolean ackingEnabled;
 
     public BoltOutputCollectorImpl(BoltExecutor executor, Task taskData, Random random,
                                    boolean isEventLoggers, boolean ackingEnabled, boolean isDebug) {
+        this(executor, taskData, random, isEventLoggers, ackingEnabled, isDebug, null);
+    }
+
+    /**
+     * Create a collector that sends its acks in batches, if ackBatches is not null. The batches are shared by all the tasks of the
+     * executor, and flushed by it.
+     */
+    public BoltOutputCollectorImpl(BoltExecutor executor, Task taskData, Random random,
+                                   boolean isEventLoggers, boolean ackingEnabled, boolean isDebug, AckBatches ackBatches) {
         this.executor = executor;
         this.task = taskData;
         this.taskId = taskData.getTaskId();
@@ -57,6 +75,10 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
         this.ackingEnabled = ackingEnabled;
         this.isDebug = isDebug;
         this.xsfer = executor.getExecutorTransfer();
+        this.ackBatches = ackBatches;
+        this.ackerTasks = ackBatches == null ? null
+            : TaskIdList.toArray(executor.getWorkerTopologyContext().getComponentTasks(Acker.ACKER_COMPONENT_ID));
+        this.ackLedger = ackingEnabled ? executor.getWorkerData().getLocalAckLedger() : null;
     }
 
     @Override
@@ -81,40 +103,83 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
 
     private List<Integer> boltEmit(String streamId, Collection<Tuple> anchors, List<Object> values,
                                    Integer targetTaskId) throws InterruptedException {
-        List<Integer> outTasks;
+        int[] outTasks;
         if (targetTaskId != null) {
-            outTasks = task.getOutgoingTasks(targetTaskId, streamId, values);
+            outTasks = task.getOutgoingTaskIds(targetTaskId, streamId, values);
         } else {
-            outTasks = task.getOutgoingTasks(streamId, values);
+            outTasks = task.getOutgoingTaskIds(streamId, values);
+        }
+        if (ackLedger != null && anchors != null && !ackLedger.isLocal(outTasks)) {
+            migrateTrees(anchors);
         }
 
-        for (int i = 0; i < outTasks.size(); ++i) {
-            Integer t = outTasks.get(i);
+        for (int i = 0; i < outTasks.length; ++i) {
             MessageId msgId;
             if (ackingEnabled && anchors != null) {
-                final Map<Long, Long> anchorsToIds = new HashMap<>();
-                for (Tuple a : anchors) {  // perf critical path. would be nice to avoid iterator allocation here and below
-                    Set<Long> rootIds = a.getMessageId().getAnchorsToIds().keySet();
-                    if (rootIds.size() > 0) {
-                        long edgeId = MessageId.generateId(random);
-                        ((TupleImpl) a).updateAckVal(edgeId);
-                        for (Long rootId : rootIds) {
-                            putXor(anchorsToIds, rootId, edgeId);
-                        }
-                    }
-                }
-                msgId = MessageId.makeId(anchorsToIds);
+                msgId = MessageId.makeId(anchorsToIds(anchors));
             } else {
                 msgId = MessageId.makeUnanchored();
             }
             TupleImpl tupleExt = new TupleImpl(
                 executor.getWorkerTopologyContext(), values, executor.getComponentId(), taskId, streamId, msgId);
-            xsfer.tryTransfer(new AddressedTuple(t, tupleExt), executor.getPendingEmits());
+            xsfer.tryTransfer(new AddressedTuple(outTasks[i], tupleExt), executor.getPendingEmits());
         }
         if (isEventLoggers) {
             task.sendToEventLogger(executor, values, executor.getComponentId(), null, random, executor.getPendingEmits());
         }
-        return outTasks;
+        return targetTaskId != null ? null : task.toTaskList(outTasks);
+    }
+
+    private Map<Long, Long> anchorsToIds(Collection<Tuple> anchors) {
+        if (anchors instanceof List && anchors instanceof RandomAccess) { // perf critical path, avoid iterator allocation if possible
+            List<Tuple> anchorList = (List<Tuple>) anchors;
+            if (anchorList.size() == 1) {
+                Tuple a = anchorList.get(0);
+                Map<Long, Long> rootsToIds = a.getMessageId().getAnchorsToIds();
+                if (rootsToIds.size() == 1) {
+                    long edgeId = MessageId.generateId(random);
+                    ((TupleImpl) a).updateAckVal(edgeId);
+                    return Collections.singletonMap(rootsToIds.keySet().iterator().next(), edgeId);
+                }
+            }
+            final Map<Long, Long> anchorsToIds = new HashMap<>();
+            for (int i = 0; i < anchorList.size(); i++) {
+                addAnchor(anchorsToIds, anchorList.get(i));
+            }
+            return anchorsToIds;
+        }
+        final Map<Long, Long> anchorsToIds = new HashMap<>();
+        for (Tuple a : anchors) {
+            addAnchor(anchorsToIds, a);
+        }
+        return anchorsToIds;
+    }
+
+    /**
+     * Hand the trees of the anchors over to the ackers, before the tuple leaves the worker.
+     */
+    private void migrateTrees(Collection<Tuple> anchors) {
+        for (Tuple a : anchors) {
+            for (Long rootId : a.getMessageId().getAnchorsToIds().keySet()) {
+                LocalAckLedger.Entry entry = ackLedger.migrate(rootId);
+                if (entry != null) {
+                    task.sendUnanchored(Acker.ACKER_INIT_STREAM_ID,
+                                        new Values(rootId, entry.getVal(), entry.getSpoutTask(), entry.getTimeDeltaMs()),
+                                        xsfer, executor.getPendingEmits());
+                }
+            }
+        }
+    }
+
+    private void addAnchor(Map<Long, Long> anchorsToIds, Tuple a) {
+        Set<Long> rootIds = a.getMessageId().getAnchorsToIds().keySet();
+        if (rootIds.size() > 0) {
+            long edgeId = MessageId.generateId(random);
+            ((TupleImpl) a).updateAckVal(edgeId);
+            for (Long rootId : rootIds) {
+                putXor(anchorsToIds, rootId, edgeId);
+            }
+        }
     }
 
     @Override
@@ -125,9 +190,27 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
         long ackValue = ((TupleImpl) input).getAckVal();
         Map<Long, Long> anchorsToIds = input.getMessageId().getAnchorsToIds();
         for (Map.Entry<Long, Long> entry : anchorsToIds.entrySet()) {
-            task.sendUnanchored(Acker.ACKER_ACK_STREAM_ID,
-                                new Values(entry.getKey(), Utils.bitXor(entry.getValue(), ackValue)),
-                                executor.getExecutorTransfer(), executor.getPendingEmits());
+            if (ackLedger != null) {
+                long rootId = entry.getKey();
+                LocalAckLedger.Entry tree = ackLedger.ack(rootId, Utils.bitXor(entry.getValue(), ackValue));
+                if (tree != null) {
+                    if (tree.isComplete()) {
+                        task.sendAckerReply(tree.getSpoutTask(), Acker.ACKER_ACK_STREAM_ID, rootId, tree.getTimeDeltaMs(),
+                                            xsfer, executor.getPendingEmits());
+                    }
+                    continue;
+                }
+            }
+            if (ackBatches != null) {
+                // same acker task as the fields grouping on the id would pick
+                long rootId = entry.getKey();
+                int ackerTask = ackerTasks[TupleUtils.chooseTaskIndex(rootId, ackerTasks.length)];
+                ackBatches.add(ackerTask, rootId, Utils.bitXor(entry.getValue(), ackValue));
+            } else {
+                task.sendUnanchored(Acker.ACKER_ACK_STREAM_ID,
+                                    new Values(entry.getKey(), Utils.bitXor(entry.getValue(), ackValue)),
+                                    executor.getExecutorTransfer(), executor.getPendingEmits());
+            }
         }
         long delta = tupleTimeDelta((TupleImpl) input);
         if (isDebug) {
@@ -151,6 +234,12 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
         }
         Set<Long> roots = input.getMessageId().getAnchors();
         for (Long root : roots) {
+            LocalAckLedger.Entry tree = ackLedger == null ? null : ackLedger.remove(root);
+            if (tree != null) {
+                task.sendAckerReply(tree.getSpoutTask(), Acker.ACKER_FAIL_STREAM_ID, root, tree.getTimeDeltaMs(),
+                                    xsfer, executor.getPendingEmits());
+                continue;
+            }
             task.sendUnanchored(Acker.ACKER_FAIL_STREAM_ID,
                                 new Values(root), executor.getExecutorTransfer(), executor.getPendingEmits());
         }
@@ -170,6 +259,11 @@ public class BoltOutputCollectorImpl implements IOutputCollector {
     public void resetTimeout(Tuple input) {
         Set<Long> roots = input.getMessageId().getAnchors();
         for (Long root : roots) {
+            int spoutTask = ackLedger == null ? -1 : ackLedger.resetTimeout(root);
+            if (spoutTask >= 0) {
+                task.sendAckerReply(spoutTask, Acker.ACKER_RESET_TIMEOUT_STREAM_ID, root, 0, xsfer, executor.getPendingEmits());
+                continue;
+            }
             task.sendUnanchored(Acker.ACKER_RESET_TIMEOUT_STREAM_ID, new Values(root),
                                 executor.getExecutorTransfer(), executor.getPendingEmits());
         }
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.executor.bolt;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.storm.task.IBatchExecuteBolt;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.utils.Time;
+
+/**
+ * The input tuples a bolt executor holds for the tasks whose bolt is an {@link IBatchExecuteBolt}. The batch of a task is executed as
+ * soon as it is full, or when {@link #executeAll()} is called.
+ *
+ * <p>Not thread safe, only the executor thread uses it.
+ */
+class ExecuteBatches {
+    private final int idToTaskBase;
+    private final int max;
+    private final ExecuteDone executeDone;
+    private final Batch[] batches; // indexed like idToTask, null for the tasks that do not execute in batches
+
+    ExecuteBatches(int numTasks, int idToTaskBase, int max, ExecuteDone executeDone) {
+        this.idToTaskBase = idToTaskBase;
+        this.max = max;
+        this.executeDone = executeDone;
+        this.batches = new Batch[numTasks];
+    }
+
+    void setBolt(int taskId, IBatchExecuteBolt bolt) {
+        batches[taskId - idToTaskBase] = new Batch(bolt, max);
+    }
+
+    /**
+     * Add a tuple to the batch of its task, and execute the batch if it is full.
+     *
+     * @return false if the task does not execute in batches, and the tuple was not added
+     */
+    boolean add(int taskId, TupleImpl tuple) {
+        Batch batch = batches[taskId - idToTaskBase];
+        if (batch == null) {
+            return false;
+        }
+        batch.tuples.add(tuple);
+        if (batch.tuples.size() >= max) {
+            execute(taskId, batch);
+        }
+        return true;
+    }
+
+    /**
+     * Execute all the pending batches. A batch whose bolt throws is dropped, the batches of the other tasks are executed on the next call.
+     */
+    void executeAll() {
+        for (int i = 0; i < batches.length; i++) {
+            Batch batch = batches[i];
+            if (batch != null && !batch.tuples.isEmpty()) {
+                execute(i + idToTaskBase, batch);
+            }
+        }
+    }
+
+    private void execute(int taskId, Batch batch) {
+        List<Tuple> tuples = batch.tuples;
+        long start = Time.currentTimeMillis();
+        try {
+            batch.bolt.execute(tuples);
+            // the execute latency of a sampled tuple is its share of the batch
+            long delta = Time.deltaMs(start) / tuples.size();
+            for (Tuple t : tuples) {
+                TupleImpl tuple = (TupleImpl) t;
+                executeDone.executeDone(taskId, tuple, tuple.getExecuteSampleStartTime() != null ? delta : -1);
+            }
+        } finally {
+            tuples.clear();
+        }
+    }
+
+    interface ExecuteDone {
+        void executeDone(int taskId, TupleImpl tuple, long delta);
+    }
+
+    private static class Batch {
+        private final IBatchExecuteBolt bolt;
+        private final ArrayList<Tuple> tuples;
+
+        Batch(IBatchExecuteBolt bolt, int max) {
+            this.bolt = bolt;
+            this.tuples = new ArrayList<>(Math.min(max, 1024));
+        }
+    }
+}
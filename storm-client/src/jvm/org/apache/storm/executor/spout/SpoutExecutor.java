@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.storm.Config;
 import org.apache.storm.Constants;
@@ -25,6 +26,7 @@ import org.apache.storm.daemon.StormCommon;
 import org.apache.storm.daemon.Task;
 import org.apache.storm.daemon.worker.WorkerState;
 import org.apache.storm.executor.Executor;
+import org.apache.storm.executor.ExecutorPool;
 import org.apache.storm.executor.TupleInfo;
 import org.apache.storm.hooks.info.SpoutAckInfo;
 import org.apache.storm.hooks.info.SpoutFailInfo;
@@ -41,7 +43,7 @@ import org.apache.storm.utils.ConfigUtils;
 import org.apache.storm.utils.MutableLong;
 import org.apache.storm.utils.ObjectReader;
 import org.apache.storm.utils.ReflectionUtils;
-import org.apache.storm.utils.RotatingMap;
+import org.apache.storm.utils.RotatingLongMap;
 import org.apache.storm.utils.Time;
 import org.apache.storm.utils.Utils;
 import org.slf4j.Logger;
@@ -62,7 +64,7 @@ public class SpoutExecutor extends Executor {
     private Integer maxSpoutPending;
     private List<ISpout> spouts;
     private List<SpoutOutputCollector> outputCollectors;
-    private RotatingMap<Long, TupleInfo> pending;
+    private RotatingLongMap<TupleInfo> pending;
     private long threadId = 0;
     private final RateCounter skippedMaxSpoutMs;
     private final RateCounter skippedInactiveMs;
@@ -95,7 +97,8 @@ public class SpoutExecutor extends Executor {
     }
 
     public void init(final ArrayList<Task> idToTask, int idToTaskBase) throws InterruptedException {
-        this.threadId = Thread.currentThread().getId();
+        // pooled executors move from thread to thread
+        this.threadId = executorPool == null ? Thread.currentThread().getId() : 0;
         executorTransfer.initLocalRecvQueues();
         workerReady.await();
         while (!stormActive.get()) {
@@ -112,9 +115,9 @@ public class SpoutExecutor extends Executor {
                 this.spouts.add((ISpout) task.getTaskObject());
             }
         }
-        this.pending = new RotatingMap<>(2, new RotatingMap.ExpiredCallback<Long, TupleInfo>() {
+        this.pending = new RotatingLongMap<>(2, new RotatingLongMap.ExpiredCallback<TupleInfo>() {
             @Override
-            public void expire(Long key, TupleInfo tupleInfo) {
+            public void expire(long key, TupleInfo tupleInfo) {
                 Long timeDelta = null;
                 if (tupleInfo.getTimestamp() != 0) {
                     timeDelta = Time.deltaMs(tupleInfo.getTimestamp());
@@ -156,13 +159,20 @@ public class SpoutExecutor extends Executor {
             int swIdleCount = 0; // counter for spout wait strategy
             int bpIdleCount = 0; // counter for back pressure wait strategy
             int rmspCount = 0;
+            // a pooled executor also gives up its thread after a batch of tuples
+            final ExecutorPool.TurnBudget turnBudget = executorPool == null ? null : executorPool.newTurnBudget(() -> true);
 
             @Override
             public Long call() throws Exception {
                 updateExecCredsIfRequired();
                 int receiveCount = 0;
                 if (recvqCheckSkips++ == recvqCheckSkipCountMax) {
-                    receiveCount = receiveQueue.consume(SpoutExecutor.this);
+                    if (executorPool == null) {
+                        receiveCount = receiveQueue.consume(SpoutExecutor.this);
+                    } else {
+                        turnBudget.start();
+                        receiveCount = receiveQueue.consume(SpoutExecutor.this, turnBudget);
+                    }
                     recvqCheckSkips = 0;
                 }
                 long currCount = emittedCount.get();
@@ -170,6 +180,10 @@ public class SpoutExecutor extends Executor {
                 boolean isActive = stormActive.get();
 
                 if (!isActive) {
+                    if (executorPool != null) {
+                        deactivateIfActive();
+                        return TimeUnit.MILLISECONDS.toMicros(100);
+                    }
                     inactiveExecute();
                     return 0L;
                 }
@@ -211,11 +225,19 @@ public class SpoutExecutor extends Executor {
                     return 0L;
                 }
                 if (!pendingEmits.isEmpty()) { // then facing backpressure
+                    if (executorPool != null) {
+                        return executorPool.idleMicros(bpIdleCount++);
+                    }
                     backPressureWaitStrategy();
                     return 0L;
                 }
                 bpIdleCount = 0;
                 if (noEmits) {
+                    if (executorPool != null) {
+                        emptyEmitStreak.increment();
+                        // with max spout pending reached, only acks coming in can let the spout emit again
+                        return reachedMaxSpoutPending ? ExecutorPool.WAIT_FOR_INPUT : executorPool.idleMicros(swIdleCount++);
+                    }
                     spoutWaitStrategy(reachedMaxSpoutPending, emptyStretch);
                     return 0L;
                 }
@@ -274,13 +296,17 @@ public class SpoutExecutor extends Executor {
     }
 
     private void inactiveExecute() throws InterruptedException {
+        deactivateIfActive();
+        long start = Time.currentTimeMillis();
+        Time.sleep(100);
+        skippedInactiveMs.inc(Time.currentTimeMillis() - start);
+    }
+
+    private void deactivateIfActive() {
         if (lastActive.get()) {
             lastActive.set(false);
             deactivateSpouts();
         }
-        long start = Time.currentTimeMillis();
-        Time.sleep(100);
-        skippedInactiveMs.inc(Time.currentTimeMillis() - start);
     }
 
     @Override
@@ -293,32 +319,42 @@ public class SpoutExecutor extends Executor {
         } else if (streamId.equals(Constants.METRICS_TICK_STREAM_ID)) {
             metricsTick(idToTask.get(taskId - idToTaskBase), tuple);
         } else if (streamId.equals(Acker.ACKER_RESET_TIMEOUT_STREAM_ID)) {
-            Long id = (Long) tuple.getValue(0);
+            long id = (Long) tuple.getValue(0);
             TupleInfo pendingForId = pending.get(id);
             if (pendingForId != null) {
                 pending.put(id, pendingForId);
             }
+        } else if (streamId.equals(Acker.ACKER_BATCH_STREAM_ID)) {
+            long[] batch = (long[]) tuple.getValue(0);
+            for (int i = 0; i + 2 < batch.length; i += 3) {
+                String ackStream = batch[i + 2] == Acker.BATCH_FAILED ? Acker.ACKER_FAIL_STREAM_ID : Acker.ACKER_ACK_STREAM_ID;
+                ackOrFail(taskId, ackStream, batch[i], batch[i + 1]);
+            }
         } else {
-            Long id = (Long) tuple.getValue(0);
+            long id = (Long) tuple.getValue(0);
             Long timeDeltaMs = (Long) tuple.getValue(1);
-            TupleInfo tupleInfo = pending.remove(id);
-            if (tupleInfo != null && tupleInfo.getMessageId() != null) {
-                if (taskId != tupleInfo.getTaskId()) {
-                    throw new RuntimeException("Fatal error, mismatched task ids: " + taskId + " " + tupleInfo.getTaskId());
-                }
-                Long timeDelta = null;
-                if (hasAckers) {
-                    long startTimeMs = tupleInfo.getTimestamp();
-                    if (startTimeMs != 0) {
-                        timeDelta = timeDeltaMs;
-                    }
-                }
-                if (streamId.equals(Acker.ACKER_ACK_STREAM_ID)) {
-                    ackSpoutMsg(this, idToTask.get(taskId - idToTaskBase), timeDelta, tupleInfo);
-                } else if (streamId.equals(Acker.ACKER_FAIL_STREAM_ID)) {
-                    failSpoutMsg(this, idToTask.get(taskId - idToTaskBase), timeDelta, tupleInfo, "FAIL-STREAM");
+            ackOrFail(taskId, streamId, id, timeDeltaMs);
+        }
+    }
+
+    private void ackOrFail(int taskId, String streamId, long id, Long timeDeltaMs) {
+        TupleInfo tupleInfo = pending.remove(id);
+        if (tupleInfo != null && tupleInfo.getMessageId() != null) {
+            if (taskId != tupleInfo.getTaskId()) {
+                throw new RuntimeException("Fatal error, mismatched task ids: " + taskId + " " + tupleInfo.getTaskId());
+            }
+            Long timeDelta = null;
+            if (hasAckers) {
+                long startTimeMs = tupleInfo.getTimestamp();
+                if (startTimeMs != 0) {
+                    timeDelta = timeDeltaMs;
                 }
             }
+            if (streamId.equals(Acker.ACKER_ACK_STREAM_ID)) {
+                ackSpoutMsg(this, idToTask.get(taskId - idToTaskBase), timeDelta, tupleInfo);
+            } else if (streamId.equals(Acker.ACKER_FAIL_STREAM_ID)) {
+                failSpoutMsg(this, idToTask.get(taskId - idToTaskBase), timeDelta, tupleInfo, "FAIL-STREAM");
+            }
         }
     }
 
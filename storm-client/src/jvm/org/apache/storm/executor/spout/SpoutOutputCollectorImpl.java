@@ -12,10 +12,10 @@
 
 package org.apache.storm.executor.spout;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import org.apache.storm.daemon.Acker;
+import org.apache.storm.daemon.LocalAckLedger;
 import org.apache.storm.daemon.Task;
 import org.apache.storm.executor.TupleInfo;
 import org.apache.storm.spout.ISpout;
@@ -25,8 +25,7 @@ import org.apache.storm.tuple.MessageId;
 import org.apache.storm.tuple.TupleImpl;
 import org.apache.storm.tuple.Values;
 import org.apache.storm.utils.MutableLong;
-import org.apache.storm.utils.RotatingMap;
-import org.apache.storm.utils.Utils;
+import org.apache.storm.utils.RotatingLongMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,15 +42,17 @@ public class SpoutOutputCollectorImpl implements ISpoutOutputCollector {
     private final Random random;
     private final Boolean isEventLoggers;
     private final Boolean isDebug;
-    private final RotatingMap<Long, TupleInfo> pending;
+    private final RotatingLongMap<TupleInfo> pending;
     private final long spoutExecutorThdId;
+    private final LocalAckLedger ackLedger;
+    private long[] edgeIds = new long[8];
     private TupleInfo globalTupleInfo = new TupleInfo();
     // thread safety: assumes Collector.emit*() calls are externally synchronized (if needed).
 
     @SuppressWarnings("unused")
     public SpoutOutputCollectorImpl(ISpout spout, SpoutExecutor executor, Task taskData,
                                     MutableLong emittedCount, boolean hasAckers, Random random,
-                                    Boolean isEventLoggers, Boolean isDebug, RotatingMap<Long, TupleInfo> pending) {
+                                    Boolean isEventLoggers, Boolean isDebug, RotatingLongMap<TupleInfo> pending) {
         this.executor = executor;
         this.taskData = taskData;
         this.taskId = taskData.getTaskId();
@@ -62,12 +63,13 @@ public class SpoutOutputCollectorImpl implements ISpoutOutputCollector {
         this.isDebug = isDebug;
         this.pending = pending;
         this.spoutExecutorThdId = executor.getThreadId();
+        this.ackLedger = executor.getWorkerData().getLocalAckLedger();
     }
 
     @Override
     public List<Integer> emit(String streamId, List<Object> tuple, Object messageId) {
         try {
-            return sendSpoutMsg(streamId, tuple, messageId, null);
+            return taskData.toTaskList(sendSpoutMsg(streamId, tuple, messageId, null));
         } catch (InterruptedException e) {
             LOG.warn("Spout thread interrupted during emit().");
             throw new RuntimeException(e);
@@ -106,30 +108,41 @@ public class SpoutOutputCollectorImpl implements ISpoutOutputCollector {
         executor.getReportError().report(error);
     }
 
-    private List<Integer> sendSpoutMsg(String stream, List<Object> values, Object messageId, Integer outTaskId) throws
+    private int[] sendSpoutMsg(String stream, List<Object> values, Object messageId, Integer outTaskId) throws
         InterruptedException {
         emittedCount.increment();
 
-        List<Integer> outTasks;
+        int[] outTasks;
         if (outTaskId != null) {
-            outTasks = taskData.getOutgoingTasks(outTaskId, stream, values);
+            outTasks = taskData.getOutgoingTaskIds(outTaskId, stream, values);
         } else {
-            outTasks = taskData.getOutgoingTasks(stream, values);
+            outTasks = taskData.getOutgoingTaskIds(stream, values);
         }
 
         final boolean needAck = (messageId != null) && hasAckers;
 
-        final List<Long> ackSeq = needAck ? new ArrayList<>() : null;
+        long ackVal = 0;
 
         final long rootId = needAck ? MessageId.generateId(random) : 0;
 
-        for (int i = 0; i < outTasks.size(); i++) { // perf critical path. don't use iterators.
-            Integer t = outTasks.get(i);
+        if (needAck) {
+            if (edgeIds.length < outTasks.length) {
+                edgeIds = new long[Math.max(outTasks.length, 2 * edgeIds.length)];
+            }
+            for (int i = 0; i < outTasks.length; i++) {
+                edgeIds[i] = MessageId.generateId(random);
+                ackVal ^= edgeIds[i];
+            }
+        }
+        // the ledger must know about the tree before any of its tuples can be acked
+        final boolean ackLocally = needAck && ackLedger != null && ackLedger.isLocal(outTasks);
+        final boolean ackedLocally = ackLocally && ackLedger.init(rootId, ackVal, this.taskId);
+
+        for (int i = 0; i < outTasks.length; i++) { // perf critical path. don't use iterators.
+            int t = outTasks[i];
             MessageId msgId;
             if (needAck) {
-                long as = MessageId.generateId(random);
-                msgId = MessageId.makeRootId(rootId, as);
-                ackSeq.add(as);
+                msgId = MessageId.makeRootId(rootId, edgeIds[i]);
             } else {
                 msgId = MessageId.makeUnanchored();
             }
@@ -158,12 +171,18 @@ public class SpoutOutputCollectorImpl implements ISpoutOutputCollector {
             }
 
             pending.put(rootId, info);
-            List<Object> ackInitTuple = new Values(rootId, Utils.bitXorVals(ackSeq), this.taskId);
-            taskData.sendUnanchored(Acker.ACKER_INIT_STREAM_ID, ackInitTuple, executor.getExecutorTransfer(), executor.getPendingEmits());
+            if (ackedLocally) {
+                taskData.sendAckerReply(this.taskId, Acker.ACKER_ACK_STREAM_ID, rootId, 0, executor.getExecutorTransfer(),
+                                        executor.getPendingEmits());
+            } else if (!ackLocally) {
+                List<Object> ackInitTuple = new Values(rootId, ackVal, this.taskId);
+                taskData.sendUnanchored(Acker.ACKER_INIT_STREAM_ID, ackInitTuple, executor.getExecutorTransfer(),
+                                        executor.getPendingEmits());
+            }
         } else if (messageId != null) {
             // Reusing TupleInfo object as we directly call executor.ackSpoutMsg() & are not sending msgs. perf critical
             if (isDebug) {
-                if (spoutExecutorThdId != Thread.currentThread().getId()) {
+                if (spoutExecutorThdId != 0 && spoutExecutorThdId != Thread.currentThread().getId()) {
                     throw new RuntimeException("Detected background thread emitting tuples for the spout. "
                             + "Spout Output Collector should only emit from the main spout executor thread.");
                 }
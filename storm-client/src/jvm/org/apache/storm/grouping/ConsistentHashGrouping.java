@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.grouping;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.utils.TupleUtils;
+
+/**
+ * A fields grouping that maps keys to tasks with jump consistent hashing instead of a modulo. When the number of target tasks changes,
+ * for instance when a topology is redeployed with a different parallelism, only the keys of the tasks that were added or removed move,
+ * about 1/N of them, so the caches and in-memory state of the other tasks stay valid. Removing tasks only ever moves the keys of the
+ * tasks with the highest ids.
+ *
+ * <p>The tasks are taken in the order of their ids, so the mapping only depends on the number of tasks of the target component. See
+ * Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm".
+ */
+public class ConsistentHashGrouping implements PrimitiveCustomStreamGrouping, Serializable {
+    private static final long serialVersionUID = -3389273218479212543L;
+    private final Fields fields;
+    private transient int[] keyIndices;
+    private transient int[][] targetTaskIds;
+
+    public ConsistentHashGrouping(Fields fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Jump consistent hash, the bucket in [0, numBuckets) of the key.
+     */
+    public static int jumpHash(long key, int numBuckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < numBuckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    @Override
+    public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+        Fields outFields = context.getComponentOutputFields(stream);
+        keyIndices = new int[fields.size()];
+        for (int i = 0; i < keyIndices.length; i++) {
+            keyIndices[i] = outFields.fieldIndex(fields.get(i));
+        }
+        List<Integer> sorted = new ArrayList<>(targetTasks);
+        Collections.sort(sorted);
+        targetTaskIds = new int[sorted.size()][];
+        for (int i = 0; i < targetTaskIds.length; i++) {
+            targetTaskIds[i] = new int[]{ sorted.get(i) };
+        }
+    }
+
+    @Override
+    public int[] chooseTaskIds(int taskId, List<Object> values) {
+        return targetTaskIds[jumpHash(mix(TupleUtils.keyHashCode(values, keyIndices)), targetTaskIds.length)];
+    }
+
+    /**
+     * Spread the 32 bits of the hash code over a long, jump hash needs all the bits of its key to be well distributed.
+     */
+    private static long mix(int hash) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
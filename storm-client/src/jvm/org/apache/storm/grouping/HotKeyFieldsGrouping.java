@@ -0,0 +1,284 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.grouping;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.metrics2.StormMetricRegistry;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.utils.TupleUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fields grouping that spreads the keys that are too hot for a single task over several tasks. Keys are sent to the same task as a
+ * fields grouping would send them, until they turn hot.
+ *
+ * <p>The grouping counts the keys it sees with a count-min sketch over windows of a fixed number of tuples. A key whose share of a window
+ * reaches the threshold is split during the next window: its tuples go round robin to as many consecutive tasks, starting from its fields
+ * grouping task, as it takes for each of them to get no more than an average task, up to a maximum. A key that cools down goes back to a
+ * single task. Like with {@link PartialKeyGrouping}, the downstream bolt must be able to merge partial results for a key.
+ *
+ * <p>Every instance decides on its own, from the tuples of the executor using it, so different source executors can split a key
+ * differently. The number of split keys is published as a metric of the source component, the keys themselves are only logged at
+ * debug level.
+ */
+public class HotKeyFieldsGrouping implements PrimitiveCustomStreamGrouping, Serializable {
+    public static final int DEFAULT_WINDOW_TUPLES = 10_000;
+    private static final long serialVersionUID = 4352896302178430791L;
+    private static final Logger LOG = LoggerFactory.getLogger(HotKeyFieldsGrouping.class);
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 1024;
+    private static final int[] SKETCH_SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+    private static final int MAX_CANDIDATES = 1024;
+
+    private final Fields fields;
+    private final double minShare;
+    private final int maxSplit;
+    private final int windowTuples;
+
+    private transient int[] keyIndices;
+    private transient int[][] targetTaskIds;
+    private transient int numTasks;
+    private transient int splitLimit;
+    private transient int hotCount;
+    private transient int[] sketch;
+    private transient int windowCount;
+    private transient int[] candidateHashes;
+    private transient Object[][] candidateKeys;
+    private transient int candidateCount;
+    private transient SplitTable splits;
+    private transient int roundRobin;
+    private transient volatile Map<List<Object>, Integer> splitKeys;
+
+    /**
+     * Split the keys that would keep a task busier than an average one, over any number of tasks.
+     */
+    public HotKeyFieldsGrouping(Fields fields) {
+        this(fields, 0, 0);
+    }
+
+    /**
+     * Create a grouping.
+     *
+     * @param fields the fields to group on
+     * @param minShare the share of the tuples of a window above which a key is split, or 0 for the share of an average task
+     * @param maxSplit the maximum number of tasks a key is split over, or 0 for all of them
+     */
+    public HotKeyFieldsGrouping(Fields fields, double minShare, int maxSplit) {
+        this(fields, minShare, maxSplit, DEFAULT_WINDOW_TUPLES);
+    }
+
+    /**
+     * Create a grouping.
+     *
+     * @param fields the fields to group on
+     * @param minShare the share of the tuples of a window above which a key is split, or 0 for the share of an average task
+     * @param maxSplit the maximum number of tasks a key is split over, or 0 for all of them
+     * @param windowTuples the number of tuples the hot keys are decided on
+     */
+    public HotKeyFieldsGrouping(Fields fields, double minShare, int maxSplit, int windowTuples) {
+        if (minShare < 0 || minShare >= 1) {
+            throw new IllegalArgumentException("The minimum share of a hot key must be in [0, 1), got " + minShare);
+        }
+        if (maxSplit < 0) {
+            throw new IllegalArgumentException("The maximum split of a hot key can't be negative, got " + maxSplit);
+        }
+        if (windowTuples <= 0) {
+            throw new IllegalArgumentException("The window must hold at least one tuple, got " + windowTuples);
+        }
+        this.fields = fields;
+        this.minShare = minShare;
+        this.maxSplit = maxSplit;
+        this.windowTuples = windowTuples;
+    }
+
+    @Override
+    public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+        Fields outFields = context.getComponentOutputFields(stream);
+        keyIndices = new int[fields.size()];
+        for (int i = 0; i < keyIndices.length; i++) {
+            keyIndices[i] = outFields.fieldIndex(fields.get(i));
+        }
+        numTasks = targetTasks.size();
+        targetTaskIds = new int[numTasks][];
+        for (int i = 0; i < numTasks; i++) {
+            targetTaskIds[i] = new int[]{ targetTasks.get(i) };
+        }
+        splitLimit = maxSplit == 0 ? numTasks : Math.min(maxSplit, numTasks);
+        double share = minShare == 0 ? 1.0 / numTasks : minShare;
+        hotCount = Math.max(1, (int) Math.ceil(share * windowTuples));
+        int maxCandidates = (int) Math.min(MAX_CANDIDATES, 2 * Math.ceil(1 / share) + 1);
+        sketch = new int[SKETCH_DEPTH * SKETCH_WIDTH];
+        candidateHashes = new int[maxCandidates];
+        candidateKeys = new Object[maxCandidates][];
+        splitKeys = Collections.emptyMap();
+    }
+
+    @Override
+    public int[] chooseTaskIds(int taskId, List<Object> values) {
+        final int hash = TupleUtils.keyHashCode(values, keyIndices);
+        int index = Math.floorMod(hash, numTasks);
+        SplitTable table = splits;
+        if (table != null) {
+            int ways = table.get(hash, values, keyIndices);
+            if (ways > 1) {
+                roundRobin = (roundRobin + 1) & Integer.MAX_VALUE;
+                index = (index + roundRobin % ways) % numTasks;
+            }
+        }
+        count(hash, values);
+        return targetTaskIds[index];
+    }
+
+    /**
+     * The keys split in the current window, as the list of their field values, with the number of tasks each is split over.
+     */
+    public Map<List<Object>, Integer> getSplitKeys() {
+        return splitKeys;
+    }
+
+    /**
+     * Publish the number of split keys of the given stream as a gauge of the source component.
+     */
+    public void registerMetrics(StormMetricRegistry metricRegistry, String componentId, int taskId, String streamId,
+                                String targetComponentId) {
+        metricRegistry.gauge("__hot-keys-count-" + streamId + "-" + targetComponentId, () -> getSplitKeys().size(), componentId, taskId);
+    }
+
+    private void count(int hash, List<Object> values) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            int cell = row * SKETCH_WIDTH + cell(hash, row);
+            estimate = Math.min(estimate, ++sketch[cell]);
+        }
+        if (estimate >= hotCount) {
+            addCandidate(hash, values);
+        }
+        if (++windowCount >= windowTuples) {
+            endWindow();
+        }
+    }
+
+    /**
+     * Keep the first key that turns hot for a hash. The sketch can't tell apart keys with the same hash, so the others stay on
+     * their fields grouping task.
+     */
+    private void addCandidate(int hash, List<Object> values) {
+        for (int i = 0; i < candidateCount; i++) {
+            if (candidateHashes[i] == hash) {
+                return;
+            }
+        }
+        if (candidateCount < candidateHashes.length) {
+            Object[] key = new Object[keyIndices.length];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = values.get(keyIndices[i]);
+            }
+            candidateHashes[candidateCount] = hash;
+            candidateKeys[candidateCount] = key;
+            candidateCount++;
+        }
+    }
+
+    private void endWindow() {
+        SplitTable next = new SplitTable(candidateCount);
+        Map<List<Object>, Integer> published = new LinkedHashMap<>();
+        for (int i = 0; i < candidateCount; i++) {
+            int hash = candidateHashes[i];
+            int estimate = Integer.MAX_VALUE;
+            for (int row = 0; row < SKETCH_DEPTH; row++) {
+                estimate = Math.min(estimate, sketch[row * SKETCH_WIDTH + cell(hash, row)]);
+            }
+            // enough tasks for none of them to get more than an average task from this key
+            int ways = Math.min(splitLimit, (int) Math.ceil((double) estimate * numTasks / windowCount));
+            if (ways > 1) {
+                next.put(hash, candidateKeys[i], ways);
+                published.put(Collections.unmodifiableList(Arrays.asList(candidateKeys[i])), ways);
+            }
+            candidateKeys[i] = null;
+        }
+        splits = published.isEmpty() ? null : next;
+        splitKeys = Collections.unmodifiableMap(published);
+        if (!published.isEmpty()) {
+            LOG.debug("Splitting hot keys {}", published);
+        }
+        Arrays.fill(sketch, 0);
+        windowCount = 0;
+        candidateCount = 0;
+    }
+
+    private static int cell(int hash, int row) {
+        int h = hash * SKETCH_SEEDS[row];
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        h ^= h >>> 15;
+        return h & (SKETCH_WIDTH - 1);
+    }
+
+    /**
+     * Number of tasks per split key, open addressing on the key hash. The key is compared too, so that a key that only shares its
+     * hash with a hot key keeps going to a single task. Never modified once published.
+     */
+    private static class SplitTable {
+        private final int[] hashes;
+        private final Object[][] keys;
+        private final int[] ways;
+        private final int mask;
+
+        SplitTable(int expected) {
+            int size = Integer.highestOneBit(Math.max(4, expected * 2) - 1) << 1;
+            hashes = new int[size];
+            keys = new Object[size][];
+            ways = new int[size];
+            mask = size - 1;
+        }
+
+        void put(int hash, Object[] key, int numWays) {
+            int i = hash & mask;
+            while (ways[i] != 0 && hashes[i] != hash) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            keys[i] = key;
+            ways[i] = numWays;
+        }
+
+        int get(int hash, List<Object> values, int[] keyIndices) {
+            int i = hash & mask;
+            while (ways[i] != 0) {
+                if (hashes[i] == hash) {
+                    return sameKey(keys[i], values, keyIndices) ? ways[i] : 0;
+                }
+                i = (i + 1) & mask;
+            }
+            return 0;
+        }
+
+        private static boolean sameKey(Object[] key, List<Object> values, int[] keyIndices) {
+            for (int i = 0; i < key.length; i++) {
+                if (!Objects.deepEquals(key[i], values.get(keyIndices[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
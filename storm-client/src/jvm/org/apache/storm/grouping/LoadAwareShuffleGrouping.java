@@ -21,7 +21,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.storm.Config;
 import org.apache.storm.generated.GlobalStreamId;
@@ -35,18 +35,29 @@ import org.apache.storm.utils.ReflectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class LoadAwareShuffleGrouping implements LoadAwareCustomStreamGrouping, Serializable {
+/**
+ * Shuffles over the target tasks in the closest {@link LocalityScope} that is not overloaded, weighting them by their load. The weights
+ * are turned into a ring of choices on every load refresh, which is published as a new immutable array, so emitting threads never wait
+ * on a refresh and never see a ring that is being rewritten. Choosing a task walks the ring without allocating.
+ *
+ * <p>With {@link Config#TOPOLOGY_LOADAWARE_SHUFFLE_TWO_CHOICES} set, a task is chosen by picking two random candidates in the current
+ * scope and sending to the one with the lower load in the {@link LoadMapping}, which follows load changes between refreshes.
+ */
+public class LoadAwareShuffleGrouping implements LoadAwareCustomStreamGrouping, PrimitiveCustomStreamGrouping, Serializable {
     private static final int MAX_WEIGHT = 100;
     private static final Logger LOG = LoggerFactory.getLogger(LoadAwareShuffleGrouping.class);
     private final Map<Integer, IndexAndWeights> orig = new HashMap<>();
     @VisibleForTesting
     List<Integer>[] rets;
+    private int[][] retIds;
     @VisibleForTesting
-    volatile int[] choices;
+    volatile Ring ring;
+    // only ever bounds checked locally, so concurrent emitters at worst pick the same slot
+    private int cursor;
     private int capacity;
-    private Random random;
-    private volatile int[] prepareChoices;
-    private AtomicInteger current;
+    private boolean twoChoices;
+    private int[] targetIds;
+    private volatile LoadMapping loadMapping;
     private LocalityScope currentScope;
     private NodeInfo sourceNodeInfo;
     private List<Integer> targetTasks;
@@ -60,7 +71,6 @@ public class LoadAwareShuffleGrouping implements LoadAwareCustomStreamGrouping,
 
     @Override
     public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
-        random = new Random();
         sourceNodeInfo = new NodeInfo(context.getAssignmentId(), Sets.newHashSet((long) context.getThisWorkerPort()));
         taskToNodePort = context.getTaskToNodePort();
         nodeToHost = context.getNodeToHost();
@@ -72,43 +82,67 @@ public class LoadAwareShuffleGrouping implements LoadAwareCustomStreamGrouping,
         currentScope = LocalityScope.WORKER_LOCAL;
         higherBound = ObjectReader.getDouble(conf.get(Config.TOPOLOGY_LOCALITYAWARE_HIGHER_BOUND));
         lowerBound = ObjectReader.getDouble(conf.get(Config.TOPOLOGY_LOCALITYAWARE_LOWER_BOUND));
+        twoChoices = ObjectReader.getBoolean(conf.get(Config.TOPOLOGY_LOADAWARE_SHUFFLE_TWO_CHOICES), false);
 
         rets = (List<Integer>[]) new List<?>[targetTasks.size()];
+        retIds = new int[targetTasks.size()][];
+        targetIds = new int[targetTasks.size()];
         int i = 0;
         for (int target : targetTasks) {
             rets[i] = Arrays.asList(target);
+            retIds[i] = new int[]{ target };
+            targetIds[i] = target;
             orig.put(target, new IndexAndWeights(i));
             i++;
         }
 
-        // can't leave choices to be empty, so initiate it similar as ShuffleGrouping
-        choices = new int[capacity];
-
-        current = new AtomicInteger(0);
-        // allocate another array to be switched
-        prepareChoices = new int[capacity];
         updateRing(null);
     }
 
     @Override
     public List<Integer> chooseTasks(int taskId, List<Object> values) {
-        int rightNow;
-        while (true) {
-            rightNow = current.incrementAndGet();
-            if (rightNow < capacity) {
-                return rets[choices[rightNow]];
-            } else if (rightNow == capacity) {
-                current.set(0);
-                return rets[choices[0]];
-            }
-            //race condition with another thread, and we lost
-            // try again
+        return rets[nextChoice()];
+    }
+
+    @Override
+    public int[] chooseTaskIds(int taskId, List<Object> values) {
+        return retIds[nextChoice()];
+    }
+
+    private int nextChoice() {
+        Ring r = ring;
+        LoadMapping load = loadMapping;
+        if (twoChoices && load != null && r.candidates.length > 1) {
+            return chooseLessLoaded(r.candidates, load);
         }
+        int[] choices = r.choices;
+        int i = cursor;
+        if (i >= choices.length) {
+            i = 0;
+        }
+        cursor = i + 1;
+        return choices[i];
+    }
+
+    /**
+     * Power of two choices: pick two distinct random candidates and keep the one with the lower load.
+     */
+    private int chooseLessLoaded(int[] candidates, LoadMapping load) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.length);
+        int second = random.nextInt(candidates.length - 1);
+        if (second >= first) {
+            second++;
+        }
+        int a = candidates[first];
+        int b = candidates[second];
+        return load.get(targetIds[a]) <= load.get(targetIds[b]) ? a : b;
     }
 
     @Override
     public void refreshLoad(LoadMapping loadMapping) {
         updateRing(loadMapping);
+        this.loadMapping = loadMapping;
     }
 
     private void refreshLocalityGroup() {
@@ -207,6 +241,8 @@ public class LoadAwareShuffleGrouping implements LoadAwareCustomStreamGrouping,
         long weightSum = targetsInScope.stream().mapToLong((target) -> orig.get(target).weight).sum();
         //Now we can calculate a percentage
 
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] prepareChoices = new int[capacity];
         int currentIdx = 0;
         if (weightSum > 0) {
             for (int target : targetsInScope) {
@@ -233,17 +269,17 @@ public class LoadAwareShuffleGrouping implements LoadAwareCustomStreamGrouping,
             }
         }
 
-        shuffleArray(prepareChoices);
-
-        // swapping two arrays
-        int[] tempForSwap = choices;
-        choices = prepareChoices;
-        prepareChoices = tempForSwap;
+        shuffleArray(prepareChoices, random);
 
-        current.set(-1);
+        int[] candidates = new int[targetsInScope.size()];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = orig.get(targetsInScope.get(i)).index;
+        }
+        // publish a new ring rather than rewriting the one emitters may be reading
+        ring = new Ring(prepareChoices, candidates);
     }
 
-    private void shuffleArray(int[] arr) {
+    private void shuffleArray(int[] arr, Random random) {
         int size = arr.length;
         for (int i = size; i > 1; i--) {
             swap(arr, i - 1, random.nextInt(i));
@@ -348,6 +384,20 @@ public class LoadAwareShuffleGrouping implements LoadAwareCustomStreamGrouping,
         }
     }
 
+    /**
+     * The choices of one load refresh, as indices into the target tasks. Never modified once published.
+     */
+    static class Ring {
+        final int[] choices;
+        // the targets in the current scope, for the power of two choices
+        final int[] candidates;
+
+        Ring(int[] choices, int[] candidates) {
+            this.choices = choices;
+            this.candidates = candidates;
+        }
+    }
+
     private static class IndexAndWeights {
         final int index;
         int weight;
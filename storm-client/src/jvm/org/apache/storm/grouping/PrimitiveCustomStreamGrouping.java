@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.grouping;
+
+import java.util.List;
+
+/**
+ * A {@link CustomStreamGrouping} that can choose its target tasks without boxing them. The executors call {@link #chooseTaskIds} on the
+ * emit path, so implementations should return arrays they precomputed in prepare rather than allocating a new one per tuple.
+ */
+public interface PrimitiveCustomStreamGrouping extends CustomStreamGrouping {
+
+    /**
+     * Choose the tasks to send the tuple to.
+     *
+     * @param values the values to group on
+     * @return the target task ids, which may be shared between calls and must not be modified by the caller
+     */
+    int[] chooseTaskIds(int taskId, List<Object> values);
+
+    @Override
+    default List<Integer> chooseTasks(int taskId, List<Object> values) {
+        return TaskIdList.of(chooseTaskIds(taskId, values));
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.grouping;
+
+import java.util.List;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.task.WorkerTopologyContext;
+
+/**
+ * Adapts a {@link CustomStreamGrouping} that only implements {@link CustomStreamGrouping#chooseTasks} to the primitive emit path. The
+ * chosen tasks are copied into a new array on every call, so groupings on hot streams should implement
+ * {@link PrimitiveCustomStreamGrouping} directly.
+ */
+public class PrimitiveGroupingAdapter implements PrimitiveCustomStreamGrouping {
+    private final CustomStreamGrouping delegate;
+
+    public PrimitiveGroupingAdapter(CustomStreamGrouping delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Return the grouping itself if it already implements the primitive emit path, or an adapter for it otherwise.
+     */
+    public static PrimitiveCustomStreamGrouping adapt(CustomStreamGrouping grouping) {
+        if (grouping instanceof PrimitiveCustomStreamGrouping) {
+            return (PrimitiveCustomStreamGrouping) grouping;
+        }
+        return new PrimitiveGroupingAdapter(grouping);
+    }
+
+    public CustomStreamGrouping getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+        delegate.prepare(context, stream, targetTasks);
+    }
+
+    @Override
+    public int[] chooseTaskIds(int taskId, List<Object> values) {
+        return TaskIdList.toArray(delegate.chooseTasks(taskId, values));
+    }
+
+    @Override
+    public List<Integer> chooseTasks(int taskId, List<Object> values) {
+        return delegate.chooseTasks(taskId, values);
+    }
+}
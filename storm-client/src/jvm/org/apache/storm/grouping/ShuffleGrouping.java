@@ -23,8 +23,9 @@ import org.apache.storm.generated.GlobalStreamId;
 import org.apache.storm.task.WorkerTopologyContext;
 
 
-public class ShuffleGrouping implements CustomStreamGrouping, Serializable {
+public class ShuffleGrouping implements PrimitiveCustomStreamGrouping, Serializable {
     private ArrayList<List<Integer>> choices;
+    private int[][] choiceIds;
     private AtomicInteger current;
 
     @Override
@@ -35,19 +36,32 @@ public class ShuffleGrouping implements CustomStreamGrouping, Serializable {
         }
         current = new AtomicInteger(0);
         Collections.shuffle(choices, new Random());
+        choiceIds = new int[choices.size()][];
+        for (int i = 0; i < choiceIds.length; i++) {
+            choiceIds[i] = new int[]{ choices.get(i).get(0) };
+        }
     }
 
     @Override
     public List<Integer> chooseTasks(int taskId, List<Object> values) {
+        return choices.get(nextIndex());
+    }
+
+    @Override
+    public int[] chooseTaskIds(int taskId, List<Object> values) {
+        return choiceIds[nextIndex()];
+    }
+
+    private int nextIndex() {
         int rightNow;
         int size = choices.size();
         while (true) {
             rightNow = current.incrementAndGet();
             if (rightNow < size) {
-                return choices.get(rightNow);
+                return rightNow;
             } else if (rightNow == size) {
                 current.set(0);
-                return choices.get(0);
+                return 0;
             }
         } // race condition with another thread, and we lost. try again
     }
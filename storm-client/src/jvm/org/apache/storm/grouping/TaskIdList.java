@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.grouping;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read only {@link List} view of an array of task ids. Boxes the ids one at a time, as they are read.
+ */
+public final class TaskIdList extends AbstractList<Integer> implements RandomAccess {
+    public static final int[] NO_TASKS = new int[0];
+
+    private final int[] taskIds;
+
+    private TaskIdList(int[] taskIds) {
+        this.taskIds = taskIds;
+    }
+
+    /**
+     * View the given ids as a list. The array is not copied, so it must not be modified afterwards.
+     */
+    public static List<Integer> of(int[] taskIds) {
+        return taskIds == null ? null : new TaskIdList(taskIds);
+    }
+
+    /**
+     * Copy the given list of task ids into an array.
+     */
+    public static int[] toArray(List<Integer> tasks) {
+        if (tasks == null) {
+            return null;
+        }
+        if (tasks instanceof TaskIdList) {
+            return ((TaskIdList) tasks).taskIds;
+        }
+        int size = tasks.size();
+        if (size == 0) {
+            return NO_TASKS;
+        }
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = tasks.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public Integer get(int index) {
+        return taskIds[index];
+    }
+
+    @Override
+    public int size() {
+        return taskIds.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (o instanceof Integer) {
+            int id = (Integer) o;
+            for (int i = 0; i < taskIds.length; i++) {
+                if (taskIds[i] == id) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(taskIds);
+    }
+}
@@ -22,6 +22,7 @@ import org.apache.storm.Config;
 import org.apache.storm.daemon.worker.WorkerState;
 import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.serialization.KryoTupleDeserializer;
+import org.apache.storm.serialization.TupleSerializerPool;
 import org.apache.storm.task.GeneralTopologyContext;
 import org.apache.storm.tuple.AddressedTuple;
 import org.apache.storm.tuple.Tuple;
@@ -36,13 +37,7 @@ public class DeserializingConnectionCallback implements IConnectionCallback, IMe
     private final Map<String, Object> conf;
     private final GeneralTopologyContext context;
 
-    private final ThreadLocal<KryoTupleDeserializer> des =
-        new ThreadLocal<KryoTupleDeserializer>() {
-            @Override
-            protected KryoTupleDeserializer initialValue() {
-                return new KryoTupleDeserializer(conf, context);
-            }
-        };
+    private final TupleSerializerPool serializerPool;
 
     // Track serialized size of messages.
     private final boolean sizeMetricsEnabled;
@@ -51,8 +46,14 @@ public class DeserializingConnectionCallback implements IConnectionCallback, IMe
 
     public DeserializingConnectionCallback(final Map<String, Object> conf, final GeneralTopologyContext context,
                                            WorkerState.ILocalTransferCallback callback) {
+        this(conf, context, callback, new TupleSerializerPool(conf, context));
+    }
+
+    public DeserializingConnectionCallback(final Map<String, Object> conf, final GeneralTopologyContext context,
+                                           WorkerState.ILocalTransferCallback callback, TupleSerializerPool serializerPool) {
         this.conf = conf;
         this.context = context;
+        this.serializerPool = serializerPool;
         cb = callback;
         sizeMetricsEnabled = ObjectReader.getBoolean(conf.get(Config.TOPOLOGY_SERIALIZED_MESSAGE_SIZE_METRICS), false);
 
@@ -60,13 +61,25 @@ public class DeserializingConnectionCallback implements IConnectionCallback, IMe
 
     @Override
     public void recv(List<TaskMessage> batch) {
-        KryoTupleDeserializer des = this.des.get();
+        KryoTupleDeserializer des = serializerPool.getDeserializer();
         ArrayList<AddressedTuple> ret = new ArrayList<>(batch.size());
-        for (TaskMessage message : batch) {
-            Tuple tuple = des.deserialize(message.message());
-            AddressedTuple addrTuple = new AddressedTuple(message.task(), tuple);
-            updateMetrics(tuple.getSourceTask(), message);
-            ret.add(addrTuple);
+        try {
+            for (TaskMessage message : batch) {
+                Tuple tuple;
+                if (message.buffer() != null) {
+                    tuple = des.deserialize(message.buffer());
+                } else {
+                    tuple = des.deserialize(message.message());
+                }
+                AddressedTuple addrTuple = new AddressedTuple(message.task(), tuple);
+                updateMetrics(tuple.getSourceTask(), message);
+                ret.add(addrTuple);
+            }
+        } finally {
+            // payloads received as views over the inbound buffer are only released once the whole batch is deserialized
+            for (TaskMessage message : batch) {
+                message.release();
+            }
         }
         cb.transfer(ret);
     }
@@ -100,7 +113,7 @@ public class DeserializingConnectionCallback implements IConnectionCallback, IMe
     protected void updateMetrics(int sourceTaskId, TaskMessage message) {
         if (sizeMetricsEnabled) {
             int dest = message.task();
-            int len = message.message().length;
+            int len = message.length();
             String key = Integer.toString(sourceTaskId) + "-" + Integer.toString(dest);
             byteCounts.computeIfAbsent(key, k -> new AtomicLong(0L)).addAndGet(len);
         }
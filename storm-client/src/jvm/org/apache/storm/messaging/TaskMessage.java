@@ -13,28 +13,77 @@
 package org.apache.storm.messaging;
 
 import java.nio.ByteBuffer;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.ByteBufUtil;
 
 public class TaskMessage {
     private int task;
     private byte[] message;
+    // pooled payload, set instead of message when the tuple was serialized into a direct buffer
+    private ByteBuf buffer;
 
     public TaskMessage(int task, byte[] message) {
         this.task = task;
         this.message = message;
     }
 
+    /**
+     * Create a message whose payload is held in a reference counted buffer. Ownership of the buffer passes to the message; it is
+     * released once the payload has been written out, copied via {@link #message()} or explicitly dropped via {@link #release()}.
+     */
+    public static TaskMessage fromBuffer(int task, ByteBuf buffer) {
+        TaskMessage ret = new TaskMessage(task, (byte[]) null);
+        ret.buffer = buffer;
+        return ret;
+    }
+
     public int task() {
         return task;
     }
 
+    /**
+     * Get the payload as a byte array. If the payload is held in a buffer it is copied out and the buffer is released.
+     */
     public byte[] message() {
+        if (message == null && buffer != null) {
+            message = ByteBufUtil.getBytes(buffer);
+            release();
+        }
         return message;
     }
 
+    /**
+     * Get the buffer holding the payload, or null if the payload is a plain byte array.
+     */
+    public ByteBuf buffer() {
+        return buffer;
+    }
+
+    /**
+     * Get the payload length in bytes without materializing a buffered payload.
+     */
+    public int length() {
+        if (buffer != null) {
+            return buffer.readableBytes();
+        }
+        return message == null ? 0 : message.length;
+    }
+
+    /**
+     * Release the buffer holding the payload, if any. Safe to call more than once.
+     */
+    public void release() {
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+    }
+
     public ByteBuffer serialize() {
-        ByteBuffer bb = ByteBuffer.allocate(message.length + 2);
+        byte[] payload = message();
+        ByteBuffer bb = ByteBuffer.allocate(payload.length + 2);
         bb.putShort((short) task);
-        bb.put(message);
+        bb.put(payload);
         return bb;
     }
 
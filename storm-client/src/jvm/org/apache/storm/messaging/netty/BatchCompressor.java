@@ -0,0 +1,263 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.messaging.netty;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import org.apache.storm.Config;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.PooledByteBufAllocator;
+import org.apache.storm.shade.io.netty.channel.Channel;
+import org.apache.storm.shade.io.netty.handler.codec.compression.Snappy;
+import org.apache.storm.shade.io.netty.util.AttributeKey;
+import org.apache.storm.utils.ObjectReader;
+
+/**
+ * Compresses message batches sent by a {@link Client}, once the server on the other end has advertised support for it with
+ * {@link ControlMessage#COMPRESSION_SUPPORTED}.
+ *
+ * <p>A compressed batch is encoded as: -701 ... short(2) len ... int(4) codec ... byte(1) dictionaryId ... int(4) uncompressedLen ...
+ * int(4) data ... byte[len - 9]. Once decompressed, data holds the regular encoding of the batch. Batches that would not get smaller are
+ * sent uncompressed.
+ *
+ * <p>The deflate codec can use a preset dictionary, which is trained from the first batches sent by this client. A dictionary is sent to
+ * the server as: -702 ... short(2) len ... int(4) dictionaryId ... int(4) dictionary ... byte[len - 4], ahead of the first batch that is
+ * compressed with it on a channel.
+ */
+class BatchCompressor {
+    static final short IDENTIFIER = (short) -701;
+    static final short DICTIONARY_IDENTIFIER = (short) -702;
+    static final int SNAPPY_CHUNK_SIZE = 32 * 1024;
+    static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    private static final AttributeKey<Boolean> COMPRESSION = AttributeKey.valueOf("storm.compression");
+    private static final AttributeKey<Integer> DICTIONARY = AttributeKey.valueOf("storm.compression.dictionary");
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final Codec codec;
+    private final int threshold;
+    private final int dictionarySamples;
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong cpuTimeNs = new AtomicLong();
+    private Deflater deflater;
+    private Snappy snappy;
+    private byte[] samples;
+    private int samplesLength;
+    private int samplesTaken;
+    private byte[] dictionary;
+    private int dictionaryId;
+
+    BatchCompressor(Map<String, Object> topoConf) {
+        this.codec = Codec.fromConfig(topoConf);
+        this.threshold = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_COMPRESSION_THRESHOLD_BYTES), 8192);
+        this.dictionarySamples = codec == Codec.DEFLATE
+            ? ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_COMPRESSION_DICTIONARY_SAMPLES), 0) : 0;
+    }
+
+    boolean isEnabled() {
+        return codec != Codec.NONE;
+    }
+
+    /**
+     * Called when the server on the given channel has advertised that it can decode compressed batches.
+     */
+    void compressionSupported(Channel channel) {
+        if (isEnabled()) {
+            channel.attr(COMPRESSION).set(true);
+        }
+    }
+
+    /**
+     * Wrap the batch so that it is compressed when written to the channel, if the channel supports it and the batch is large enough.
+     */
+    INettySerializable wrap(MessageBatch batch, Channel channel) {
+        if (!isEnabled() || batch.encodeLength() < threshold || !Boolean.TRUE.equals(channel.attr(COMPRESSION).get())) {
+            return batch;
+        }
+        return new CompressedMessageBatch(batch, channel);
+    }
+
+    /**
+     * The ratio of compressed to uncompressed bytes of all batches passed to the codec so far.
+     */
+    double compressionRatio() {
+        long uncompressed = uncompressedBytes.get();
+        return uncompressed == 0 ? 1.0 : (double) compressedBytes.get() / uncompressed;
+    }
+
+    /**
+     * The CPU time spent compressing, in milliseconds. It is 0 if the JVM does not measure the CPU time of threads.
+     */
+    long compressionTimeMs() {
+        return cpuTimeNs.get() / 1_000_000L;
+    }
+
+    private static long currentThreadCpuTimeNs() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? Math.max(0, THREAD_MX_BEAN.getCurrentThreadCpuTime()) : 0;
+    }
+
+    synchronized void close() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    private synchronized void write(MessageBatch batch, Channel channel, ByteBuf dest) {
+        ByteBuf plain = PooledByteBufAllocator.DEFAULT.heapBuffer(batch.encodeLength());
+        try {
+            batch.write(plain);
+            final long start = currentThreadCpuTimeNs();
+            if (samplesTaken < dictionarySamples) {
+                sample(plain);
+            }
+            if (dictionary != null && !Integer.valueOf(dictionaryId).equals(channel.attr(DICTIONARY).get())) {
+                dest.writeShort(DICTIONARY_IDENTIFIER);
+                dest.writeInt(4 + dictionary.length);
+                dest.writeInt(dictionaryId);
+                dest.writeBytes(dictionary);
+                channel.attr(DICTIONARY).set(dictionaryId);
+            }
+
+            final int frameStart = dest.writerIndex();
+            int uncompressedLength = plain.readableBytes();
+            dest.writeShort(IDENTIFIER);
+            dest.writeInt(0);
+            dest.writeByte(codec.id);
+            dest.writeInt(codec == Codec.DEFLATE && dictionary != null ? dictionaryId : 0);
+            dest.writeInt(uncompressedLength);
+            if (codec == Codec.SNAPPY) {
+                snappy(plain, dest);
+            } else {
+                deflate(plain, dest);
+            }
+
+            int frameLength = dest.writerIndex() - frameStart;
+            if (frameLength >= uncompressedLength) {
+                // not worth it, send the batch as is
+                dest.writerIndex(frameStart);
+                dest.writeBytes(plain, 0, uncompressedLength);
+                frameLength = uncompressedLength;
+            } else {
+                dest.setInt(frameStart + 2, frameLength - 6);
+            }
+            cpuTimeNs.addAndGet(currentThreadCpuTimeNs() - start);
+            uncompressedBytes.addAndGet(uncompressedLength);
+            compressedBytes.addAndGet(frameLength);
+        } finally {
+            plain.release();
+        }
+    }
+
+    private void snappy(ByteBuf plain, ByteBuf dest) {
+        if (snappy == null) {
+            snappy = new Snappy();
+        }
+        ByteBuf in = plain.duplicate();
+        while (in.isReadable()) {
+            int chunk = Math.min(SNAPPY_CHUNK_SIZE, in.readableBytes());
+            final int lengthIndex = dest.writerIndex();
+            dest.writeInt(0);
+            snappy.reset();
+            snappy.encode(in.readSlice(chunk), dest, chunk);
+            dest.setInt(lengthIndex, dest.writerIndex() - lengthIndex - 4);
+        }
+    }
+
+    private void deflate(ByteBuf plain, ByteBuf dest) {
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED, true);
+        }
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(plain.nioBuffer());
+        deflater.finish();
+        while (!deflater.finished()) {
+            dest.ensureWritable(Math.max(1024, plain.readableBytes() / 4));
+            ByteBuffer out = dest.nioBuffer(dest.writerIndex(), dest.writableBytes());
+            dest.writerIndex(dest.writerIndex() + deflater.deflate(out));
+        }
+    }
+
+    /**
+     * Keep a prefix of the batch as a dictionary sample. The dictionary is the concatenation of the samples, with the most recent last,
+     * since deflate finds matches at short distances more cheaply.
+     */
+    private void sample(ByteBuf plain) {
+        int sampleSize = Math.min(plain.readableBytes(), MAX_DICTIONARY_SIZE / dictionarySamples);
+        if (samples == null) {
+            samples = new byte[MAX_DICTIONARY_SIZE];
+        }
+        plain.getBytes(plain.readerIndex(), samples, samplesLength, sampleSize);
+        samplesLength += sampleSize;
+        if (++samplesTaken == dictionarySamples) {
+            dictionary = Arrays.copyOf(samples, samplesLength);
+            dictionaryId++;
+            samples = null;
+        }
+    }
+
+    enum Codec {
+        NONE(0),
+        SNAPPY(1),
+        DEFLATE(2);
+
+        private final byte id;
+
+        Codec(int id) {
+            this.id = (byte) id;
+        }
+
+        static Codec fromConfig(Map<String, Object> topoConf) {
+            Object codec = topoConf.get(Config.STORM_MESSAGING_NETTY_COMPRESSION_CODEC);
+            return codec == null ? NONE : valueOf(codec.toString().toUpperCase(Locale.ROOT));
+        }
+
+        static Codec fromId(byte id) {
+            for (Codec codec : values()) {
+                if (codec.id == id) {
+                    return codec;
+                }
+            }
+            throw new IllegalArgumentException("Unknown compression codec " + id);
+        }
+    }
+
+    private class CompressedMessageBatch implements INettySerializable {
+        private final MessageBatch batch;
+        private final Channel channel;
+
+        CompressedMessageBatch(MessageBatch batch, Channel channel) {
+            this.batch = batch;
+            this.channel = channel;
+        }
+
+        @Override
+        public int encodeLength() {
+            return batch.encodeLength() / 2;
+        }
+
+        @Override
+        public void write(ByteBuf dest) {
+            BatchCompressor.this.write(batch, channel, dest);
+        }
+    }
+}
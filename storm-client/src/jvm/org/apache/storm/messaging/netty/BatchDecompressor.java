@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.messaging.netty;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.ByteBufAllocator;
+import org.apache.storm.shade.io.netty.handler.codec.compression.DecompressionException;
+import org.apache.storm.shade.io.netty.handler.codec.compression.Snappy;
+
+/**
+ * Decompresses the batches written by a {@link BatchCompressor}. Holds the dictionaries received on a single channel.
+ */
+class BatchDecompressor {
+    private final Map<Integer, byte[]> dictionaries = new HashMap<>();
+    private Inflater inflater;
+    private Snappy snappy;
+
+    /**
+     * Read a dictionary frame, without the identifier and length fields.
+     */
+    void readDictionary(ByteBuf frame) {
+        int id = frame.readInt();
+        byte[] dictionary = new byte[frame.readableBytes()];
+        frame.readBytes(dictionary);
+        dictionaries.put(id, dictionary);
+    }
+
+    /**
+     * Decompress a compressed batch frame, without the identifier and length fields.
+     *
+     * @return a buffer holding the regular encoding of the batch, which the caller must release
+     */
+    ByteBuf decompress(ByteBuf frame, ByteBufAllocator alloc) throws DataFormatException {
+        BatchCompressor.Codec codec = BatchCompressor.Codec.fromId(frame.readByte());
+        int dictionaryId = frame.readInt();
+        int uncompressedLength = frame.readInt();
+        ByteBuf plain = alloc.heapBuffer(uncompressedLength);
+        try {
+            if (codec == BatchCompressor.Codec.SNAPPY) {
+                unsnappy(frame, plain);
+            } else if (codec == BatchCompressor.Codec.DEFLATE) {
+                inflate(frame, plain, dictionaryId, uncompressedLength);
+            } else {
+                throw new DecompressionException("Unexpected codec " + codec + " for a compressed batch");
+            }
+            if (plain.readableBytes() != uncompressedLength) {
+                throw new DecompressionException("Expected " + uncompressedLength + " bytes, decompressed " + plain.readableBytes());
+            }
+            return plain;
+        } catch (RuntimeException | DataFormatException e) {
+            plain.release();
+            throw e;
+        }
+    }
+
+    void close() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    private void unsnappy(ByteBuf frame, ByteBuf plain) {
+        if (snappy == null) {
+            snappy = new Snappy();
+        }
+        while (frame.isReadable()) {
+            ByteBuf chunk = frame.readSlice(frame.readInt());
+            snappy.reset();
+            snappy.decode(chunk, plain);
+        }
+    }
+
+    private void inflate(ByteBuf frame, ByteBuf plain, int dictionaryId, int uncompressedLength) throws DataFormatException {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        inflater.reset();
+        if (dictionaryId != 0) {
+            byte[] dictionary = dictionaries.get(dictionaryId);
+            if (dictionary == null) {
+                throw new DecompressionException("Unknown compression dictionary " + dictionaryId);
+            }
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(frame.nioBuffer());
+        while (plain.readableBytes() < uncompressedLength) {
+            ByteBuffer out = plain.nioBuffer(plain.writerIndex(), plain.writableBytes());
+            int inflated = inflater.inflate(out);
+            if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                break;
+            }
+            plain.writerIndex(plain.writerIndex() + inflated);
+        }
+    }
+}
@@ -49,6 +49,7 @@ import org.apache.storm.shade.io.netty.channel.ChannelOption;
 import org.apache.storm.shade.io.netty.channel.EventLoopGroup;
 import org.apache.storm.shade.io.netty.channel.WriteBufferWaterMark;
 import org.apache.storm.shade.io.netty.channel.socket.nio.NioSocketChannel;
+import org.apache.storm.shade.io.netty.util.AttributeKey;
 import org.apache.storm.shade.io.netty.util.HashedWheelTimer;
 import org.apache.storm.shade.io.netty.util.Timeout;
 import org.apache.storm.shade.io.netty.util.TimerTask;
@@ -80,6 +81,10 @@ public class Client extends ConnectionWithStatus implements ISaslClient {
     private static final String PREFIX = "Netty-Client-";
     private static final long NO_DELAY_MS = 0L;
     private static final Timer TIMER = new Timer("Netty-ChannelAlive-Timer", true);
+    /**
+     * Set on a channel once its server has advertised support for compact batches. A reconnect starts out without it.
+     */
+    private static final AttributeKey<Boolean> COMPACT_BATCH = AttributeKey.valueOf("storm.compact.batch");
     protected final String dstAddressPrefixedName;
     private final Map<String, Object> topoConf;
     private final StormBoundedExponentialBackoffRetry retryPolicy;
@@ -119,6 +124,8 @@ public class Client extends ConnectionWithStatus implements ISaslClient {
     private final MessageBuffer batcher;
     // wait strategy when the netty channel is not writable
     private final IWaitStrategy waitStrategy;
+    private final boolean compactBatch;
+    private final BatchCompressor compressor;
     private volatile Map<Integer, Double> serverLoad = null;
     /**
      * This flag is set to true if and only if a client instance is being closed.
@@ -163,6 +170,8 @@ public class Client extends ConnectionWithStatus implements ISaslClient {
         scheduleConnect(NO_DELAY_MS);
         int messageBatchSize = ObjectReader.getInt(topoConf.get(Config.STORM_NETTY_MESSAGE_BATCH_SIZE), 262144);
         batcher = new MessageBuffer(messageBatchSize);
+        compactBatch = ObjectReader.getBoolean(topoConf.get(Config.STORM_MESSAGING_NETTY_COMPACT_BATCH), false);
+        compressor = new BatchCompressor(topoConf);
         String clazz = (String) topoConf.get(Config.TOPOLOGY_BACKPRESSURE_WAIT_STRATEGY);
         if (clazz == null) {
             waitStrategy = new WaitStrategyProgressive();
@@ -216,6 +225,18 @@ public class Client extends ConnectionWithStatus implements ISaslClient {
             metricRegistry.gauge("__send-iconnection-lostOnSend-" + host + ":" + port, lostOnSend,
                     Constants.SYSTEM_COMPONENT_ID, (int) Constants.SYSTEM_TASK_ID);
             metrics.add(lostOnSend);
+
+            if (compressor.isEnabled()) {
+                Gauge<Double> compressionRatio = compressor::compressionRatio;
+                metricRegistry.gauge("__send-iconnection-compression-ratio-" + host + ":" + port, compressionRatio,
+                        Constants.SYSTEM_COMPONENT_ID, (int) Constants.SYSTEM_TASK_ID);
+                metrics.add(compressionRatio);
+
+                Gauge<Long> compressionTime = compressor::compressionTimeMs;
+                metricRegistry.gauge("__send-iconnection-compression-time-ms-" + host + ":" + port, compressionTime,
+                        Constants.SYSTEM_COMPONENT_ID, (int) Constants.SYSTEM_TASK_ID);
+                metrics.add(compressionTime);
+            }
         }
     }
 
@@ -351,6 +372,7 @@ public class Client extends ConnectionWithStatus implements ISaslClient {
                     LOG.debug("Experiencing Back Pressure from Netty. Entering BackPressure Wait");
                 }
                 if (!channel.isActive()) {
+                    batch.release();
                     throw new IOException("Connection disconnected");
                 }
                 idleCounter = waitStrategy.idle(idleCounter);
@@ -396,7 +418,7 @@ public class Client extends ConnectionWithStatus implements ISaslClient {
         if (msgs != null) {
             while (msgs.hasNext()) {
                 size++;
-                msgs.next();
+                msgs.next().release();
             }
         }
         return size;
@@ -416,7 +438,10 @@ public class Client extends ConnectionWithStatus implements ISaslClient {
         LOG.debug("writing {} messages to channel {}", batch.size(), channel.toString());
         pendingMessages.addAndGet(numMessages);
 
-        ChannelFuture future = channel.writeAndFlush(batch);
+        if (Boolean.TRUE.equals(channel.attr(COMPACT_BATCH).get())) {
+            batch.useCompactFormat();
+        }
+        ChannelFuture future = channel.writeAndFlush(compressor.wrap(batch, channel));
         future.addListener(new ChannelFutureListener() {
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
@@ -427,6 +452,7 @@ public class Client extends ConnectionWithStatus implements ISaslClient {
                 } else {
                     LOG.error("failed to send {} messages to {}: {}", numMessages, dstAddressPrefixedName,
                               future.cause());
+                    batch.release();
                     closeChannelAndReconnect(future.channel());
                     messagesLost.getAndAdd(numMessages);
                 }
@@ -435,6 +461,23 @@ public class Client extends ConnectionWithStatus implements ISaslClient {
         });
     }
 
+    /**
+     * Called when the server on the given channel has advertised that it can decode compact batches.
+     */
+    void compactBatchSupported(Channel channel) {
+        if (compactBatch) {
+            LOG.debug("Using compact batches on channel {}", channel);
+            channel.attr(COMPACT_BATCH).set(true);
+        }
+    }
+
+    /**
+     * Called when the server on the given channel has advertised that it can decode compressed batches.
+     */
+    void compressionSupported(Channel channel) {
+        compressor.compressionSupported(channel);
+    }
+
     /**
      * Schedule a reconnect if we closed a non-null channel, and acquired the right to provide a replacement by successfully setting a null
      * to the channel field.
@@ -469,6 +512,7 @@ public class Client extends ConnectionWithStatus implements ISaslClient {
             closing = true;
             waitForPendingMessagesToBeSent();
             closeChannel();
+            compressor.close();
 
             // stop tracking metrics for this client
             if (this.metricRegistry != null) {
@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.messaging.netty;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+
+/**
+ * Compact encoding of a {@link MessageBatch}, used on a connection once the server has advertised support for it with
+ * {@link ControlMessage#COMPACT_BATCH_SUPPORTED}.
+ *
+ * <p>A compact batch is encoded as: -700 ... short(2) len ... int(4) runs ... byte[len]. Messages are grouped by destination task,
+ * keeping their relative order per destination, and every group is split into runs of consecutive messages whose tuple payloads
+ * start with the same source task and stream id. Those two ids are written once per run instead of once per message:
+ * <pre>
+ *  destTask ... varint
+ *  srcTask + 1 ... varint (0 if the payloads of this run are stored unchanged)
+ *  streamId ... varint (only present if srcTask + 1 &gt; 0)
+ *  count ... varint
+ *  count * (len ... varint, payload ... byte[len])
+ * </pre>
+ * Varints use the same unsigned little endian base 128 encoding as kryo, so the hoisted prefix can be restored byte for byte.
+ */
+final class CompactBatchFormat {
+    static final short IDENTIFIER = (short) -700;
+    static final int HEADER_LENGTH = 6; // SHORT + INT
+
+    private CompactBatchFormat() {
+    }
+
+    /**
+     * Write the messages as one compact batch. Buffered payloads are released once written.
+     */
+    static void write(List<TaskMessage> msgs, ByteBuf dest) {
+        dest.writeShort(IDENTIFIER);
+        int lengthIndex = dest.writerIndex();
+        dest.writeInt(0);
+
+        int[] prefix = new int[3];
+        for (Map.Entry<Integer, List<TaskMessage>> entry : groupByTask(msgs).entrySet()) {
+            List<TaskMessage> taskMsgs = entry.getValue();
+            int start = 0;
+            while (start < taskMsgs.size()) {
+                boolean hoisted = readPrefix(taskMsgs.get(start), prefix);
+                int srcTask = prefix[0];
+                int streamId = prefix[1];
+                int prefixLength = hoisted ? prefix[2] : 0;
+                int end = start + 1;
+                while (end < taskMsgs.size()) {
+                    boolean nextHoisted = readPrefix(taskMsgs.get(end), prefix);
+                    if (nextHoisted != hoisted || (hoisted && (prefix[0] != srcTask || prefix[1] != streamId))) {
+                        break;
+                    }
+                    end++;
+                }
+
+                writeVarInt(dest, entry.getKey());
+                if (hoisted) {
+                    writeVarInt(dest, srcTask + 1);
+                    writeVarInt(dest, streamId);
+                } else {
+                    writeVarInt(dest, 0);
+                }
+                writeVarInt(dest, end - start);
+                for (int i = start; i < end; i++) {
+                    writePayload(dest, taskMsgs.get(i), prefixLength);
+                }
+                start = end;
+            }
+        }
+        dest.setInt(lengthIndex, dest.writerIndex() - lengthIndex - 4);
+    }
+
+    /**
+     * Decode the runs of a compact batch. The frame must hold exactly the bytes following the length field.
+     *
+     * @param frame the encoded runs
+     * @param sliceTaskMessages if true, payloads that did not have a prefix hoisted are emitted as retained slices of the frame
+     * @param out the list to add the decoded messages to
+     */
+    static void read(ByteBuf frame, boolean sliceTaskMessages, List<Object> out) {
+        while (frame.isReadable()) {
+            int task = readVarInt(frame);
+            int header = readVarInt(frame);
+            int streamId = header > 0 ? readVarInt(frame) : 0;
+            int prefixLength = header > 0 ? varIntSize(header - 1) + varIntSize(streamId) : 0;
+            int count = readVarInt(frame);
+            for (int i = 0; i < count; i++) {
+                int length = readVarInt(frame);
+                if (prefixLength == 0 && sliceTaskMessages) {
+                    out.add(TaskMessage.fromBuffer(task, frame.readRetainedSlice(length)));
+                } else if (prefixLength == 0) {
+                    byte[] bytes = new byte[length];
+                    frame.readBytes(bytes);
+                    out.add(new TaskMessage(task, bytes));
+                } else if (sliceTaskMessages) {
+                    ByteBuf payload = frame.alloc().buffer(prefixLength + length);
+                    writeVarInt(payload, header - 1);
+                    writeVarInt(payload, streamId);
+                    payload.writeBytes(frame, length);
+                    out.add(TaskMessage.fromBuffer(task, payload));
+                } else {
+                    byte[] bytes = new byte[prefixLength + length];
+                    int offset = writeVarInt(bytes, 0, header - 1);
+                    writeVarInt(bytes, offset, streamId);
+                    frame.readBytes(bytes, prefixLength, length);
+                    out.add(new TaskMessage(task, bytes));
+                }
+            }
+        }
+    }
+
+    private static Map<Integer, List<TaskMessage>> groupByTask(List<TaskMessage> msgs) {
+        Map<Integer, List<TaskMessage>> byTask = new LinkedHashMap<>();
+        for (TaskMessage msg : msgs) {
+            byTask.computeIfAbsent(msg.task(), k -> new ArrayList<>()).add(msg);
+        }
+        return byTask;
+    }
+
+    /**
+     * Parse the source task and stream id that start every serialized tuple into prefix[0] and prefix[1], and their encoded length
+     * into prefix[2]. Returns false if the payload does not start with two canonically encoded, non-negative varints.
+     */
+    private static boolean readPrefix(TaskMessage msg, int[] prefix) {
+        int length = msg.length();
+        int offset = 0;
+        for (int field = 0; field < 2; field++) {
+            int value = 0;
+            int size = 0;
+            int b;
+            do {
+                if (offset >= length || size == 5) {
+                    return false;
+                }
+                b = byteAt(msg, offset++);
+                value |= (b & 0x7F) << (7 * size++);
+            } while ((b & 0x80) != 0);
+            if (value < 0 || varIntSize(value) != size) {
+                return false;
+            }
+            prefix[field] = value;
+        }
+        prefix[2] = offset;
+        return true;
+    }
+
+    private static int byteAt(TaskMessage msg, int index) {
+        ByteBuf buffer = msg.buffer();
+        if (buffer != null) {
+            return buffer.getByte(buffer.readerIndex() + index);
+        }
+        return msg.message()[index];
+    }
+
+    private static void writePayload(ByteBuf dest, TaskMessage msg, int skip) {
+        int length = msg.length() - skip;
+        writeVarInt(dest, length);
+        ByteBuf buffer = msg.buffer();
+        if (buffer != null) {
+            dest.writeBytes(buffer, buffer.readerIndex() + skip, length);
+            msg.release();
+        } else if (length > 0) {
+            dest.writeBytes(msg.message(), skip, length);
+        }
+    }
+
+    static int varIntSize(int value) {
+        if ((value >>> 7) == 0) {
+            return 1;
+        } else if ((value >>> 14) == 0) {
+            return 2;
+        } else if ((value >>> 21) == 0) {
+            return 3;
+        } else if ((value >>> 28) == 0) {
+            return 4;
+        }
+        return 5;
+    }
+
+    static void writeVarInt(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    private static int writeVarInt(byte[] bytes, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[offset++] = (byte) value;
+        return offset;
+    }
+
+    static int readVarInt(ByteBuf buf) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buf.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
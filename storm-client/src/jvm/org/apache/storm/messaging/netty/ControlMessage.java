@@ -21,7 +21,9 @@ public enum ControlMessage implements INettySerializable {
     OK_RESPONSE((short) -200),
     FAILURE_RESPONSE((short) -400),
     SASL_TOKEN_MESSAGE_REQUEST((short) -202),
-    SASL_COMPLETE_REQUEST((short) -203);
+    SASL_COMPLETE_REQUEST((short) -203),
+    COMPACT_BATCH_SUPPORTED((short) -204),
+    COMPRESSION_SUPPORTED((short) -205);
 
     private final short code;
 
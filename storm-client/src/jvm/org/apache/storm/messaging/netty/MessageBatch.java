@@ -21,6 +21,7 @@ class MessageBatch implements INettySerializable {
     private final int bufferSize;
     private final ArrayList<TaskMessage> msgs;
     private int encodedLength;
+    private boolean compact;
 
     MessageBatch(int bufferSize) {
         this.bufferSize = bufferSize;
@@ -42,11 +43,7 @@ class MessageBatch implements INettySerializable {
             return 0;
         }
 
-        int size = 6; //INT + SHORT
-        if (taskMsg.message() != null) {
-            size += taskMsg.message().length;
-        }
-        return size;
+        return 6 + taskMsg.length(); //INT + SHORT + payload
     }
 
     /**
@@ -73,9 +70,20 @@ class MessageBatch implements INettySerializable {
         return msgs.size();
     }
 
+    /**
+     * Encode this batch with {@link CompactBatchFormat} instead of one frame per message. Only valid on connections where the
+     * server has advertised support for it.
+     */
+    void useCompactFormat() {
+        compact = true;
+    }
+
+    /**
+     * The length of the per-message encoding. The compact encoding is normally smaller, so this is used as its size estimate too.
+     */
     @Override
     public int encodeLength() {
-        return encodedLength;
+        return compact ? encodedLength + CompactBatchFormat.HEADER_LENGTH : encodedLength;
     }
     
     /**
@@ -83,6 +91,11 @@ class MessageBatch implements INettySerializable {
      */
     @Override
     public void write(ByteBuf dest) {
+        if (compact) {
+            CompactBatchFormat.write(msgs, dest);
+            return;
+        }
+
         for (TaskMessage msg : msgs) {
             writeTaskMessage(dest, msg);
         }
@@ -91,16 +104,22 @@ class MessageBatch implements INettySerializable {
         ControlMessage.EOB_MESSAGE.write(dest);
     }
 
+    /**
+     * Release any pooled payload buffers that have not been written out yet, e.g. because the write of this batch failed.
+     */
+    void release() {
+        for (TaskMessage msg : msgs) {
+            msg.release();
+        }
+    }
+
     /**
      * write a TaskMessage into a buffer.
      *
      * <p>Each TaskMessage is encoded as: task ... short(2) len ... int(4) payload ... byte[]     *
      */
     private void writeTaskMessage(ByteBuf buf, TaskMessage message) {
-        int payloadLen = 0;
-        if (message.message() != null) {
-            payloadLen = message.message().length;
-        }
+        int payloadLen = message.length();
 
         int taskId = message.task();
         if (taskId > Short.MAX_VALUE) {
@@ -109,7 +128,11 @@ class MessageBatch implements INettySerializable {
 
         buf.writeShort((short) taskId);
         buf.writeInt(payloadLen);
-        if (payloadLen > 0) {
+        ByteBuf payload = message.buffer();
+        if (payload != null) {
+            buf.writeBytes(payload, payload.readerIndex(), payloadLen);
+            message.release();
+        } else if (payloadLen > 0) {
             buf.writeBytes(message.message());
         }
     }
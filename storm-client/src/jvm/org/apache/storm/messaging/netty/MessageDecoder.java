@@ -26,9 +26,22 @@ public class MessageDecoder extends ByteToMessageDecoder {
 
     private static final Logger LOG = LoggerFactory.getLogger(MessageDecoder.class);
     private final KryoValuesDeserializer deser;
+    private final boolean sliceTaskMessages;
+    private BatchDecompressor decompressor;
 
     public MessageDecoder(KryoValuesDeserializer deser) {
+        this(deser, false);
+    }
+
+    /**
+     * Create a decoder.
+     * @param deser deserializer for control payloads
+     * @param sliceTaskMessages if true, task message payloads are emitted as retained slices of the inbound buffer instead of being
+     *     copied into a byte[]. The consumer is responsible for releasing them.
+     */
+    public MessageDecoder(KryoValuesDeserializer deser, boolean sliceTaskMessages) {
         this.deser = deser;
+        this.sliceTaskMessages = sliceTaskMessages;
     }
 
     /*
@@ -38,6 +51,8 @@ public class MessageDecoder extends ByteToMessageDecoder {
      *  task (>=0) ... short(2)
      *  len ... int(4)
      *  payload ... byte[]     *
+     * A compact batch of TaskMessages is encoded as described in CompactBatchFormat.
+     * Compressed batches and their dictionaries are encoded as described in BatchCompressor.
      */
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) throws Exception {
@@ -70,6 +85,7 @@ public class MessageDecoder extends ByteToMessageDecoder {
                 if (controlMessage == ControlMessage.EOB_MESSAGE) {
                     continue;
                 } else {
+                    flush(ret, out);
                     out.add(controlMessage);
                     return;
                 }
@@ -81,12 +97,13 @@ public class MessageDecoder extends ByteToMessageDecoder {
                 if (buf.readableBytes() < 4) {
                     //need more data
                     buf.resetReaderIndex();
-                    return;
+                    break;
                 }
 
                 // Read the length field.
                 int length = buf.readInt();
                 if (length <= 0) {
+                    flush(ret, out);
                     out.add(new SaslMessageToken(null));
                     return;
                 }
@@ -95,7 +112,7 @@ public class MessageDecoder extends ByteToMessageDecoder {
                 if (buf.readableBytes() < length) {
                     // The whole bytes were not received yet - return null.
                     buf.resetReaderIndex();
-                    return;
+                    break;
                 }
 
                 // There's enough bytes in the buffer. Read it.  
@@ -103,6 +120,7 @@ public class MessageDecoder extends ByteToMessageDecoder {
                 buf.readBytes(bytes);
                 // Successfully decoded a frame.
                 // Return a SaslTokenMessageRequest object
+                flush(ret, out);
                 out.add(new SaslMessageToken(bytes));
                 return;
             }
@@ -113,21 +131,76 @@ public class MessageDecoder extends ByteToMessageDecoder {
                 if (available < 4) {
                     //Need  more data
                     buf.resetReaderIndex();
-                    return;
+                    break;
                 }
                 int dataLen = buf.readInt();
                 if (available < 4 + dataLen) {
                     // need more data
                     buf.resetReaderIndex();
-                    return;
+                    break;
                 }
                 byte[] bytes = new byte[dataLen];
                 buf.readBytes(bytes);
+                flush(ret, out);
                 out.add(BackPressureStatus.read(bytes, deser));
                 return;
             }
 
-            // case 4: task Message
+            // case 4: compressed batch or compression dictionary
+            if (code == BatchCompressor.IDENTIFIER || code == BatchCompressor.DICTIONARY_IDENTIFIER) {
+                if (buf.readableBytes() < 4) {
+                    // need more data
+                    buf.resetReaderIndex();
+                    break;
+                }
+                int frameLength = buf.readInt();
+                if (buf.readableBytes() < frameLength) {
+                    // need more data
+                    buf.resetReaderIndex();
+                    break;
+                }
+                if (decompressor == null) {
+                    decompressor = new BatchDecompressor();
+                }
+                ByteBuf frame = buf.readSlice(frameLength);
+                available = buf.readableBytes();
+                if (code == BatchCompressor.DICTIONARY_IDENTIFIER) {
+                    decompressor.readDictionary(frame);
+                    continue;
+                }
+                // keep the messages in order, the decompressed batch is decoded into its own list
+                if (!ret.isEmpty()) {
+                    out.add(ret);
+                    ret = new ArrayList<>();
+                }
+                ByteBuf plain = decompressor.decompress(frame, ctx.alloc());
+                try {
+                    decode(ctx, plain, out);
+                } finally {
+                    plain.release();
+                }
+                continue;
+            }
+
+            // case 5: compact batch of task messages
+            if (code == CompactBatchFormat.IDENTIFIER) {
+                if (buf.readableBytes() < 4) {
+                    // need more data
+                    buf.resetReaderIndex();
+                    break;
+                }
+                int frameLength = buf.readInt();
+                if (buf.readableBytes() < frameLength) {
+                    // need more data
+                    buf.resetReaderIndex();
+                    break;
+                }
+                CompactBatchFormat.read(buf.readSlice(frameLength), sliceTaskMessages, ret);
+                available = buf.readableBytes();
+                continue;
+            }
+
+            // case 6: task Message
 
             // Make sure that we have received at least an integer (length)
             if (available < 4) {
@@ -154,20 +227,38 @@ public class MessageDecoder extends ByteToMessageDecoder {
             }
             available -= length;
 
-            // There's enough bytes in the buffer. Read it.
-            byte[] bytes = new byte[length];
-            buf.readBytes(bytes);
-
             // Successfully decoded a frame.
             // Return a TaskMessage object
-            ret.add(new TaskMessage(code, bytes));
+            if (sliceTaskMessages) {
+                ret.add(TaskMessage.fromBuffer(code, buf.readRetainedSlice(length)));
+            } else {
+                // There's enough bytes in the buffer. Read it.
+                byte[] bytes = new byte[length];
+                buf.readBytes(bytes);
+                ret.add(new TaskMessage(code, bytes));
+            }
         }
 
+        flush(ret, out);
+    }
+
+    /**
+     * Hand the task messages decoded so far on ahead of whatever follows them. With sliced task messages the list holds retained
+     * buffers, so it must never be dropped.
+     */
+    private static void flush(List<Object> ret, List<Object> out) {
         if (!ret.isEmpty()) {
             out.add(ret);
         }
     }
 
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        if (decompressor != null) {
+            decompressor.close();
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         LOG.error("Exception thrown while decoding messages in channel {}; exception: ", ctx.channel(), cause);
@@ -66,6 +66,8 @@ class Server extends ConnectionWithStatus implements IStatefulObject, ISaslServe
     private final Supplier<Object> newConnectionResponse;
     private volatile boolean closing = false;
     private final boolean isNettyAuthRequired;
+    private final boolean compactBatch;
+    private final boolean compression;
 
     /**
      * Starts Netty at the given port.
@@ -82,6 +84,8 @@ class Server extends ConnectionWithStatus implements IStatefulObject, ISaslServe
         ser = new KryoValuesSerializer(topoConf);
         this.cb = cb;
         this.newConnectionResponse = newConnectionResponse;
+        this.compactBatch = ObjectReader.getBoolean(topoConf.get(Config.STORM_MESSAGING_NETTY_COMPACT_BATCH), false);
+        this.compression = BatchCompressor.Codec.fromConfig(topoConf) != BatchCompressor.Codec.NONE;
 
         // Configure the server.
         int bufferSize = ObjectReader.getInt(topoConf.get(Config.STORM_MESSAGING_NETTY_BUFFER_SIZE));
@@ -142,7 +146,11 @@ class Server extends ConnectionWithStatus implements IStatefulObject, ISaslServe
      * enqueue a received message.
      */
     protected void enqueue(List<TaskMessage> msgs, String from) throws InterruptedException {
-        if (null == msgs || msgs.isEmpty() || closing) {
+        if (null == msgs || msgs.isEmpty()) {
+            return;
+        }
+        if (closing) {
+            msgs.forEach(TaskMessage::release);
             return;
         }
         addReceiveCount(from, msgs.size());
@@ -294,6 +302,12 @@ class Server extends ConnectionWithStatus implements IStatefulObject, ISaslServe
         } else {
             LOG.debug("The channel {} is active", c);
         }
+        if (compactBatch) {
+            c.writeAndFlush(ControlMessage.COMPACT_BATCH_SUPPORTED, c.voidPromise());
+        }
+        if (compression) {
+            c.writeAndFlush(ControlMessage.COMPRESSION_SUPPORTED, c.voidPromise());
+        }
         if (newConnectionResponse != null) {
             c.writeAndFlush(newConnectionResponse.get(), c.voidPromise());
         }
@@ -43,6 +43,10 @@ public class StormClientHandler extends ChannelInboundHandlerAdapter {
             ControlMessage msg = (ControlMessage) message;
             if (msg == ControlMessage.FAILURE_RESPONSE) {
                 LOG.info("failure response:{}", msg);
+            } else if (msg == ControlMessage.COMPACT_BATCH_SUPPORTED) {
+                client.compactBatchSupported(ctx.channel());
+            } else if (msg == ControlMessage.COMPRESSION_SUPPORTED) {
+                client.compressionSupported(ctx.channel());
             }
         } else if (message instanceof BackPressureStatus) {
             BackPressureStatus status = (BackPressureStatus) message;
@@ -20,6 +20,7 @@ import org.apache.storm.serialization.KryoValuesSerializer;
 import org.apache.storm.shade.io.netty.channel.Channel;
 import org.apache.storm.shade.io.netty.channel.ChannelInitializer;
 import org.apache.storm.shade.io.netty.channel.ChannelPipeline;
+import org.apache.storm.utils.ObjectReader;
 
 class StormServerPipelineFactory extends ChannelInitializer<Channel> {
 
@@ -37,7 +38,8 @@ class StormServerPipelineFactory extends ChannelInitializer<Channel> {
         ChannelPipeline pipeline = ch.pipeline();
 
         // Decoder
-        pipeline.addLast("decoder", new MessageDecoder(new KryoValuesDeserializer(topoConf)));
+        boolean sliceTaskMessages = ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_RECEIVE_DIRECT_BUFFERS), false);
+        pipeline.addLast("decoder", new MessageDecoder(new KryoValuesDeserializer(topoConf), sliceTaskMessages));
         // Encoders
         pipeline.addLast("netty-serializable-encoder", NettySerializableMessageEncoder.INSTANCE);
         pipeline.addLast("backpressure-encoder", new BackPressureStatusEncoder(new KryoValuesSerializer(topoConf)));
@@ -12,10 +12,21 @@
 
 package org.apache.storm.serialization;
 
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.ByteBufAllocator;
+import org.apache.storm.shade.io.netty.buffer.Unpooled;
 import org.apache.storm.tuple.Tuple;
 
 
 public interface ITupleSerializer {
     byte[] serialize(Tuple tuple);
+
+    /**
+     * Serialize a tuple into a buffer obtained from the given allocator. The caller owns the returned buffer and must release it.
+     * The default implementation wraps the result of {@link #serialize(Tuple)}.
+     */
+    default ByteBuf serializeToBuffer(Tuple tuple, ByteBufAllocator alloc) {
+        return Unpooled.wrappedBuffer(serialize(tuple));
+    }
     //    long crc32(Tuple tuple);
 }
@@ -12,10 +12,12 @@
 
 package org.apache.storm.serialization;
 
+import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.Input;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
 import org.apache.storm.task.GeneralTopologyContext;
 import org.apache.storm.tuple.MessageId;
 import org.apache.storm.tuple.TupleImpl;
@@ -24,28 +26,59 @@ public class KryoTupleDeserializer implements ITupleDeserializer {
     private GeneralTopologyContext context;
     private KryoValuesDeserializer kryo;
     private SerializationFactory.IdDictionary ids;
+    private Map<String, Map<String, TypedValuesCodec>> typedCodecs;
     private Input kryoInput;
+    private ByteBufferInput kryoBufferInput;
 
     public KryoTupleDeserializer(final Map<String, Object> conf, final GeneralTopologyContext context) {
         kryo = new KryoValuesDeserializer(conf);
         this.context = context;
         ids = new SerializationFactory.IdDictionary(context.getRawTopology());
+        typedCodecs = SerializationFactory.getTypedCodecs(context.getRawTopology());
         kryoInput = new Input(1);
+        kryoBufferInput = new ByteBufferInput();
     }
 
     @Override
     public TupleImpl deserialize(byte[] ser) {
+        kryoInput.setBuffer(ser);
+        return deserialize(kryoInput);
+    }
+
+    /**
+     * Deserialize the readable bytes of a buffer in place, without copying them into a byte[] first. The buffer is not released.
+     */
+    public TupleImpl deserialize(ByteBuf ser) {
+        if (ser.hasArray()) {
+            kryoInput.setBuffer(ser.array(), ser.arrayOffset() + ser.readerIndex(), ser.readableBytes());
+            return deserialize(kryoInput);
+        }
+        kryoBufferInput.setBuffer(ser.nioBuffer());
+        return deserialize(kryoBufferInput);
+    }
+
+    private TupleImpl deserialize(Input input) {
         try {
-            kryoInput.setBuffer(ser);
-            int taskId = kryoInput.readInt(true);
-            int streamId = kryoInput.readInt(true);
+            int taskId = input.readInt(true);
+            int streamId = input.readInt(true);
             String componentName = context.getComponentId(taskId);
             String streamName = ids.getStreamName(componentName, streamId);
-            MessageId id = MessageId.deserialize(kryoInput);
-            List<Object> values = kryo.deserializeFrom(kryoInput);
+            MessageId id = MessageId.deserialize(input);
+            TypedValuesCodec typedCodec = typedCodecs.isEmpty() ? null : getTypedCodec(componentName, streamName);
+            List<Object> values;
+            if (typedCodec != null && input.readByte() == TypedValuesCodec.TYPED_FORMAT) {
+                values = typedCodec.read(input);
+            } else {
+                values = kryo.deserializeFrom(input);
+            }
             return new TupleImpl(context, values, componentName, taskId, streamName, id);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private TypedValuesCodec getTypedCodec(String componentName, String streamName) {
+        Map<String, TypedValuesCodec> codecs = typedCodecs.get(componentName);
+        return codecs == null ? null : codecs.get(streamName);
+    }
 }
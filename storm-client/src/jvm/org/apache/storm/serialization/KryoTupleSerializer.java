@@ -15,32 +15,153 @@ package org.apache.storm.serialization;
 import com.esotericsoftware.kryo.io.Output;
 import java.io.IOException;
 import java.util.Map;
+import org.apache.storm.Config;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.ByteBufAllocator;
 import org.apache.storm.task.GeneralTopologyContext;
 import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.ObjectReader;
 
 public class KryoTupleSerializer implements ITupleSerializer {
+    private static final int DIRECT_CHUNK_SIZE = 64 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 2000;
+    private static final int MAX_BUFFER_SIZE = 2000000000;
+    // number of consecutive small tuples after which a grown buffer is shrunk back
+    private static final int SHRINK_AFTER_TUPLES = 1024;
     private KryoValuesSerializer kryo;
     private SerializationFactory.IdDictionary ids;
+    private Map<String, Map<String, TypedValuesCodec>> typedCodecs;
     private Output kryoOut;
+    private ByteBuf directChunk;
+    private final int shrinkThreshold;
+    private int smallTuples;
+    private long bufferGrowths;
+    private long bufferShrinks;
+    private int peakBufferSize = INITIAL_BUFFER_SIZE;
 
     public KryoTupleSerializer(final Map<String, Object> conf, final GeneralTopologyContext context) {
         kryo = new KryoValuesSerializer(conf);
-        kryoOut = new Output(2000, 2000000000);
+        kryoOut = new Output(INITIAL_BUFFER_SIZE, MAX_BUFFER_SIZE);
+        shrinkThreshold = ObjectReader.getInt(conf.get(Config.TOPOLOGY_SERIALIZER_BUFFER_SHRINK_BYTES), 64 * 1024);
         ids = new SerializationFactory.IdDictionary(context.getRawTopology());
+        typedCodecs = SerializationFactory.getTypedCodecs(context.getRawTopology());
     }
 
     @Override
     public byte[] serialize(Tuple tuple) {
-        try {
+        writeTuple(tuple);
+        return kryoOut.toBytes();
+    }
+
+    /**
+     * Serialize into a direct buffer from the allocator. Small tuples are appended to a pooled chunk owned by this serializer and
+     * returned as retained slices of it, so neither a byte[] nor a pooled allocation is needed per tuple. The chunk goes back to
+     * the pool once every slice carved from it has been released.
+     */
+    @Override
+    public ByteBuf serializeToBuffer(Tuple tuple, ByteBufAllocator alloc) {
+        writeTuple(tuple);
+        int length = kryoOut.position();
+        if (length > DIRECT_CHUNK_SIZE / 4) {
+            ByteBuf buf = alloc.directBuffer(length, length);
+            buf.writeBytes(kryoOut.getBuffer(), 0, length);
+            return buf;
+        }
+        if (directChunk == null || directChunk.writableBytes() < length) {
+            if (directChunk != null) {
+                directChunk.release();
+            }
+            directChunk = alloc.directBuffer(DIRECT_CHUNK_SIZE, DIRECT_CHUNK_SIZE);
+        }
+        int start = directChunk.writerIndex();
+        directChunk.writeBytes(kryoOut.getBuffer(), 0, length);
+        return directChunk.retainedSlice(start, length);
+    }
 
+    /**
+     * Give the pooled chunk back. Slices handed out earlier stay valid until they are released. Must not be called while the
+     * serializer is still in use.
+     */
+    public void close() {
+        if (directChunk != null) {
+            directChunk.release();
+            directChunk = null;
+        }
+    }
+
+    private void writeTuple(Tuple tuple) {
+        try {
             kryoOut.reset();
             kryoOut.writeInt(tuple.getSourceTask(), true);
             kryoOut.writeInt(ids.getStreamId(tuple.getSourceComponent(), tuple.getSourceStreamId()), true);
             tuple.getMessageId().serialize(kryoOut);
-            kryo.serializeInto(tuple.getValues(), kryoOut);
-            return kryoOut.toBytes();
+            TypedValuesCodec typedCodec = typedCodecs.isEmpty() ? null : getTypedCodec(tuple);
+            if (typedCodec == null) {
+                kryo.serializeInto(tuple.getValues(), kryoOut);
+            } else if (!typedCodec.write(tuple.getValues(), kryoOut)) {
+                kryoOut.writeByte(TypedValuesCodec.KRYO_FORMAT);
+                kryo.serializeInto(tuple.getValues(), kryoOut);
+            }
+            trackBufferSize();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * The output buffer grows to fit the largest tuple seen. Once it is larger than the shrink threshold, it is replaced by a buffer of
+     * the initial size after a run of tuples that would all have fit in a quarter of it, so a spike does not pin memory for good.
+     */
+    private void trackBufferSize() {
+        int capacity = kryoOut.getBuffer().length;
+        if (capacity > peakBufferSize) {
+            peakBufferSize = capacity;
+            bufferGrowths++;
+        }
+        if (capacity <= shrinkThreshold || shrinkThreshold <= 0) {
+            return;
+        }
+        if (kryoOut.position() > capacity / 4) {
+            smallTuples = 0;
+        } else if (++smallTuples >= SHRINK_AFTER_TUPLES) {
+            // the current tuple is still in the buffer, so keep it
+            byte[] shrunk = new byte[Math.max(INITIAL_BUFFER_SIZE, kryoOut.position())];
+            System.arraycopy(kryoOut.getBuffer(), 0, shrunk, 0, kryoOut.position());
+            int position = kryoOut.position();
+            kryoOut.setBuffer(shrunk, MAX_BUFFER_SIZE);
+            kryoOut.setPosition(position);
+            smallTuples = 0;
+            bufferShrinks++;
+        }
+    }
+
+    /**
+     * The number of times the output buffer grew past its previous peak size.
+     */
+    public long getBufferGrowths() {
+        return bufferGrowths;
+    }
+
+    public long getBufferShrinks() {
+        return bufferShrinks;
+    }
+
+    /**
+     * The largest size the output buffer reached, in bytes.
+     */
+    public int getPeakBufferSize() {
+        return peakBufferSize;
+    }
+
+    /**
+     * The current size of the output buffer, in bytes.
+     */
+    public int getBufferSize() {
+        return kryoOut.getBuffer().length;
+    }
+
+    private TypedValuesCodec getTypedCodec(Tuple tuple) {
+        Map<String, TypedValuesCodec> codecs = typedCodecs.get(tuple.getSourceComponent());
+        return codecs == null ? null : codecs.get(tuple.getSourceStreamId());
+    }
 }
@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.TreeMap;
 import org.apache.storm.Config;
+import org.apache.storm.daemon.Acker;
 import org.apache.storm.generated.ComponentCommon;
 import org.apache.storm.generated.NodeInfo;
 import org.apache.storm.generated.StormTopology;
@@ -40,6 +41,7 @@ import org.apache.storm.serialization.types.HashMapSerializer;
 import org.apache.storm.serialization.types.HashSetSerializer;
 import org.apache.storm.transactional.TransactionAttempt;
 import org.apache.storm.trident.tuple.ConsList;
+import org.apache.storm.tuple.FieldType;
 import org.apache.storm.tuple.Values;
 import org.apache.storm.utils.ListDelegate;
 import org.apache.storm.utils.ReflectionUtils;
@@ -116,6 +118,11 @@ public class SerializationFactory {
             }
         }
 
+        if (Acker.isBatchEnabled(conf)) {
+            // carries the ack batches, registered last so that it does not shift the ids of the classes registered by the topology
+            k.register(long[].class);
+        }
+
         kryoFactory.postDecorate(k, conf);
 
         return k;
@@ -210,6 +217,35 @@ public class SerializationFactory {
         return new TreeMap<>(ret);
     }
 
+    /**
+     * Create a codec for every stream that was declared with {@link org.apache.storm.tuple.TypedFields}, keyed by component id and
+     * then stream id. Streams without declared types have no codec.
+     */
+    public static Map<String, Map<String, TypedValuesCodec>> getTypedCodecs(StormTopology topology) {
+        List<String> componentNames = new ArrayList<>(topology.get_spouts().keySet());
+        componentNames.addAll(topology.get_bolts().keySet());
+        componentNames.addAll(topology.get_state_spouts().keySet());
+
+        Map<String, Map<String, TypedValuesCodec>> ret = new HashMap<>();
+        for (String name : componentNames) {
+            Map<String, Object> conf = Utils.parseJson(Utils.getComponentCommon(topology, name).get_json_conf());
+            Map<String, List<String>> schemas = (Map<String, List<String>>) conf.get(Config.TOPOLOGY_STREAM_SCHEMAS);
+            if (schemas == null) {
+                continue;
+            }
+            Map<String, TypedValuesCodec> codecs = new HashMap<>();
+            for (Map.Entry<String, List<String>> schema : schemas.entrySet()) {
+                List<FieldType> types = new ArrayList<>();
+                for (String type : schema.getValue()) {
+                    types.add(FieldType.valueOf(type));
+                }
+                codecs.put(schema.getKey(), new TypedValuesCodec(types));
+            }
+            ret.put(name, codecs);
+        }
+        return ret;
+    }
+
     public static class IdDictionary {
         Map<String, Map<String, Integer>> streamNametoId = new HashMap<>();
         Map<String, Map<Integer, String>> streamIdToName = new HashMap<>();
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.serialization;
+
+import com.codahale.metrics.Gauge;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import org.apache.storm.Constants;
+import org.apache.storm.metrics2.StormMetricRegistry;
+import org.apache.storm.task.GeneralTopologyContext;
+
+/**
+ * Worker scoped pool of tuple serializers and deserializers. Every thread that (de)serializes tuples gets its own instances, shared by
+ * all the executors and connections it serves, so the number of kryo instances and output buffers follows the number of active threads
+ * instead of the number of executors. The instances of a thread that died are dropped the next time the pool is used or its metrics
+ * are read.
+ */
+public class TupleSerializerPool {
+    private final Map<String, Object> conf;
+    private final GeneralTopologyContext context;
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Entry> threadEntry = ThreadLocal.withInitial(this::newEntry);
+    // the hits of the threads that died, so that the hits gauge does not go back
+    private final LongAdder retiredHits = new LongAdder();
+
+    public TupleSerializerPool(Map<String, Object> conf, GeneralTopologyContext context) {
+        this.conf = conf;
+        this.context = context;
+    }
+
+    /**
+     * Get the serializer owned by the calling thread.
+     */
+    public KryoTupleSerializer getSerializer() {
+        Entry entry = threadEntry.get();
+        if (entry.serializer == null) {
+            entry.serializer = new KryoTupleSerializer(conf, context);
+            entry.misses++;
+        } else {
+            entry.hits++;
+        }
+        return entry.serializer;
+    }
+
+    /**
+     * Get the deserializer owned by the calling thread.
+     */
+    public KryoTupleDeserializer getDeserializer() {
+        Entry entry = threadEntry.get();
+        if (entry.deserializer == null) {
+            entry.deserializer = new KryoTupleDeserializer(conf, context);
+            entry.misses++;
+        } else {
+            entry.hits++;
+        }
+        return entry.deserializer;
+    }
+
+    /**
+     * Register gauges for the number of pooled instances, pool hits, output buffer growth and size on the worker.
+     */
+    public void registerMetrics(StormMetricRegistry metricRegistry) {
+        register(metricRegistry, "__serializer-pool-instances", e -> e.misses);
+        Gauge<Long> hits = () -> {
+            long sum = retiredHits.sum();
+            for (Entry entry : liveEntries()) {
+                sum += entry.hits;
+            }
+            return sum;
+        };
+        metricRegistry.gauge("__serializer-pool-hits", hits, Constants.SYSTEM_COMPONENT_ID, (int) Constants.SYSTEM_TASK_ID);
+        register(metricRegistry, "__serializer-buffer-growths", e -> e.serializer == null ? 0 : e.serializer.getBufferGrowths());
+        register(metricRegistry, "__serializer-buffer-shrinks", e -> e.serializer == null ? 0 : e.serializer.getBufferShrinks());
+        register(metricRegistry, "__serializer-buffer-bytes", e -> e.serializer == null ? 0 : e.serializer.getBufferSize());
+        Gauge<Long> peak = () -> {
+            long max = 0;
+            for (Entry entry : liveEntries()) {
+                if (entry.serializer != null) {
+                    max = Math.max(max, entry.serializer.getPeakBufferSize());
+                }
+            }
+            return max;
+        };
+        metricRegistry.gauge("__serializer-peak-buffer-bytes", peak, Constants.SYSTEM_COMPONENT_ID, (int) Constants.SYSTEM_TASK_ID);
+    }
+
+    /**
+     * Close the serializers of all the threads, releasing their pooled buffers. Called on worker shutdown, once the threads that use
+     * the pool are stopped.
+     */
+    public void close() {
+        for (Entry entry : entries) {
+            if (entry.serializer != null) {
+                entry.serializer.close();
+            }
+        }
+    }
+
+    private void register(StormMetricRegistry metricRegistry, String name, ToLongFunction<Entry> value) {
+        Gauge<Long> gauge = () -> {
+            long sum = 0;
+            for (Entry entry : liveEntries()) {
+                sum += value.applyAsLong(entry);
+            }
+            return sum;
+        };
+        metricRegistry.gauge(name, gauge, Constants.SYSTEM_COMPONENT_ID, (int) Constants.SYSTEM_TASK_ID);
+    }
+
+    private Entry newEntry() {
+        pruneDeadEntries();
+        Entry entry = new Entry(Thread.currentThread());
+        entries.add(entry);
+        return entry;
+    }
+
+    private List<Entry> liveEntries() {
+        pruneDeadEntries();
+        return entries;
+    }
+
+    /**
+     * Drop the instances of the threads that died, releasing the pooled buffers of their serializers.
+     */
+    private void pruneDeadEntries() {
+        for (Entry entry : entries) {
+            Thread owner = entry.owner.get();
+            if ((owner == null || !owner.isAlive()) && entries.remove(entry)) {
+                retiredHits.add(entry.hits);
+                if (entry.serializer != null) {
+                    entry.serializer.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The instances owned by one thread. The counters are only written by that thread, they are volatile for the metrics to read them.
+     */
+    private static class Entry {
+        private final WeakReference<Thread> owner;
+        private volatile KryoTupleSerializer serializer;
+        private KryoTupleDeserializer deserializer;
+        private volatile long hits;
+        private volatile long misses;
+
+        Entry(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.serialization;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.storm.tuple.FieldType;
+
+/**
+ * Serializes the values of a stream declared with {@link org.apache.storm.tuple.TypedFields}. Values are written in field order without
+ * class tags: numbers as (zigzag) varints or fixed width floating point, strings and byte arrays length prefixed.
+ *
+ * <p>The encoding starts with a format byte, so tuples that do not match the declared types can still be written with kryo:
+ * <pre>
+ *  format ... byte(1) (0 for kryo, 1 for typed)
+ *  nulls ... byte[(fields + 7) / 8] (typed only, bit i is set if value i is null)
+ *  values ... (typed only, null values are skipped)
+ * </pre>
+ *
+ * <p>Instances are not thread safe.
+ */
+public class TypedValuesCodec {
+    static final byte KRYO_FORMAT = 0;
+    static final byte TYPED_FORMAT = 1;
+    private final FieldType[] types;
+    private final byte[] nulls;
+
+    public TypedValuesCodec(List<FieldType> types) {
+        this.types = types.toArray(new FieldType[0]);
+        this.nulls = new byte[(this.types.length + 7) / 8];
+    }
+
+    /**
+     * Write the values if they match the declared types.
+     *
+     * @return false, without writing anything, if the values do not match the declared types
+     */
+    public boolean write(List<Object> values, Output out) {
+        if (values.size() != types.length) {
+            return false;
+        }
+        for (int i = 0; i < nulls.length; i++) {
+            nulls[i] = 0;
+        }
+        for (int i = 0; i < types.length; i++) {
+            Object value = values.get(i);
+            if (value == null) {
+                nulls[i >>> 3] |= 1 << (i & 7);
+            } else if (value.getClass() != types[i].getValueClass()) {
+                return false;
+            }
+        }
+
+        out.writeByte(TYPED_FORMAT);
+        out.writeBytes(nulls);
+        for (int i = 0; i < types.length; i++) {
+            Object value = values.get(i);
+            if (value != null) {
+                writeValue(types[i], value, out);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read values written by {@link #write(List, Output)}, after the format byte.
+     */
+    public List<Object> read(Input in) {
+        in.readBytes(nulls);
+        List<Object> values = new ArrayList<>(types.length);
+        for (int i = 0; i < types.length; i++) {
+            if ((nulls[i >>> 3] & (1 << (i & 7))) != 0) {
+                values.add(null);
+            } else {
+                values.add(readValue(types[i], in));
+            }
+        }
+        return values;
+    }
+
+    private static void writeValue(FieldType type, Object value, Output out) {
+        switch (type) {
+            case BOOLEAN:
+                out.writeBoolean((Boolean) value);
+                break;
+            case INT:
+                out.writeVarInt((Integer) value, false);
+                break;
+            case LONG:
+                out.writeVarLong((Long) value, false);
+                break;
+            case FLOAT:
+                out.writeFloat((Float) value);
+                break;
+            case DOUBLE:
+                out.writeDouble((Double) value);
+                break;
+            case STRING:
+                out.writeString((String) value);
+                break;
+            case BYTES:
+                byte[] bytes = (byte[]) value;
+                out.writeVarInt(bytes.length, true);
+                out.writeBytes(bytes);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported field type " + type);
+        }
+    }
+
+    private static Object readValue(FieldType type, Input in) {
+        switch (type) {
+            case BOOLEAN:
+                return in.readBoolean();
+            case INT:
+                return in.readVarInt(false);
+            case LONG:
+                return in.readVarLong(false);
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return in.readString();
+            case BYTES:
+                return in.readBytes(in.readVarInt(true));
+            default:
+                throw new IllegalArgumentException("Unsupported field type " + type);
+        }
+    }
+}
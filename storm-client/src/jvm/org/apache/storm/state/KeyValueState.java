@@ -12,6 +12,8 @@
 
 package org.apache.storm.state;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -43,6 +45,21 @@ public interface KeyValueState<K, V> extends State, Iterable<Map.Entry<K, V>> {
      */
     V get(K key, V defaultValue);
 
+    /**
+     * Returns the values mapped to the keys. Implementations backed by a remote store can look up all the keys in a single request, so
+     * this should be preferred to calling {@link #get(Object)} in a loop.
+     *
+     * @param keys the keys
+     * @return the values, in the order of the keys, with null for keys that have no mapping
+     */
+    default List<V> multiGet(List<K> keys) {
+        List<V> values = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            values.add(get(key));
+        }
+        return values;
+    }
+
     /**
      * Deletes the value mapped to the key, if there is any.
      *
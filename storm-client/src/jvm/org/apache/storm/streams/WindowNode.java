@@ -19,6 +19,8 @@ import org.apache.storm.tuple.Fields;
  * Node that captures the windowing configurations.
  */
 public class WindowNode extends Node {
+    // TODO: aggregate the windows per pane, as WindowedBoltExecutor does for a WindowAggregator, when the window is only followed
+    //  by an aggregate or reduce. WindowedProcessorBolt keeps the values of the windows for the processors after them.
     public static final String PUNCTUATION = "__punctuation";
     private final Window<?, ?> windowParams;
 
@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.task;
+
+import java.util.List;
+import org.apache.storm.Config;
+import org.apache.storm.tuple.Tuple;
+
+/**
+ * An IBolt that can process the input tuples of a task in batches. The executor collects the tuples it drains from its receive queue in
+ * one pass, up to {@link Config#TOPOLOGY_BOLT_EXECUTE_BATCH_MAX} of them, and hands them over with a single call to
+ * {@link #execute(List)}. A batch is never held back waiting for more tuples: it is executed as soon as the queue is drained, when it is
+ * full, or before the executor flushes its output.
+ *
+ * <p>Each tuple in a batch must still be acked or failed using the OutputCollector, just like with {@link #execute(Tuple)}. Tick tuples
+ * are delivered in the batches too, in the order they were received. {@link #execute(Tuple)} is only called when batching is disabled
+ * with a max of 1.
+ */
+public interface IBatchExecuteBolt extends IBolt {
+    /**
+     * Process a batch of input tuples, in the order they were received. The list is reused by the executor once this returns, so it
+     * must not be held onto, but the tuples in it can be.
+     *
+     * @param inputs The input tuples to be processed.
+     */
+    void execute(List<Tuple> inputs);
+}
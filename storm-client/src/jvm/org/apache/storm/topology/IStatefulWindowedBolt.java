@@ -36,4 +36,11 @@ public interface IStatefulWindowedBolt<T extends State> extends IStatefulCompone
     default long maxEventsInMemory() {
         return 1_000_000L; // default
     }
+
+    /**
+     * The number of window partitions to read ahead from the state while the window is iterated, 0 to disable it.
+     */
+    default int prefetchPartitions() {
+        return 2; // default
+    }
 }
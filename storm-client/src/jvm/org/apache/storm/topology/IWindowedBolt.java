@@ -15,8 +15,10 @@ package org.apache.storm.topology;
 import java.util.Map;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
 import org.apache.storm.windowing.TimestampExtractor;
 import org.apache.storm.windowing.TupleWindow;
+import org.apache.storm.windowing.WindowAggregator;
 
 /**
  * A bolt abstraction for supporting time and count based sliding & tumbling windows.
@@ -42,4 +44,14 @@ public interface IWindowedBolt extends IComponent {
      * @return the timestamp extractor
      */
     TimestampExtractor getTimestampExtractor();
+
+    /**
+     * Return a {@link WindowAggregator} to have the aggregates of the windows maintained incrementally, per pane, instead of getting the
+     * tuples of the windows, or null. The aggregate of a window is then available through {@link TupleWindow#getAggregate()}.
+     *
+     * @return the window aggregator
+     */
+    default WindowAggregator<Tuple, ?> getAggregator() {
+        return null;
+    }
 }
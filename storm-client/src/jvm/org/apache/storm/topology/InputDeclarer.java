@@ -107,6 +107,20 @@ public interface InputDeclarer<T extends InputDeclarer> {
      */
     T partialKeyGrouping(String componentId, String streamId, Fields fields);
 
+    /**
+     * The stream is partitioned by the fields specified in the grouping, like with a fields grouping, but the keys are mapped to the
+     * tasks with consistent hashing. Changing the number of tasks of this component only moves about 1/N of the keys, so the state the
+     * other tasks hold for their keys stays valid.
+     */
+    T consistentHashGrouping(String componentId, Fields fields);
+
+    /**
+     * The stream is partitioned by the fields specified in the grouping, like with a fields grouping, but the keys are mapped to the
+     * tasks with consistent hashing. Changing the number of tasks of this component only moves about 1/N of the keys, so the state the
+     * other tasks hold for their keys stays valid.
+     */
+    T consistentHashGrouping(String componentId, String streamId, Fields fields);
+
     /**
      * A custom stream grouping by implementing the CustomStreamGrouping interface.
      */
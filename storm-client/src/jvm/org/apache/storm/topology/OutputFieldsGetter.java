@@ -12,14 +12,19 @@
 
 package org.apache.storm.topology;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.apache.storm.generated.StreamInfo;
+import org.apache.storm.tuple.FieldType;
 import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.TypedFields;
 import org.apache.storm.utils.Utils;
 
 public class OutputFieldsGetter implements OutputFieldsDeclarer {
     private Map<String, StreamInfo> fields = new HashMap<>();
+    private Map<String, List<String>> schemas = new HashMap<>();
 
     @Override
     public void declare(Fields fields) {
@@ -45,6 +50,13 @@ public class OutputFieldsGetter implements OutputFieldsDeclarer {
             throw new IllegalArgumentException("Fields for " + streamId + " already set");
         }
         this.fields.put(streamId, new StreamInfo(fields.toList(), direct));
+        if (fields instanceof TypedFields) {
+            List<String> types = new ArrayList<>();
+            for (FieldType type : ((TypedFields) fields).getTypes()) {
+                types.add(type.name());
+            }
+            schemas.put(streamId, types);
+        }
     }
 
 
@@ -52,4 +64,11 @@ public class OutputFieldsGetter implements OutputFieldsDeclarer {
         return fields;
     }
 
+    /**
+     * The field types of the streams that were declared with {@link TypedFields}, by stream id.
+     */
+    public Map<String, List<String>> getSchemaDeclaration() {
+        return schemas;
+    }
+
 }
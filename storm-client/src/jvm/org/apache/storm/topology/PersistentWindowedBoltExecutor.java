@@ -78,10 +78,11 @@ public class PersistentWindowedBoltExecutor<T extends State> extends WindowedBol
                  KeyValueState<Long, WindowPartition<Tuple>> windowState,
                  KeyValueState<String, Deque<Long>> partitionState,
                  KeyValueState<String, Optional<?>> windowSystemState) {
+        ensureSupportedByStatefulBolt(topoConf);
         outputCollector = collector;
         this.windowSystemState = windowSystemState;
         state = new WindowState<>(windowState, partitionState, windowSystemState, this::getState,
-                                  statefulWindowedBolt.maxEventsInMemory());
+                                  statefulWindowedBolt.maxEventsInMemory(), statefulWindowedBolt.prefetchPartitions());
         doPrepare(topoConf, context, new NoAckOutputCollector(collector), state, true);
         restoreWindowSystemState();
     }
@@ -139,6 +140,12 @@ public class PersistentWindowedBoltExecutor<T extends State> extends WindowedBol
         outputCollector.ack(input);
     }
 
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        state.close();
+    }
+
     @Override
     public void initState(T state) {
         if (stateInitialized) {
@@ -229,20 +236,4 @@ public class PersistentWindowedBoltExecutor<T extends State> extends WindowedBol
         String namespace = context.getThisComponentId() + "-" + context.getThisTaskId() + "-window-systemstate";
         return (KeyValueState<String, Optional<?>>) StateFactory.getState(namespace, topoConf, context);
     }
-
-    /**
-     * Creates an {@link OutputCollector} wrapper that ignores acks. The {@link PersistentWindowedBoltExecutor} acks the tuples in execute
-     * and this is to prevent double ack-ing
-     */
-    private static class NoAckOutputCollector extends OutputCollector {
-
-        NoAckOutputCollector(OutputCollector delegate) {
-            super(delegate);
-        }
-
-        @Override
-        public void ack(Tuple input) {
-            // NOOP
-        }
-    }
 }
@@ -59,6 +59,7 @@ public class StatefulWindowedBoltExecutor<T extends State> extends WindowedBoltE
     // package access for unit tests
     void prepare(Map<String, Object> topoConf, TopologyContext context, OutputCollector collector,
                  KeyValueState<TaskStream, WindowState> windowState) {
+        ensureSupportedByStatefulBolt(topoConf);
         init(topoConf, context, collector, windowState);
         super.prepare(topoConf, context, collector);
     }
@@ -15,6 +15,8 @@ package org.apache.storm.topology;
 import static org.apache.storm.topology.base.BaseWindowedBolt.Count;
 import static org.apache.storm.topology.base.BaseWindowedBolt.Duration;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -28,7 +30,11 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import org.apache.storm.Config;
+import org.apache.storm.daemon.StormCommon;
 import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.serialization.KryoTupleDeserializer;
+import org.apache.storm.serialization.KryoTupleSerializer;
+import org.apache.storm.shade.io.netty.buffer.Unpooled;
 import org.apache.storm.spout.CheckpointSpout;
 import org.apache.storm.task.IOutputCollector;
 import org.apache.storm.task.OutputCollector;
@@ -36,15 +42,19 @@ import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.ObjectReader;
 import org.apache.storm.windowing.CountEvictionPolicy;
 import org.apache.storm.windowing.CountTriggerPolicy;
 import org.apache.storm.windowing.Event;
 import org.apache.storm.windowing.EvictionPolicy;
+import org.apache.storm.windowing.OffHeapEventQueue;
+import org.apache.storm.windowing.PaneWindowManager;
 import org.apache.storm.windowing.StatefulWindowManager;
 import org.apache.storm.windowing.TimeEvictionPolicy;
 import org.apache.storm.windowing.TimeTriggerPolicy;
 import org.apache.storm.windowing.TimestampExtractor;
 import org.apache.storm.windowing.TriggerPolicy;
+import org.apache.storm.windowing.TupleWindowAggregateImpl;
 import org.apache.storm.windowing.TupleWindowImpl;
 import org.apache.storm.windowing.TupleWindowIterImpl;
 import org.apache.storm.windowing.WaterMarkEventGenerator;
@@ -52,6 +62,7 @@ import org.apache.storm.windowing.WatermarkCountEvictionPolicy;
 import org.apache.storm.windowing.WatermarkCountTriggerPolicy;
 import org.apache.storm.windowing.WatermarkTimeEvictionPolicy;
 import org.apache.storm.windowing.WatermarkTimeTriggerPolicy;
+import org.apache.storm.windowing.WindowAggregator;
 import org.apache.storm.windowing.WindowLifecycleListener;
 import org.apache.storm.windowing.WindowManager;
 import org.slf4j.Logger;
@@ -77,6 +88,9 @@ public class WindowedBoltExecutor implements IRichBolt {
     private transient TriggerPolicy<Tuple, ?> triggerPolicy;
     private transient EvictionPolicy<Tuple, ?> evictionPolicy;
     private transient Duration windowLengthDuration;
+    private transient WindowAggregator<Tuple, ?> aggregator;
+    private transient OffHeapEventQueue<Tuple> offHeapQueue;
+    private transient OutputCollector ackCollector;
 
     public WindowedBoltExecutor(IWindowedBolt bolt) {
         this.bolt = bolt;
@@ -128,6 +142,10 @@ public class WindowedBoltExecutor implements IRichBolt {
         if (windowLengthCount == null && windowLengthDuration == null) {
             throw new IllegalArgumentException("Window length is not specified");
         }
+        if (ackCollector != null) {
+            // the tuples are acked as soon as they are added to the window
+            return;
+        }
 
         if (windowLengthDuration != null && slidingIntervalDuration != null) {
             ensureDurationLessThanTimeout(windowLengthDuration.value + slidingIntervalDuration.value, topologyTimeout);
@@ -149,10 +167,6 @@ public class WindowedBoltExecutor implements IRichBolt {
     private WindowManager<Tuple> initWindowManager(WindowLifecycleListener<Tuple> lifecycleListener, Map<String, Object> topoConf,
                                                    TopologyContext context, Collection<Event<Tuple>> queue, boolean stateful) {
 
-        WindowManager<Tuple> manager = stateful
-                ? new StatefulWindowManager<>(lifecycleListener, queue)
-                : new WindowManager<>(lifecycleListener, queue);
-
         Count windowLengthCount = null;
         Duration slidingIntervalDuration = null;
         Count slidingIntervalCount = null;
@@ -174,6 +188,15 @@ public class WindowedBoltExecutor implements IRichBolt {
             // default is a sliding window of count 1
             slidingIntervalCount = new Count(1);
         }
+        WindowManager<Tuple> manager;
+        if (aggregator != null) {
+            manager = newPaneWindowManager(aggregator, windowLengthCount, windowLengthDuration,
+                                           slidingIntervalCount, slidingIntervalDuration);
+        } else if (stateful) {
+            manager = new StatefulWindowManager<>(lifecycleListener, queue);
+        } else {
+            manager = new WindowManager<>(lifecycleListener, queue);
+        }
         // tuple ts
         if (timestampExtractor != null) {
             // late tuple stream
@@ -207,6 +230,14 @@ public class WindowedBoltExecutor implements IRichBolt {
         // validate
         validate(topoConf, windowLengthCount, windowLengthDuration,
                  slidingIntervalCount, slidingIntervalDuration);
+        if (manager instanceof PaneWindowManager) {
+            // the pane window manager activates and evicts the windows itself, in processing time it is woken up once per slide
+            if (windowLengthDuration != null && !isTupleTs()) {
+                triggerPolicy = new TimeTriggerPolicy<>(slidingIntervalDuration.value, manager);
+                manager.setTriggerPolicy(triggerPolicy);
+            }
+            return manager;
+        }
         evictionPolicy = getEvictionPolicy(windowLengthCount, windowLengthDuration);
         triggerPolicy = getTriggerPolicy(slidingIntervalCount, slidingIntervalDuration,
                                          manager, evictionPolicy);
@@ -215,6 +246,39 @@ public class WindowedBoltExecutor implements IRichBolt {
         return manager;
     }
 
+    private <A> PaneWindowManager<Tuple, A> newPaneWindowManager(WindowAggregator<Tuple, A> aggregator,
+                                                                 Count windowLengthCount, Duration windowLengthDuration,
+                                                                 Count slidingIntervalCount, Duration slidingIntervalDuration) {
+        PaneWindowManager.Listener<A> paneListener = this::boltExecute;
+        if (windowLengthCount != null && slidingIntervalCount != null) {
+            if (isTupleTs()) {
+                throw new IllegalArgumentException("Count based windows with an aggregator do not support tuple timestamps");
+            }
+            return new PaneWindowManager<>(aggregator, paneListener, PaneWindowManager.Mode.COUNT,
+                                           windowLengthCount.value, slidingIntervalCount.value);
+        } else if (windowLengthDuration != null && slidingIntervalDuration != null) {
+            PaneWindowManager.Mode mode = isTupleTs() ? PaneWindowManager.Mode.EVENT_TIME : PaneWindowManager.Mode.PROCESSING_TIME;
+            return new PaneWindowManager<>(aggregator, paneListener, mode,
+                                           windowLengthDuration.value, slidingIntervalDuration.value);
+        }
+        throw new IllegalArgumentException("The window length and the sliding interval of a window with an aggregator must both be"
+                                           + " counts or both be durations");
+    }
+
+    /**
+     * Fail for the window modes that stateful windowed bolts can not use. Off heap windows and window aggregators ack the tuples as
+     * they arrive, which would bypass the tracking of the evaluated and expired tuples the recovery of the bolt relies on.
+     */
+    void ensureSupportedByStatefulBolt(Map<String, Object> topoConf) {
+        if (ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_ENABLE), false)) {
+            throw new IllegalArgumentException("Stateful windowed bolts do not support off heap windows, "
+                                               + Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_ENABLE + " must not be set for them");
+        }
+        if (bolt.getAggregator() != null) {
+            throw new IllegalArgumentException("Stateful windowed bolts do not support window aggregators");
+        }
+    }
+
     protected void restoreState(Map<String, Optional<?>> state) {
         windowManager.restoreState(state);
     }
@@ -241,8 +305,10 @@ public class WindowedBoltExecutor implements IRichBolt {
             LOG.debug("Starting waterMarkEventGenerator");
             waterMarkEventGenerator.start();
         }
-        LOG.debug("Starting trigger policy");
-        triggerPolicy.start();
+        if (triggerPolicy != null) {
+            LOG.debug("Starting trigger policy");
+            triggerPolicy.start();
+        }
     }
 
     private boolean isTupleTs() {
@@ -284,7 +350,45 @@ public class WindowedBoltExecutor implements IRichBolt {
 
     @Override
     public void prepare(Map<String, Object> topoConf, TopologyContext context, OutputCollector collector) {
-        doPrepare(topoConf, context, collector, new ConcurrentLinkedQueue<>(), false);
+        aggregator = bolt.getAggregator();
+        if (aggregator != null) {
+            // the tuples are not kept, they are acked in execute once applied to the aggregates of their panes
+            validateAtMostOnce(topoConf, "Window aggregators");
+            ackCollector = collector;
+            doPrepare(topoConf, context, new NoAckOutputCollector(collector), Collections.emptyList(), false);
+        } else if (ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_ENABLE), false)) {
+            /*
+             * The tuples read back from the window are copies that can not be acked, so the tuples are acked in execute
+             * and the window is activated with iterators, like the one of a PersistentWindowedBoltExecutor.
+             */
+            validateAtMostOnce(topoConf, "Off heap windows");
+            ackCollector = collector;
+            offHeapQueue = mkOffHeapQueue(topoConf, context);
+            doPrepare(topoConf, context, new NoAckOutputCollector(collector), offHeapQueue, true);
+        } else {
+            doPrepare(topoConf, context, collector, new ConcurrentLinkedQueue<>(), false);
+        }
+    }
+
+    /**
+     * Fail unless the topology accepted that the tuples are acked as they arrive, or does not ack at all.
+     */
+    private static void validateAtMostOnce(Map<String, Object> topoConf, String windows) {
+        if (StormCommon.hasAckers(topoConf)
+            && !ObjectReader.getBoolean(topoConf.get(Config.TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE), false)) {
+            throw new IllegalArgumentException(windows + " ack their tuples as they arrive, "
+                                               + Config.TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE + " must be set to accept it"
+                                               + " when acking is enabled");
+        }
+    }
+
+    private OffHeapEventQueue<Tuple> mkOffHeapQueue(Map<String, Object> topoConf, TopologyContext context) {
+        Object dir = topoConf.get(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_SPILL_DIR);
+        String spillDir = dir != null ? dir.toString() : System.getProperty("java.io.tmpdir");
+        int segmentBytes = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_SEGMENT_BYTES), 4 * 1024 * 1024);
+        int maxMemorySegments = ObjectReader.getInt(topoConf.get(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_MAX_MEMORY_SEGMENTS), 64);
+        String name = context.getThisComponentId() + "-" + context.getThisTaskId() + "-window";
+        return new OffHeapEventQueue<>(Paths.get(spillDir), name, segmentBytes, maxMemorySegments, new TupleCodec(topoConf, context));
     }
 
     // NOTE: the queue has to be thread safe.
@@ -319,6 +423,9 @@ public class WindowedBoltExecutor implements IRichBolt {
         } else {
             windowManager.add(input);
         }
+        if (ackCollector != null) {
+            ackCollector.ack(input);
+        }
     }
 
     @Override
@@ -327,6 +434,9 @@ public class WindowedBoltExecutor implements IRichBolt {
             waterMarkEventGenerator.shutdown();
         }
         windowManager.shutdown();
+        if (offHeapQueue != null) {
+            offHeapQueue.close();
+        }
         bolt.cleanup();
     }
 
@@ -364,6 +474,15 @@ public class WindowedBoltExecutor implements IRichBolt {
                 boltExecute(tuples, newTuples, expiredTuples, timestamp);
             }
 
+            @Override
+            public void onActivation(Supplier<Iterator<Tuple>> eventsIt,
+                                     Supplier<Iterator<Tuple>> newEventsIt,
+                                     Supplier<Iterator<Tuple>> expiredIt,
+                                     Long timestamp) {
+                // off heap windows, the tuples are acked in execute and the emits are not anchored
+                boltExecute(eventsIt, newEventsIt, expiredIt, timestamp);
+            }
+
         };
     }
 
@@ -377,6 +496,10 @@ public class WindowedBoltExecutor implements IRichBolt {
         bolt.execute(new TupleWindowIterImpl(tuples, newTuples, expiredTuples, getWindowStartTs(timestamp), timestamp));
     }
 
+    protected void boltExecute(Object aggregate, Long startTs, Long endTs) {
+        bolt.execute(new TupleWindowAggregateImpl(aggregate, startTs, endTs));
+    }
+
     private Long getWindowStartTs(Long endTs) {
         Long res = null;
         if (endTs != null && windowLengthDuration != null) {
@@ -410,4 +533,43 @@ public class WindowedBoltExecutor implements IRichBolt {
         }
     }
 
+    /**
+     * Creates an {@link OutputCollector} wrapper that ignores acks, for the executors that ack the tuples in execute. This is to prevent
+     * double ack-ing.
+     */
+    static class NoAckOutputCollector extends OutputCollector {
+
+        NoAckOutputCollector(OutputCollector delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void ack(Tuple input) {
+            // NOOP
+        }
+    }
+
+    /**
+     * Serializes the tuples of an off heap window the same way they are sent to other workers.
+     */
+    private static class TupleCodec implements OffHeapEventQueue.Codec<Tuple> {
+        private final KryoTupleSerializer serializer;
+        private final KryoTupleDeserializer deserializer;
+
+        TupleCodec(Map<String, Object> topoConf, TopologyContext context) {
+            serializer = new KryoTupleSerializer(topoConf, context);
+            deserializer = new KryoTupleDeserializer(topoConf, context);
+        }
+
+        @Override
+        public byte[] encode(Tuple tuple) {
+            return serializer.serialize(tuple);
+        }
+
+        @Override
+        public Tuple decode(ByteBuffer record) {
+            return deserializer.deserialize(Unpooled.wrappedBuffer(record));
+        }
+    }
+
 }
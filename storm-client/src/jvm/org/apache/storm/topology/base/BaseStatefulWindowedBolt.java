@@ -15,7 +15,9 @@ package org.apache.storm.topology.base;
 import org.apache.storm.Config;
 import org.apache.storm.state.State;
 import org.apache.storm.topology.IStatefulWindowedBolt;
+import org.apache.storm.tuple.Tuple;
 import org.apache.storm.windowing.TimestampExtractor;
+import org.apache.storm.windowing.WindowAggregator;
 
 public abstract class BaseStatefulWindowedBolt<T extends State> extends BaseWindowedBolt implements IStatefulWindowedBolt<T> {
     // if the windows should be persisted in state
@@ -23,6 +25,7 @@ public abstract class BaseStatefulWindowedBolt<T extends State> extends BaseWind
 
     // max number of window events in memory
     private long maxEventsInMemory;
+    private int prefetchPartitions = -1;
 
     /**
      * {@inheritDoc}
@@ -141,6 +144,26 @@ public abstract class BaseStatefulWindowedBolt<T extends State> extends BaseWind
         return this;
     }
 
+    /**
+     * Not supported, the tuples of the window of a stateful windowed bolt are recovered from the tuples that were not acked.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public BaseStatefulWindowedBolt<T> withOffHeapWindow() {
+        throw new UnsupportedOperationException("Stateful windowed bolts do not support off heap windows");
+    }
+
+    /**
+     * Not supported, the tuples of the window of a stateful windowed bolt are recovered from the tuples that were not acked.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public BaseStatefulWindowedBolt<T> withAggregator(WindowAggregator<Tuple, ?> aggregator) {
+        throw new UnsupportedOperationException("Stateful windowed bolts do not support window aggregators");
+    }
+
     /**
      * Specify the name of the field in the tuple that holds the message id. This is used to track the windowing boundaries and
      * re-evaluating the windowing operation during recovery of IStatefulWindowedBolt
@@ -173,6 +196,19 @@ public abstract class BaseStatefulWindowedBolt<T extends State> extends BaseWind
         return this;
     }
 
+    /**
+     * The number of window partitions to read ahead from the state while the window is iterated, so that the iteration does not wait
+     * on the state backend when it reaches partitions that are not in memory. This is meaningful only if {@link #withPersistence()} is
+     * also set. The partitions read ahead are held in addition to {@link #withMaxEventsInMemory(long)}. The default value for this is
+     * {@code 2}, 0 disables it.
+     *
+     * @param prefetchPartitions the number of partitions to read ahead
+     */
+    public BaseStatefulWindowedBolt<T> withPrefetchPartitions(int prefetchPartitions) {
+        this.prefetchPartitions = prefetchPartitions;
+        return this;
+    }
+
     @Override
     public boolean isPersistent() {
         return persistent;
@@ -183,6 +219,11 @@ public abstract class BaseStatefulWindowedBolt<T extends State> extends BaseWind
         return maxEventsInMemory > 0 ? maxEventsInMemory : IStatefulWindowedBolt.super.maxEventsInMemory();
     }
 
+    @Override
+    public int prefetchPartitions() {
+        return prefetchPartitions >= 0 ? prefetchPartitions : IStatefulWindowedBolt.super.prefetchPartitions();
+    }
+
     @Override
     public void preCommit(long txid) {
         // NOOP
@@ -22,7 +22,9 @@ import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.IWindowedBolt;
 import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.topology.TupleFieldTimestampExtractor;
+import org.apache.storm.tuple.Tuple;
 import org.apache.storm.windowing.TimestampExtractor;
+import org.apache.storm.windowing.WindowAggregator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +33,7 @@ public abstract class BaseWindowedBolt implements IWindowedBolt {
 
     protected final transient Map<String, Object> windowConfiguration;
     protected TimestampExtractor timestampExtractor;
+    protected WindowAggregator<Tuple, ?> aggregator;
 
     protected BaseWindowedBolt() {
         windowConfiguration = new HashMap<>();
@@ -183,6 +186,50 @@ public abstract class BaseWindowedBolt implements IWindowedBolt {
         return this;
     }
 
+    /**
+     * Maintain the aggregate of the windows incrementally, per pane, instead of keeping their tuples. The pane length is the greatest
+     * common divisor of the window length and the sliding interval, which must both be counts or both be durations. The bolt then gets
+     * the aggregate of every window through {@link org.apache.storm.windowing.TupleWindow#getAggregate()}, and the tuples are acked as
+     * soon as they are applied to the aggregate of their pane. Since the tuples can not be replayed once acked, this has to be accepted
+     * with {@link #withAtMostOnceProcessing()} when acking is enabled. Not supported by stateful windowed bolts.
+     *
+     * @param aggregator the aggregator, an {@link org.apache.storm.windowing.InvertibleWindowAggregator} avoids merging all the panes of
+     *                   a sliding window on every trigger
+     */
+    public BaseWindowedBolt withAggregator(WindowAggregator<Tuple, ?> aggregator) {
+        if (aggregator == null) {
+            throw new IllegalArgumentException("Window aggregator cannot be set to null");
+        }
+        this.aggregator = aggregator;
+        return this;
+    }
+
+    @Override
+    public WindowAggregator<Tuple, ?> getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * Keep the tuples of the window serialized outside of the heap, spilling the older ones to local disk, so that windows much larger
+     * than the heap can be held. The tuples are acked as soon as they are added to the window, the emits are not anchored to them and
+     * {@link org.apache.storm.windowing.TupleWindow#getNew()} and {@link org.apache.storm.windowing.TupleWindow#getExpired()}
+     * are not supported. Since the tuples can not be replayed once acked, this has to be accepted with
+     * {@link #withAtMostOnceProcessing()} when acking is enabled. Not supported by stateful windowed bolts.
+     */
+    public BaseWindowedBolt withOffHeapWindow() {
+        windowConfiguration.put(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_ENABLE, true);
+        return this;
+    }
+
+    /**
+     * Accept that the tuples of the window are acked as soon as they arrive, so that the ones in the window are lost if the worker dies.
+     * Required by {@link #withOffHeapWindow()} and {@link #withAggregator(WindowAggregator)} when acking is enabled.
+     */
+    public BaseWindowedBolt withAtMostOnceProcessing() {
+        windowConfiguration.put(Config.TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE, true);
+        return this;
+    }
+
     @Override
     public TimestampExtractor getTimestampExtractor() {
         return timestampExtractor;
@@ -0,0 +1,36 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.tuple;
+
+/**
+ * The type of a field declared with {@link TypedFields}. Values of a typed field must be instances of {@link #getValueClass()} or null.
+ */
+public enum FieldType {
+    BOOLEAN(Boolean.class),
+    INT(Integer.class),
+    LONG(Long.class),
+    FLOAT(Float.class),
+    DOUBLE(Double.class),
+    STRING(String.class),
+    BYTES(byte[].class);
+
+    private final Class<?> valueClass;
+
+    FieldType(Class<?> valueClass) {
+        this.valueClass = valueClass;
+    }
+
+    public Class<?> getValueClass() {
+        return valueClass;
+    }
+}
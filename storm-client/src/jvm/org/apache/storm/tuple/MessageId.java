@@ -44,9 +44,7 @@ public class MessageId {
     }
 
     public static MessageId makeRootId(long id, long val) {
-        Map<Long, Long> anchorsToIds = new HashMap<>();
-        anchorsToIds.put(id, val);
-        return new MessageId(anchorsToIds);
+        return new MessageId(Collections.singletonMap(id, val));
     }
 
     public static MessageId deserialize(Input in) throws IOException {
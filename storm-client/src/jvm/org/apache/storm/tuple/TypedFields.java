@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.tuple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fields that also declare the type of every value. Streams declared with typed fields are serialized with a codec generated from the
+ * types, which writes primitives unboxed and without kryo class tags. Tuples that do not match the declared types are still sent, using
+ * the regular kryo serialization.
+ *
+ * <pre>
+ * declarer.declare(TypedFields.builder()
+ *     .add("timestamp", FieldType.LONG)
+ *     .add("host", FieldType.STRING)
+ *     .add("value", FieldType.DOUBLE)
+ *     .build());
+ * </pre>
+ */
+public class TypedFields extends Fields {
+    private static final long serialVersionUID = 7370409734405447395L;
+    private final List<FieldType> types;
+
+    public TypedFields(List<String> fields, List<FieldType> types) {
+        super(fields);
+        if (fields.size() != types.size()) {
+            throw new IllegalArgumentException("Expected " + fields.size() + " field types, got " + types.size());
+        }
+        if (types.contains(null)) {
+            throw new IllegalArgumentException("Field types must not be null");
+        }
+        this.types = Collections.unmodifiableList(new ArrayList<>(types));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public List<FieldType> getTypes() {
+        return types;
+    }
+
+    /**
+     * Gets the type of the field at position index.
+     */
+    public FieldType getType(int index) {
+        return types.get(index);
+    }
+
+    public static class Builder {
+        private final List<String> fields = new ArrayList<>();
+        private final List<FieldType> types = new ArrayList<>();
+
+        public Builder add(String field, FieldType type) {
+            fields.add(field);
+            types.add(type);
+            return this;
+        }
+
+        public TypedFields build() {
+            return new TypedFields(fields, types);
+        }
+    }
+}
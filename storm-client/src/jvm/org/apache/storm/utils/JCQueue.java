@@ -21,6 +21,10 @@ package org.apache.storm.utils;
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.storm.Config;
 import org.apache.storm.metrics2.StormMetricRegistry;
 import org.apache.storm.policy.IWaitStrategy;
 import org.apache.storm.shade.org.jctools.queues.MessagePassingQueue;
@@ -38,39 +42,108 @@ public class JCQueue implements Closeable {
     // only holds msgs from other workers (via WorkerTransfer), when recvQueue is full
     private final MpscUnboundedArrayQueue<Object> overflowQ;
     private final int overflowLimit; // ensures... overflowCount <= overflowLimit. if set to 0, disables overflow limiting.
+    private final OverflowPolicy overflowPolicy; // what to do with msgs once overflowQ has reached overflowLimit
+    private final SpillRing spill; // holds msgs past overflowLimit with OverflowPolicy.SPILL, null otherwise
+    private final long overflowBlockTimeoutNs; // longest wait for room with OverflowPolicy.BLOCK, before dropping the msg
+    private volatile boolean overflowBlockTimedOut; // set once a wait timed out, until there is room again
+    private volatile boolean closed;
     private final int producerBatchSz;
+    private final long batchLatencyTargetNs; // if > 0, producers tune their batch size to stay within this latency
     private final DirectInserter directInserter = new DirectInserter(this);
     private final ThreadLocal<BatchInserter> thdLocalBatcher = new ThreadLocal<BatchInserter>(); // ensure 1 instance per producer thd.
     private final IWaitStrategy backPressureWaitStrategy;
     private final String queueName;
+    private volatile Runnable consumerWakeup;
 
     public JCQueue(String queueName, String metricNamePrefix, int size, int overflowLimit, int producerBatchSz,
                    IWaitStrategy backPressureWaitStrategy, String topologyId, String componentId, List<Integer> taskIds,
                    int port, StormMetricRegistry metricRegistry) {
+        this(queueName, metricNamePrefix, size, overflowLimit, producerBatchSz, 0, backPressureWaitStrategy, topologyId, componentId,
+            taskIds, port, metricRegistry);
+    }
+
+    /**
+     * Create a queue whose producers batch adaptively when batchLatencyTargetMicros is greater than 0. Every producer thread then sizes
+     * its batches between 1 and producerBatchSz, from its own arrival rate, so that a batch fills within the latency target. A batch whose
+     * oldest element has waited for longer than the target is published on the next insert.
+     */
+    public JCQueue(String queueName, String metricNamePrefix, int size, int overflowLimit, int producerBatchSz,
+                   int batchLatencyTargetMicros, IWaitStrategy backPressureWaitStrategy, String topologyId, String componentId,
+                   List<Integer> taskIds, int port, StormMetricRegistry metricRegistry) {
+        this(queueName, metricNamePrefix, size, overflowLimit, OverflowPolicy.DROP, null, 0, producerBatchSz, batchLatencyTargetMicros,
+            backPressureWaitStrategy, topologyId, componentId, taskIds, port, metricRegistry);
+    }
+
+    /**
+     * Create a queue with the given policy for msgs offered to {@link #tryPublishToOverflow(Object)} once the overflowQ holds
+     * overflowLimit msgs. The spill ring is required with {@link OverflowPolicy#SPILL} and ignored otherwise. With
+     * {@link OverflowPolicy#BLOCK} a publisher waits for at most overflowBlockTimeoutMs for room before the msg is dropped.
+     */
+    public JCQueue(String queueName, String metricNamePrefix, int size, int overflowLimit, OverflowPolicy overflowPolicy, SpillRing spill,
+                   int overflowBlockTimeoutMs, int producerBatchSz, int batchLatencyTargetMicros, IWaitStrategy backPressureWaitStrategy,
+                   String topologyId, String componentId, List<Integer> taskIds, int port, StormMetricRegistry metricRegistry) {
+        if (overflowPolicy == OverflowPolicy.SPILL && spill == null) {
+            throw new IllegalArgumentException("A spill ring is required to spill the overflow of " + queueName);
+        }
         this.queueName = queueName;
         this.overflowLimit = overflowLimit;
+        this.overflowPolicy = overflowPolicy;
+        this.spill = overflowPolicy == OverflowPolicy.SPILL ? spill : null;
+        this.overflowBlockTimeoutNs = TimeUnit.MILLISECONDS.toNanos(Math.max(0, overflowBlockTimeoutMs));
         this.recvQueue = new MpscArrayQueue<>(size);
         this.overflowQ = new MpscUnboundedArrayQueue<>(size);
 
         for (Integer taskId : taskIds) {
             this.jcqMetrics.add(new JCQueueMetrics(metricNamePrefix, topologyId, componentId, taskId, port,
-                    metricRegistry, recvQueue, overflowQ));
+                    metricRegistry, recvQueue, overflowQ, this.spill));
         }
 
         //The batch size can be no larger than half the full recvQueue size, to avoid contention issues.
         this.producerBatchSz = Math.max(1, Math.min(producerBatchSz, size / 2));
+        this.batchLatencyTargetNs = TimeUnit.MICROSECONDS.toNanos(Math.max(0, batchLatencyTargetMicros));
         this.backPressureWaitStrategy = backPressureWaitStrategy;
+        // adaptive producers start out with batches of 1, the others always fill producerBatchSz
+        notifyTargetBatchSize(batchLatencyTargetNs > 0 ? 1 : this.producerBatchSz);
+    }
+
+    /**
+     * The latency target for producer batches configured for the topology, or 0 if adaptive batching is disabled.
+     */
+    public static int getBatchLatencyTargetMicros(Map<String, Object> topologyConf) {
+        if (!ObjectReader.getBoolean(topologyConf.get(Config.TOPOLOGY_PRODUCER_BATCH_ADAPTIVE), false)) {
+            return 0;
+        }
+        return ObjectReader.getInt(topologyConf.get(Config.TOPOLOGY_PRODUCER_BATCH_LATENCY_TARGET_MICROS), 500);
     }
 
     public String getQueueName() {
         return queueName;
     }
 
+    /**
+     * Set a callback that is run after msgs have been published to the queue, for a consumer that does not poll it. The callback should
+     * be cheap, as it is run by the producers on every publish.
+     */
+    public void setConsumerWakeup(Runnable consumerWakeup) {
+        this.consumerWakeup = consumerWakeup;
+    }
+
+    private void wakeConsumer() {
+        Runnable wakeup = consumerWakeup;
+        if (wakeup != null) {
+            wakeup.run();
+        }
+    }
+
     @Override
     public void close() {
+        closed = true;
         for (JCQueueMetrics jcQueueMetric : jcqMetrics) {
             jcQueueMetric.close();
         }
+        if (spill != null) {
+            spill.close();
+        }
     }
 
     /**
@@ -93,7 +166,7 @@ public class JCQueue implements Closeable {
     }
 
     public int size() {
-        return recvQueue.size() + overflowQ.size();
+        return recvQueue.size() + getOverflowCount();
     }
 
     public double getQueueLoad() {
@@ -121,6 +194,19 @@ public class JCQueue implements Closeable {
             ++overflowDrainCount;
             consumer.accept(tuple);
         }
+
+        if (spill != null) {
+            // everything in the spill was offered after what is in overflowQ, so it is drained last
+            limit = overflowDrainCount + spill.size();
+            while (exitCond.keepRunning() && (overflowDrainCount < limit)) {
+                Object tuple = spill.poll();
+                if (tuple == null) {
+                    break;
+                }
+                ++overflowDrainCount;
+                consumer.accept(tuple);
+            }
+        }
         int total = drainCount + overflowDrainCount;
         if (total > 0) {
             consumer.flush();
@@ -134,6 +220,7 @@ public class JCQueue implements Closeable {
             for (JCQueueMetrics jcQueueMetric : jcqMetrics) {
                 jcQueueMetric.notifyArrivals(1);
             }
+            wakeConsumer();
             return true;
         }
         return false;
@@ -154,15 +241,24 @@ public class JCQueue implements Closeable {
         for (JCQueueMetrics jcQueueMetric : jcqMetrics) {
             jcQueueMetric.notifyArrivals(count);
         }
+        if (count > 0) {
+            wakeConsumer();
+        }
         return count;
     }
 
+    private void notifyTargetBatchSize(int targetBatchSz) {
+        for (JCQueueMetrics jcQueueMetric : jcqMetrics) {
+            jcQueueMetric.notifyTargetBatchSize(targetBatchSz);
+        }
+    }
+
     private Inserter getInserter() {
         Inserter inserter;
         if (producerBatchSz > 1) {
             inserter = thdLocalBatcher.get();
             if (inserter == null) {
-                BatchInserter b = new BatchInserter(this, producerBatchSz);
+                BatchInserter b = new BatchInserter(this, producerBatchSz, batchLatencyTargetNs);
                 inserter = b;
                 thdLocalBatcher.set(b);
             }
@@ -196,16 +292,82 @@ public class JCQueue implements Closeable {
     }
 
     /**
-     * Un-batched write to overflowQ. Should only be called by WorkerTransfer returns false if overflowLimit has reached
+     * Un-batched write to overflowQ. Should only be called by WorkerTransfer. Once overflowLimit has been reached, what happens depends
+     * on the overflow policy: with DROP returns false right away, with BLOCK waits for the consumer to make room using the back pressure
+     * wait strategy and with SPILL writes the msg to the spill ring. Returns false if the msg could not be accepted and has to be dropped.
+     *
+     * <p>With BLOCK the caller is normally a netty event loop thread, which can not read from any of its connections while it waits.
+     * The wait is therefore bounded by the block timeout, and once it has timed out further msgs for this queue are dropped without
+     * waiting until the consumer has made room again. It also ends when the queue is closed.
      */
     public boolean tryPublishToOverflow(Object obj) {
+        if (spill != null && !spill.isEmpty()) {
+            // keep the msgs in order, once spilling the overflowQ is only used again after the spill has been drained
+            return trySpill(obj);
+        }
         if (overflowLimit > 0 && overflowQ.size() >= overflowLimit) {
-            return false;
+            switch (overflowPolicy) {
+                case SPILL:
+                    return trySpill(obj);
+                case BLOCK:
+                    if (overflowBlockTimedOut || !waitForOverflowRoom()) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        if (overflowBlockTimedOut) {
+            overflowBlockTimedOut = false;
         }
         overflowQ.add(obj);
+        wakeConsumer();
+        return true;
+    }
+
+    private boolean trySpill(Object obj) {
+        if (!spill.offer(obj)) {
+            return false;
+        }
+        for (JCQueueMetrics jcQueueMetric : jcqMetrics) {
+            jcQueueMetric.notifySpilled();
+        }
+        wakeConsumer();
         return true;
     }
 
+    private boolean waitForOverflowRoom() {
+        long start = System.nanoTime();
+        int idleCount = 0;
+        try {
+            while (overflowQ.size() >= overflowLimit) {
+                if (closed) {
+                    return false;
+                }
+                if (System.nanoTime() - start >= overflowBlockTimeoutNs) {
+                    LOG.warn("Overflow of Q: '{}' is still full after {} ms, dropping msgs until there is room.", queueName,
+                             TimeUnit.NANOSECONDS.toMillis(overflowBlockTimeoutNs));
+                    overflowBlockTimedOut = true;
+                    return false;
+                }
+                if (idleCount == 0) {
+                    LOG.debug("Overflow of Q: '{}' is full. Entering BackPressure Wait.", queueName);
+                }
+                idleCount = backPressureWaitStrategy.idle(idleCount);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            long blockedNs = System.nanoTime() - start;
+            for (JCQueueMetrics jcQueueMetric : jcqMetrics) {
+                jcQueueMetric.notifyOverflowBlocked(blockedNs);
+            }
+        }
+    }
+
     public void recordMsgDrop() {
         for (JCQueueMetrics jcQueueMetric : jcqMetrics) {
             jcQueueMetric.notifyDroppedMsg();
@@ -213,11 +375,11 @@ public class JCQueue implements Closeable {
     }
 
     public boolean isEmptyOverflow() {
-        return overflowQ.isEmpty();
+        return overflowQ.isEmpty() && (spill == null || spill.isEmpty());
     }
 
     public int getOverflowCount() {
-        return overflowQ.size();
+        return spill == null ? overflowQ.size() : overflowQ.size() + spill.size();
     }
 
     public int getQueuedCount() {
@@ -242,6 +404,30 @@ public class JCQueue implements Closeable {
         return inserter.tryFlush();
     }
 
+    /**
+     * What to do with msgs from other workers once a queue and its overflowQ are full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drop the msg and count it in the dropped_messages metric.
+         */
+        DROP,
+        /**
+         * Wait for the consumer to make room, which stops the netty thread from reading more msgs, for all the connections it serves.
+         * The wait is bounded by topology.executor.overflow.block.timeout.ms, after which msgs are dropped.
+         */
+        BLOCK,
+        /**
+         * Serialize the msg into an off heap {@link SpillRing}, dropping it only when the ring is full.
+         */
+        SPILL;
+
+        public static OverflowPolicy fromConfig(Map<String, Object> topologyConf) {
+            Object policy = topologyConf.get(Config.TOPOLOGY_EXECUTOR_OVERFLOW_POLICY);
+            return policy == null ? DROP : valueOf(policy.toString().toUpperCase(Locale.ROOT));
+        }
+    }
+
     private interface Inserter {
         // blocking call that can be interrupted using Thread.interrupt()
         void publish(Object obj) throws InterruptedException;
@@ -324,14 +510,30 @@ public class JCQueue implements Closeable {
 
     /* Not thread safe. Have one instance per producer thread or synchronize externally */
     private static class BatchInserter implements Inserter {
+        private static final int CLOCK_CHECK_INTERVAL = 16;
         private final int batchSz;
+        private final long latencyTargetNs; // 0 means fixed size batches of batchSz
         private JCQueue queue;
         private ArrayList<Object> currentBatch;
-
-        BatchInserter(JCQueue queue, int batchSz) {
+        // adaptive batching state
+        private int targetBatchSz;
+        private long avgArrivalGapNs;
+        private long batchStartNs;
+        private long lastAdaptNs;
+        private int arrivalsSinceAdapt;
+
+        BatchInserter(JCQueue queue, int batchSz, long latencyTargetNs) {
             this.queue = queue;
             this.batchSz = batchSz;
+            this.latencyTargetNs = latencyTargetNs;
             this.currentBatch = new ArrayList<>(batchSz + 1);
+            if (latencyTargetNs > 0) {
+                // start out latency friendly, the batch grows as soon as the arrival rate is known
+                this.targetBatchSz = 1;
+                this.avgArrivalGapNs = latencyTargetNs;
+            } else {
+                this.targetBatchSz = batchSz;
+            }
         }
 
         /**
@@ -339,8 +541,7 @@ public class JCQueue implements Closeable {
          */
         @Override
         public void publish(Object obj) throws InterruptedException {
-            currentBatch.add(obj);
-            if (currentBatch.size() >= batchSz) {
+            if (add(obj)) {
                 flush();
             }
         }
@@ -350,15 +551,63 @@ public class JCQueue implements Closeable {
          */
         @Override
         public boolean tryPublish(Object obj) {
-            if (currentBatch.size() >= batchSz) {
+            if (currentBatch.size() >= targetBatchSz) {
                 if (!tryFlush()) {
                     return false;
                 }
             }
-            currentBatch.add(obj);
+            if (add(obj) && latencyTargetNs > 0) {
+                // best effort, whatever is left over goes out with the next insert or flush
+                tryFlush();
+            }
             return true;
         }
 
+        /**
+         * Add the element to the current batch. Returns true if the batch is due to be published.
+         */
+        private boolean add(Object obj) {
+            currentBatch.add(obj);
+            if (latencyTargetNs == 0) {
+                return currentBatch.size() >= batchSz;
+            }
+            arrivalsSinceAdapt++;
+            int size = currentBatch.size();
+            if (size >= targetBatchSz) {
+                return true;
+            }
+            // large batches only fill up at high rates, reading the clock on every insert would cost more than it is worth there
+            if (size == 1 || targetBatchSz <= CLOCK_CHECK_INTERVAL || size % CLOCK_CHECK_INTERVAL == 0) {
+                long now = System.nanoTime();
+                if (size == 1) {
+                    batchStartNs = now;
+                }
+                return now - batchStartNs >= latencyTargetNs;
+            }
+            return false;
+        }
+
+        /**
+         * Size the next batch so that it fills within the latency target at the arrival rate seen since the last published batch.
+         */
+        private void adapt() {
+            if (latencyTargetNs == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            // an idle period should not hold the batch size down for long, so cap the gap at the latency target
+            long gap = Math.min((now - lastAdaptNs) / Math.max(1, arrivalsSinceAdapt), latencyTargetNs);
+            avgArrivalGapNs += (gap - avgArrivalGapNs) >> 2;
+            lastAdaptNs = now;
+            arrivalsSinceAdapt = 0;
+            long target = latencyTargetNs / Math.max(1, avgArrivalGapNs);
+            int newTarget = (int) Math.max(1, Math.min(batchSz, target));
+            if (newTarget != targetBatchSz) {
+                targetBatchSz = newTarget;
+                queue.notifyTargetBatchSize(newTarget);
+            }
+        }
+
         /**
          * Blocking call - Does not return until at least 1 element is drained or Thread.interrupt() is received. Uses backpressure wait
          * strategy.
@@ -385,6 +634,7 @@ public class JCQueue implements Closeable {
                 publishCount = queue.tryPublishInternal(currentBatch);
             }
             currentBatch.subList(0, publishCount).clear();
+            adapt();
         }
 
         /**
@@ -404,6 +654,7 @@ public class JCQueue implements Closeable {
                 return false;
             } else {
                 currentBatch.subList(0, publishCount).clear();
+                adapt();
                 return true;
             }
         }
@@ -20,6 +20,8 @@ package org.apache.storm.utils;
 
 import com.codahale.metrics.Gauge;
 import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.storm.metric.internal.RateTracker;
 import org.apache.storm.metrics2.StormMetricRegistry;
@@ -30,11 +32,21 @@ import org.apache.storm.shade.org.jctools.queues.MpscUnboundedArrayQueue;
 public class JCQueueMetrics implements Closeable {
     private final RateTracker arrivalsTracker = new RateTracker(10000, 10);
     private final RateTracker insertFailuresTracker = new RateTracker(10000, 10);
+    private final RateTracker insertsTracker = new RateTracker(10000, 10);
+    private final AtomicInteger targetBatchSize = new AtomicInteger(1);
+    private final AtomicLong spilledMessages = new AtomicLong(0);
+    private final AtomicLong overflowBlockedNs = new AtomicLong(0);
     private final AtomicLong droppedMessages = new AtomicLong(0);
 
     public JCQueueMetrics(String metricNamePrefix, String topologyId, String componentId, int taskId, int port,
                           StormMetricRegistry metricRegistry, MpscArrayQueue<Object> receiveQ,
                           MpscUnboundedArrayQueue<Object> overflowQ) {
+        this(metricNamePrefix, topologyId, componentId, taskId, port, metricRegistry, receiveQ, overflowQ, null);
+    }
+
+    public JCQueueMetrics(String metricNamePrefix, String topologyId, String componentId, int taskId, int port,
+                          StormMetricRegistry metricRegistry, MpscArrayQueue<Object> receiveQ,
+                          MpscUnboundedArrayQueue<Object> overflowQ, SpillRing spill) {
 
         Gauge<Integer> cap = new Gauge<Integer>() {
             @Override
@@ -95,6 +107,36 @@ public class JCQueueMetrics implements Closeable {
             }
         };
 
+        Gauge<Double> effectiveBatchSize = new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                // average number of elements moved into the queue per insert
+                double inserts = insertsTracker.reportRate();
+                return inserts > 0 ? arrivalsTracker.reportRate() / inserts : 0.0;
+            }
+        };
+
+        Gauge<Integer> targetBatch = new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return targetBatchSize.get();
+            }
+        };
+
+        Gauge<Long> spilled = new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return spilledMessages.get();
+            }
+        };
+
+        Gauge<Long> blocked = new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return TimeUnit.NANOSECONDS.toMillis(overflowBlockedNs.get());
+            }
+        };
+
         metricRegistry.gauge(metricNamePrefix + "-capacity", cap, topologyId, componentId, taskId, port);
         metricRegistry.gauge(metricNamePrefix + "-pct_full", pctFull, topologyId, componentId, taskId, port);
         metricRegistry.gauge(metricNamePrefix + "-population", pop, topologyId, componentId, taskId, port);
@@ -103,10 +145,32 @@ public class JCQueueMetrics implements Closeable {
         metricRegistry.gauge(metricNamePrefix + "-insert_failures", insertFailures, topologyId, componentId, taskId, port);
         metricRegistry.gauge(metricNamePrefix + "-dropped_messages", dropped, topologyId, componentId, taskId, port);
         metricRegistry.gauge(metricNamePrefix + "-overflow", overflow, topologyId, componentId, taskId, port);
+        metricRegistry.gauge(metricNamePrefix + "-effective_batch_size", effectiveBatchSize, topologyId, componentId, taskId, port);
+        metricRegistry.gauge(metricNamePrefix + "-target_batch_size", targetBatch, topologyId, componentId, taskId, port);
+        metricRegistry.gauge(metricNamePrefix + "-overflow_blocked_ms", blocked, topologyId, componentId, taskId, port);
+        if (spill != null) {
+            Gauge<Integer> spillPop = spill::size;
+            Gauge<Long> spillBytes = spill::getBytes;
+            Gauge<Long> spillMapped = spill::getMappedBytes;
+            metricRegistry.gauge(metricNamePrefix + "-spilled_messages", spilled, topologyId, componentId, taskId, port);
+            metricRegistry.gauge(metricNamePrefix + "-spill_population", spillPop, topologyId, componentId, taskId, port);
+            metricRegistry.gauge(metricNamePrefix + "-spill_bytes", spillBytes, topologyId, componentId, taskId, port);
+            metricRegistry.gauge(metricNamePrefix + "-spill_mapped_bytes", spillMapped, topologyId, componentId, taskId, port);
+        }
     }
 
     public void notifyArrivals(long counts) {
         arrivalsTracker.notify(counts);
+        if (counts > 0) {
+            insertsTracker.notify(1);
+        }
+    }
+
+    /**
+     * Record the batch size most recently chosen by an adaptively batching producer.
+     */
+    public void notifyTargetBatchSize(int size) {
+        targetBatchSize.lazySet(size);
     }
 
     public void notifyInsertFailure() {
@@ -117,9 +181,18 @@ public class JCQueueMetrics implements Closeable {
         droppedMessages.incrementAndGet();
     }
 
+    public void notifySpilled() {
+        spilledMessages.incrementAndGet();
+    }
+
+    public void notifyOverflowBlocked(long nanos) {
+        overflowBlockedNs.addAndGet(nanos);
+    }
+
     @Override
     public void close() {
         arrivalsTracker.close();
         insertFailuresTracker.close();
+        insertsTracker.close();
     }
 }
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.utils;
+
+import java.util.Arrays;
+
+/**
+ * A {@link RotatingMap} for primitive long keys. Rather than keeping a chain of hash maps, all the entries live in a single open
+ * addressing table and carry the number of the bucket they were last put in. get, put, remove, containsKey and size take O(1) time and
+ * do not box the keys.
+ *
+ * <p>Expiration works the same way: an entry expires on the numBuckets-th call to rotate after it was last put, which is between
+ * expirationSecs and expirationSecs * (1 + 1 / (numBuckets-1)) if rotate is called every expirationSecs / (numBuckets-1) seconds.
+ * rotate scans the whole table, in O(capacity) time.
+ *
+ * <p>Note: This class is not thread-safe.
+ */
+public class RotatingLongMap<V> {
+    //this default ensures things expire at most 50% past the expiration time
+    private static final int DEFAULT_NUM_BUCKETS = 3;
+    private static final int MIN_CAPACITY = 16;
+    private static final float MAX_LOAD = 0.6f;
+    private final int numBuckets;
+    private final ExpiredCallback<V> callback;
+    private long[] keys;
+    private Object[] values;
+    // the bucket each slot was last put in, 0 for an empty slot
+    private int[] generations;
+    private int mask;
+    private int shift;
+    private int resizeAt;
+    private int size;
+    private int currentGeneration = 1;
+    private long[] expiredKeys = new long[0];
+    private Object[] expiredValues = new Object[0];
+
+    public RotatingLongMap(int numBuckets, ExpiredCallback<V> callback) {
+        if (numBuckets < 2) {
+            throw new IllegalArgumentException("numBuckets must be >= 2");
+        }
+        this.numBuckets = numBuckets;
+        this.callback = callback;
+        allocate(MIN_CAPACITY);
+    }
+
+    public RotatingLongMap(ExpiredCallback<V> callback) {
+        this(DEFAULT_NUM_BUCKETS, callback);
+    }
+
+    public RotatingLongMap(int numBuckets) {
+        this(numBuckets, null);
+    }
+
+    /**
+     * Expire the entries that were last put numBuckets rotations ago.
+     *
+     * @return the number of expired entries
+     */
+    public int rotate() {
+        currentGeneration++;
+        final int expiredGeneration = currentGeneration - numBuckets;
+        int expired = 0;
+        if (size > 0) {
+            // start right after an empty slot, so that entries shifted back by a removal are never moved past the start of the scan
+            int start = 0;
+            while (generations[start] != 0) {
+                start++;
+            }
+            int i = (start + 1) & mask;
+            for (int n = 0; n < keys.length; ) {
+                int generation = generations[i];
+                if (generation != 0 && generation <= expiredGeneration) {
+                    long key = keys[i];
+                    @SuppressWarnings("unchecked")
+                    V value = (V) values[i];
+                    removeSlot(i);
+                    if (callback != null) {
+                        addExpired(expired, key, value);
+                    }
+                    expired++;
+                    // the slot now holds the next entry of the cluster, if any
+                    continue;
+                }
+                i = (i + 1) & mask;
+                n++;
+            }
+        }
+        if (keys.length > MIN_CAPACITY && size < resizeAt / 8) {
+            rehash(keys.length / 2);
+        }
+        if (callback != null) {
+            // the callback may update the map, so only call it once the scan is over
+            for (int i = 0; i < expired; i++) {
+                @SuppressWarnings("unchecked")
+                V value = (V) expiredValues[i];
+                expiredValues[i] = null;
+                callback.expire(expiredKeys[i], value);
+            }
+        }
+        return expired;
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    public V get(long key) {
+        int index = indexOf(key);
+        @SuppressWarnings("unchecked")
+        V value = index >= 0 ? (V) values[index] : null;
+        return value;
+    }
+
+    public void put(long key, V value) {
+        int i = slot(key);
+        while (generations[i] != 0) {
+            if (keys[i] == key) {
+                values[i] = value;
+                generations[i] = currentGeneration;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        generations[i] = currentGeneration;
+        if (++size > resizeAt) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    public V remove(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        V value = (V) values[index];
+        removeSlot(index);
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void addExpired(int index, long key, V value) {
+        if (index == expiredKeys.length) {
+            expiredKeys = Arrays.copyOf(expiredKeys, Math.max(MIN_CAPACITY, 2 * index));
+            expiredValues = Arrays.copyOf(expiredValues, expiredKeys.length);
+        }
+        expiredKeys[index] = key;
+        expiredValues[index] = value;
+    }
+
+    private int indexOf(long key) {
+        int i = slot(key);
+        while (generations[i] != 0) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * Empty the slot, shifting back the following entries of the cluster that would no longer be reachable from their home slot.
+     */
+    private void removeSlot(int index) {
+        int hole = index;
+        int i = (index + 1) & mask;
+        while (generations[i] != 0) {
+            int home = slot(keys[i]);
+            // move the entry into the hole unless its home lies cyclically in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                generations[hole] = generations[i];
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        values[hole] = null;
+        generations[hole] = 0;
+        size--;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        generations = new int[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        resizeAt = (int) (capacity * MAX_LOAD);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldGenerations = generations;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldGenerations[j] != 0) {
+                int i = slot(oldKeys[j]);
+                while (generations[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                generations[i] = oldGenerations[j];
+            }
+        }
+    }
+
+    public interface ExpiredCallback<V> {
+        void expire(long key, V val);
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import org.apache.storm.shade.io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FIFO of serialized objects kept outside of the heap, in a ring of fixed size memory-mapped segments. A {@link JCQueue} spills into it
+ * once its bounded overflow queue is full, so bursts can be absorbed without growing the heap. Segments are mapped lazily, up to
+ * maxSegments, and reused once they have been read. The backing files are deleted as soon as they are mapped where the OS allows it,
+ * and otherwise when the ring is closed.
+ *
+ * <p>Records are stored as: int(4) length ... byte[length]. Thread safe.
+ */
+public class SpillRing implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(SpillRing.class);
+
+    private final Path dir;
+    private final String name;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final Codec codec;
+    private final ArrayDeque<Segment> active = new ArrayDeque<>();
+    private final ArrayDeque<Segment> free = new ArrayDeque<>();
+    private int mappedSegments;
+    private volatile int count;
+    private volatile long bytes;
+    private boolean mapFailed;
+    private boolean closed;
+
+    /**
+     * Create a spill ring.
+     *
+     * @param dir the directory to create the segment files in
+     * @param name prefix of the segment file names
+     * @param segmentBytes the size of every segment, which bounds the size of a single record
+     * @param maxSegments the maximum number of segments to map
+     * @param codec converts objects to and from their spilled form
+     */
+    public SpillRing(Path dir, String name, int segmentBytes, int maxSegments, Codec codec) {
+        this.dir = dir;
+        this.name = name.replaceAll("[^A-Za-z0-9_.-]", "_");
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.codec = codec;
+    }
+
+    /**
+     * Append the object. Returns false if it does not fit, because the ring is full or closed or the record is larger than a segment.
+     */
+    public boolean offer(Object obj) {
+        byte[] record = codec.encode(obj);
+        int size = 4 + record.length;
+        if (size > segmentBytes) {
+            return false;
+        }
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            Segment tail = active.peekLast();
+            if (tail == null || tail.buffer.remaining() < size) {
+                tail = nextSegment();
+                if (tail == null) {
+                    return false;
+                }
+                active.addLast(tail);
+            }
+            tail.buffer.putInt(record.length);
+            tail.buffer.put(record);
+            count++;
+            bytes += size;
+        }
+        return true;
+    }
+
+    /**
+     * Remove the oldest object. Returns null if the ring is empty.
+     */
+    public Object poll() {
+        byte[] record;
+        synchronized (this) {
+            if (count == 0) {
+                return null;
+            }
+            Segment head = active.peekFirst();
+            while (head.readIndex == head.buffer.position()) {
+                // fully read, only the tail segment can still be written to
+                active.pollFirst();
+                free.addLast(head);
+                head = active.peekFirst();
+            }
+            int length = head.buffer.getInt(head.readIndex);
+            record = new byte[length];
+            head.reader.position(head.readIndex + 4);
+            head.reader.get(record);
+            head.readIndex += 4 + length;
+            if (head.readIndex == head.buffer.position() && active.size() > 1) {
+                active.pollFirst();
+                free.addLast(head);
+            }
+            count--;
+            bytes -= 4 + length;
+        }
+        return codec.decode(record);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * The number of bytes currently held, including the record headers.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * The number of bytes mapped for segments.
+     */
+    public synchronized long getMappedBytes() {
+        return (long) mappedSegments * segmentBytes;
+    }
+
+    /**
+     * Drop all the segments, unmap them and delete their files. Nothing can be added to the ring once it is closed.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Segment segment : active) {
+            segment.unmap();
+        }
+        for (Segment segment : free) {
+            segment.unmap();
+        }
+        active.clear();
+        free.clear();
+        mappedSegments = 0;
+        count = 0;
+        bytes = 0;
+    }
+
+    private Segment nextSegment() {
+        Segment segment = free.pollFirst();
+        if (segment != null) {
+            segment.buffer.clear();
+            segment.readIndex = 0;
+            return segment;
+        }
+        if (mappedSegments >= maxSegments || mapFailed) {
+            return null;
+        }
+        try {
+            Files.createDirectories(dir);
+            Path file = Files.createTempFile(dir, name + "-", ".spill");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.DELETE_ON_CLOSE)) {
+                segment = new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+            }
+            mappedSegments++;
+            return segment;
+        } catch (IOException e) {
+            LOG.warn("Unable to map a spill segment in {}, no longer spilling for {}", dir, name, e);
+            mapFailed = true;
+            return null;
+        }
+    }
+
+    /**
+     * Converts objects to and from their spilled form.
+     */
+    public interface Codec {
+        byte[] encode(Object obj);
+
+        Object decode(byte[] record);
+    }
+
+    private static class Segment {
+        private final Path file;
+        private final ByteBuffer buffer; // position is the write index
+        private final ByteBuffer reader;
+        private int readIndex;
+
+        Segment(Path file, ByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+            this.reader = buffer.duplicate();
+        }
+
+        void unmap() {
+            PlatformDependent.freeDirectBuffer(buffer);
+            try {
+                // already gone where the file could be deleted while mapped
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOG.warn("Unable to delete the spill segment {}", file, e);
+            }
+        }
+    }
+}
@@ -17,67 +17,159 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Stream;
 import org.apache.storm.generated.NodeInfo;
 import org.apache.storm.messaging.IConnection;
 import org.apache.storm.messaging.TaskMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Collects the msgs drained from the worker transfer queue into one batch per destination worker, and sends every batch with a single
+ * call to the connection of that worker. Batches are reused across drain cycles, and the batch of a task is looked up in an array that is
+ * only rebuilt when the task assignment changes, so draining does not allocate.
+ */
 public class TransferDrainer {
 
     private static final Logger LOG = LoggerFactory.getLogger(TransferDrainer.class);
-    private final Map<Integer, ArrayList<TaskMessage>> bundles = new HashMap<>();
+    private final Map<NodeInfo, Batch> batches = new HashMap<>();
+    private final ArrayList<Batch> pendingBatches = new ArrayList<>();
+    private final long maxBatchBytes;
+    private Map<Integer, NodeInfo> resolvedTaskToNode;
+    private Batch[] taskToBatch = new Batch[0];
+
+    public TransferDrainer() {
+        this(Long.MAX_VALUE);
+    }
 
-    // Cache the msgs grouped by destination node
-    public void add(TaskMessage taskMsg) {
+    /**
+     * Create a drainer whose {@link #add(TaskMessage, Map)} reports when the batch of a destination holds at least maxBatchBytes.
+     */
+    public TransferDrainer(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Append the msg to the batch of the worker hosting its destination task.
+     *
+     * @return true if that batch has reached the max batch size and should be sent right away
+     */
+    public boolean add(TaskMessage taskMsg, Map<Integer, NodeInfo> taskToNode) {
+        if (taskToNode != resolvedTaskToNode) {
+            resolve(taskToNode);
+        }
         int destId = taskMsg.task();
-        ArrayList<TaskMessage> msgs = bundles.get(destId);
-        if (msgs == null) {
-            msgs = new ArrayList<>();
-            bundles.put(destId, msgs);
+        Batch batch = destId < taskToBatch.length ? taskToBatch[destId] : null;
+        if (batch == null) {
+            LOG.warn("No remote destination available for task {}", destId);
+            taskMsg.release();
+            return false;
+        }
+        if (batch.msgs.isEmpty()) {
+            pendingBatches.add(batch);
         }
-        msgs.add(taskMsg);
+        batch.msgs.add(taskMsg);
+        batch.bytes += taskMsg.length();
+        return batch.bytes >= maxBatchBytes;
     }
 
     public void send(Map<Integer, NodeInfo> taskToNode, Map<NodeInfo, IConnection> connections) {
-        HashMap<NodeInfo, Stream<TaskMessage>> bundleMapByDestination = groupBundleByDestination(taskToNode);
+        if (taskToNode != resolvedTaskToNode) {
+            // the assignment changed since the msgs were added, send them where their tasks are now
+            resolve(taskToNode);
+        }
+        int done = 0;
+        try {
+            while (done < pendingBatches.size()) {
+                Batch batch = pendingBatches.get(done++);
+                send(batch, connections.get(batch.node));
+            }
+        } finally {
+            // the batches that were not reached yet stay pending if a send failed
+            pendingBatches.subList(0, done).clear();
+        }
+    }
 
-        for (Map.Entry<NodeInfo, Stream<TaskMessage>> entry : bundleMapByDestination.entrySet()) {
-            NodeInfo node = entry.getKey();
-            IConnection conn = connections.get(node);
+    private void send(Batch batch, IConnection conn) {
+        Iterator<TaskMessage> msgs = batch.msgs.iterator();
+        try {
             if (conn != null) {
-                Iterator<TaskMessage> iter = entry.getValue().iterator();
-                if (iter.hasNext()) {
-                    conn.send(iter);
-                }
+                conn.send(msgs);
             } else {
-                LOG.warn("Connection not available for hostPort {}", node);
+                LOG.warn("Connection not available for hostPort {}", batch.node);
+            }
+        } finally {
+            // the connection owns the msgs it took, release the ones it did not get to
+            while (msgs.hasNext()) {
+                msgs.next().release();
             }
+            batch.clear();
         }
     }
 
-    private HashMap<NodeInfo, Stream<TaskMessage>> groupBundleByDestination(Map<Integer, NodeInfo> taskToNode) {
-        HashMap<NodeInfo, Stream<TaskMessage>> result = new HashMap<>();
+    /**
+     * Drop the msgs that were not sent, and release their buffers.
+     */
+    public void clear() {
+        for (int i = 0; i < pendingBatches.size(); i++) {
+            Batch batch = pendingBatches.get(i);
+            batch.msgs.forEach(TaskMessage::release);
+            batch.clear();
+        }
+        pendingBatches.clear();
+    }
 
-        for (Entry<Integer, ArrayList<TaskMessage>> entry : bundles.entrySet()) {
-            if (entry.getValue().isEmpty()) {
-                continue;
-            }
-            NodeInfo node = taskToNode.get(entry.getKey());
-            if (node != null) {
-                result.merge(node, entry.getValue().stream(), Stream::concat);
-            } else {
-                LOG.warn("No remote destination available for task {}", entry.getKey());
+    /**
+     * Rebuild the task to batch index for a new assignment, and move the msgs that are waiting to be sent to the batches their tasks
+     * belong to now.
+     */
+    private void resolve(Map<Integer, NodeInfo> taskToNode) {
+        ArrayList<TaskMessage> pending = new ArrayList<>();
+        for (Batch batch : pendingBatches) {
+            pending.addAll(batch.msgs);
+            batch.clear();
+        }
+        pendingBatches.clear();
+
+        int maxTask = -1;
+        for (Integer task : taskToNode.keySet()) {
+            maxTask = Math.max(maxTask, task);
+        }
+        Map<NodeInfo, Batch> newBatches = new HashMap<>();
+        Batch[] newTaskToBatch = new Batch[maxTask + 1];
+        for (Map.Entry<Integer, NodeInfo> entry : taskToNode.entrySet()) {
+            NodeInfo node = entry.getValue();
+            Batch batch = newBatches.get(node);
+            if (batch == null) {
+                batch = batches.get(node);
+                if (batch == null) {
+                    batch = new Batch(node);
+                }
+                newBatches.put(node, batch);
             }
+            newTaskToBatch[entry.getKey()] = batch;
+        }
+        batches.clear();
+        batches.putAll(newBatches);
+        taskToBatch = newTaskToBatch;
+        resolvedTaskToNode = taskToNode;
+
+        for (TaskMessage msg : pending) {
+            add(msg, taskToNode);
         }
-        return result;
     }
 
-    public void clear() {
-        for (ArrayList<TaskMessage> taskMessages : bundles.values()) {
-            taskMessages.clear();
+    private static class Batch {
+        private final NodeInfo node;
+        private final ArrayList<TaskMessage> msgs = new ArrayList<>();
+        private long bytes;
+
+        Batch(NodeInfo node) {
+            this.node = node;
+        }
+
+        void clear() {
+            msgs.clear();
+            bytes = 0;
         }
     }
 }
@@ -38,6 +38,41 @@ public final class TupleUtils {
         return Math.floorMod(listHashCode(keys), numTasks);
     }
 
+    /**
+     * Same as {@link #chooseTaskIndex(List, int)} on a list holding only the given key, without boxing it.
+     */
+    public static int chooseTaskIndex(long key, int numTasks) {
+        return Math.floorMod(31 + Long.hashCode(key), numTasks);
+    }
+
+    /**
+     * Same as {@link #chooseTaskIndex(List, int)} on the values at the given indices, without copying them into a new list.
+     */
+    public static int chooseTaskIndex(List<Object> values, int[] keyIndices, int numTasks) {
+        return Math.floorMod(keyHashCode(values, keyIndices), numTasks);
+    }
+
+    /**
+     * The hash of the values at the given indices that fields grouping partitions on, the same as the hash code of a list holding them.
+     */
+    public static int keyHashCode(List<Object> values, int[] keyIndices) {
+        int hash = 1;
+        for (int index : keyIndices) {
+            Object key = values.get(index);
+            int keyHash;
+            if (key == null) {
+                keyHash = 0;
+            } else if (key.getClass().isArray()) {
+                // hash arrays by their content, the way Arrays.deepHashCode does
+                keyHash = Arrays.deepHashCode(new Object[]{ key }) - 31;
+            } else {
+                keyHash = key.hashCode();
+            }
+            hash = 31 * hash + keyHash;
+        }
+        return hash;
+    }
+
     private static <T> int listHashCode(List<T> alist) {
         if (alist == null) {
             return 1;
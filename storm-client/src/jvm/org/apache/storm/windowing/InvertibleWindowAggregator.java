@@ -0,0 +1,32 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.windowing;
+
+/**
+ * A {@link WindowAggregator} that can also take the aggregate of a pane out of an aggregate, like a sum or a count. The aggregate of a
+ * sliding window is then kept up to date by merging the panes that slide into the window and subtracting the ones that slide out of
+ * it, instead of merging all of its panes on every trigger.
+ *
+ * @param <T> the type of the events
+ * @param <A> the type of the aggregate
+ */
+public interface InvertibleWindowAggregator<T, A> extends WindowAggregator<T, A> {
+    /**
+     * The inverse of {@link #merge(Object, Object)}.
+     *
+     * @param aggregate the aggregate to subtract from, that may be updated in place
+     * @param partial   an aggregate previously merged into it, that must not be changed
+     * @return the aggregate without the partial one
+     */
+    A subtract(A aggregate, A partial);
+}
@@ -0,0 +1,378 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.windowing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.apache.storm.shade.io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A window event queue that keeps the events serialized outside of the heap, in append-only segments of direct memory. Once more than
+ * maxMemorySegments segments are held, the oldest ones are written to memory-mapped files, so that the OS can page them out to local
+ * disk. Events are only deserialized when {@link Event#get()} is called, the timestamps the eviction policies look at are read from
+ * the record headers. A segment is released as a whole once all of its events have been removed, which for in order events happens
+ * when the window slides past its last event.
+ *
+ * <p>Records are stored as: byte(1) flags, long(8) timestamp, int(4) length ... byte[length]. The iterators are weakly consistent,
+ * like the ones of {@link java.util.concurrent.ConcurrentLinkedQueue}, and support {@link Iterator#remove()}. Thread safe.
+ */
+public class OffHeapEventQueue<T> extends AbstractCollection<Event<T>> implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapEventQueue.class);
+    private static final int HEADER_BYTES = 13;
+    private static final byte REMOVED = 1;
+
+    private final Path dir;
+    private final String name;
+    private final int segmentBytes;
+    private final int maxMemorySegments;
+    private final Codec<T> codec;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private Segment head;
+    private Segment tail;
+    private int size;
+    private int memorySegments;
+    private int spilledSegments;
+    private boolean spillFailed;
+
+    /**
+     * Create an off heap event queue.
+     *
+     * @param dir the directory to create the files of spilled segments in
+     * @param name prefix of the segment file names
+     * @param segmentBytes the size of a segment, a larger event gets a segment of its own
+     * @param maxMemorySegments the number of segments to keep in direct memory before spilling the oldest ones
+     * @param codec converts events to and from their serialized form
+     */
+    public OffHeapEventQueue(Path dir, String name, int segmentBytes, int maxMemorySegments, Codec<T> codec) {
+        this.dir = dir;
+        this.name = name.replaceAll("[^A-Za-z0-9_.-]", "_");
+        this.segmentBytes = segmentBytes;
+        this.maxMemorySegments = Math.max(1, maxMemorySegments);
+        this.codec = codec;
+    }
+
+    @Override
+    public boolean add(Event<T> event) {
+        byte[] record = codec.encode(event.get());
+        int recordBytes = HEADER_BYTES + record.length;
+        synchronized (this) {
+            if (tail == null || tail.buffer.capacity() - tail.limit < recordBytes) {
+                appendSegment(recordBytes);
+            }
+            ByteBuffer buffer = tail.buffer;
+            int offset = tail.limit;
+            buffer.put(offset, (byte) 0);
+            buffer.putLong(offset + 1, event.getTimestamp());
+            buffer.putInt(offset + 9, record.length);
+            buffer.position(offset + HEADER_BYTES);
+            buffer.put(record);
+            tail.limit += recordBytes;
+            tail.live++;
+            size++;
+        }
+        return true;
+    }
+
+    @Override
+    public Iterator<Event<T>> iterator() {
+        synchronized (this) {
+            return new Itr(head);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The number of bytes of direct memory held by segments, including the released ones kept for reuse.
+     */
+    public synchronized long getMemoryBytes() {
+        long bytes = 0;
+        for (Segment segment = head; segment != null; segment = segment.next) {
+            if (!segment.spilled) {
+                bytes += segment.buffer.capacity();
+            }
+        }
+        return bytes + (long) free.size() * segmentBytes;
+    }
+
+    /**
+     * The number of segments currently spilled to files.
+     */
+    public synchronized int getSpilledSegments() {
+        return spilledSegments;
+    }
+
+    /**
+     * Drop all the events, and free the direct memory and the mappings of the segments right away instead of when the buffers are
+     * garbage collected. The events that were read before can not be decoded anymore.
+     */
+    @Override
+    public synchronized void close() {
+        for (Segment segment = head; segment != null; segment = segment.next) {
+            segment.released = true;
+            PlatformDependent.freeDirectBuffer(segment.buffer);
+        }
+        head = null;
+        tail = null;
+        for (ByteBuffer buffer : free) {
+            PlatformDependent.freeDirectBuffer(buffer);
+        }
+        free.clear();
+        size = 0;
+        memorySegments = 0;
+        spilledSegments = 0;
+    }
+
+    private void appendSegment(int recordBytes) {
+        if (tail != null && tail.live == 0) {
+            release(tail);
+        }
+        while (memorySegments >= maxMemorySegments && !spillFailed && spillOldest()) {
+            // spill until there is room for the new segment
+        }
+        ByteBuffer buffer = recordBytes <= segmentBytes ? free.pollFirst() : null;
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(Math.max(segmentBytes, recordBytes));
+        }
+        buffer.clear();
+        Segment segment = new Segment(buffer);
+        segment.prev = tail;
+        if (tail == null) {
+            head = segment;
+        } else {
+            tail.next = segment;
+        }
+        tail = segment;
+        memorySegments++;
+    }
+
+    private boolean spillOldest() {
+        Segment segment = head;
+        while (segment != null && segment.spilled) {
+            segment = segment.next;
+        }
+        if (segment == null) {
+            return false;
+        }
+        try {
+            Files.createDirectories(dir);
+            Path file = Files.createTempFile(dir, name + "-", ".window");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.DELETE_ON_CLOSE)) {
+                ByteBuffer content = segment.buffer.duplicate();
+                content.clear().limit(segment.limit);
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segment.limit);
+                recycle(segment.buffer);
+                segment.buffer = mapped;
+            }
+            segment.spilled = true;
+            memorySegments--;
+            spilledSegments++;
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Unable to spill a window segment to {}, keeping the segments of {} in memory", dir, name, e);
+            spillFailed = true;
+            return false;
+        }
+    }
+
+    private void remove(Segment segment, int offset) {
+        if (segment.released || segment.buffer.get(offset) == REMOVED) {
+            return;
+        }
+        segment.buffer.put(offset, REMOVED);
+        segment.live--;
+        size--;
+        if (segment.live == 0 && segment != tail) {
+            release(segment);
+        } else if (offset == segment.start) {
+            segment.start = segment.skipRemoved(offset);
+        }
+    }
+
+    private void release(Segment segment) {
+        segment.released = true;
+        if (segment.prev == null) {
+            head = segment.next;
+        } else {
+            segment.prev.next = segment.next;
+        }
+        if (segment.next == null) {
+            tail = segment.prev;
+        } else {
+            segment.next.prev = segment.prev;
+        }
+        if (segment.spilled) {
+            spilledSegments--;
+            PlatformDependent.freeDirectBuffer(segment.buffer);
+        } else {
+            memorySegments--;
+            recycle(segment.buffer);
+        }
+        // segment.next is kept for the iterators that are still positioned on it, they skip the released segments without reading them
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        if (buffer.capacity() == segmentBytes && memorySegments + free.size() < maxMemorySegments) {
+            free.addLast(buffer);
+        } else {
+            PlatformDependent.freeDirectBuffer(buffer);
+        }
+    }
+
+    private synchronized T decode(Segment segment, int offset) {
+        if (segment.released || segment.buffer.get(offset) == REMOVED) {
+            throw new IllegalStateException("The event was removed from the window");
+        }
+        ByteBuffer record = segment.buffer.duplicate();
+        record.limit(offset + HEADER_BYTES + segment.buffer.getInt(offset + 9)).position(offset + HEADER_BYTES);
+        return codec.decode(record);
+    }
+
+    /**
+     * Converts events to and from their serialized form.
+     */
+    public interface Codec<T> {
+        byte[] encode(T event);
+
+        /**
+         * Decode the event from the remaining bytes of the buffer, which is only valid during the call.
+         */
+        T decode(ByteBuffer record);
+    }
+
+    private static class Segment {
+        private ByteBuffer buffer;
+        private Segment prev;
+        private Segment next;
+        private int start; // no live record before this offset
+        private int limit;
+        private int live;
+        private boolean spilled;
+        private boolean released;
+
+        Segment(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int skipRemoved(int offset) {
+            while (offset < limit && buffer.get(offset) == REMOVED) {
+                offset += HEADER_BYTES + buffer.getInt(offset + 9);
+            }
+            return offset;
+        }
+    }
+
+    private class LazyEvent implements Event<T> {
+        private final Segment segment;
+        private final int offset;
+        private final long ts;
+        private T event;
+
+        LazyEvent(Segment segment, int offset, long ts) {
+            this.segment = segment;
+            this.offset = offset;
+            this.ts = ts;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return ts;
+        }
+
+        @Override
+        public T get() {
+            if (event == null) {
+                event = decode(segment, offset);
+            }
+            return event;
+        }
+
+        @Override
+        public boolean isWatermark() {
+            return false;
+        }
+    }
+
+    private class Itr implements Iterator<Event<T>> {
+        private Segment segment;
+        private int offset;
+        private LazyEvent last;
+
+        Itr(Segment head) {
+            this.segment = head;
+        }
+
+        @Override
+        public boolean hasNext() {
+            synchronized (OffHeapEventQueue.this) {
+                return advance();
+            }
+        }
+
+        @Override
+        public Event<T> next() {
+            synchronized (OffHeapEventQueue.this) {
+                if (!advance()) {
+                    throw new NoSuchElementException();
+                }
+                ByteBuffer buffer = segment.buffer;
+                last = new LazyEvent(segment, offset, buffer.getLong(offset + 1));
+                offset += HEADER_BYTES + buffer.getInt(offset + 9);
+                return last;
+            }
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            synchronized (OffHeapEventQueue.this) {
+                OffHeapEventQueue.this.remove(last.segment, last.offset);
+            }
+            last = null;
+        }
+
+        private boolean advance() {
+            while (segment != null) {
+                if (!segment.released) {
+                    offset = segment.skipRemoved(Math.max(offset, segment.start));
+                    if (offset < segment.limit) {
+                        return true;
+                    }
+                }
+                segment = segment.next;
+                offset = 0;
+            }
+            return false;
+        }
+    }
+}
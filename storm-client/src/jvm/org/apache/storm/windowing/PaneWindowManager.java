@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.windowing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Window manager that does not keep the events, but the aggregates of the panes of the window, slices of the greatest common divisor
+ * of the window length and the sliding interval. An event is applied to the aggregate of its pane when it is added, and a window is
+ * aggregated by merging the aggregates of its panes, so a trigger costs O(panes) instead of O(events). With an
+ * {@link InvertibleWindowAggregator} the aggregate of the window is kept up to date instead, by merging the panes that slide into it
+ * and subtracting the ones that slide out of it.
+ *
+ * <p>The windows end at multiples of the sliding interval. For time based windows, a window covers the events with a timestamp in
+ * [end - windowLength, end), and is activated once the time, or the watermark for event time, reaches its end. For count based
+ * windows, the events are numbered in the order they are added.
+ */
+public class PaneWindowManager<T, A> extends WindowManager<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(PaneWindowManager.class);
+
+    private final WindowAggregator<T, A> aggregator;
+    private final InvertibleWindowAggregator<T, A> invertible;
+    private final Listener<A> listener;
+    private final Mode mode;
+    private final long windowLength;
+    private final long slidingInterval;
+    private final long paneLength;
+    private final TreeMap<Long, Pane<A>> panes = new TreeMap<>();
+    private Pane<A> lastPane;
+    private long lastPaneIndex = Long.MIN_VALUE;
+    private long evictedBefore = Long.MIN_VALUE; // panes before this index have been evicted
+    private long count;
+    private long nextEnd = Long.MIN_VALUE;
+    private long lastEnd = Long.MIN_VALUE;
+    // the merged aggregates of the panes in [totalFrom, totalTo), with an invertible aggregator
+    private A total;
+    private long totalFrom = Long.MIN_VALUE;
+    private long totalTo = Long.MIN_VALUE;
+
+    /**
+     * Constructs a {@link PaneWindowManager}.
+     *
+     * @param aggregator      the aggregator of the events
+     * @param listener        gets the aggregates of the windows
+     * @param mode            how the events are positioned in the windows
+     * @param windowLength    the window length, in ms or in events depending on the mode
+     * @param slidingInterval the sliding interval, in the same unit as the window length
+     */
+    public PaneWindowManager(WindowAggregator<T, A> aggregator, Listener<A> listener, Mode mode,
+                             long windowLength, long slidingInterval) {
+        super(null, Collections.emptyList());
+        if (windowLength <= 0 || slidingInterval <= 0) {
+            throw new IllegalArgumentException("Window length " + windowLength + " and sliding interval " + slidingInterval
+                                               + " must be positive");
+        }
+        this.aggregator = aggregator;
+        this.invertible = aggregator instanceof InvertibleWindowAggregator ? (InvertibleWindowAggregator<T, A>) aggregator : null;
+        this.listener = listener;
+        this.mode = mode;
+        this.windowLength = windowLength;
+        this.slidingInterval = slidingInterval;
+        this.paneLength = gcd(windowLength, slidingInterval);
+        LOG.info("Aggregating windows of length {} sliding by {} in panes of {}, {}", windowLength, slidingInterval, paneLength, mode);
+    }
+
+    public long getPaneLength() {
+        return paneLength;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    @Override
+    public void add(Event<T> event) {
+        List<PaneWindow<A>> windows = Collections.emptyList();
+        synchronized (this) {
+            if (event.isWatermark()) {
+                if (mode == Mode.EVENT_TIME) {
+                    windows = activate(event.getTimestamp());
+                }
+            } else if (mode == Mode.COUNT) {
+                apply(count++, event.get());
+                windows = activate(count);
+            } else {
+                // in processing time the position is taken under the lock, so that it can not fall into an activated window
+                apply(mode == Mode.EVENT_TIME ? event.getTimestamp() : System.currentTimeMillis(), event.get());
+            }
+        }
+        if (triggerPolicy != null) {
+            triggerPolicy.track(event);
+        }
+        notify(windows);
+    }
+
+    /**
+     * Activates the windows that ended, in processing time.
+     */
+    @Override
+    public boolean onTrigger() {
+        List<PaneWindow<A>> windows;
+        synchronized (this) {
+            windows = activate(System.currentTimeMillis());
+        }
+        notify(windows);
+        return !windows.isEmpty();
+    }
+
+    private void notify(List<PaneWindow<A>> windows) {
+        for (PaneWindow<A> window : windows) {
+            listener.onActivation(window.aggregate, window.startTs, window.endTs);
+        }
+    }
+
+    private void apply(long position, T event) {
+        long index = Math.floorDiv(position, paneLength);
+        if (index < evictedBefore) {
+            LOG.debug("Dropping an event at {}, before the oldest pane", position);
+            return;
+        }
+        Pane<A> pane = lastPane;
+        if (index != lastPaneIndex) {
+            pane = panes.computeIfAbsent(index, i -> new Pane<>(aggregator.init()));
+            lastPane = pane;
+            lastPaneIndex = index;
+        }
+        pane.aggregate = aggregator.apply(pane.aggregate, event);
+        if (invertible != null && index >= totalFrom && index < totalTo) {
+            total = invertible.apply(total, event);
+        }
+    }
+
+    private List<PaneWindow<A>> activate(long limit) {
+        List<PaneWindow<A>> windows = Collections.emptyList();
+        while (!panes.isEmpty()) {
+            long earliest = Math.max(alignedEnd(panes.firstKey() * paneLength), lastEnd + slidingInterval);
+            if (nextEnd < earliest) {
+                // skip the windows without events
+                nextEnd = earliest;
+            }
+            if (nextEnd > limit) {
+                break;
+            }
+            long from = Math.floorDiv(nextEnd - windowLength, paneLength);
+            long to = Math.floorDiv(nextEnd, paneLength);
+            evict(from);
+            if (!panes.isEmpty() && panes.firstKey() < to) {
+                if (windows.isEmpty()) {
+                    windows = new ArrayList<>(1);
+                }
+                windows.add(mode == Mode.COUNT
+                                ? new PaneWindow<>(aggregate(from, to), null, System.currentTimeMillis())
+                                : new PaneWindow<>(aggregate(from, to), nextEnd - windowLength, nextEnd));
+            }
+            lastEnd = nextEnd;
+            nextEnd += slidingInterval;
+        }
+        return windows;
+    }
+
+    /**
+     * The first multiple of the sliding interval after the position.
+     */
+    private long alignedEnd(long position) {
+        return Math.floorDiv(position, slidingInterval) * slidingInterval + slidingInterval;
+    }
+
+    private void evict(long from) {
+        while (!panes.isEmpty() && panes.firstKey() < from) {
+            Map.Entry<Long, Pane<A>> entry = panes.pollFirstEntry();
+            long index = entry.getKey();
+            if (invertible != null && index >= totalFrom && index < totalTo) {
+                total = invertible.subtract(total, entry.getValue().aggregate);
+            }
+            if (index == lastPaneIndex) {
+                lastPane = null;
+                lastPaneIndex = Long.MIN_VALUE;
+            }
+        }
+        evictedBefore = Math.max(evictedBefore, from);
+    }
+
+    private A aggregate(long from, long to) {
+        if (invertible == null) {
+            A aggregate = aggregator.init();
+            for (Pane<A> pane : panes.subMap(from, to).values()) {
+                aggregate = aggregator.merge(aggregate, pane.aggregate);
+            }
+            return aggregate;
+        }
+        if (totalTo <= from) {
+            total = invertible.init();
+            totalTo = from;
+        }
+        totalFrom = from;
+        for (Pane<A> pane : panes.subMap(totalTo, to).values()) {
+            total = invertible.merge(total, pane.aggregate);
+        }
+        totalTo = to;
+        // a copy, the total keeps changing
+        return invertible.merge(invertible.init(), total);
+    }
+
+    /**
+     * How the events are positioned in the windows.
+     */
+    public enum Mode {
+        /**
+         * By the order they are added in.
+         */
+        COUNT,
+        /**
+         * By the time they are added at.
+         */
+        PROCESSING_TIME,
+        /**
+         * By their timestamp, the windows are activated by watermark events.
+         */
+        EVENT_TIME
+    }
+
+    /**
+     * Gets the aggregates of the windows.
+     */
+    public interface Listener<A> {
+        /**
+         * Called when a window is activated.
+         *
+         * @param aggregate the aggregate of the events in the window
+         * @param startTs   the window start timestamp, null for count based windows
+         * @param endTs     the window end timestamp
+         */
+        void onActivation(A aggregate, Long startTs, Long endTs);
+    }
+
+    private static class Pane<A> {
+        private A aggregate;
+
+        Pane(A aggregate) {
+            this.aggregate = aggregate;
+        }
+    }
+
+    private static class PaneWindow<A> {
+        private final A aggregate;
+        private final Long startTs;
+        private final Long endTs;
+
+        PaneWindow(A aggregate, Long startTs, Long endTs) {
+            this.aggregate = aggregate;
+            this.startTs = startTs;
+            this.endTs = endTs;
+        }
+    }
+}
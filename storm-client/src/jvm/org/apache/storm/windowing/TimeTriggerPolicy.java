@@ -115,7 +115,9 @@ public class TimeTriggerPolicy<T> implements TriggerPolicy<T, Void> {
                      * set the current timestamp as the reference time for the eviction policy
                      * to evict the events
                      */
-                    evictionPolicy.setContext(new DefaultEvictionContext(now, null, null, duration));
+                    if (evictionPolicy != null) {
+                        evictionPolicy.setContext(new DefaultEvictionContext(now, null, null, duration));
+                    }
                     handler.onTrigger();
                 } catch (Throwable th) {
                     LOG.error("handler.onTrigger failed ", th);
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.windowing;
+
+import java.util.List;
+import org.apache.storm.tuple.Tuple;
+
+/**
+ * A window that only holds the aggregate of its tuples, computed by the {@link WindowAggregator} of the bolt.
+ */
+public class TupleWindowAggregateImpl implements TupleWindow {
+    private final Object aggregate;
+    private final Long startTimestamp;
+    private final Long endTimestamp;
+
+    public TupleWindowAggregateImpl(Object aggregate, Long startTimestamp, Long endTimestamp) {
+        this.aggregate = aggregate;
+        this.startTimestamp = startTimestamp;
+        this.endTimestamp = endTimestamp;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A> A getAggregate() {
+        return (A) aggregate;
+    }
+
+    @Override
+    public List<Tuple> get() {
+        throw new UnsupportedOperationException("The tuples are not kept when the window has an aggregator");
+    }
+
+    @Override
+    public List<Tuple> getNew() {
+        throw new UnsupportedOperationException("The tuples are not kept when the window has an aggregator");
+    }
+
+    @Override
+    public List<Tuple> getExpired() {
+        throw new UnsupportedOperationException("The tuples are not kept when the window has an aggregator");
+    }
+
+    @Override
+    public Long getEndTimestamp() {
+        return endTimestamp;
+    }
+
+    @Override
+    public Long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "TupleWindowAggregateImpl{"
+                + "aggregate=" + aggregate
+                + ", startTimestamp=" + startTimestamp
+                + ", endTimestamp=" + endTimestamp
+                + '}';
+    }
+}
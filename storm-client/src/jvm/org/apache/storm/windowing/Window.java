@@ -72,6 +72,21 @@ public interface Window<T> {
      */
     List<T> getExpired();
 
+    /**
+     * Returns the aggregate of the events in the window.
+     * <p>
+     * <b>Note: </b> This is only supported when the bolt has a {@link WindowAggregator}, in which case the events themselves are not
+     * available.
+     * </p>
+     *
+     * @return the aggregate computed by the {@link WindowAggregator} of the bolt
+     *
+     * @throws UnsupportedOperationException if the bolt has no {@link WindowAggregator}
+     */
+    default <A> A getAggregate() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
     /**
      * If processing based on event time, returns the window end time based on watermark otherwise returns the window end time based on
      * processing time.
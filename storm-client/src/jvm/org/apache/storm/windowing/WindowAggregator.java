@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.  The ASF licenses this file to you under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package org.apache.storm.windowing;
+
+import java.io.Serializable;
+
+/**
+ * An associative aggregation of the events of a window. A windowed bolt with an aggregator does not get the events of its windows,
+ * but the aggregates, which are maintained incrementally per pane, a slice of the window of the greatest common divisor of the window
+ * length and the sliding interval. A window is aggregated by merging the aggregates of its panes.
+ *
+ * @param <T> the type of the events
+ * @param <A> the type of the aggregate
+ */
+public interface WindowAggregator<T, A> extends Serializable {
+    /**
+     * The aggregate of no events.
+     *
+     * @return the initial aggregate
+     */
+    A init();
+
+    /**
+     * Adds the event to the aggregate.
+     *
+     * @param aggregate the current aggregate, that may be updated in place
+     * @param event     the event
+     * @return the updated aggregate
+     */
+    A apply(A aggregate, T event);
+
+    /**
+     * Merges two aggregates. This has to be associative.
+     *
+     * @param aggregate1 the first aggregate, that may be updated in place
+     * @param aggregate2 the second aggregate, that must not be changed
+     * @return the merged aggregate
+     */
+    A merge(A aggregate1, A aggregate2);
+}
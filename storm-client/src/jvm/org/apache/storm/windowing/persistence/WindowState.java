@@ -20,16 +20,24 @@ import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 import org.apache.storm.shade.com.google.common.collect.ImmutableMap;
+import org.apache.storm.shade.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.storm.state.KeyValueState;
 import org.apache.storm.windowing.Event;
 import org.slf4j.Logger;
@@ -37,11 +45,17 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A wrapper around the window related states that are checkpointed.
+ *
+ * <p>While the window is iterated, the next prefetchPartitions partitions that are not cached are read ahead from the state on a
+ * background thread, so that the iteration does not wait on the state backend when it crosses into them. The partitions that fill
+ * up are written to the state in the background too, so that only the partitions modified since then are serialized when the
+ * state is checkpointed.
  */
 public class WindowState<T> extends AbstractCollection<Event<T>> {
     // number of events per window-partition
     public static final int MAX_PARTITION_EVENTS = 1000;
     public static final int MIN_PARTITIONS = 10;
+    public static final int DEFAULT_PREFETCH_PARTITIONS = 2;
     private static final Logger LOG = LoggerFactory.getLogger(WindowState.class);
     private static final String PARTITION_IDS_KEY = "pk";
     private final KeyValueState<String, Deque<Long>> partitionIdsState;
@@ -50,6 +64,10 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
     private final ReentrantLock partitionIdsLock = new ReentrantLock(true);
     private final WindowPartitionLock windowPartitionsLock = new WindowPartitionLock();
     private final long maxEventsInMemory;
+    private final int prefetchPartitions;
+    private final ExecutorService prefetcher;
+    private final ExecutorService writer;
+    private final Set<Long> prefetching = ConcurrentHashMap.newKeySet();
     // ordered partition keys
     private volatile Deque<Long> partitionIds;
     private volatile long latestPartitionId;
@@ -57,25 +75,44 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
     private volatile WindowPartitionCache<Long, WindowPartition<T>> cache;
     private Supplier<Map<String, Optional<?>>> windowSystemStateSupplier;
     private Set<Long> iteratorPins = new HashSet<>();
+    // partitions read ahead, replaced on rollback so that the reads still in flight are dropped
+    private volatile Map<Long, WindowPartition<T>> prefetched = new ConcurrentHashMap<>();
 
     public WindowState(KeyValueState<Long, WindowPartition<T>> windowPartitionsState,
                        KeyValueState<String, Deque<Long>> partitionIdsState,
                        KeyValueState<String, Optional<?>> windowSystemState,
                        Supplier<Map<String, Optional<?>>> windowSystemStateSupplier,
                        long maxEventsInMemory) {
+        this(windowPartitionsState, partitionIdsState, windowSystemState, windowSystemStateSupplier, maxEventsInMemory,
+             DEFAULT_PREFETCH_PARTITIONS);
+    }
+
+    public WindowState(KeyValueState<Long, WindowPartition<T>> windowPartitionsState,
+                       KeyValueState<String, Deque<Long>> partitionIdsState,
+                       KeyValueState<String, Optional<?>> windowSystemState,
+                       Supplier<Map<String, Optional<?>>> windowSystemStateSupplier,
+                       long maxEventsInMemory,
+                       int prefetchPartitions) {
         this.windowPartitionsState = windowPartitionsState;
         this.partitionIdsState = partitionIdsState;
         this.windowSystemState = windowSystemState;
         this.windowSystemStateSupplier = windowSystemStateSupplier;
         this.maxEventsInMemory = Math.max(MAX_PARTITION_EVENTS * MIN_PARTITIONS, maxEventsInMemory);
+        this.prefetchPartitions = Math.max(0, prefetchPartitions);
+        this.prefetcher = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("window-state-prefetch-%d").setDaemon(true).build());
+        this.writer = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("window-state-write-behind-%d").setDaemon(true).build());
         init();
     }
 
     @Override
     public boolean add(Event<T> event) {
         if (latestPartition.size() >= MAX_PARTITION_EVENTS) {
-            cache.unpin(latestPartition.getId());
+            WindowPartition<T> full = latestPartition;
+            cache.unpin(full.getId());
             latestPartition = getPinnedPartition(getNextPartitionId());
+            writeBehind(full);
         }
         latestPartition.add(event);
         return true;
@@ -85,16 +122,17 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
     public Iterator<Event<T>> iterator() {
 
         return new Iterator<Event<T>>() {
-            private Iterator<Long> ids = getIds();
+            private final List<Long> ids = getIds();
+            private int nextId;
             private Iterator<Event<T>> current = Collections.emptyIterator();
             private Iterator<Event<T>> removeFrom;
             private WindowPartition<T> curPartition;
 
-            private Iterator<Long> getIds() {
+            private List<Long> getIds() {
                 try {
                     partitionIdsLock.lock();
                     LOG.debug("Iterator partitionIds: {}", partitionIds);
-                    return new ArrayList<>(partitionIds).iterator();
+                    return new ArrayList<>(partitionIds);
                 } finally {
                     partitionIdsLock.unlock();
                 }
@@ -112,11 +150,12 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
             @Override
             public boolean hasNext() {
                 boolean curHasNext = current.hasNext();
-                while (!curHasNext && ids.hasNext()) {
+                while (!curHasNext && nextId < ids.size()) {
                     if (curPartition != null) {
                         unpin(curPartition.getId());
                     }
-                    curPartition = getPinnedPartition(ids.next());
+                    prefetch(ids, nextId + 1);
+                    curPartition = getPinnedPartition(ids.get(nextId++));
                     if (curPartition != null) {
                         iteratorPins.add(curPartition.getId());
                         current = curPartition.iterator();
@@ -167,6 +206,7 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
      * @param txid the transaction id
      */
     public void prepareCommit(long txid) {
+        awaitWriteBehind();
         flush();
         partitionIdsState.prepareCommit(txid);
         windowPartitionsState.prepareCommit(txid);
@@ -190,6 +230,8 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
      * @param reInit if the members should be synced with the values from the state.
      */
     public void rollback(boolean reInit) {
+        awaitWriteBehind();
+        prefetched = new ConcurrentHashMap<>();
         partitionIdsState.rollback();
         windowPartitionsState.rollback();
         windowSystemState.rollback();
@@ -199,6 +241,15 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
         }
     }
 
+    /**
+     * Stops the background threads. The partitions are still read and written when the window is iterated and the state is
+     * checkpointed, just not ahead or behind anymore.
+     */
+    public void close() {
+        prefetcher.shutdownNow();
+        writer.shutdownNow();
+    }
+
     private void init() {
         initCache();
         initPartitions();
@@ -228,6 +279,8 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
                     LOG.debug("onRemoval for id '{}', WindowPartition '{}'", pid, p);
                     try {
                         windowPartitionsLock.lock(pid);
+                        // a copy read ahead while the partition was cached is stale
+                        prefetched.remove(pid);
                         if (p.isEmpty() && pid != latestPartitionId) {
                             // if the empty partition was not invalidated by flush, but evicted from cache
                             if (removalCause != WindowPartitionCache.RemovalCause.EXPLICIT) {
@@ -250,6 +303,13 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
                     // load from state
                     try {
                         windowPartitionsLock.lock(id);
+                        // the partition is only cached once loaded, a read ahead that did not start by now must not read it again
+                        prefetching.remove(id);
+                        WindowPartition<T> partition = prefetched.remove(id);
+                        if (partition != null) {
+                            LOG.debug("Using prefetched partition: {}", id);
+                            return partition;
+                        }
                         return windowPartitionsState.get(id, new WindowPartition<>(id));
                     } finally {
                         windowPartitionsLock.unlock(id);
@@ -294,11 +354,11 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
                     LOG.debug("Invalidating empty partition {}", pid);
                     deletePartition(pid);
                     windowPartitionsState.delete(pid);
+                    prefetched.remove(pid);
                     pidToInvalidate = pid;
                 } else if (p.isModified()) {
                     LOG.debug("Updating modified partition {}", pid);
-                    p.clearModified();
-                    windowPartitionsState.put(pid, p);
+                    writePartition(pid, p);
                 }
             } finally {
                 windowPartitionsLock.unlock(pid);
@@ -316,6 +376,100 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
         }
     }
 
+    /**
+     * Puts a copy of the partition, so that the events the window expires while it is serialized do not corrupt it.
+     */
+    private void writePartition(long pid, WindowPartition<T> p) {
+        p.clearModified();
+        try {
+            windowPartitionsState.put(pid, p.copy());
+        } catch (RuntimeException e) {
+            p.setModified();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads ahead the partitions from the index that are not cached.
+     */
+    private void prefetch(List<Long> ids, int from) {
+        Map<Long, WindowPartition<T>> target = prefetched;
+        for (int i = from; i < Math.min(ids.size(), from + prefetchPartitions); i++) {
+            long id = ids.get(i);
+            if (target.size() >= prefetchPartitions) {
+                break;
+            }
+            if (!cache.asMap().containsKey(id) && !target.containsKey(id) && prefetching.add(id)) {
+                try {
+                    prefetcher.execute(() -> readAhead(id, target));
+                } catch (RejectedExecutionException e) {
+                    // closed
+                    prefetching.remove(id);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void readAhead(long id, Map<Long, WindowPartition<T>> target) {
+        try {
+            windowPartitionsLock.lock(id);
+            if (target == prefetched && prefetching.contains(id) && !cache.asMap().containsKey(id)) {
+                LOG.debug("Prefetch partition: {}", id);
+                target.put(id, windowPartitionsState.get(id, new WindowPartition<>(id)));
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to prefetch window partition {}", id, e);
+        } finally {
+            prefetching.remove(id);
+            windowPartitionsLock.unlock(id);
+        }
+    }
+
+    /**
+     * Writes the partition that filled up in the background, if it still has changes that were not written by then. It is skipped if
+     * it was evicted or emptied, or if the window state was rolled back, in the meantime.
+     */
+    private void writeBehind(WindowPartition<T> p) {
+        WindowPartitionCache<Long, WindowPartition<T>> current = cache;
+        if (writer.isShutdown()) {
+            // closed, the partition is written when the state is checkpointed
+            return;
+        }
+        writer.execute(() -> {
+            long pid = p.getId();
+            try {
+                windowPartitionsLock.lock(pid);
+                if (current == cache && current.asMap().get(pid) == p && p.isModified() && !p.isEmpty()) {
+                    LOG.debug("Write behind partition {}", pid);
+                    writePartition(pid, p);
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to write window partition {} behind, it is written when the state is checkpointed", pid, e);
+            } finally {
+                windowPartitionsLock.unlock(pid);
+            }
+        });
+    }
+
+    private void awaitWriteBehind() {
+        Future<?> written;
+        try {
+            written = writer.submit(() -> { });
+        } catch (RejectedExecutionException e) {
+            // closed, the partitions that were not written behind are written by the flush
+            return;
+        }
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     private static class WindowPartitionLock {
         private final int numLocks = 8;
         private final ImmutableMap<Long, ReentrantLock> locks;
@@ -372,6 +526,15 @@ public class WindowState<T> extends AbstractCollection<Event<T>> {
             return events.isEmpty();
         }
 
+        WindowPartition<T> copy() {
+            WindowPartition<T> copy = new WindowPartition<>(id);
+            for (Event<T> event : events) {
+                copy.events.add(event);
+                copy.size.incrementAndGet();
+            }
+            return copy;
+        }
+
         @Override
         public Iterator<Event<T>> iterator() {
             return new Iterator<Event<T>>() {
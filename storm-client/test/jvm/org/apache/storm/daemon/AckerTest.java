@@ -0,0 +1,172 @@
+package org.apache.storm.daemon;
+
+import org.apache.storm.Config;
+import org.apache.storm.Constants;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.tuple.Tuple;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AckerTest {
+    private static final int SPOUT_TASK = 7;
+
+    /** the ack updates of one tuple tree, whose values XOR to 0 once all of them have arrived */
+    private static class Tree {
+        private final long id;
+        private final long initVal;
+        private final List<Long> ackVals = new ArrayList<>();
+
+        Tree(long id, Random random, int acks) {
+            this.id = id;
+            this.initVal = random.nextLong();
+            long val = initVal;
+            for (int i = 1; i < acks; i++) {
+                long ackVal = random.nextLong();
+                ackVals.add(ackVal);
+                val ^= ackVal;
+            }
+            ackVals.add(val);
+        }
+    }
+
+    private static Tuple tuple(String streamId, Object... values) {
+        Tuple tuple = mock(Tuple.class);
+        when(tuple.getSourceStreamId()).thenReturn(streamId);
+        when(tuple.getSourceComponent()).thenReturn("bolt");
+        for (int i = 0; i < values.length; i++) {
+            final int index = i;
+            when(tuple.getValue(index)).thenReturn(values[i]);
+            if (values[i] instanceof Long) {
+                when(tuple.getLong(index)).thenReturn((Long) values[i]);
+            } else if (values[i] instanceof Integer) {
+                when(tuple.getInteger(index)).thenReturn((Integer) values[i]);
+            }
+        }
+        return tuple;
+    }
+
+    /** runs the acker over the trees, and returns the ids of the trees the spout is told are complete */
+    private static Set<Long> run(List<Tree> trees, boolean batched, int incompleteTrees) {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_ACKER_BATCH_ENABLE, batched);
+        conf.put(Config.TOPOLOGY_BATCH_FLUSH_INTERVAL_MILLIS, 1);
+        conf.put(Config.TOPOLOGY_ACKER_BATCH_SIZE, 4);
+        Set<Long> acked = new TreeSet<>();
+        OutputCollector collector = mock(OutputCollector.class);
+        doAnswer(invocation -> {
+            Assert.assertEquals(SPOUT_TASK, (int) invocation.getArgument(0));
+            String stream = invocation.getArgument(1);
+            List<Object> values = invocation.getArgument(2);
+            if (Acker.ACKER_BATCH_STREAM_ID.equals(stream)) {
+                long[] batch = (long[]) values.get(0);
+                Assert.assertEquals(0, batch.length % 3);
+                for (int i = 0; i < batch.length; i += 3) {
+                    Assert.assertEquals(Acker.BATCH_ACKED, batch[i + 2]);
+                    Assert.assertTrue(acked.add(batch[i]));
+                }
+            } else {
+                Assert.assertEquals(Acker.ACKER_ACK_STREAM_ID, stream);
+                Assert.assertTrue(acked.add((Long) values.get(0)));
+            }
+            return null;
+        }).when(collector).emitDirect(anyInt(), anyString(), any(List.class));
+
+        Acker acker = new Acker();
+        acker.prepare(conf, null, collector);
+        for (Tree tree : trees) {
+            acker.execute(tuple(Acker.ACKER_INIT_STREAM_ID, tree.id, tree.initVal, SPOUT_TASK));
+        }
+        // the acks of the trees arrive interleaved, and the last ones of some trees never do
+        List<long[]> updates = new ArrayList<>();
+        for (int t = 0; t < trees.size(); t++) {
+            Tree tree = trees.get(t);
+            int count = t < incompleteTrees ? tree.ackVals.size() - 1 : tree.ackVals.size();
+            for (int i = 0; i < count; i++) {
+                updates.add(new long[]{ tree.id, tree.ackVals.get(i) });
+            }
+        }
+        Collections.shuffle(updates, new Random(2));
+        if (batched) {
+            for (int from = 0; from < updates.size(); from += 5) {
+                List<long[]> chunk = updates.subList(from, Math.min(from + 5, updates.size()));
+                long[] batch = new long[2 * chunk.size()];
+                for (int i = 0; i < chunk.size(); i++) {
+                    batch[2 * i] = chunk.get(i)[0];
+                    batch[2 * i + 1] = chunk.get(i)[1];
+                }
+                acker.execute(tuple(Acker.ACKER_BATCH_STREAM_ID, (Object) batch));
+            }
+        } else {
+            for (long[] update : updates) {
+                acker.execute(tuple(Acker.ACKER_ACK_STREAM_ID, update[0], update[1]));
+            }
+        }
+        acker.execute(tuple(Constants.SYSTEM_FLUSH_STREAM_ID));
+        return acked;
+    }
+
+    @Test
+    public void testBatchedAndUnbatchedAcksCompleteTheSameTrees() {
+        Random random = new Random(1);
+        List<Tree> trees = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            trees.add(new Tree(random.nextLong(), random, 1 + random.nextInt(6)));
+        }
+        Set<Long> unbatched = run(trees, false, 10);
+        Set<Long> batched = run(trees, true, 10);
+        Assert.assertEquals(40, unbatched.size());
+        Assert.assertEquals(unbatched, batched);
+        for (int i = 0; i < trees.size(); i++) {
+            Assert.assertEquals(i >= 10, batched.contains(trees.get(i).id));
+        }
+    }
+
+    @Test
+    public void testBatchedAcksBeforeInit() {
+        Random random = new Random(3);
+        Tree tree = new Tree(42L, random, 3);
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_ACKER_BATCH_ENABLE, true);
+        conf.put(Config.TOPOLOGY_BATCH_FLUSH_INTERVAL_MILLIS, 1);
+        List<long[]> replies = new ArrayList<>();
+        OutputCollector collector = mock(OutputCollector.class);
+        doAnswer(invocation -> {
+            List<Object> values = invocation.getArgument(2);
+            replies.add((long[]) values.get(0));
+            return null;
+        }).when(collector).emitDirect(anyInt(), anyString(), any(List.class));
+        Acker acker = new Acker();
+        acker.prepare(conf, null, collector);
+
+        long[] batch = new long[2 * tree.ackVals.size()];
+        for (int i = 0; i < tree.ackVals.size(); i++) {
+            batch[2 * i] = tree.id;
+            batch[2 * i + 1] = tree.ackVals.get(i);
+        }
+        acker.execute(tuple(Acker.ACKER_BATCH_STREAM_ID, (Object) batch));
+        acker.execute(tuple(Constants.SYSTEM_FLUSH_STREAM_ID));
+        // the spout task is not known before the init arrives
+        Assert.assertTrue(replies.isEmpty());
+        acker.execute(tuple(Acker.ACKER_INIT_STREAM_ID, tree.id, tree.initVal, SPOUT_TASK));
+        acker.execute(tuple(Constants.SYSTEM_FLUSH_STREAM_ID));
+        Assert.assertEquals(1, replies.size());
+        Assert.assertEquals(tree.id, replies.get(0)[0]);
+        Assert.assertEquals(Acker.BATCH_ACKED, replies.get(0)[2]);
+    }
+}
@@ -0,0 +1,183 @@
+package org.apache.storm.daemon;
+
+import org.apache.storm.Constants;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.Time;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LocalAckLedgerTest {
+    private static final int SPOUT_TASK = 1;
+
+    private static LocalAckLedger ledger() {
+        return new LocalAckLedger(Arrays.asList(1, 2, 3, (int) Constants.SYSTEM_TASK_ID), Arrays.asList(10, 11));
+    }
+
+    @Test
+    public void testLocalTasks() {
+        LocalAckLedger ledger = ledger();
+        Assert.assertTrue(ledger.isLocal(2));
+        Assert.assertFalse(ledger.isLocal(4));
+        Assert.assertFalse(ledger.isLocal((int) Constants.SYSTEM_TASK_ID));
+        Assert.assertTrue(ledger.isLocal(new int[]{ 1, 3 }));
+        Assert.assertFalse(ledger.isLocal(new int[]{ 1, 10 }));
+        int acker = ledger.getAckerTask(42L);
+        Assert.assertTrue(acker == 10 || acker == 11);
+        Assert.assertEquals(acker, ledger.getAckerTask(42L));
+    }
+
+    @Test
+    public void testTreeCompletesLocally() {
+        LocalAckLedger ledger = ledger();
+        // nothing was sent, complete right away
+        Assert.assertTrue(ledger.init(1L, 0, SPOUT_TASK));
+        Assert.assertEquals(0, ledger.size());
+
+        Assert.assertFalse(ledger.init(2L, 0b0110, SPOUT_TASK));
+        LocalAckLedger.Entry entry = ledger.ack(2L, 0b0100);
+        Assert.assertFalse(entry.isComplete());
+        entry = ledger.ack(2L, 0b0010);
+        Assert.assertTrue(entry.isComplete());
+        Assert.assertEquals(SPOUT_TASK, entry.getSpoutTask());
+        Assert.assertEquals(0, ledger.size());
+        // later acks go to the acker
+        Assert.assertNull(ledger.ack(2L, 0b0001));
+    }
+
+    @Test
+    public void testMigratedTreeKeepsItsValueAndStartTime() {
+        try (Time.SimulatedTime ignored = new Time.SimulatedTime()) {
+            LocalAckLedger ledger = ledger();
+            ledger.init(3L, 0b0111, SPOUT_TASK);
+            ledger.ack(3L, 0b0001);
+            Time.advanceTime(250);
+            LocalAckLedger.Entry entry = ledger.migrate(3L);
+            Assert.assertEquals(0b0110, entry.getVal());
+            Assert.assertEquals(250, entry.getTimeDeltaMs());
+            Assert.assertNull(ledger.ack(3L, 0b0110));
+            Assert.assertNull(ledger.migrate(3L));
+
+            // the acker completes the tree with the time it spent in the worker counted
+            List<Object[]> replies = new ArrayList<>();
+            OutputCollector collector = mock(OutputCollector.class);
+            doAnswer(invocation -> {
+                List<Object> values = invocation.getArgument(2);
+                replies.add(values.toArray());
+                return null;
+            }).when(collector).emitDirect(anyInt(), eq(Acker.ACKER_ACK_STREAM_ID), any(List.class));
+            Acker acker = new Acker();
+            acker.prepare(new HashMap<>(), null, collector);
+            acker.execute(tuple(Acker.ACKER_INIT_STREAM_ID, 3L, entry.getVal(), entry.getSpoutTask(), entry.getTimeDeltaMs()));
+            Time.advanceTime(100);
+            acker.execute(tuple(Acker.ACKER_ACK_STREAM_ID, 3L, 0b0110L));
+            Assert.assertEquals(1, replies.size());
+            Assert.assertEquals(3L, replies.get(0)[0]);
+            Assert.assertEquals(350L, replies.get(0)[1]);
+        }
+    }
+
+    private static Tuple tuple(String streamId, Object... values) {
+        Tuple tuple = mock(Tuple.class);
+        when(tuple.getSourceStreamId()).thenReturn(streamId);
+        when(tuple.getSourceComponent()).thenReturn("bolt");
+        when(tuple.size()).thenReturn(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof Integer) {
+                when(tuple.getInteger(i)).thenReturn((Integer) values[i]);
+            } else {
+                when(tuple.getLong(i)).thenReturn(((Number) values[i]).longValue());
+            }
+        }
+        return tuple;
+    }
+
+    @Test
+    public void testFailedAndExpiredTrees() {
+        LocalAckLedger ledger = ledger();
+        ledger.init(4L, 0b0001, SPOUT_TASK);
+        Assert.assertEquals(SPOUT_TASK, ledger.remove(4L).getSpoutTask());
+        Assert.assertNull(ledger.remove(4L));
+        Assert.assertEquals(-1, ledger.resetTimeout(4L));
+
+        ledger.init(5L, 0b0001, SPOUT_TASK);
+        ledger.init(6L, 0b0001, SPOUT_TASK);
+        Assert.assertEquals(0, ledger.rotate());
+        // a reset timeout moves the tree to the newest bucket
+        Assert.assertEquals(SPOUT_TASK, ledger.resetTimeout(6L));
+        for (int i = 1; i < Acker.TIMEOUT_BUCKET_NUM - 1; i++) {
+            Assert.assertEquals(0, ledger.rotate());
+        }
+        Assert.assertEquals(1, ledger.rotate());
+        Assert.assertNull(ledger.ack(5L, 0b0001));
+        Assert.assertEquals(1, ledger.rotate());
+        Assert.assertEquals(0, ledger.size());
+    }
+
+    @Test
+    public void testConcurrentAcksOfTreesSharingStripes() throws InterruptedException {
+        LocalAckLedger ledger = ledger();
+        int threads = 4;
+        int trees = 1024;
+        int acksPerThread = 64;
+        // every thread xors its own values into every tree, the trees are spread over all the stripes
+        long[][] values = new long[threads][acksPerThread];
+        Random random = new Random(1);
+        long init = 0;
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < acksPerThread; i++) {
+                values[t][i] = random.nextLong();
+                init ^= values[t][i];
+            }
+        }
+        for (long rootId = 0; rootId < trees; rootId++) {
+            ledger.init(rootId, init, SPOUT_TASK);
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long[] threadValues = values[t];
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long rootId = 0; rootId < trees; rootId++) {
+                    for (long value : threadValues) {
+                        LocalAckLedger.Entry entry = ledger.ack(rootId, value);
+                        if (entry != null && entry.isComplete()) {
+                            completed.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        // no ack was lost, and every tree completed exactly once
+        Assert.assertEquals(trees, completed.get());
+        Assert.assertEquals(0, ledger.size());
+    }
+}
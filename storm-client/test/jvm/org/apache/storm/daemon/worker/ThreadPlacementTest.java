@@ -0,0 +1,161 @@
+package org.apache.storm.daemon.worker;
+
+import org.apache.storm.Config;
+import org.apache.storm.Constants;
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.testing.TestWordCounter;
+import org.apache.storm.testing.TestWordSpout;
+import org.apache.storm.topology.TopologyBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ThreadPlacementTest {
+    private static final int[] DOMAIN_0 = { 0, 1, 2, 3 };
+    private static final int[] DOMAIN_1 = { 4, 5, 6, 7 };
+
+    /** a -> b -> c and x -> y, with b running two executors */
+    private static StormTopology topology() {
+        TopologyBuilder builder = new TopologyBuilder();
+        builder.setSpout("a", new TestWordSpout());
+        builder.setBolt("b", new TestWordCounter(), 2).shuffleGrouping("a");
+        builder.setBolt("c", new TestWordCounter()).shuffleGrouping("b");
+        builder.setSpout("x", new TestWordSpout());
+        builder.setBolt("y", new TestWordCounter()).shuffleGrouping("x");
+        return builder.createTopology();
+    }
+
+    private static Map<Integer, String> taskToComponent() {
+        Map<Integer, String> taskToComponent = new HashMap<>();
+        taskToComponent.put(1, "a");
+        taskToComponent.put(2, "b");
+        taskToComponent.put(3, "b");
+        taskToComponent.put(4, "c");
+        taskToComponent.put(5, "x");
+        taskToComponent.put(6, "y");
+        return taskToComponent;
+    }
+
+    private static List<List<Long>> executors() {
+        List<List<Long>> executors = new ArrayList<>();
+        for (long task = 1; task <= 6; task++) {
+            executors.add(Arrays.asList(task, task));
+        }
+        executors.add(Constants.SYSTEM_EXECUTOR_ID);
+        return executors;
+    }
+
+    private static CpuTopology cpuTopology(int[]... domains) {
+        List<CpuTopology.Domain> list = new ArrayList<>();
+        for (int[] cpus : domains) {
+            list.add(new CpuTopology.Domain(list.size(), list.size(), cpus));
+        }
+        return new CpuTopology(list);
+    }
+
+    private static ThreadPlacement create(ThreadPlacement.Mode mode, CpuTopology cpuTopology) {
+        return ThreadPlacement.create(mode, new HashMap<>(), topology(), executors(), taskToComponent(), cpuTopology);
+    }
+
+    private static List<Long> executor(long task) {
+        return Arrays.asList(task, task);
+    }
+
+    private static Set<Integer> set(int[] cpus) {
+        Set<Integer> set = new HashSet<>();
+        for (int cpu : cpus) {
+            set.add(cpu);
+        }
+        return set;
+    }
+
+    @Test
+    public void testDomainModeKeepsConnectedComponentsOnOneDomain() {
+        ThreadPlacement placement = create(ThreadPlacement.Mode.DOMAIN, cpuTopology(DOMAIN_0, DOMAIN_1));
+        // a, b and c fill the first domain, x, y and the transfer thread go to the second one
+        for (long task = 1; task <= 4; task++) {
+            Assert.assertArrayEquals(DOMAIN_0, placement.getExecutorCpus(executor(task)));
+        }
+        Assert.assertArrayEquals(DOMAIN_1, placement.getExecutorCpus(executor(5)));
+        Assert.assertArrayEquals(DOMAIN_1, placement.getExecutorCpus(executor(6)));
+        Assert.assertEquals(1, placement.getTransferCpus().size());
+        Assert.assertArrayEquals(DOMAIN_1, placement.getTransferCpus().get(0));
+        Assert.assertNull(placement.getExecutorCpus(Constants.SYSTEM_EXECUTOR_ID));
+    }
+
+    @Test
+    public void testCoreModeGivesEveryThreadACpuOfItsDomain() {
+        ThreadPlacement placement = create(ThreadPlacement.Mode.CORE, cpuTopology(DOMAIN_0, DOMAIN_1));
+        Set<Integer> used = new HashSet<>();
+        for (long task = 1; task <= 6; task++) {
+            int[] cpus = placement.getExecutorCpus(executor(task));
+            Assert.assertEquals(1, cpus.length);
+            Assert.assertTrue(set(task <= 4 ? DOMAIN_0 : DOMAIN_1).contains(cpus[0]));
+            Assert.assertTrue(used.add(cpus[0]));
+        }
+        int[] transfer = placement.getTransferCpus().get(0);
+        Assert.assertEquals(1, transfer.length);
+        Assert.assertTrue(set(DOMAIN_1).contains(transfer[0]));
+        Assert.assertTrue(used.add(transfer[0]));
+    }
+
+    @Test
+    public void testGroupThatDoesNotFitIsSplitInStreamOrder() {
+        // 7 threads on 3 domains of 2 CPUs, so each domain takes 3 of them
+        int[][] domains = { { 0, 1 }, { 2, 3 }, { 4, 5 } };
+        ThreadPlacement placement = create(ThreadPlacement.Mode.DOMAIN, cpuTopology(domains));
+        // a, b and c are walked in stream order, so c is the one that moves to the next domain
+        for (long task = 1; task <= 3; task++) {
+            Assert.assertArrayEquals(domains[0], placement.getExecutorCpus(executor(task)));
+        }
+        Assert.assertArrayEquals(domains[1], placement.getExecutorCpus(executor(4)));
+        // x and y fit in the domain with the least room left
+        Assert.assertArrayEquals(domains[1], placement.getExecutorCpus(executor(5)));
+        Assert.assertArrayEquals(domains[1], placement.getExecutorCpus(executor(6)));
+        Assert.assertArrayEquals(domains[2], placement.getTransferCpus().get(0));
+    }
+
+    @Test
+    public void testCoreModeSharesTheCpusOfAFullDomain() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_TRANSFER_THREADS, 2);
+        // 8 threads on a single domain of 3 CPUs
+        ThreadPlacement placement = ThreadPlacement.create(ThreadPlacement.Mode.CORE, conf, topology(), executors(), taskToComponent(),
+                                                           cpuTopology(new int[]{ 0, 1, 2 }));
+        int[] counts = new int[3];
+        for (long task = 1; task <= 6; task++) {
+            counts[placement.getExecutorCpus(executor(task))[0]]++;
+        }
+        Assert.assertEquals(2, placement.getTransferCpus().size());
+        for (int[] cpus : placement.getTransferCpus()) {
+            counts[cpus[0]]++;
+        }
+        Assert.assertArrayEquals(new int[]{ 3, 3, 2 }, counts);
+    }
+
+    @Test
+    public void testUnknownCpuTopology() {
+        Assert.assertNull(create(ThreadPlacement.Mode.CORE, new CpuTopology(Collections.emptyList())));
+    }
+
+    @Test
+    public void testModeFromConfig() {
+        Map<String, Object> conf = new HashMap<>();
+        Assert.assertEquals(ThreadPlacement.Mode.NONE, ThreadPlacement.Mode.fromConfig(conf));
+        conf.put(Config.TOPOLOGY_WORKER_THREAD_PLACEMENT, "none");
+        Assert.assertEquals(ThreadPlacement.Mode.NONE, ThreadPlacement.Mode.fromConfig(conf));
+        Assert.assertNull(ThreadPlacement.create(conf, topology(), executors(), taskToComponent()));
+        conf.put(Config.TOPOLOGY_WORKER_THREAD_PLACEMENT, "domain");
+        Assert.assertEquals(ThreadPlacement.Mode.DOMAIN, ThreadPlacement.Mode.fromConfig(conf));
+        conf.put(Config.TOPOLOGY_WORKER_THREAD_PLACEMENT, "CORE");
+        Assert.assertEquals(ThreadPlacement.Mode.CORE, ThreadPlacement.Mode.fromConfig(conf));
+    }
+}
@@ -0,0 +1,286 @@
+package org.apache.storm.executor;
+
+import org.apache.storm.Config;
+import org.apache.storm.metrics2.StormMetricRegistry;
+import org.apache.storm.policy.WaitStrategyPark;
+import org.apache.storm.utils.JCQueue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutorPoolTest {
+    private static final long TIMEOUT_SEC = 10;
+
+    private final BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+    private ExecutorPool pool;
+
+    @After
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        Assert.assertTrue("unexpected errors " + errors, errors.isEmpty());
+    }
+
+    private ExecutorPool pool(int threads, int batchSize, int idleMaxMicros) {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_EXECUTOR_POOL_THREADS, threads);
+        conf.put(Config.TOPOLOGY_EXECUTOR_POOL_BATCH_SIZE, batchSize);
+        conf.put(Config.TOPOLOGY_EXECUTOR_POOL_IDLE_MAX_MICROS, idleMaxMicros);
+        pool = new ExecutorPool(conf);
+        return pool;
+    }
+
+    private static JCQueue queue() {
+        return new JCQueue("test", "test", 1024, 0, 1, new WaitStrategyPark(100), "test", "test",
+                           Collections.singletonList(1), 1000, new StormMetricRegistry());
+    }
+
+    /** collects what it consumes in the given list */
+    private static JCQueue.Consumer consumer(BlockingQueue<Object> consumed) {
+        return new JCQueue.Consumer() {
+            @Override
+            public void accept(Object event) {
+                consumed.add(event);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+    }
+
+    private void onError(Thread thread, Throwable error) {
+        errors.add(error);
+    }
+
+    /** waits until the count reaches the expected value, and checks that it goes no further for a while */
+    private static void assertSettlesAt(int expected, AtomicInteger count) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SEC);
+        while (count.get() < expected && System.nanoTime() < end) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        Assert.assertEquals(expected, count.get());
+    }
+
+    @Test
+    public void testWaitingExecutorIsWokenByPublish() throws Exception {
+        pool(1, 100, 1000);
+        JCQueue queue = queue();
+        BlockingQueue<Object> consumed = new LinkedBlockingQueue<>();
+        AtomicInteger inits = new AtomicInteger();
+        AtomicInteger turns = new AtomicInteger();
+        Callable<Long> loop = () -> {
+            turns.incrementAndGet();
+            queue.consume(consumer(consumed));
+            return ExecutorPool.WAIT_FOR_INPUT;
+        };
+        pool.submit("bolt", () -> {
+            inits.incrementAndGet();
+            return loop;
+        }, queue, this::onError);
+        // the first turn runs right away, then the executor does not run until it gets msgs
+        assertSettlesAt(1, turns);
+
+        queue.publish("a");
+        Assert.assertEquals("a", consumed.poll(TIMEOUT_SEC, TimeUnit.SECONDS));
+        assertSettlesAt(2, turns);
+        queue.publish("b");
+        queue.publish("c");
+        Assert.assertEquals("b", consumed.poll(TIMEOUT_SEC, TimeUnit.SECONDS));
+        Assert.assertEquals("c", consumed.poll(TIMEOUT_SEC, TimeUnit.SECONDS));
+        Assert.assertEquals(1, inits.get());
+    }
+
+    @Test
+    public void testMsgPublishedDuringATurnIsNotMissed() throws Exception {
+        pool(1, 100, 1000);
+        JCQueue queue = queue();
+        BlockingQueue<Object> consumed = new LinkedBlockingQueue<>();
+        CountDownLatch inTurn = new CountDownLatch(1);
+        CountDownLatch published = new CountDownLatch(1);
+        AtomicInteger turns = new AtomicInteger();
+        pool.submit("bolt", () -> () -> {
+            if (turns.incrementAndGet() == 1) {
+                // the msg arrives after the consume of this turn, while the executor is still queued
+                queue.consume(consumer(consumed));
+                inTurn.countDown();
+                published.await();
+            } else {
+                queue.consume(consumer(consumed));
+            }
+            return ExecutorPool.WAIT_FOR_INPUT;
+        }, queue, this::onError);
+        Assert.assertTrue(inTurn.await(TIMEOUT_SEC, TimeUnit.SECONDS));
+        queue.publish("a");
+        published.countDown();
+        Assert.assertEquals("a", consumed.poll(TIMEOUT_SEC, TimeUnit.SECONDS));
+        assertSettlesAt(2, turns);
+    }
+
+    @Test
+    public void testPublishEndsATimedWait() throws Exception {
+        // the executor asks to wait for 10 seconds
+        pool(1, 100, 10_000_000);
+        JCQueue queue = queue();
+        BlockingQueue<Object> consumed = new LinkedBlockingQueue<>();
+        CountDownLatch waiting = new CountDownLatch(1);
+        pool.submit("spout", () -> () -> {
+            queue.consume(consumer(consumed));
+            waiting.countDown();
+            return pool.idleMicros(100);
+        }, queue, this::onError);
+        Assert.assertTrue(waiting.await(TIMEOUT_SEC, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        queue.publish("a");
+        Assert.assertEquals("a", consumed.poll(TIMEOUT_SEC, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testTimedWaitEnds() throws Exception {
+        pool(1, 100, 1000);
+        JCQueue queue = queue();
+        CountDownLatch turns = new CountDownLatch(5);
+        pool.submit("spout", () -> () -> {
+            turns.countDown();
+            return pool.idleMicros(100);
+        }, queue, this::onError);
+        Assert.assertTrue(turns.await(TIMEOUT_SEC, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testIdleMicros() {
+        pool(1, 100, 1000);
+        Assert.assertEquals(16, pool.idleMicros(0));
+        Assert.assertEquals(32, pool.idleMicros(1));
+        Assert.assertEquals(512, pool.idleMicros(5));
+        Assert.assertEquals(1000, pool.idleMicros(6));
+        Assert.assertEquals(1000, pool.idleMicros(Integer.MAX_VALUE));
+        pool.shutdown();
+        // the wait never goes below the minimum
+        Assert.assertEquals(16, pool(1, 100, 1).idleMicros(10));
+    }
+
+    @Test
+    public void testTurnBudget() throws Exception {
+        pool(1, 10, 1000);
+        JCQueue queue = queue();
+        for (int i = 0; i < 25; i++) {
+            queue.publish(i);
+        }
+        BlockingQueue<Object> consumed = new LinkedBlockingQueue<>();
+        boolean[] keepRunning = { true };
+        ExecutorPool.TurnBudget budget = pool.newTurnBudget(() -> keepRunning[0]);
+        budget.start();
+        Assert.assertEquals(10, queue.consume(consumer(consumed), budget));
+        // the budget is per turn
+        Assert.assertEquals(0, queue.consume(consumer(consumed), budget));
+        budget.start();
+        Assert.assertEquals(10, queue.consume(consumer(consumed), budget));
+        // the condition of the executor still ends the consume
+        keepRunning[0] = false;
+        budget.start();
+        Assert.assertEquals(0, queue.consume(consumer(consumed), budget));
+        keepRunning[0] = true;
+        Assert.assertEquals(5, queue.consume(consumer(consumed), budget));
+        Assert.assertEquals(25, consumed.size());
+    }
+
+    @Test
+    public void testBusyExecutorGivesUpItsThreadAfterItsBudget() throws Exception {
+        pool(1, 10, 1000);
+        BlockingQueue<Object> consumed = new LinkedBlockingQueue<>();
+        JCQueue busy = queue();
+        for (int i = 0; i < 100; i++) {
+            busy.publish("busy-" + i);
+        }
+        JCQueue other = queue();
+        other.publish("other");
+        List<Integer> busyCounts = Collections.synchronizedList(new ArrayList<>());
+        // both executors are queued before the single pool thread gives either of them a turn
+        CountDownLatch submitted = new CountDownLatch(1);
+        pool.submit("blocker", () -> () -> {
+            submitted.await();
+            return ExecutorPool.WAIT_FOR_INPUT;
+        }, queue(), this::onError);
+        pool.submit("busy", () -> {
+            ExecutorPool.TurnBudget budget = pool.newTurnBudget(() -> true);
+            return () -> {
+                budget.start();
+                int count = busy.consume(consumer(consumed), budget);
+                busyCounts.add(count);
+                return count > 0 ? ExecutorPool.RUN_AGAIN : ExecutorPool.WAIT_FOR_INPUT;
+            };
+        }, busy, this::onError);
+        pool.submit("other", () -> () -> {
+            other.consume(consumer(consumed));
+            return ExecutorPool.WAIT_FOR_INPUT;
+        }, other, this::onError);
+        submitted.countDown();
+
+        List<Object> order = new ArrayList<>();
+        for (int i = 0; i < 101; i++) {
+            Object msg = consumed.poll(TIMEOUT_SEC, TimeUnit.SECONDS);
+            Assert.assertNotNull(msg);
+            order.add(msg);
+        }
+        // the other executor got its turn after the first turn of the busy one
+        Assert.assertEquals(10, order.indexOf("other"));
+        Assert.assertEquals("busy-99", order.get(100));
+        synchronized (busyCounts) {
+            for (int count : busyCounts) {
+                Assert.assertTrue(count <= 10);
+            }
+        }
+    }
+
+    @Test
+    public void testFailedExecutorGetsNoMoreTurns() throws Exception {
+        pool(1, 100, 1000);
+        JCQueue queue = queue();
+        RuntimeException error = new RuntimeException("boom");
+        AtomicInteger turns = new AtomicInteger();
+        pool.submit("bolt", () -> () -> {
+            turns.incrementAndGet();
+            throw error;
+        }, queue, this::onError);
+        Assert.assertSame(error, errors.poll(TIMEOUT_SEC, TimeUnit.SECONDS));
+        queue.publish("a");
+        assertSettlesAt(1, turns);
+        Assert.assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void testCancelledExecutorGetsNoMoreTurns() throws Exception {
+        pool(1, 100, 1000);
+        JCQueue queue = queue();
+        AtomicInteger turns = new AtomicInteger();
+        ExecutorPool.PooledExecutor executor = pool.submit("bolt", () -> () -> {
+            turns.incrementAndGet();
+            return ExecutorPool.RUN_AGAIN;
+        }, queue, this::onError);
+        while (turns.get() == 0) {
+            Thread.sleep(1);
+        }
+        executor.cancel(TimeUnit.SECONDS.toMillis(TIMEOUT_SEC));
+        int cancelledAt = turns.get();
+        queue.publish("a");
+        // a turn that had already started when the executor was cancelled may still count
+        Thread.sleep(50);
+        Assert.assertTrue(turns.get() <= cancelledAt + 1);
+    }
+}
@@ -0,0 +1,168 @@
+package org.apache.storm.executor.bolt;
+
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.task.IBatchExecuteBolt;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Time;
+import org.apache.storm.utils.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ExecuteBatchesTest {
+    private static final int BASE = 5;
+    private static final GeneralTopologyContext CONTEXT = context();
+
+    private final List<List<String>> executed = new ArrayList<>();
+    // "task:word:delta" for every tuple whose execution is done
+    private final List<String> done = new ArrayList<>();
+
+    private static GeneralTopologyContext context() {
+        StormTopology topology = new StormTopology(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        Map<Integer, String> taskToComponent = new HashMap<>();
+        taskToComponent.put(1, "spout");
+        Map<String, List<Integer>> componentToSortedTasks = Collections.singletonMap("spout", Collections.singletonList(1));
+        Map<String, Map<String, Fields>> componentToStreamToFields =
+            Collections.singletonMap("spout", Collections.singletonMap("default", new Fields("word")));
+        return new GeneralTopologyContext(topology, Utils.readDefaultConfig(), taskToComponent, componentToSortedTasks,
+                                          componentToStreamToFields, "topology");
+    }
+
+    private static TupleImpl tuple(String word) {
+        return new TupleImpl(CONTEXT, new Values(word), "spout", 1, "default");
+    }
+
+    private static List<String> words(List<Tuple> tuples) {
+        List<String> words = new ArrayList<>();
+        for (Tuple tuple : tuples) {
+            words.add(tuple.getString(0));
+        }
+        return words;
+    }
+
+    private class RecordingBolt implements IBatchExecuteBolt {
+        private final RuntimeException error;
+        private final long executeMs;
+
+        RecordingBolt(RuntimeException error, long executeMs) {
+            this.error = error;
+            this.executeMs = executeMs;
+        }
+
+        @Override
+        public void execute(List<Tuple> inputs) {
+            executed.add(words(inputs));
+            if (executeMs > 0) {
+                Time.advanceTime(executeMs);
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        @Override
+        public void prepare(Map<String, Object> topoConf, TopologyContext context, OutputCollector collector) {
+        }
+
+        @Override
+        public void execute(Tuple input) {
+            Assert.fail("a batching bolt gets its tuples in batches");
+        }
+
+        @Override
+        public void cleanup() {
+        }
+    }
+
+    private ExecuteBatches batches(int max) {
+        return new ExecuteBatches(3, BASE, max, (taskId, tuple, delta) -> done.add(taskId + ":" + tuple.getString(0) + ":" + delta));
+    }
+
+    @Test
+    public void testBatchIsExecutedWhenFull() {
+        ExecuteBatches batches = batches(3);
+        batches.setBolt(BASE, new RecordingBolt(null, 0));
+        Assert.assertTrue(batches.add(BASE, tuple("a")));
+        Assert.assertTrue(batches.add(BASE, tuple("b")));
+        Assert.assertTrue(executed.isEmpty());
+        Assert.assertTrue(batches.add(BASE, tuple("c")));
+        Assert.assertEquals(Collections.singletonList(Arrays.asList("a", "b", "c")), executed);
+        Assert.assertEquals(Arrays.asList("5:a:-1", "5:b:-1", "5:c:-1"), done);
+
+        // nothing is left for the flush
+        batches.executeAll();
+        Assert.assertEquals(1, executed.size());
+        batches.add(BASE, tuple("d"));
+        batches.executeAll();
+        Assert.assertEquals(Arrays.asList(Arrays.asList("a", "b", "c"), Collections.singletonList("d")), executed);
+    }
+
+    @Test
+    public void testExecuteAllFlushesTheTasksThatBatch() {
+        ExecuteBatches batches = batches(10);
+        batches.setBolt(BASE, new RecordingBolt(null, 0));
+        batches.setBolt(BASE + 2, new RecordingBolt(null, 0));
+        batches.add(BASE + 2, tuple("x"));
+        batches.add(BASE, tuple("a"));
+        batches.add(BASE + 2, tuple("y"));
+        // the task in the middle executes its tuples one by one
+        Assert.assertFalse(batches.add(BASE + 1, tuple("single")));
+        Assert.assertTrue(executed.isEmpty());
+
+        batches.executeAll();
+        Assert.assertEquals(Arrays.asList(Collections.singletonList("a"), Arrays.asList("x", "y")), executed);
+        Assert.assertEquals(Arrays.asList("5:a:-1", "7:x:-1", "7:y:-1"), done);
+        batches.executeAll();
+        Assert.assertEquals(2, executed.size());
+    }
+
+    @Test
+    public void testFailedBatchIsNotExecutedAgain() {
+        ExecuteBatches batches = batches(10);
+        RuntimeException error = new RuntimeException("boom");
+        batches.setBolt(BASE, new RecordingBolt(error, 0));
+        batches.setBolt(BASE + 1, new RecordingBolt(null, 0));
+        batches.add(BASE, tuple("a"));
+        batches.add(BASE, tuple("b"));
+        batches.add(BASE + 1, tuple("c"));
+        try {
+            batches.executeAll();
+            Assert.fail("the error of the bolt must reach the executor");
+        } catch (RuntimeException e) {
+            Assert.assertSame(error, e);
+        }
+        Assert.assertEquals(Collections.singletonList(Arrays.asList("a", "b")), executed);
+        Assert.assertTrue(done.isEmpty());
+
+        // the failed batch is gone, the batch of the other task is still pending
+        batches.executeAll();
+        Assert.assertEquals(Arrays.asList(Arrays.asList("a", "b"), Collections.singletonList("c")), executed);
+        Assert.assertEquals(Collections.singletonList("6:c:-1"), done);
+    }
+
+    @Test
+    public void testSampledTupleGetsItsShareOfTheBatchLatency() {
+        try (Time.SimulatedTime ignored = new Time.SimulatedTime()) {
+            ExecuteBatches batches = batches(3);
+            batches.setBolt(BASE, new RecordingBolt(null, 30));
+            TupleImpl sampled = tuple("b");
+            sampled.setExecuteSampleStartTime(Time.currentTimeMillis());
+            batches.add(BASE, tuple("a"));
+            batches.add(BASE, sampled);
+            batches.add(BASE, tuple("c"));
+            Assert.assertEquals(Arrays.asList("5:a:-1", "5:b:10", "5:c:-1"), done);
+        }
+    }
+}
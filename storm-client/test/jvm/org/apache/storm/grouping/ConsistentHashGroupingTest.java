@@ -0,0 +1,102 @@
+package org.apache.storm.grouping;
+
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConsistentHashGroupingTest {
+    private static final int KEYS = 50_000;
+
+    private static ConsistentHashGrouping grouping(List<Integer> tasks) {
+        ConsistentHashGrouping grouping = new ConsistentHashGrouping(new Fields("key"));
+        WorkerTopologyContext context = mock(WorkerTopologyContext.class);
+        when(context.getComponentOutputFields(any(GlobalStreamId.class))).thenReturn(new Fields("key", "value"));
+        grouping.prepare(context, new GlobalStreamId("source", "default"), tasks);
+        return grouping;
+    }
+
+    private static List<Integer> tasks(int count) {
+        List<Integer> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(100 + i);
+        }
+        return tasks;
+    }
+
+    private static int[] assign(ConsistentHashGrouping grouping) {
+        int[] assigned = new int[KEYS];
+        for (int key = 0; key < KEYS; key++) {
+            int[] tasks = grouping.chooseTaskIds(0, Arrays.asList("key-" + key, key));
+            Assert.assertEquals(1, tasks.length);
+            assigned[key] = tasks[0];
+        }
+        return assigned;
+    }
+
+    @Test
+    public void testAddingATaskMovesOnlyItsShareOfTheKeys() {
+        int[] before = assign(grouping(tasks(1)));
+        for (int n = 1; n < 24; n++) {
+            int newTask = 100 + n;
+            int[] after = assign(grouping(tasks(n + 1)));
+            int moved = 0;
+            for (int key = 0; key < KEYS; key++) {
+                if (before[key] != after[key]) {
+                    // keys only move to the new task
+                    Assert.assertEquals(newTask, after[key]);
+                    moved++;
+                }
+            }
+            double expected = (double) KEYS / (n + 1);
+            Assert.assertEquals("keys moved going from " + n + " to " + (n + 1) + " tasks", expected, moved, 0.1 * expected);
+            before = after;
+        }
+    }
+
+    @Test
+    public void testKeysAreSpreadEvenly() {
+        for (int n : new int[]{ 3, 7, 16 }) {
+            int[] counts = new int[n];
+            for (int task : assign(grouping(tasks(n)))) {
+                counts[task - 100]++;
+            }
+            double expected = (double) KEYS / n;
+            for (int count : counts) {
+                Assert.assertEquals(expected, count, 0.1 * expected);
+            }
+        }
+    }
+
+    @Test
+    public void testMappingDoesNotDependOnTheOrderOfTheTasks() {
+        List<Integer> shuffled = tasks(9);
+        Collections.shuffle(shuffled, new Random(1));
+        Assert.assertArrayEquals(assign(grouping(tasks(9))), assign(grouping(shuffled)));
+    }
+
+    @Test
+    public void testJumpHashBuckets() {
+        Random random = new Random(2);
+        for (int i = 0; i < 10_000; i++) {
+            long key = random.nextLong();
+            int numBuckets = 1 + random.nextInt(1000);
+            int bucket = ConsistentHashGrouping.jumpHash(key, numBuckets);
+            Assert.assertTrue(bucket >= 0 && bucket < numBuckets);
+            // a key keeps its bucket, or moves to the new one
+            int grown = ConsistentHashGrouping.jumpHash(key, numBuckets + 1);
+            Assert.assertTrue(grown == bucket || grown == numBuckets);
+        }
+    }
+}
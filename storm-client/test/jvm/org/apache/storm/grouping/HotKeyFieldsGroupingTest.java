@@ -0,0 +1,151 @@
+package org.apache.storm.grouping;
+
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.apache.storm.tuple.Fields;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HotKeyFieldsGroupingTest {
+    private static final List<Integer> TASKS = Arrays.asList(10, 11, 12, 13);
+    private static final int WINDOW = 1000;
+
+    private static HotKeyFieldsGrouping grouping(double minShare, int maxSplit) {
+        HotKeyFieldsGrouping grouping = new HotKeyFieldsGrouping(new Fields("key"), minShare, maxSplit, WINDOW);
+        WorkerTopologyContext context = mock(WorkerTopologyContext.class);
+        when(context.getComponentOutputFields(any(GlobalStreamId.class))).thenReturn(new Fields("value", "key"));
+        grouping.prepare(context, new GlobalStreamId("source", "default"), TASKS);
+        return grouping;
+    }
+
+    private static List<Object> values(Object key) {
+        return Arrays.asList("value", key);
+    }
+
+    /** the task a fields grouping sends the key to */
+    private static int home(Object key) {
+        return TASKS.get(Math.floorMod(Arrays.asList(key).hashCode(), TASKS.size()));
+    }
+
+    private static int task(HotKeyFieldsGrouping grouping, Object key) {
+        int[] tasks = grouping.chooseTaskIds(0, values(key));
+        Assert.assertEquals(1, tasks.length);
+        return tasks[0];
+    }
+
+    /** sends a window of tuples in which the hot keys have the given share each, and the other tuples have distinct keys */
+    private static Map<Object, Set<Integer>> window(HotKeyFieldsGrouping grouping, Map<Object, Double> hotKeys, int firstColdKey) {
+        Map<Object, Set<Integer>> tasks = new HashMap<>();
+        List<Object> keys = new ArrayList<>();
+        for (Map.Entry<Object, Double> entry : hotKeys.entrySet()) {
+            keys.addAll(Collections.nCopies((int) (entry.getValue() * WINDOW), entry.getKey()));
+        }
+        for (int cold = firstColdKey; keys.size() < WINDOW; cold++) {
+            keys.add("cold-" + cold);
+        }
+        Collections.shuffle(keys, new Random(1));
+        for (Object key : keys) {
+            tasks.computeIfAbsent(key, k -> new TreeSet<>()).add(task(grouping, key));
+        }
+        return tasks;
+    }
+
+    @Test
+    public void testColdKeysGoToTheirFieldsGroupingTask() {
+        HotKeyFieldsGrouping grouping = grouping(0, 0);
+        for (int window = 0; window < 3; window++) {
+            Map<Object, Set<Integer>> tasks = window(grouping, Collections.emptyMap(), 0);
+            for (Map.Entry<Object, Set<Integer>> entry : tasks.entrySet()) {
+                Assert.assertEquals(Collections.singleton(home(entry.getKey())), entry.getValue());
+            }
+            Assert.assertTrue(grouping.getSplitKeys().isEmpty());
+        }
+    }
+
+    @Test
+    public void testHotKeyIsSplitAndCoolsDown() {
+        HotKeyFieldsGrouping grouping = grouping(0, 0);
+        int home = home("hot");
+        // detected in the first window, split in the next one
+        Map<Object, Set<Integer>> first = window(grouping, Collections.singletonMap("hot", 0.5), 0);
+        Assert.assertEquals(Collections.singleton(home), first.get("hot"));
+        Assert.assertEquals(Collections.singletonMap(Collections.singletonList("hot"), 2), grouping.getSplitKeys());
+
+        Map<Object, Set<Integer>> second = window(grouping, Collections.singletonMap("hot", 0.5), WINDOW);
+        // half the tuples over two consecutive tasks, so that none of them gets more than an average task
+        int next = TASKS.get((TASKS.indexOf(home) + 1) % TASKS.size());
+        Assert.assertEquals(new TreeSet<>(Arrays.asList(home, next)), second.get("hot"));
+        for (Map.Entry<Object, Set<Integer>> entry : second.entrySet()) {
+            if (!"hot".equals(entry.getKey())) {
+                Assert.assertEquals(1, entry.getValue().size());
+            }
+        }
+
+        // a key that cooled down goes back to a single task
+        window(grouping, Collections.singletonMap("hot", 0.01), 2 * WINDOW);
+        Assert.assertTrue(grouping.getSplitKeys().isEmpty());
+        Map<Object, Set<Integer>> cooled = window(grouping, Collections.singletonMap("hot", 0.01), 3 * WINDOW);
+        Assert.assertEquals(Collections.singleton(home), cooled.get("hot"));
+    }
+
+    @Test
+    public void testSplitIsBoundedByMaxSplit() {
+        HotKeyFieldsGrouping grouping = grouping(0, 3);
+        window(grouping, Collections.singletonMap("hot", 0.9), 0);
+        Assert.assertEquals(Collections.singletonMap(Collections.singletonList("hot"), 3), grouping.getSplitKeys());
+        Map<Object, Set<Integer>> tasks = window(grouping, Collections.singletonMap("hot", 0.9), WINDOW);
+        Assert.assertEquals(3, tasks.get("hot").size());
+    }
+
+    @Test
+    public void testMinShare() {
+        HotKeyFieldsGrouping grouping = grouping(0.4, 0);
+        Map<Object, Double> hotKeys = new HashMap<>();
+        hotKeys.put("warm", 0.3);
+        hotKeys.put("hot", 0.45);
+        window(grouping, hotKeys, 0);
+        Assert.assertEquals(Collections.singleton(Collections.singletonList("hot")), grouping.getSplitKeys().keySet());
+    }
+
+    @Test
+    public void testKeysWithTheSameStringAreSplitApart() {
+        HotKeyFieldsGrouping grouping = grouping(0, 0);
+        Map<Object, Double> hotKeys = new HashMap<>();
+        hotKeys.put(1, 0.4);
+        hotKeys.put("1", 0.4);
+        window(grouping, hotKeys, 0);
+        Map<List<Object>, Integer> splitKeys = grouping.getSplitKeys();
+        Assert.assertEquals(2, splitKeys.size());
+        Assert.assertEquals(2, (int) splitKeys.get(Collections.singletonList(1)));
+        Assert.assertEquals(2, (int) splitKeys.get(Collections.singletonList("1")));
+    }
+
+    @Test
+    public void testKeyWithTheHashOfAHotKeyIsNotSplit() {
+        Assert.assertEquals("Aa".hashCode(), "BB".hashCode());
+        HotKeyFieldsGrouping grouping = grouping(0, 0);
+        int home = home("BB");
+        window(grouping, Collections.singletonMap("Aa", 0.5), 0);
+        Assert.assertEquals(Collections.singleton(Collections.singletonList("Aa")), grouping.getSplitKeys().keySet());
+        Map<Object, Double> keys = new HashMap<>();
+        keys.put("Aa", 0.4);
+        keys.put("BB", 0.1);
+        Map<Object, Set<Integer>> tasks = window(grouping, keys, WINDOW);
+        Assert.assertEquals(2, tasks.get("Aa").size());
+        Assert.assertEquals(Collections.singleton(home), tasks.get("BB"));
+    }
+}
@@ -0,0 +1,94 @@
+package org.apache.storm.messaging;
+
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.serialization.KryoTupleSerializer;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.Unpooled;
+import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.testing.TestWordSpout;
+import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.tuple.AddressedTuple;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class DeserializingConnectionCallbackTest {
+    private static final Map<String, Object> CONF = Utils.readDefaultConfig();
+    private static final GeneralTopologyContext CONTEXT = context();
+
+    private final List<List<Object>> transferred = new ArrayList<>();
+    private final DeserializingConnectionCallback callback = new DeserializingConnectionCallback(CONF, CONTEXT, tuples -> {
+        for (AddressedTuple tuple : tuples) {
+            transferred.add(Arrays.asList(tuple.getDest(), tuple.getTuple().getString(0)));
+        }
+    });
+
+    private static GeneralTopologyContext context() {
+        TopologyBuilder builder = new TopologyBuilder();
+        builder.setSpout("spout", new TestWordSpout());
+        StormTopology topology = builder.createTopology();
+        Map<String, Map<String, Fields>> streams =
+            Collections.singletonMap("spout", Collections.singletonMap(Utils.DEFAULT_STREAM_ID, new Fields("word")));
+        return new GeneralTopologyContext(topology, CONF, Collections.singletonMap(1, "spout"),
+                                          Collections.singletonMap("spout", Collections.singletonList(1)), streams, "topology");
+    }
+
+    private static byte[] serialize(String word) {
+        return new KryoTupleSerializer(CONF, CONTEXT).serialize(new TupleImpl(CONTEXT, new Values(word), "spout", 1,
+                                                                               Utils.DEFAULT_STREAM_ID));
+    }
+
+    /** the payloads as retained slices of one inbound buffer, which only the slices hold */
+    private static List<TaskMessage> slices(ByteBuf inbound, List<byte[]> payloads) {
+        List<TaskMessage> msgs = new ArrayList<>();
+        for (byte[] payload : payloads) {
+            inbound.writeBytes(payload);
+        }
+        for (int i = 0; i < payloads.size(); i++) {
+            msgs.add(TaskMessage.fromBuffer(10 + i, inbound.readRetainedSlice(payloads.get(i).length)));
+        }
+        inbound.release();
+        return msgs;
+    }
+
+    @Test
+    public void testSlicesAreReleasedOnceTheBatchIsDeserialized() {
+        for (ByteBuf inbound : Arrays.asList(Unpooled.directBuffer(), Unpooled.buffer())) {
+            transferred.clear();
+            List<TaskMessage> batch = slices(inbound, Arrays.asList(serialize("a"), serialize("b")));
+            batch.add(new TaskMessage(12, serialize("c")));
+            Assert.assertEquals(2, inbound.refCnt());
+            callback.recv(batch);
+            Assert.assertEquals(Arrays.asList(Arrays.asList(10, "a"), Arrays.asList(11, "b"), Arrays.asList(12, "c")), transferred);
+            Assert.assertEquals(0, inbound.refCnt());
+            for (TaskMessage msg : batch) {
+                Assert.assertNull(msg.buffer());
+            }
+        }
+    }
+
+    @Test
+    public void testSlicesAreReleasedWhenAPayloadCanNotBeRead() {
+        ByteBuf inbound = Unpooled.directBuffer();
+        // the second payload ends before the stream id
+        List<TaskMessage> batch = slices(inbound, Arrays.asList(serialize("a"), new byte[]{ 1 }, serialize("c")));
+        Assert.assertEquals(3, inbound.refCnt());
+        try {
+            callback.recv(batch);
+            Assert.fail("the truncated payload can not be deserialized");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        Assert.assertTrue(transferred.isEmpty());
+        Assert.assertEquals(0, inbound.refCnt());
+    }
+}
@@ -0,0 +1,258 @@
+package org.apache.storm.messaging.netty;
+
+import org.apache.storm.Config;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.Unpooled;
+import org.apache.storm.shade.io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class BatchCompressorTest {
+
+    private static BatchCompressor compressor(String codec, int threshold, int dictionarySamples) {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.STORM_MESSAGING_NETTY_COMPRESSION_CODEC, codec);
+        conf.put(Config.STORM_MESSAGING_NETTY_COMPRESSION_THRESHOLD_BYTES, threshold);
+        conf.put(Config.STORM_MESSAGING_NETTY_COMPRESSION_DICTIONARY_SAMPLES, dictionarySamples);
+        return new BatchCompressor(conf);
+    }
+
+    /** Repetitive payloads, like tuples of the same stream. */
+    private static List<TaskMessage> messages(int count, Random random) {
+        List<TaskMessage> msgs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String payload = "{\"user\":\"user-" + random.nextInt(100) + "\",\"event\":\"click\",\"page\":\"/index.html\"}";
+            msgs.add(new TaskMessage(i % 4, payload.getBytes()));
+        }
+        return msgs;
+    }
+
+    private static MessageBatch batch(List<TaskMessage> msgs, boolean compact) {
+        MessageBatch batch = new MessageBatch(Integer.MAX_VALUE);
+        for (TaskMessage msg : msgs) {
+            batch.add(msg);
+        }
+        if (compact) {
+            batch.useCompactFormat();
+        }
+        return batch;
+    }
+
+    private static ByteBuf write(BatchCompressor compressor, MessageBatch batch, EmbeddedChannel sender) {
+        ByteBuf buf = Unpooled.buffer();
+        compressor.wrap(batch, sender).write(buf);
+        return buf;
+    }
+
+    /** The compact format groups the messages by destination, so the order is only checked per destination. */
+    private static void assertDecodes(List<TaskMessage> expected, EmbeddedChannel receiver) {
+        Map<Integer, List<byte[]>> want = byTask(expected);
+        Map<Integer, List<byte[]>> got = byTask(CompactBatchFormatTest.decode(receiver));
+        Assert.assertEquals(want.keySet(), got.keySet());
+        for (Map.Entry<Integer, List<byte[]>> entry : want.entrySet()) {
+            List<byte[]> payloads = got.get(entry.getKey());
+            Assert.assertEquals(entry.getValue().size(), payloads.size());
+            for (int i = 0; i < payloads.size(); i++) {
+                Assert.assertArrayEquals(entry.getValue().get(i), payloads.get(i));
+            }
+        }
+    }
+
+    private static Map<Integer, List<byte[]>> byTask(List<TaskMessage> msgs) {
+        Map<Integer, List<byte[]>> byTask = new HashMap<>();
+        for (TaskMessage msg : msgs) {
+            byTask.computeIfAbsent(msg.task(), k -> new ArrayList<>()).add(msg.message());
+        }
+        return byTask;
+    }
+
+    /** Decoding errors close the connection. */
+    private static void assertRejected(EmbeddedChannel receiver, ByteBuf encoded) {
+        receiver.writeInbound(encoded);
+        Assert.assertNull(receiver.readInbound());
+        Assert.assertFalse(receiver.isOpen());
+    }
+
+    private void testRoundTrip(String codec, boolean compact) {
+        BatchCompressor compressor = compressor(codec, 0, 0);
+        EmbeddedChannel sender = new EmbeddedChannel();
+        compressor.compressionSupported(sender);
+        EmbeddedChannel receiver = new EmbeddedChannel(new MessageDecoder(null, compact));
+        Random random = new Random(1);
+        for (int i = 0; i < 3; i++) {
+            List<TaskMessage> msgs = messages(500, random);
+            ByteBuf encoded = write(compressor, batch(msgs, compact), sender);
+            Assert.assertEquals(BatchCompressor.IDENTIFIER, encoded.getShort(0));
+            Assert.assertEquals(encoded.readableBytes() - 6, encoded.getInt(2));
+            receiver.writeInbound(encoded);
+            // one client sends batches in both formats, depending on what the server supports
+            assertDecodes(msgs, receiver);
+        }
+        Assert.assertTrue(compressor.compressionRatio() < 0.5);
+        compressor.close();
+        receiver.finish();
+    }
+
+    @Test
+    public void testSnappyRoundTrip() {
+        testRoundTrip("snappy", false);
+        testRoundTrip("snappy", true);
+    }
+
+    @Test
+    public void testDeflateRoundTrip() {
+        testRoundTrip("deflate", false);
+        testRoundTrip("deflate", true);
+    }
+
+    @Test
+    public void testSnappyBatchLargerThanOneChunk() {
+        BatchCompressor compressor = compressor("snappy", 0, 0);
+        EmbeddedChannel sender = new EmbeddedChannel();
+        compressor.compressionSupported(sender);
+        List<TaskMessage> msgs = messages(3 * BatchCompressor.SNAPPY_CHUNK_SIZE / 60, new Random(2));
+        MessageBatch batch = batch(msgs, false);
+        Assert.assertTrue(batch.encodeLength() > 2 * BatchCompressor.SNAPPY_CHUNK_SIZE);
+        EmbeddedChannel receiver = new EmbeddedChannel(new MessageDecoder(null, false));
+        receiver.writeInbound(write(compressor, batch, sender));
+        assertDecodes(msgs, receiver);
+        receiver.finish();
+    }
+
+    @Test
+    public void testNotCompressedUnlessSupportedAndAboveThreshold() {
+        BatchCompressor compressor = compressor("deflate", 1024, 0);
+        EmbeddedChannel sender = new EmbeddedChannel();
+        MessageBatch large = batch(messages(100, new Random(3)), false);
+        Assert.assertSame(large, compressor.wrap(large, sender));
+        compressor.compressionSupported(sender);
+        Assert.assertNotSame(large, compressor.wrap(large, sender));
+        MessageBatch small = batch(messages(1, new Random(3)), false);
+        Assert.assertSame(small, compressor.wrap(small, sender));
+
+        BatchCompressor none = compressor("none", 0, 0);
+        none.compressionSupported(sender);
+        Assert.assertFalse(none.isEnabled());
+        Assert.assertSame(large, none.wrap(large, sender));
+    }
+
+    @Test
+    public void testIncompressibleAndEmptyBatchesAreSentAsIs() {
+        BatchCompressor compressor = compressor("deflate", 0, 0);
+        EmbeddedChannel sender = new EmbeddedChannel();
+        compressor.compressionSupported(sender);
+        EmbeddedChannel receiver = new EmbeddedChannel(new MessageDecoder(null, false));
+
+        Random random = new Random(4);
+        List<TaskMessage> msgs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] payload = new byte[1000];
+            random.nextBytes(payload);
+            msgs.add(new TaskMessage(i, payload));
+        }
+        MessageBatch batch = batch(msgs, false);
+        ByteBuf encoded = write(compressor, batch, sender);
+        Assert.assertEquals(batch.encodeLength(), encoded.readableBytes());
+        Assert.assertNotEquals(BatchCompressor.IDENTIFIER, encoded.getShort(0));
+        receiver.writeInbound(encoded);
+        assertDecodes(msgs, receiver);
+
+        ByteBuf empty = write(compressor, batch(new ArrayList<>(), false), sender);
+        Assert.assertEquals(ControlMessage.EOB_MESSAGE.encodeLength(), empty.readableBytes());
+        receiver.writeInbound(empty);
+        Assert.assertNull(receiver.readInbound());
+        receiver.finish();
+    }
+
+    @Test
+    public void testDictionaryIsSentOncePerChannel() {
+        BatchCompressor compressor = compressor("deflate", 0, 2);
+        EmbeddedChannel sender = new EmbeddedChannel();
+        compressor.compressionSupported(sender);
+        EmbeddedChannel receiver = new EmbeddedChannel(new MessageDecoder(null, false));
+        Random random = new Random(5);
+
+        // the samples are taken from the first two batches, the dictionary is used from the second one on
+        ByteBuf first = write(compressor, batch(messages(100, random), false), sender);
+        Assert.assertEquals(BatchCompressor.IDENTIFIER, first.getShort(0));
+        Assert.assertEquals(0, first.getInt(7));
+        receiver.writeInbound(first);
+        CompactBatchFormatTest.decode(receiver);
+
+        List<TaskMessage> msgs = messages(100, random);
+        ByteBuf second = write(compressor, batch(msgs, false), sender);
+        Assert.assertEquals(BatchCompressor.DICTIONARY_IDENTIFIER, second.getShort(0));
+        int dictionaryFrame = 6 + second.getInt(2);
+        int dictionaryId = second.getInt(6);
+        Assert.assertNotEquals(0, dictionaryId);
+        Assert.assertEquals(BatchCompressor.IDENTIFIER, second.getShort(dictionaryFrame));
+        Assert.assertEquals(dictionaryId, second.getInt(dictionaryFrame + 7));
+        receiver.writeInbound(second);
+        assertDecodes(msgs, receiver);
+
+        msgs = messages(100, random);
+        ByteBuf third = write(compressor, batch(msgs, false), sender);
+        Assert.assertEquals(BatchCompressor.IDENTIFIER, third.getShort(0));
+        Assert.assertEquals(dictionaryId, third.getInt(7));
+        ByteBuf copy = third.copy();
+        receiver.writeInbound(third);
+        assertDecodes(msgs, receiver);
+        receiver.finish();
+
+        // a channel that never got the dictionary can not decode the batch
+        EmbeddedChannel other = new EmbeddedChannel(new MessageDecoder(null, false));
+        assertRejected(other, copy);
+
+        // a new channel gets the dictionary again
+        EmbeddedChannel reconnected = new EmbeddedChannel();
+        compressor.compressionSupported(reconnected);
+        ByteBuf resent = write(compressor, batch(messages(100, random), false), reconnected);
+        Assert.assertEquals(BatchCompressor.DICTIONARY_IDENTIFIER, resent.getShort(0));
+        compressor.close();
+    }
+
+    @Test
+    public void testPartialFrames() {
+        BatchCompressor compressor = compressor("deflate", 0, 1);
+        EmbeddedChannel sender = new EmbeddedChannel();
+        compressor.compressionSupported(sender);
+        List<TaskMessage> msgs = messages(100, new Random(6));
+        ByteBuf encoded = write(compressor, batch(msgs, true), sender);
+        Assert.assertEquals(BatchCompressor.DICTIONARY_IDENTIFIER, encoded.getShort(0));
+
+        EmbeddedChannel receiver = new EmbeddedChannel(new MessageDecoder(null, true));
+        while (encoded.readableBytes() > 1) {
+            receiver.writeInbound(encoded.readRetainedSlice(1));
+            Assert.assertNull(receiver.readInbound());
+        }
+        receiver.writeInbound(encoded.readRetainedSlice(1));
+        assertDecodes(msgs, receiver);
+        encoded.release();
+        receiver.finish();
+    }
+
+    @Test
+    public void testTruncatedCompressedFrameIsRejected() {
+        BatchCompressor compressor = compressor("deflate", 0, 0);
+        EmbeddedChannel sender = new EmbeddedChannel();
+        compressor.compressionSupported(sender);
+        ByteBuf encoded = write(compressor, batch(messages(100, new Random(7)), false), sender);
+        // cut the compressed data short, but keep the frame length consistent
+        int frameLength = encoded.getInt(2) - 20;
+        ByteBuf truncated = Unpooled.buffer();
+        truncated.writeShort(BatchCompressor.IDENTIFIER);
+        truncated.writeInt(frameLength);
+        truncated.writeBytes(encoded, 6, frameLength);
+
+        EmbeddedChannel receiver = new EmbeddedChannel(new MessageDecoder(null, false));
+        assertRejected(receiver, truncated);
+        compressor.close();
+    }
+}
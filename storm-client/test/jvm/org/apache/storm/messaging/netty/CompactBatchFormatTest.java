@@ -0,0 +1,214 @@
+package org.apache.storm.messaging.netty;
+
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.Unpooled;
+import org.apache.storm.shade.io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class CompactBatchFormatTest {
+
+    /** A payload that starts like a serialized tuple: varint source task, varint stream id. */
+    static byte[] tuple(int srcTask, int streamId, int bodyLength, Random random) {
+        ByteBuf buf = Unpooled.buffer();
+        CompactBatchFormat.writeVarInt(buf, srcTask);
+        CompactBatchFormat.writeVarInt(buf, streamId);
+        byte[] body = new byte[bodyLength];
+        random.nextBytes(body);
+        buf.writeBytes(body);
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        return bytes;
+    }
+
+    static List<TaskMessage> messages(Random random) {
+        List<TaskMessage> msgs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int destTask = i % 3 == 0 ? 300 + i % 7 : 5;
+            int srcTask = i % 11 == 0 ? 200 : 1;
+            int streamId = i % 13 == 0 ? 1000 : 2;
+            msgs.add(new TaskMessage(destTask, tuple(srcTask, streamId, random.nextInt(40), random)));
+        }
+        // payloads that can not have a prefix hoisted
+        msgs.add(new TaskMessage(5, new byte[0]));
+        msgs.add(new TaskMessage(5, new byte[] {(byte) 0x81}));
+        msgs.add(new TaskMessage(5, new byte[] {(byte) 0x80, 0x00, 0x01}));  // non canonical varint
+        msgs.add(new TaskMessage(6, new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 1}));  // negative
+        return msgs;
+    }
+
+    static ByteBuf encode(List<TaskMessage> msgs) {
+        MessageBatch batch = new MessageBatch(Integer.MAX_VALUE);
+        for (TaskMessage msg : msgs) {
+            batch.add(msg);
+        }
+        batch.useCompactFormat();
+        ByteBuf buf = Unpooled.buffer(batch.encodeLength());
+        batch.write(buf);
+        return buf;
+    }
+
+    static List<TaskMessage> decode(EmbeddedChannel channel) {
+        List<TaskMessage> msgs = new ArrayList<>();
+        Object decoded;
+        while ((decoded = channel.readInbound()) != null) {
+            for (Object msg : (List<?>) decoded) {
+                msgs.add((TaskMessage) msg);
+            }
+        }
+        return msgs;
+    }
+
+    /** Messages may be reordered across destinations, but never for one destination. */
+    static void assertSameMessages(List<TaskMessage> expected, List<byte[]> expectedPayloads, List<TaskMessage> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int task : new int[] {5, 6, 300, 301, 302, 303, 304, 305, 306}) {
+            List<byte[]> want = new ArrayList<>();
+            for (int i = 0; i < expected.size(); i++) {
+                if (expected.get(i).task() == task) {
+                    want.add(expectedPayloads.get(i));
+                }
+            }
+            List<byte[]> got = new ArrayList<>();
+            for (TaskMessage msg : actual) {
+                if (msg.task() == task) {
+                    got.add(msg.message());
+                }
+            }
+            Assert.assertEquals("messages for task " + task, want.size(), got.size());
+            for (int i = 0; i < want.size(); i++) {
+                Assert.assertArrayEquals("message " + i + " for task " + task, want.get(i), got.get(i));
+            }
+        }
+    }
+
+    static List<byte[]> payloads(List<TaskMessage> msgs) {
+        List<byte[]> payloads = new ArrayList<>();
+        for (TaskMessage msg : msgs) {
+            payloads.add(msg.message().clone());
+        }
+        return payloads;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (boolean slice : new boolean[] {false, true}) {
+            List<TaskMessage> msgs = messages(new Random(1));
+            List<byte[]> payloads = payloads(msgs);
+            ByteBuf encoded = encode(msgs);
+            Assert.assertEquals(CompactBatchFormat.IDENTIFIER, encoded.getShort(0));
+            Assert.assertEquals(encoded.readableBytes() - CompactBatchFormat.HEADER_LENGTH, encoded.getInt(2));
+
+            EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder(null, slice));
+            channel.writeInbound(encoded);
+            List<TaskMessage> decoded = decode(channel);
+            for (TaskMessage msg : decoded) {
+                Assert.assertEquals(slice, msg.buffer() != null);
+            }
+            assertSameMessages(msgs, payloads, decoded);
+            channel.finish();
+        }
+    }
+
+    @Test
+    public void testHoistedPrefixIsSmaller() {
+        List<TaskMessage> msgs = messages(new Random(2));
+        MessageBatch plain = new MessageBatch(Integer.MAX_VALUE);
+        for (TaskMessage msg : msgs) {
+            plain.add(msg);
+        }
+        ByteBuf plainEncoded = Unpooled.buffer();
+        plain.write(plainEncoded);
+        Assert.assertTrue(encode(msgs).readableBytes() < plainEncoded.readableBytes());
+    }
+
+    @Test
+    public void testBufferedPayloadsAreReleased() {
+        Random random = new Random(3);
+        List<TaskMessage> msgs = new ArrayList<>();
+        List<ByteBuf> buffers = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] payload = tuple(1, 2, 10, random);
+            ByteBuf buffer = Unpooled.directBuffer().writeBytes(payload);
+            buffers.add(buffer);
+            payloads.add(payload);
+            msgs.add(TaskMessage.fromBuffer(5, buffer));
+        }
+        ByteBuf encoded = encode(msgs);
+        for (ByteBuf buffer : buffers) {
+            Assert.assertEquals(0, buffer.refCnt());
+        }
+
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder(null, true));
+        channel.writeInbound(encoded);
+        List<TaskMessage> decoded = decode(channel);
+        Assert.assertEquals(payloads.size(), decoded.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            ByteBuf buffer = decoded.get(i).buffer();
+            Assert.assertArrayEquals(payloads.get(i), decoded.get(i).message());
+            Assert.assertEquals(0, buffer.refCnt());
+        }
+        channel.finish();
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        ByteBuf encoded = encode(Collections.emptyList());
+        Assert.assertEquals(CompactBatchFormat.HEADER_LENGTH, encoded.readableBytes());
+        Assert.assertEquals(0, encoded.getInt(2));
+
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder(null, false));
+        channel.writeInbound(encoded);
+        Assert.assertTrue(decode(channel).isEmpty());
+        Assert.assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testPartialFrames() {
+        List<TaskMessage> msgs = messages(new Random(4));
+        List<byte[]> payloads = payloads(msgs);
+        ByteBuf encoded = encode(msgs);
+        int length = encoded.readableBytes();
+
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder(null, true));
+        for (int i = 0; i < length - 1; i++) {
+            channel.writeInbound(encoded.readRetainedSlice(1));
+            Assert.assertNull("decoded before the frame was complete, at byte " + i, channel.readInbound());
+        }
+        channel.writeInbound(encoded.readRetainedSlice(1));
+        assertSameMessages(msgs, payloads, decode(channel));
+        encoded.release();
+        channel.finish();
+    }
+
+    @Test
+    public void testTruncatedFrameIsRejected() {
+        ByteBuf encoded = encode(messages(new Random(5)));
+        ByteBuf frame = encoded.slice(CompactBatchFormat.HEADER_LENGTH, encoded.readableBytes() - CompactBatchFormat.HEADER_LENGTH - 3);
+        List<Object> out = new ArrayList<>();
+        try {
+            CompactBatchFormat.read(frame, false, out);
+            Assert.fail("a frame that ends in the middle of a run must not decode");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testVarInts() {
+        for (int value : Arrays.asList(0, 1, 127, 128, 16383, 16384, 2097151, 2097152, 268435455, 268435456, Integer.MAX_VALUE, -1)) {
+            ByteBuf buf = Unpooled.buffer();
+            CompactBatchFormat.writeVarInt(buf, value);
+            Assert.assertEquals(CompactBatchFormat.varIntSize(value), buf.readableBytes());
+            Assert.assertEquals(value, CompactBatchFormat.readVarInt(buf));
+        }
+    }
+}
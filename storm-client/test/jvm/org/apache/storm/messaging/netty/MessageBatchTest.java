@@ -0,0 +1,129 @@
+package org.apache.storm.messaging.netty;
+
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.Unpooled;
+import org.apache.storm.shade.io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MessageBatchTest {
+
+    private static ByteBuf direct(byte... payload) {
+        ByteBuf buf = Unpooled.directBuffer(payload.length);
+        buf.writeBytes(payload);
+        return buf;
+    }
+
+    private static MessageBatch batch(TaskMessage... msgs) {
+        MessageBatch batch = new MessageBatch(Integer.MAX_VALUE);
+        for (TaskMessage msg : msgs) {
+            batch.add(msg);
+        }
+        return batch;
+    }
+
+    @Test
+    public void testWriteReleasesTheBufferedPayloads() {
+        ByteBuf first = direct((byte) 1, (byte) 2);
+        ByteBuf second = direct((byte) 3);
+        MessageBatch batch = batch(TaskMessage.fromBuffer(5, first), new TaskMessage(6, new byte[]{ 4, 5 }),
+                                   TaskMessage.fromBuffer(7, second));
+        Assert.assertEquals(ControlMessage.EOB_MESSAGE.encodeLength() + 3 * 6 + 5, batch.encodeLength());
+        ByteBuf encoded = Unpooled.buffer(batch.encodeLength());
+        batch.write(encoded);
+        Assert.assertEquals(batch.encodeLength(), encoded.readableBytes());
+        Assert.assertEquals(0, first.refCnt());
+        Assert.assertEquals(0, second.refCnt());
+        // nothing is left to release once the batch was written
+        batch.release();
+
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder(null));
+        channel.writeInbound(encoded);
+        List<TaskMessage> decoded = CompactBatchFormatTest.decode(channel);
+        Assert.assertEquals(3, decoded.size());
+        Assert.assertArrayEquals(new byte[]{ 1, 2 }, decoded.get(0).message());
+        Assert.assertArrayEquals(new byte[]{ 4, 5 }, decoded.get(1).message());
+        Assert.assertEquals(7, decoded.get(2).task());
+        Assert.assertArrayEquals(new byte[]{ 3 }, decoded.get(2).message());
+        channel.finish();
+    }
+
+    @Test
+    public void testFailedWriteLeavesTheRestToRelease() {
+        List<ByteBuf> buffers = Arrays.asList(direct((byte) 1), direct((byte) 2), direct((byte) 3));
+        // the task id of the second msg can not be encoded
+        MessageBatch batch = batch(TaskMessage.fromBuffer(5, buffers.get(0)),
+                                   TaskMessage.fromBuffer(Short.MAX_VALUE + 1, buffers.get(1)),
+                                   TaskMessage.fromBuffer(6, buffers.get(2)));
+        try {
+            batch.write(Unpooled.buffer(batch.encodeLength()));
+            Assert.fail("the task id is too large");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Task ID should not exceed"));
+        }
+        Assert.assertEquals(0, buffers.get(0).refCnt());
+        Assert.assertEquals(1, buffers.get(1).refCnt());
+        Assert.assertEquals(1, buffers.get(2).refCnt());
+        batch.release();
+        batch.release();
+        for (ByteBuf buffer : buffers) {
+            Assert.assertEquals(0, buffer.refCnt());
+        }
+    }
+
+    @Test
+    public void testReleaseOfAnUnwrittenBatch() {
+        List<ByteBuf> buffers = new ArrayList<>();
+        MessageBatch batch = new MessageBatch(16);
+        while (!batch.isFull()) {
+            ByteBuf buffer = direct((byte) 1, (byte) 2, (byte) 3);
+            buffers.add(buffer);
+            batch.add(TaskMessage.fromBuffer(5, buffer));
+        }
+        batch.add(new TaskMessage(5, new byte[]{ 4 }));
+        batch.release();
+        for (ByteBuf buffer : buffers) {
+            Assert.assertEquals(0, buffer.refCnt());
+        }
+    }
+
+    @Test
+    public void testBufferedTaskMessage() {
+        ByteBuf buffer = direct((byte) 1, (byte) 2, (byte) 3);
+        TaskMessage msg = TaskMessage.fromBuffer(5, buffer);
+        Assert.assertEquals(3, msg.length());
+        Assert.assertSame(buffer, msg.buffer());
+        Assert.assertEquals(1, buffer.refCnt());
+
+        // copying the payload out releases the buffer, once
+        byte[] payload = msg.message();
+        Assert.assertArrayEquals(new byte[]{ 1, 2, 3 }, payload);
+        Assert.assertEquals(0, buffer.refCnt());
+        Assert.assertNull(msg.buffer());
+        Assert.assertSame(payload, msg.message());
+        Assert.assertEquals(3, msg.length());
+        msg.release();
+
+        ByteBuf dropped = direct((byte) 4);
+        TaskMessage droppedMsg = TaskMessage.fromBuffer(6, dropped);
+        droppedMsg.release();
+        droppedMsg.release();
+        Assert.assertEquals(0, dropped.refCnt());
+
+        // the local transport serializes the payload out of the buffer too
+        ByteBuf local = direct((byte) 7, (byte) 8);
+        ByteBuffer serialized = TaskMessage.fromBuffer(9, local).serialize();
+        Assert.assertEquals(0, local.refCnt());
+        serialized.flip();
+        TaskMessage read = new TaskMessage(0, null);
+        read.deserialize(serialized);
+        Assert.assertEquals(9, read.task());
+        Assert.assertArrayEquals(new byte[]{ 7, 8 }, read.message());
+    }
+}
@@ -0,0 +1,168 @@
+package org.apache.storm.messaging.netty;
+
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.serialization.KryoValuesDeserializer;
+import org.apache.storm.serialization.KryoValuesSerializer;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.ByteBufUtil;
+import org.apache.storm.shade.io.netty.buffer.Unpooled;
+import org.apache.storm.shade.io.netty.buffer.UnpooledByteBufAllocator;
+import org.apache.storm.shade.io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.storm.utils.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class MessageDecoderTest {
+    private static final Map<String, Object> CONF = Utils.readDefaultConfig();
+
+    private static void writeTaskMessage(ByteBuf buf, int task, String payload) {
+        byte[] bytes = payload.getBytes();
+        buf.writeShort(task);
+        buf.writeInt(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    /** task messages with a control message, a SASL token and a back pressure status between them */
+    private static ByteBuf stream() throws Exception {
+        ByteBuf buf = Unpooled.directBuffer();
+        writeTaskMessage(buf, 5, "a");
+        writeTaskMessage(buf, 6, "bb");
+        ControlMessage.COMPACT_BATCH_SUPPORTED.write(buf);
+        writeTaskMessage(buf, 5, "c");
+        new SaslMessageToken(new byte[]{ 1, 2, 3 }).write(buf);
+        writeTaskMessage(buf, 7, "d");
+        ByteBuf status = new BackPressureStatus("worker", new ArrayList<>(Arrays.asList(5)), new ArrayList<>(Arrays.asList(6)))
+            .buffer(UnpooledByteBufAllocator.DEFAULT, new KryoValuesSerializer(CONF));
+        buf.writeBytes(status);
+        status.release();
+        writeTaskMessage(buf, 8, "e");
+        writeTaskMessage(buf, 8, "f");
+        ControlMessage.EOB_MESSAGE.write(buf);
+        return buf;
+    }
+
+    /** the decoded objects, with the task messages as "task:payload" */
+    private static List<Object> read(EmbeddedChannel channel, List<TaskMessage> taskMessages) {
+        List<Object> decoded = new ArrayList<>();
+        Object msg;
+        while ((msg = channel.readInbound()) != null) {
+            if (msg instanceof List) {
+                List<String> batch = new ArrayList<>();
+                for (Object o : (List<?>) msg) {
+                    TaskMessage taskMessage = (TaskMessage) o;
+                    taskMessages.add(taskMessage);
+                    byte[] payload = taskMessage.buffer() != null ? ByteBufUtil.getBytes(taskMessage.buffer()) : taskMessage.message();
+                    batch.add(taskMessage.task() + ":" + new String(payload));
+                }
+                decoded.add(batch);
+            } else if (msg instanceof SaslMessageToken) {
+                decoded.add(Arrays.toString(((SaslMessageToken) msg).getSaslToken()));
+            } else if (msg instanceof BackPressureStatus) {
+                BackPressureStatus status = (BackPressureStatus) msg;
+                decoded.add(status.workerId + " " + status.bpTasks + " " + status.nonBpTasks);
+            } else {
+                decoded.add(msg);
+            }
+        }
+        return decoded;
+    }
+
+    private static List<Object> expected() {
+        return Arrays.asList(Arrays.asList("5:a", "6:bb"), ControlMessage.COMPACT_BATCH_SUPPORTED, Collections.singletonList("5:c"),
+                             "[1, 2, 3]", Collections.singletonList("7:d"), "worker [5] [6]", Arrays.asList("8:e", "8:f"));
+    }
+
+    @Test
+    public void testTaskMessagesAreNotDroppedAroundOtherMessages() throws Exception {
+        for (boolean slice : new boolean[]{ false, true }) {
+            ByteBuf inbound = stream();
+            EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder(new KryoValuesDeserializer(CONF), slice));
+            channel.writeInbound(inbound);
+            List<TaskMessage> taskMessages = new ArrayList<>();
+            Assert.assertEquals(expected(), read(channel, taskMessages));
+            Assert.assertEquals(6, taskMessages.size());
+            if (slice) {
+                // every slice holds the inbound buffer until it is released
+                Assert.assertEquals(6, inbound.refCnt());
+                for (TaskMessage msg : taskMessages) {
+                    Assert.assertNotNull(msg.buffer());
+                    msg.release();
+                }
+            } else {
+                for (TaskMessage msg : taskMessages) {
+                    Assert.assertNull(msg.buffer());
+                }
+            }
+            Assert.assertEquals(0, inbound.refCnt());
+            Assert.assertFalse(channel.finish());
+        }
+    }
+
+    @Test
+    public void testPartialFrames() throws Exception {
+        ByteBuf whole = stream();
+        int length = whole.readableBytes();
+        for (int split = 1; split < length; split++) {
+            ByteBuf first = Unpooled.directBuffer();
+            ByteBuf second = Unpooled.directBuffer();
+            first.writeBytes(whole, 0, split);
+            second.writeBytes(whole, split, length - split);
+            EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder(new KryoValuesDeserializer(CONF), true));
+            List<TaskMessage> taskMessages = new ArrayList<>();
+            channel.writeInbound(first);
+            List<Object> decoded = read(channel, taskMessages);
+            channel.writeInbound(second);
+            decoded.addAll(read(channel, taskMessages));
+
+            List<Object> expected = new ArrayList<>(expected());
+            // the messages of a batch that was split come out in two lists
+            List<Object> joined = new ArrayList<>();
+            for (Object o : decoded) {
+                if (o instanceof List && !joined.isEmpty() && joined.get(joined.size() - 1) instanceof List) {
+                    List<Object> last = new ArrayList<>((List<?>) joined.remove(joined.size() - 1));
+                    last.addAll((List<?>) o);
+                    joined.add(last);
+                } else {
+                    joined.add(o);
+                }
+            }
+            Assert.assertEquals("split at " + split, expected, joined);
+            for (TaskMessage msg : taskMessages) {
+                msg.release();
+            }
+            Assert.assertEquals("split at " + split, 0, first.refCnt());
+            Assert.assertEquals("split at " + split, 0, second.refCnt());
+            Assert.assertFalse(channel.finish());
+        }
+        whole.release();
+    }
+
+    @Test
+    public void testClientIsToldWhatTheServerSupports() {
+        EmbeddedChannel server = new EmbeddedChannel(NettySerializableMessageEncoder.INSTANCE);
+        server.writeOutbound(ControlMessage.COMPACT_BATCH_SUPPORTED, ControlMessage.COMPRESSION_SUPPORTED);
+        Client client = mock(Client.class);
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageDecoder(new KryoValuesDeserializer(CONF)),
+                                                      new StormClientHandler(client, new AtomicBoolean[0], CONF));
+        ByteBuf encoded;
+        while ((encoded = server.readOutbound()) != null) {
+            channel.writeInbound(encoded);
+        }
+        verify(client).compactBatchSupported(channel);
+        verify(client).compressionSupported(channel);
+        verifyNoMoreInteractions(client);
+        Assert.assertFalse(channel.finish());
+        Assert.assertFalse(server.finish());
+    }
+}
@@ -0,0 +1,131 @@
+package org.apache.storm.serialization;
+
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.ByteBufUtil;
+import org.apache.storm.shade.io.netty.buffer.PooledByteBufAllocator;
+import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.testing.TestWordSpout;
+import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class KryoTupleSerializerTest {
+    private static final GeneralTopologyContext CONTEXT = context();
+
+    private final PooledByteBufAllocator alloc = new PooledByteBufAllocator(true);
+    private final KryoTupleSerializer serializer = new KryoTupleSerializer(Utils.readDefaultConfig(), CONTEXT);
+
+    private static GeneralTopologyContext context() {
+        TopologyBuilder builder = new TopologyBuilder();
+        builder.setSpout("spout", new TestWordSpout());
+        StormTopology topology = builder.createTopology();
+        Map<String, Map<String, Fields>> streams =
+            Collections.singletonMap("spout", Collections.singletonMap(Utils.DEFAULT_STREAM_ID, new Fields("word")));
+        return new GeneralTopologyContext(topology, Utils.readDefaultConfig(), Collections.singletonMap(1, "spout"),
+                                          Collections.singletonMap("spout", Collections.singletonList(1)), streams, "topology");
+    }
+
+    private static Tuple tuple(int payloadLength) {
+        byte[] payload = new byte[payloadLength];
+        payload[0] = (byte) payloadLength;
+        return new TupleImpl(CONTEXT, new Values((Object) payload), "spout", 1, Utils.DEFAULT_STREAM_ID);
+    }
+
+    private static void assertSameTuple(Tuple expected, ByteBuf serialized) {
+        Tuple read = new KryoTupleDeserializer(Utils.readDefaultConfig(), CONTEXT).deserialize(serialized);
+        Assert.assertArrayEquals((byte[]) expected.getValue(0), (byte[]) read.getValue(0));
+    }
+
+    @Test
+    public void testSmallTuplesShareAChunk() {
+        Tuple first = tuple(10);
+        Tuple second = tuple(20);
+        ByteBuf a = serializer.serializeToBuffer(first, alloc);
+        ByteBuf b = serializer.serializeToBuffer(second, alloc);
+        Assert.assertTrue(a.isDirect());
+        ByteBuf chunk = a.unwrap();
+        Assert.assertSame(chunk, b.unwrap());
+        // the serializer holds the chunk, and every slice holds it once
+        Assert.assertEquals(3, chunk.refCnt());
+        Assert.assertArrayEquals(serializer.serialize(first), ByteBufUtil.getBytes(a));
+        assertSameTuple(first, a);
+        assertSameTuple(second, b);
+
+        Assert.assertTrue(a.release());
+        Assert.assertEquals(2, chunk.refCnt());
+        serializer.close();
+        Assert.assertEquals(1, chunk.refCnt());
+        // a slice stays readable after the serializer is closed
+        assertSameTuple(second, b);
+        Assert.assertTrue(b.release());
+        Assert.assertEquals(0, chunk.refCnt());
+        serializer.close();
+    }
+
+    @Test
+    public void testFullChunkIsReleasedOnceItsSlicesAre() {
+        List<ByteBuf> slices = new ArrayList<>();
+        ByteBuf chunk = null;
+        while (chunk == null || slices.get(slices.size() - 1).unwrap() == chunk) {
+            slices.add(serializer.serializeToBuffer(tuple(10_000), alloc));
+            if (chunk == null) {
+                chunk = slices.get(0).unwrap();
+            }
+        }
+        ByteBuf next = slices.remove(slices.size() - 1);
+        Assert.assertTrue(slices.size() > 1);
+        // the serializer moved on to the next chunk, only the slices hold the full one
+        Assert.assertEquals(slices.size(), chunk.refCnt());
+        for (ByteBuf slice : slices) {
+            Assert.assertEquals(1, slice.refCnt());
+            slice.release();
+        }
+        Assert.assertEquals(0, chunk.refCnt());
+
+        ByteBuf nextChunk = next.unwrap();
+        Assert.assertEquals(2, nextChunk.refCnt());
+        next.release();
+        serializer.close();
+        Assert.assertEquals(0, nextChunk.refCnt());
+    }
+
+    @Test
+    public void testLargeTupleGetsItsOwnBuffer() {
+        Tuple small = tuple(10);
+        ByteBuf smallBuf = serializer.serializeToBuffer(small, alloc);
+        ByteBuf chunk = smallBuf.unwrap();
+        Tuple large = tuple(20_000);
+        ByteBuf largeBuf = serializer.serializeToBuffer(large, alloc);
+        Assert.assertTrue(largeBuf.isDirect());
+        Assert.assertEquals(1, largeBuf.refCnt());
+        Assert.assertEquals(2, chunk.refCnt());
+        assertSameTuple(large, largeBuf);
+        Assert.assertTrue(largeBuf.release());
+
+        // the chunk is still used for the small tuples
+        ByteBuf again = serializer.serializeToBuffer(small, alloc);
+        Assert.assertSame(chunk, again.unwrap());
+        smallBuf.release();
+        again.release();
+        serializer.close();
+        Assert.assertEquals(0, chunk.refCnt());
+    }
+
+    @Test
+    public void testCloseWithoutDirectBuffers() {
+        serializer.serialize(tuple(10));
+        serializer.close();
+        serializer.close();
+    }
+}
@@ -0,0 +1,38 @@
+package org.apache.storm.serialization;
+
+import com.esotericsoftware.kryo.Kryo;
+import org.apache.storm.Config;
+import org.apache.storm.utils.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+public class SerializationFactoryTest {
+
+    public static class First {
+        public int value;
+    }
+
+    public static class Second {
+        public long value;
+    }
+
+    private static Kryo kryo(boolean ackBatches) {
+        Map<String, Object> conf = Utils.readDefaultConfig();
+        conf.put(Config.TOPOLOGY_KRYO_REGISTER, Arrays.asList(First.class.getName(), Second.class.getName()));
+        conf.put(Config.TOPOLOGY_ACKER_BATCH_ENABLE, ackBatches);
+        conf.put(Config.TOPOLOGY_BATCH_FLUSH_INTERVAL_MILLIS, 1);
+        return SerializationFactory.getKryo(conf);
+    }
+
+    @Test
+    public void testAckBatchesDoNotShiftTheRegisteredIds() {
+        Kryo unbatched = kryo(false);
+        Kryo batched = kryo(true);
+        Assert.assertEquals(unbatched.getRegistration(First.class).getId(), batched.getRegistration(First.class).getId());
+        Assert.assertEquals(unbatched.getRegistration(Second.class).getId(), batched.getRegistration(Second.class).getId());
+        Assert.assertTrue(batched.getRegistration(long[].class).getId() > batched.getRegistration(Second.class).getId());
+    }
+}
@@ -0,0 +1,79 @@
+package org.apache.storm.serialization;
+
+import com.codahale.metrics.Gauge;
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.metrics2.StormMetricRegistry;
+import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.utils.Utils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.HashMap;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TupleSerializerPoolTest {
+    private TupleSerializerPool pool;
+    private Gauge<Long> instances;
+    private Gauge<Long> hits;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        GeneralTopologyContext context = mock(GeneralTopologyContext.class);
+        when(context.getRawTopology()).thenReturn(new StormTopology(new HashMap<>(), new HashMap<>(), new HashMap<>()));
+        pool = new TupleSerializerPool(Utils.readDefaultConfig(), context);
+        StormMetricRegistry metricRegistry = mock(StormMetricRegistry.class);
+        pool.registerMetrics(metricRegistry);
+        ArgumentCaptor<Gauge<Long>> instancesGauge = ArgumentCaptor.forClass(Gauge.class);
+        verify(metricRegistry).gauge(eq("__serializer-pool-instances"), instancesGauge.capture(), anyString(), anyInt());
+        instances = instancesGauge.getValue();
+        ArgumentCaptor<Gauge<Long>> hitsGauge = ArgumentCaptor.forClass(Gauge.class);
+        verify(metricRegistry).gauge(eq("__serializer-pool-hits"), hitsGauge.capture(), anyString(), anyInt());
+        hits = hitsGauge.getValue();
+    }
+
+    private void runOnThread(Runnable task) throws InterruptedException {
+        Thread thread = new Thread(task);
+        thread.start();
+        thread.join();
+    }
+
+    @Test
+    public void testInstancesAreOwnedByThread() throws InterruptedException {
+        KryoTupleSerializer serializer = pool.getSerializer();
+        Assert.assertSame(serializer, pool.getSerializer());
+        KryoTupleDeserializer deserializer = pool.getDeserializer();
+        Assert.assertSame(deserializer, pool.getDeserializer());
+        Assert.assertEquals(2L, (long) instances.getValue());
+        Assert.assertEquals(2L, (long) hits.getValue());
+
+        KryoTupleSerializer[] other = new KryoTupleSerializer[1];
+        runOnThread(() -> other[0] = pool.getSerializer());
+        Assert.assertNotSame(serializer, other[0]);
+    }
+
+    @Test
+    public void testInstancesOfDeadThreadsAreDropped() throws InterruptedException {
+        pool.getSerializer();
+        runOnThread(() -> {
+            pool.getSerializer();
+            pool.getSerializer();
+            pool.getDeserializer();
+        });
+        // the instances of the thread that died are dropped, its hits are still counted
+        Assert.assertEquals(1L, (long) instances.getValue());
+        Assert.assertEquals(1L, (long) hits.getValue());
+        runOnThread(() -> pool.getSerializer());
+        Assert.assertEquals(1L, (long) instances.getValue());
+        pool.getSerializer();
+        Assert.assertEquals(2L, (long) hits.getValue());
+    }
+}
@@ -0,0 +1,147 @@
+package org.apache.storm.serialization;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.topology.base.BaseRichSpout;
+import org.apache.storm.tuple.FieldType;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.TypedFields;
+import org.apache.storm.utils.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TypedValuesCodecTest {
+    private static final TypedFields TYPED = TypedFields.builder()
+        .add("id", FieldType.LONG)
+        .add("name", FieldType.STRING)
+        .add("count", FieldType.INT)
+        .build();
+    private static final Fields UNTYPED = new Fields("value");
+
+    public static class TypedSpout extends BaseRichSpout {
+        @Override
+        public void open(Map<String, Object> conf, TopologyContext context, SpoutOutputCollector collector) {
+        }
+
+        @Override
+        public void nextTuple() {
+        }
+
+        @Override
+        public void declareOutputFields(OutputFieldsDeclarer declarer) {
+            declarer.declare(TYPED);
+            declarer.declareStream("untyped", UNTYPED);
+        }
+    }
+
+    private static List<Object> roundTrip(TypedValuesCodec codec, List<Object> values) {
+        Output out = new Output(64, -1);
+        Assert.assertTrue(codec.write(values, out));
+        Input in = new Input(out.toBytes());
+        Assert.assertEquals(TypedValuesCodec.TYPED_FORMAT, in.readByte());
+        List<Object> read = codec.read(in);
+        Assert.assertEquals("all the bytes are read", out.position(), in.position());
+        return read;
+    }
+
+    @Test
+    public void testEveryTypeAndNulls() {
+        List<FieldType> types = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        // more than 8 fields, so that the null bits take two bytes
+        Object[] samples = { true, -7, Long.MIN_VALUE, 1.5f, Math.PI, "café", new byte[]{ 1, 2, 3 } };
+        for (FieldType type : FieldType.values()) {
+            types.add(type);
+            values.add(samples[type.ordinal()]);
+        }
+        types.add(FieldType.STRING);
+        values.add(null);
+        types.add(FieldType.BYTES);
+        values.add(new byte[0]);
+        types.add(FieldType.LONG);
+        values.add(null);
+        TypedValuesCodec codec = new TypedValuesCodec(types);
+        for (int i = 0; i < 2; i++) {
+            List<Object> read = roundTrip(codec, values);
+            Assert.assertEquals(values.size(), read.size());
+            for (int j = 0; j < values.size(); j++) {
+                if (values.get(j) instanceof byte[]) {
+                    Assert.assertArrayEquals((byte[]) values.get(j), (byte[]) read.get(j));
+                } else {
+                    Assert.assertEquals(values.get(j), read.get(j));
+                }
+            }
+            // the null bits of the previous values do not leak into the next ones
+            values = new ArrayList<>(values);
+            values.set(types.size() - 1, 42L);
+            values.set(0, null);
+        }
+    }
+
+    @Test
+    public void testValuesThatDoNotMatchAreNotWritten() {
+        TypedValuesCodec codec = new TypedValuesCodec(TYPED.getTypes());
+        Output out = new Output(64, -1);
+        // an int where a long is declared
+        Assert.assertFalse(codec.write(Arrays.asList(1, "a", 2), out));
+        Assert.assertFalse(codec.write(Arrays.asList(1L, "a"), out));
+        Assert.assertFalse(codec.write(Arrays.asList(1L, "a", 2, 3), out));
+        Assert.assertEquals(0, out.position());
+    }
+
+    private static GeneralTopologyContext context(StormTopology topology) {
+        Map<String, Map<String, Fields>> streams = new HashMap<>();
+        Map<String, Fields> spoutStreams = new HashMap<>();
+        spoutStreams.put(Utils.DEFAULT_STREAM_ID, TYPED);
+        spoutStreams.put("untyped", UNTYPED);
+        streams.put("spout", spoutStreams);
+        return new GeneralTopologyContext(topology, Utils.readDefaultConfig(), Collections.singletonMap(1, "spout"),
+                                          Collections.singletonMap("spout", Collections.singletonList(1)), streams, "topology");
+    }
+
+    @Test
+    public void testTupleSerializerUsesTheDeclaredSchemas() {
+        TopologyBuilder builder = new TopologyBuilder();
+        builder.setSpout("spout", new TypedSpout());
+        StormTopology topology = builder.createTopology();
+        Map<String, Map<String, TypedValuesCodec>> codecs = SerializationFactory.getTypedCodecs(topology);
+        Assert.assertEquals(Collections.singleton(Utils.DEFAULT_STREAM_ID), codecs.get("spout").keySet());
+
+        GeneralTopologyContext context = context(topology);
+        KryoTupleSerializer serializer = new KryoTupleSerializer(Utils.readDefaultConfig(), context);
+        KryoTupleDeserializer deserializer = new KryoTupleDeserializer(Utils.readDefaultConfig(), context);
+        List<List<Object>> typed = Arrays.asList(Arrays.asList(1L, "a", 2), Arrays.asList(null, "b", null),
+                                                 // values that do not match the schema fall back to kryo
+                                                 Arrays.asList(1, "a", 2), Arrays.asList(1L, "a", 2L));
+        List<Integer> sizes = new ArrayList<>();
+        for (List<Object> values : typed) {
+            byte[] bytes = serializer.serialize(new TupleImpl(context, values, "spout", 1, Utils.DEFAULT_STREAM_ID));
+            sizes.add(bytes.length);
+            Tuple tuple = deserializer.deserialize(bytes);
+            Assert.assertEquals(Utils.DEFAULT_STREAM_ID, tuple.getSourceStreamId());
+            Assert.assertEquals(values.toString(), tuple.getValues().toString());
+            Assert.assertEquals(values.get(0), tuple.getValue(0));
+        }
+        // the typed format does not write the class of every value
+        Assert.assertTrue(sizes.toString(), sizes.get(0) < sizes.get(2));
+
+        Tuple untyped = deserializer.deserialize(
+            serializer.serialize(new TupleImpl(context, Collections.singletonList(5L), "spout", 1, "untyped")));
+        Assert.assertEquals(Collections.singletonList(5L), untyped.getValues());
+    }
+}
@@ -1,12 +1,18 @@
 package org.apache.storm.topology;
 
 import org.apache.storm.Config;
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.state.KeyValueState;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Utils;
+import org.apache.storm.windowing.InvertibleWindowAggregator;
 import org.apache.storm.windowing.TimestampExtractor;
+import org.apache.storm.windowing.TupleWindow;
 import org.apache.storm.windowing.WaterMarkEventGenerator;
+import org.apache.storm.windowing.WindowAggregator;
 import org.apache.storm.windowing.WindowManager;
 import org.junit.Assert;
 import org.junit.Before;
@@ -15,6 +21,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -183,6 +190,194 @@ public class WindowedBoltExecutorTest {
         verify(spyExecutor, times(1)).start();
     }
 
+    /** off heap windows ack the tuples as they arrive, which has to be accepted explicitly when acking is enabled */
+    @Test
+    public void offHeapWindowRequiresAtMostOnceTest() {
+        Map<String, Object> config = new HashMap<>(Utils.readDefaultConfig());
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_COUNT, 1);
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_ENABLE, true);
+        IWindowedBolt bolt = mock(IWindowedBolt.class);
+        try {
+            new WindowedBoltExecutor(bolt).prepare(config, mock(TopologyContext.class), mock(OutputCollector.class));
+            Assert.fail("An off heap window should not be accepted without at most once processing when acking is enabled");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains(Config.TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE));
+        }
+        verify(bolt, never()).prepare(any(), any(), any());
+
+        // the window serializes the tuples of the topology
+        TopologyContext context = mock(TopologyContext.class);
+        when(context.getRawTopology()).thenReturn(new StormTopology(new HashMap<>(), new HashMap<>(), new HashMap<>()));
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE, true);
+        WindowedBoltExecutor accepted = new WindowedBoltExecutor(bolt);
+        accepted.prepare(config, context, mock(OutputCollector.class));
+        accepted.cleanup();
+
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE, false);
+        config.put(Config.TOPOLOGY_ACKER_EXECUTORS, 0);
+        WindowedBoltExecutor withoutAcking = new WindowedBoltExecutor(bolt);
+        withoutAcking.prepare(config, context, mock(OutputCollector.class));
+        withoutAcking.cleanup();
+        verify(bolt, times(2)).prepare(any(), any(), any());
+    }
+
+    /** counts the tuples of a window */
+    private static class CountAggregator implements InvertibleWindowAggregator<Tuple, Long> {
+        @Override
+        public Long init() {
+            return 0L;
+        }
+
+        @Override
+        public Long apply(Long aggregate, Tuple event) {
+            return aggregate + 1;
+        }
+
+        @Override
+        public Long merge(Long aggregate1, Long aggregate2) {
+            return aggregate1 + aggregate2;
+        }
+
+        @Override
+        public Long subtract(Long aggregate, Long partial) {
+            return aggregate - partial;
+        }
+    }
+
+    /** window aggregators ack the tuples as they arrive too */
+    @Test
+    public void aggregatorRequiresAtMostOnceTest() {
+        Map<String, Object> config = new HashMap<>(Utils.readDefaultConfig());
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_COUNT, 4);
+        config.put(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_COUNT, 2);
+        IWindowedBolt bolt = mock(IWindowedBolt.class);
+        doReturn(new CountAggregator()).when(bolt).getAggregator();
+        try {
+            new WindowedBoltExecutor(bolt).prepare(config, mock(TopologyContext.class), mock(OutputCollector.class));
+            Assert.fail("A window aggregator should not be accepted without at most once processing when acking is enabled");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains(Config.TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE));
+        }
+        verify(bolt, never()).prepare(any(), any(), any());
+
+        config.put(Config.TOPOLOGY_ACKER_EXECUTORS, 0);
+        WindowedBoltExecutor withoutAcking = new WindowedBoltExecutor(bolt);
+        withoutAcking.prepare(config, mock(TopologyContext.class), mock(OutputCollector.class));
+        withoutAcking.cleanup();
+        verify(bolt, times(1)).prepare(any(), any(), any());
+    }
+
+    /** the bolt only gets the aggregates of the windows, the tuples are acked once applied to their pane */
+    @Test
+    public void aggregatorCountWindowTest() {
+        IWindowedBolt bolt = mock(IWindowedBolt.class);
+        doReturn(new CountAggregator()).when(bolt).getAggregator();
+        List<Long> aggregates = new ArrayList<>();
+        doAnswer(invocation -> {
+            TupleWindow window = invocation.getArgument(0);
+            aggregates.add(window.getAggregate());
+            return null;
+        }).when(bolt).execute(any());
+        Map<String, Object> config = new HashMap<>();
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_COUNT, 4);
+        config.put(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_COUNT, 2);
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE, true);
+        OutputCollector collector = mock(OutputCollector.class);
+        WindowedBoltExecutor aggregating = new WindowedBoltExecutor(bolt);
+        aggregating.prepare(config, mock(TopologyContext.class), collector);
+        for (int i = 0; i < 7; i++) {
+            Tuple tuple = mock(Tuple.class);
+            aggregating.execute(tuple);
+            verify(collector, times(1)).ack(tuple);
+        }
+        Assert.assertEquals(Arrays.asList(2L, 4L, 4L), aggregates);
+        aggregating.cleanup();
+    }
+
+    /** in processing time the windows are activated by a trigger scheduled at the sliding interval */
+    @Test
+    public void aggregatorProcessingTimeWindowTest() throws InterruptedException {
+        IWindowedBolt bolt = mock(IWindowedBolt.class);
+        doReturn(new CountAggregator()).when(bolt).getAggregator();
+        List<Long> aggregates = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            TupleWindow window = invocation.getArgument(0);
+            Assert.assertEquals(100L, window.getEndTimestamp() - window.getStartTimestamp());
+            aggregates.add(window.getAggregate());
+            return null;
+        }).when(bolt).execute(any());
+        Map<String, Object> config = new HashMap<>();
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_DURATION_MS, 100);
+        config.put(Config.TOPOLOGY_BOLTS_SLIDING_INTERVAL_DURATION_MS, 50);
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_AT_MOST_ONCE, true);
+        WindowedBoltExecutor aggregating = new WindowedBoltExecutor(bolt);
+        aggregating.prepare(config, mock(TopologyContext.class), mock(OutputCollector.class));
+        for (int i = 0; i < 5; i++) {
+            aggregating.execute(mock(Tuple.class));
+        }
+        // every tuple ends up in two windows
+        long deadline = System.currentTimeMillis() + 5000;
+        while (aggregates.stream().mapToLong(Long::longValue).sum() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        aggregating.cleanup();
+        Assert.assertEquals(10L, aggregates.stream().mapToLong(Long::longValue).sum());
+    }
+
+    /** stateful windowed bolts track the evaluated and expired tuples for recovery, off heap windows would bypass that */
+    @Test
+    public void statefulOffHeapWindowRejectedTest() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_COUNT, 1);
+        config.put(Config.TOPOLOGY_BOLTS_MESSAGE_ID_FIELD_NAME, "msgid");
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_ENABLE, true);
+
+        IStatefulWindowedBolt<KeyValueState<String, String>> bolt = mock(IStatefulWindowedBolt.class);
+        StatefulWindowedBoltExecutor<KeyValueState<String, String>> statefulExecutor = new StatefulWindowedBoltExecutor<>(bolt);
+        try {
+            statefulExecutor.prepare(config, mock(TopologyContext.class), mock(OutputCollector.class), mock(KeyValueState.class));
+            Assert.fail("A stateful windowed bolt should not accept an off heap window");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_ENABLE));
+        }
+        PersistentWindowedBoltExecutor<KeyValueState<String, String>> persistentExecutor = new PersistentWindowedBoltExecutor<>(bolt);
+        try {
+            persistentExecutor.prepare(config, mock(TopologyContext.class), mock(OutputCollector.class), mock(KeyValueState.class),
+                                       mock(KeyValueState.class), mock(KeyValueState.class));
+            Assert.fail("A persistent windowed bolt should not accept an off heap window");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains(Config.TOPOLOGY_BOLTS_WINDOW_OFFHEAP_ENABLE));
+        }
+        verify(bolt, never()).prepare(any(), any(), any());
+    }
+
+    /** window aggregators ack the tuples as they arrive, which would bypass the tracking of stateful windowed bolts */
+    @Test
+    public void statefulAggregatorRejectedTest() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(Config.TOPOLOGY_BOLTS_WINDOW_LENGTH_COUNT, 1);
+        config.put(Config.TOPOLOGY_BOLTS_MESSAGE_ID_FIELD_NAME, "msgid");
+
+        IStatefulWindowedBolt<KeyValueState<String, String>> bolt = mock(IStatefulWindowedBolt.class);
+        doReturn(mock(WindowAggregator.class)).when(bolt).getAggregator();
+        StatefulWindowedBoltExecutor<KeyValueState<String, String>> statefulExecutor = new StatefulWindowedBoltExecutor<>(bolt);
+        try {
+            statefulExecutor.prepare(config, mock(TopologyContext.class), mock(OutputCollector.class), mock(KeyValueState.class));
+            Assert.fail("A stateful windowed bolt should not accept a window aggregator");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        PersistentWindowedBoltExecutor<KeyValueState<String, String>> persistentExecutor = new PersistentWindowedBoltExecutor<>(bolt);
+        try {
+            persistentExecutor.prepare(config, mock(TopologyContext.class), mock(OutputCollector.class), mock(KeyValueState.class),
+                                       mock(KeyValueState.class), mock(KeyValueState.class));
+            Assert.fail("A persistent windowed bolt should not accept a window aggregator");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        verify(bolt, never()).prepare(any(), any(), any());
+    }
+
     /** verify() to check methods were called with given arguments
      * can use flexible argument matching, or a capture */
 }
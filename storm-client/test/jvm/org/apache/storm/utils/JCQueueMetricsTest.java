@@ -0,0 +1,43 @@
+package org.apache.storm.utils;
+
+import com.codahale.metrics.Gauge;
+import org.apache.storm.metrics2.StormMetricRegistry;
+import org.apache.storm.policy.WaitStrategyPark;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class JCQueueMetricsTest {
+
+    @SuppressWarnings("unchecked")
+    private static Gauge<Integer> targetBatchSize(int producerBatchSz, int batchLatencyTargetMicros) {
+        StormMetricRegistry metricRegistry = mock(StormMetricRegistry.class);
+        JCQueue queue = new JCQueue("test", "test", 1024, 0, producerBatchSz, batchLatencyTargetMicros, new WaitStrategyPark(100),
+                                    "topology", "component", Collections.singletonList(1), 6700, metricRegistry);
+        queue.close();
+        ArgumentCaptor<Gauge<Integer>> gauge = ArgumentCaptor.forClass(Gauge.class);
+        verify(metricRegistry).gauge(eq("test-target_batch_size"), gauge.capture(), anyString(), anyString(), anyInt(), anyInt());
+        return gauge.getValue();
+    }
+
+    @Test
+    public void testTargetBatchSizeOfFixedBatches() {
+        Assert.assertEquals(100, (int) targetBatchSize(100, 0).getValue());
+        Assert.assertEquals(1, (int) targetBatchSize(1, 0).getValue());
+        // bounded by half the queue size
+        Assert.assertEquals(512, (int) targetBatchSize(5000, 0).getValue());
+    }
+
+    @Test
+    public void testTargetBatchSizeOfAdaptiveBatches() {
+        Assert.assertEquals(1, (int) targetBatchSize(100, 500).getValue());
+    }
+}
@@ -0,0 +1,219 @@
+package org.apache.storm.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class RotatingLongMapTest {
+    // the capacity of a new map, which holds up to 9 entries before it grows
+    private static final int MIN_CAPACITY = 16;
+
+    /** the home slot of the key in a table of the given capacity, as RotatingLongMap hashes it */
+    private static int home(long key, int capacity) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(capacity)));
+    }
+
+    /** keys whose home slot is the given one in a map of the minimum capacity */
+    private static List<Long> keysWithHome(int slot, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; keys.size() < count; key++) {
+            if (home(key, MIN_CAPACITY) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static void assertContains(RotatingLongMap<String> map, Map<Long, String> expected) {
+        Assert.assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, String> entry : expected.entrySet()) {
+            Assert.assertTrue("key " + entry.getKey(), map.containsKey(entry.getKey()));
+            Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testCollisionsAcrossWrapAround() {
+        // a cluster that starts in the last slot and continues at the start of the table
+        List<Long> last = keysWithHome(MIN_CAPACITY - 1, 4);
+        List<Long> first = keysWithHome(0, 2);
+        RotatingLongMap<String> map = new RotatingLongMap<>(3);
+        Map<Long, String> expected = new HashMap<>();
+        for (long key : last) {
+            map.put(key, "last-" + key);
+            expected.put(key, "last-" + key);
+        }
+        for (long key : first) {
+            map.put(key, "first-" + key);
+            expected.put(key, "first-" + key);
+        }
+        assertContains(map, expected);
+
+        // removing the entries at the end of the table shifts the wrapped ones back across the end
+        Assert.assertEquals("last-" + last.get(0), map.remove(last.get(0)));
+        expected.remove(last.get(0));
+        assertContains(map, expected);
+        Assert.assertEquals("last-" + last.get(2), map.remove(last.get(2)));
+        expected.remove(last.get(2));
+        assertContains(map, expected);
+        Assert.assertEquals("first-" + first.get(0), map.remove(first.get(0)));
+        expected.remove(first.get(0));
+        assertContains(map, expected);
+
+        for (long key : last) {
+            map.put(key, "again-" + key);
+            expected.put(key, "again-" + key);
+        }
+        assertContains(map, expected);
+        Assert.assertNull(map.get(first.get(0)));
+    }
+
+    @Test
+    public void testRemovalInTheMiddleOfAProbeChain() {
+        List<Long> chain = keysWithHome(3, 4);
+        // an entry whose home is in the chain, which must stay reachable once the chain shrinks
+        long other = keysWithHome(5, 1).get(0);
+        RotatingLongMap<String> map = new RotatingLongMap<>(3);
+        Map<Long, String> expected = new HashMap<>();
+        for (long key : chain) {
+            map.put(key, "v" + key);
+            expected.put(key, "v" + key);
+        }
+        map.put(other, "other");
+        expected.put(other, "other");
+
+        Assert.assertEquals("v" + chain.get(1), map.remove(chain.get(1)));
+        expected.remove(chain.get(1));
+        assertContains(map, expected);
+        Assert.assertNull(map.remove(chain.get(1)));
+        Assert.assertEquals(expected.size(), map.size());
+
+        Assert.assertEquals("v" + chain.get(2), map.remove(chain.get(2)));
+        expected.remove(chain.get(2));
+        assertContains(map, expected);
+
+        // a key that is not in the map is not found past the end of the chain
+        long missing = keysWithHome(3, 5).get(4);
+        Assert.assertFalse(map.containsKey(missing));
+        Assert.assertNull(map.remove(missing));
+        map.put(chain.get(1), "back");
+        expected.put(chain.get(1), "back");
+        assertContains(map, expected);
+    }
+
+    @Test
+    public void testExpiryAfterExactlyNumBucketsRotations() {
+        for (int numBuckets = 2; numBuckets <= 4; numBuckets++) {
+            Map<Long, String> expired = new HashMap<>();
+            RotatingLongMap<String> map = new RotatingLongMap<>(numBuckets, expired::put);
+            map.put(1L, "a");
+            map.rotate();
+            map.put(2L, "b");
+            for (int i = 1; i < numBuckets - 1; i++) {
+                Assert.assertEquals(0, map.rotate());
+            }
+            // "a" was put numBuckets rotations ago, "b" one rotation later
+            Assert.assertEquals(1, map.rotate());
+            Assert.assertEquals("a", expired.get(1L));
+            Assert.assertFalse(map.containsKey(1L));
+            Assert.assertTrue(map.containsKey(2L));
+
+            // putting again restarts the expiration
+            map.put(2L, "c");
+            for (int i = 1; i < numBuckets; i++) {
+                Assert.assertEquals(0, map.rotate());
+            }
+            Assert.assertEquals(1, map.rotate());
+            Assert.assertEquals("c", expired.get(2L));
+            Assert.assertEquals(0, map.size());
+        }
+    }
+
+    @Test
+    public void testExpiryCallbackCanUpdateTheMap() {
+        RotatingLongMap<String>[] holder = new RotatingLongMap[1];
+        holder[0] = new RotatingLongMap<>(2, (key, value) -> holder[0].put(key + 100, value));
+        RotatingLongMap<String> map = holder[0];
+        for (long key = 0; key < 8; key++) {
+            map.put(key, "v" + key);
+        }
+        map.rotate();
+        Assert.assertEquals(8, map.rotate());
+        Assert.assertEquals(8, map.size());
+        for (long key = 0; key < 8; key++) {
+            Assert.assertNull(map.get(key));
+            Assert.assertEquals("v" + key, map.get(key + 100));
+        }
+    }
+
+    @Test
+    public void testResizing() {
+        RotatingLongMap<String> map = new RotatingLongMap<>(3);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; i++) {
+            long key = random.nextLong();
+            map.put(key, "v" + key);
+            expected.put(key, "v" + key);
+        }
+        assertContains(map, expected);
+
+        // shrinking happens on rotate, once most of the entries are gone
+        Iterator<Long> it = expected.keySet().iterator();
+        for (int i = 0; i < 9_990; i++) {
+            long key = it.next();
+            Assert.assertEquals("v" + key, map.remove(key));
+            it.remove();
+        }
+        Assert.assertEquals(0, map.rotate());
+        Assert.assertEquals(0, map.rotate());
+        assertContains(map, expected);
+        Assert.assertEquals(10, map.rotate());
+        Assert.assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        Random random = new Random(2);
+        int numBuckets = 3;
+        RotatingLongMap<String> map = new RotatingLongMap<>(numBuckets);
+        Map<Long, String> expected = new HashMap<>();
+        Map<Long, Integer> putAt = new HashMap<>();
+        int rotations = 0;
+        for (int i = 0; i < 200_000; i++) {
+            // few distinct keys, so that the clusters are long and the same keys come back
+            long key = random.nextInt(300) * 0x10000L;
+            int op = random.nextInt(100);
+            if (op < 45) {
+                map.put(key, "v" + i);
+                expected.put(key, "v" + i);
+                putAt.put(key, rotations);
+            } else if (op < 90) {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+                putAt.remove(key);
+            } else if (op < 99) {
+                Assert.assertEquals(expected.get(key), map.get(key));
+            } else {
+                rotations++;
+                int expired = 0;
+                for (Iterator<Map.Entry<Long, Integer>> it = putAt.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<Long, Integer> entry = it.next();
+                    if (rotations - entry.getValue() >= numBuckets) {
+                        expected.remove(entry.getKey());
+                        it.remove();
+                        expired++;
+                    }
+                }
+                Assert.assertEquals(expired, map.rotate());
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+        assertContains(map, expected);
+    }
+}
@@ -0,0 +1,129 @@
+package org.apache.storm.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class SpillRingTest {
+    // a record of "m00" takes 4 + 3 bytes, so a segment holds four of them
+    private static final int SEGMENT_BYTES = 28;
+
+    private static final SpillRing.Codec CODEC = new SpillRing.Codec() {
+        @Override
+        public byte[] encode(Object obj) {
+            return ((String) obj).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object decode(byte[] record) {
+            return new String(record, StandardCharsets.UTF_8);
+        }
+    };
+
+    private Path dir;
+    private SpillRing ring;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("spill-ring");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (ring != null) {
+            ring.close();
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static String msg(int i) {
+        return String.format("m%02d", i);
+    }
+
+    private long files() throws IOException {
+        try (Stream<Path> paths = Files.list(dir)) {
+            return paths.count();
+        }
+    }
+
+    @Test
+    public void testOfferAndPollInOrder() {
+        ring = new SpillRing(dir, "test", SEGMENT_BYTES, 3, CODEC);
+        Assert.assertNull(ring.poll());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(ring.offer(msg(i)));
+        }
+        Assert.assertEquals(10, ring.size());
+        Assert.assertEquals(70, ring.getBytes());
+        Assert.assertEquals(3 * SEGMENT_BYTES, ring.getMappedBytes());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(msg(i), ring.poll());
+        }
+        Assert.assertTrue(ring.isEmpty());
+        Assert.assertEquals(0, ring.getBytes());
+        Assert.assertNull(ring.poll());
+    }
+
+    @Test
+    public void testFullRingRejectsAndReusesSegments() {
+        ring = new SpillRing(dir, "test", SEGMENT_BYTES, 2, CODEC);
+        for (int i = 0; i < 8; i++) {
+            Assert.assertTrue(ring.offer(msg(i)));
+        }
+        Assert.assertFalse(ring.offer(msg(8)));
+        // a record larger than a segment never fits
+        Assert.assertFalse(ring.offer(new String(new char[SEGMENT_BYTES]).replace('\0', 'x')));
+
+        // the segment that was read is reused, no other one is mapped
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(msg(i), ring.poll());
+        }
+        for (int i = 8; i < 12; i++) {
+            Assert.assertTrue(ring.offer(msg(i)));
+        }
+        Assert.assertEquals(2 * SEGMENT_BYTES, ring.getMappedBytes());
+        for (int i = 4; i < 12; i++) {
+            Assert.assertEquals(msg(i), ring.poll());
+        }
+        Assert.assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testCloseUnmapsAndDeletesTheSegments() throws IOException {
+        ring = new SpillRing(dir, "test", SEGMENT_BYTES, 4, CODEC);
+        for (int i = 0; i < 12; i++) {
+            Assert.assertTrue(ring.offer(msg(i)));
+        }
+        for (int i = 0; i < 4; i++) {
+            ring.poll();
+        }
+        ring.close();
+        Assert.assertEquals(0, ring.size());
+        Assert.assertEquals(0, ring.getBytes());
+        Assert.assertEquals(0, ring.getMappedBytes());
+        Assert.assertEquals(0, files());
+        // nothing is mapped again once closed
+        Assert.assertFalse(ring.offer(msg(12)));
+        Assert.assertNull(ring.poll());
+        Assert.assertEquals(0, ring.getMappedBytes());
+    }
+
+    @Test
+    public void testMapFailureStopsSpilling() throws IOException {
+        Path file = Files.createFile(dir.resolve("not-a-directory"));
+        ring = new SpillRing(file, "test", SEGMENT_BYTES, 4, CODEC);
+        Assert.assertFalse(ring.offer(msg(0)));
+        Assert.assertFalse(ring.offer(msg(1)));
+        Assert.assertEquals(0, ring.getMappedBytes());
+    }
+}
@@ -0,0 +1,179 @@
+package org.apache.storm.utils;
+
+import org.apache.storm.generated.NodeInfo;
+import org.apache.storm.messaging.IConnection;
+import org.apache.storm.messaging.TaskMessage;
+import org.apache.storm.shade.io.netty.buffer.ByteBuf;
+import org.apache.storm.shade.io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class TransferDrainerTest {
+    private static final NodeInfo NODE_A = new NodeInfo("a", Collections.singleton(6700L));
+    private static final NodeInfo NODE_B = new NodeInfo("b", Collections.singleton(6700L));
+
+    private final Map<Integer, NodeInfo> taskToNode = new HashMap<>();
+    private final List<ByteBuf> buffers = new ArrayList<>();
+
+    public TransferDrainerTest() {
+        taskToNode.put(1, NODE_A);
+        taskToNode.put(2, NODE_B);
+    }
+
+    private TaskMessage msg(int task) {
+        ByteBuf buffer = Unpooled.directBuffer(8).writeLong(task);
+        buffers.add(buffer);
+        return TaskMessage.fromBuffer(task, buffer);
+    }
+
+    /** a connection that takes the msgs it is sent, like the netty client does once it wrote them */
+    private static IConnection connection(List<TaskMessage> sent) {
+        IConnection conn = mock(IConnection.class);
+        doAnswer(invocation -> {
+            Iterator<TaskMessage> msgs = invocation.getArgument(0);
+            msgs.forEachRemaining(sent::add);
+            return null;
+        }).when(conn).send(any());
+        return conn;
+    }
+
+    private void assertReleased(int count) {
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals("buffer " + i, 0, buffers.get(i).refCnt());
+        }
+    }
+
+    @Test
+    public void testMsgsAreBatchedPerWorker() {
+        TransferDrainer drainer = new TransferDrainer(16);
+        Assert.assertFalse(drainer.add(msg(1), taskToNode));
+        Assert.assertFalse(drainer.add(msg(2), taskToNode));
+        Assert.assertTrue(drainer.add(msg(1), taskToNode));
+
+        List<TaskMessage> sentA = new ArrayList<>();
+        List<TaskMessage> sentB = new ArrayList<>();
+        Map<NodeInfo, IConnection> connections = new HashMap<>();
+        connections.put(NODE_A, connection(sentA));
+        connections.put(NODE_B, connection(sentB));
+        drainer.send(taskToNode, connections);
+        Assert.assertEquals(2, sentA.size());
+        Assert.assertEquals(1, sentB.size());
+        // the connection owns the msgs it was sent
+        for (ByteBuf buffer : buffers) {
+            Assert.assertEquals(1, buffer.refCnt());
+        }
+
+        drainer.send(taskToNode, connections);
+        Assert.assertEquals(2, sentA.size());
+        Assert.assertEquals(1, sentB.size());
+    }
+
+    @Test
+    public void testMsgsWithoutRouteOrConnectionAreReleased() {
+        TransferDrainer drainer = new TransferDrainer();
+        drainer.add(msg(1), taskToNode);
+        drainer.add(msg(2), taskToNode);
+        drainer.add(msg(3), taskToNode);
+        Assert.assertEquals(0, buffers.get(2).refCnt());
+
+        List<TaskMessage> sentA = new ArrayList<>();
+        drainer.send(taskToNode, Collections.singletonMap(NODE_A, connection(sentA)));
+        Assert.assertEquals(1, sentA.size());
+        Assert.assertEquals(1, buffers.get(0).refCnt());
+        Assert.assertEquals(0, buffers.get(1).refCnt());
+    }
+
+    @Test
+    public void testClearReleasesPendingMsgs() {
+        TransferDrainer drainer = new TransferDrainer();
+        drainer.add(msg(1), taskToNode);
+        drainer.add(msg(2), taskToNode);
+        drainer.clear();
+        assertReleased(2);
+
+        // nothing is left to send
+        List<TaskMessage> sentA = new ArrayList<>();
+        drainer.send(taskToNode, Collections.singletonMap(NODE_A, connection(sentA)));
+        Assert.assertTrue(sentA.isEmpty());
+    }
+
+    @Test
+    public void testFailedSendReleasesTheMsgsNotTaken() {
+        TransferDrainer drainer = new TransferDrainer();
+        drainer.add(msg(1), taskToNode);
+        drainer.add(msg(1), taskToNode);
+        drainer.add(msg(2), taskToNode);
+
+        List<TaskMessage> taken = new ArrayList<>();
+        IConnection failing = mock(IConnection.class);
+        doAnswer(invocation -> {
+            Iterator<TaskMessage> msgs = invocation.getArgument(0);
+            taken.add(msgs.next());
+            throw new IllegalStateException("connection failed");
+        }).when(failing).send(any());
+        List<TaskMessage> sentB = new ArrayList<>();
+        Map<NodeInfo, IConnection> connections = new HashMap<>();
+        connections.put(NODE_A, failing);
+        connections.put(NODE_B, connection(sentB));
+        try {
+            drainer.send(taskToNode, connections);
+            Assert.fail("the failure of the connection is not swallowed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // the msg the connection took is its own, the other one of its batch is released
+        Assert.assertEquals(1, taken.size());
+        Assert.assertEquals(1, buffers.get(0).refCnt());
+        Assert.assertEquals(0, buffers.get(1).refCnt());
+        // the batch of the other worker is still pending, and the failed one is not sent again
+        Assert.assertEquals(1, buffers.get(2).refCnt());
+        connections.put(NODE_A, connection(new ArrayList<>()));
+        drainer.send(taskToNode, connections);
+        Assert.assertEquals(1, sentB.size());
+
+        doThrow(new IllegalStateException("connection failed")).when(failing).send(any());
+        connections.put(NODE_A, failing);
+        drainer.add(msg(1), taskToNode);
+        try {
+            drainer.send(taskToNode, connections);
+            Assert.fail("the failure of the connection is not swallowed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(0, buffers.get(3).refCnt());
+    }
+
+    @Test
+    public void testPendingMsgsFollowTheNewAssignment() {
+        TransferDrainer drainer = new TransferDrainer();
+        drainer.add(msg(1), taskToNode);
+        Map<Integer, NodeInfo> moved = new HashMap<>(taskToNode);
+        moved.put(1, NODE_B);
+        List<TaskMessage> sentA = new ArrayList<>();
+        List<TaskMessage> sentB = new ArrayList<>();
+        Map<NodeInfo, IConnection> connections = new HashMap<>();
+        connections.put(NODE_A, connection(sentA));
+        connections.put(NODE_B, connection(sentB));
+        drainer.send(moved, connections);
+        Assert.assertTrue(sentA.isEmpty());
+        Assert.assertEquals(1, sentB.size());
+
+        // a task that is no longer assigned has no route
+        drainer.add(msg(1), moved);
+        drainer.send(Collections.singletonMap(2, NODE_B), connections);
+        Assert.assertEquals(1, sentB.size());
+        Assert.assertEquals(0, buffers.get(1).refCnt());
+    }
+}
@@ -0,0 +1,272 @@
+package org.apache.storm.windowing;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class OffHeapEventQueueTest {
+    // a record of "e00" takes 13 + 3 bytes, so a segment holds four of them
+    private static final int SEGMENT_BYTES = 64;
+
+    private static final OffHeapEventQueue.Codec<String> CODEC = new OffHeapEventQueue.Codec<String>() {
+        @Override
+        public byte[] encode(String event) {
+            return event.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(ByteBuffer record) {
+            byte[] bytes = new byte[record.remaining()];
+            record.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    private Path dir;
+    private OffHeapEventQueue<String> queue;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("offheap-window");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (queue != null) {
+            queue.close();
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static String event(int i) {
+        return String.format("e%02d", i);
+    }
+
+    private void add(int from, int to) {
+        for (int i = from; i < to; i++) {
+            queue.add(new EventImpl<>(event(i), 1000L + i));
+        }
+    }
+
+    private List<String> events() {
+        List<String> events = new ArrayList<>();
+        for (Event<String> event : queue) {
+            events.add(event.get());
+        }
+        return events;
+    }
+
+    private static List<String> events(int from, int to) {
+        List<String> events = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            events.add(event(i));
+        }
+        return events;
+    }
+
+    /** removes the events in [from, to) */
+    private void remove(int from, int to) {
+        Iterator<Event<String>> it = queue.iterator();
+        while (it.hasNext()) {
+            Event<String> event = it.next();
+            long i = event.getTimestamp() - 1000L;
+            if (i >= from && i < to) {
+                it.remove();
+            }
+        }
+    }
+
+    @Test
+    public void testAddIterateAndRemove() {
+        queue = new OffHeapEventQueue<>(dir, "test", SEGMENT_BYTES, 8, CODEC);
+        Assert.assertFalse(queue.iterator().hasNext());
+        add(0, 10);
+        Assert.assertEquals(10, queue.size());
+
+        Iterator<Event<String>> it = queue.iterator();
+        for (int i = 0; i < 10; i++) {
+            Event<String> event = it.next();
+            Assert.assertEquals(1000L + i, event.getTimestamp());
+            Assert.assertFalse(event.isWatermark());
+            Assert.assertEquals(event(i), event.get());
+            if (i % 2 == 0) {
+                it.remove();
+                try {
+                    it.remove();
+                    Assert.fail("an event can only be removed once");
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+            }
+        }
+        Assert.assertFalse(it.hasNext());
+        Assert.assertEquals(5, queue.size());
+        Assert.assertEquals(List.of("e01", "e03", "e05", "e07", "e09"), events());
+
+        // the events are appended after the ones still in the window
+        add(10, 12);
+        Assert.assertEquals(List.of("e01", "e03", "e05", "e07", "e09", "e10", "e11"), events());
+        remove(0, 12);
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertTrue(events().isEmpty());
+    }
+
+    @Test
+    public void testSegmentsAreReleasedAndRecycled() {
+        queue = new OffHeapEventQueue<>(dir, "test", SEGMENT_BYTES, 4, CODEC);
+        add(0, 12);
+        Assert.assertEquals(3 * SEGMENT_BYTES, queue.getMemoryBytes());
+
+        // removing part of a segment keeps it
+        remove(0, 3);
+        Assert.assertEquals(3 * SEGMENT_BYTES, queue.getMemoryBytes());
+        // the released segment is kept for reuse
+        remove(3, 4);
+        Assert.assertEquals(3 * SEGMENT_BYTES, queue.getMemoryBytes());
+        add(12, 16);
+        Assert.assertEquals(3 * SEGMENT_BYTES, queue.getMemoryBytes());
+        Assert.assertEquals(events(4, 16), events());
+
+        // the released buffers of segments are reused as long as no more than maxMemorySegments of them are held
+        add(16, 20);
+        Assert.assertEquals(4 * SEGMENT_BYTES, queue.getMemoryBytes());
+        remove(4, 16);
+        Assert.assertEquals(4 * SEGMENT_BYTES, queue.getMemoryBytes());
+        Assert.assertEquals(events(16, 20), events());
+        Assert.assertEquals(0, queue.getSpilledSegments());
+
+        // an event larger than a segment gets a segment of its own, which is not reused
+        String large = new String(new char[2 * SEGMENT_BYTES]).replace('\0', 'x');
+        queue.add(new EventImpl<>(large, 2000L));
+        add(24, 25);
+        Assert.assertEquals(6, queue.size());
+        Iterator<Event<String>> it = queue.iterator();
+        while (it.hasNext()) {
+            Event<String> event = it.next();
+            if (event.getTimestamp() == 2000L) {
+                Assert.assertEquals(large, event.get());
+                it.remove();
+            }
+        }
+        Assert.assertEquals(4 * SEGMENT_BYTES, queue.getMemoryBytes());
+        List<String> expected = events(16, 20);
+        expected.add("e24");
+        Assert.assertEquals(expected, events());
+
+        queue.close();
+        Assert.assertEquals(0, queue.getMemoryBytes());
+        Assert.assertEquals(0, queue.size());
+        Assert.assertFalse(queue.iterator().hasNext());
+    }
+
+    @Test
+    public void testSpillPastMaxMemorySegments() {
+        queue = new OffHeapEventQueue<>(dir, "test", SEGMENT_BYTES, 2, CODEC);
+        add(0, 20);
+        Assert.assertEquals(3, queue.getSpilledSegments());
+        Assert.assertEquals(2 * SEGMENT_BYTES, queue.getMemoryBytes());
+        Assert.assertEquals(events(0, 20), events());
+
+        // a spilled segment is released like the others
+        remove(0, 4);
+        Assert.assertEquals(2, queue.getSpilledSegments());
+        Assert.assertEquals(events(4, 20), events());
+        // removing from a spilled segment that is still in use
+        remove(5, 6);
+        Assert.assertEquals(2, queue.getSpilledSegments());
+        Assert.assertEquals(15, queue.size());
+
+        add(20, 24);
+        Assert.assertEquals(3, queue.getSpilledSegments());
+        List<String> expected = events(4, 24);
+        expected.remove("e05");
+        Assert.assertEquals(expected, events());
+
+        queue.close();
+        Assert.assertEquals(0, queue.getSpilledSegments());
+        Assert.assertEquals(0, queue.getMemoryBytes());
+    }
+
+    @Test
+    public void testSpillFailureKeepsTheSegmentsInMemory() throws IOException {
+        Path file = Files.createFile(dir.resolve("not-a-directory"));
+        queue = new OffHeapEventQueue<>(file, "test", SEGMENT_BYTES, 1, CODEC);
+        add(0, 12);
+        Assert.assertEquals(0, queue.getSpilledSegments());
+        Assert.assertEquals(3 * SEGMENT_BYTES, queue.getMemoryBytes());
+        Assert.assertEquals(events(0, 12), events());
+    }
+
+    @Test
+    public void testIterationAcrossReleasedSegments() {
+        queue = new OffHeapEventQueue<>(dir, "test", SEGMENT_BYTES, 8, CODEC);
+        add(0, 16);
+        Iterator<Event<String>> it = queue.iterator();
+        Event<String> first = it.next();
+        Assert.assertEquals(1000L, first.getTimestamp());
+
+        // the segment the iterator is on and the next one are released, the new events reuse the buffer of the first one
+        remove(0, 8);
+        add(16, 20);
+        List<String> seen = new ArrayList<>();
+        while (it.hasNext()) {
+            seen.add(it.next().get());
+        }
+        Assert.assertEquals(events(8, 20), seen);
+        Assert.assertEquals(events(8, 20), events());
+        try {
+            first.get();
+            Assert.fail("an event of a released segment must not be decoded");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDecodeAfterRemoval() {
+        queue = new OffHeapEventQueue<>(dir, "test", SEGMENT_BYTES, 8, CODEC);
+        add(0, 6);
+        Iterator<Event<String>> it = queue.iterator();
+        Event<String> decoded = it.next();
+        Assert.assertEquals("e00", decoded.get());
+        it.remove();
+        Event<String> removed = it.next();
+        it.remove();
+        Event<String> kept = it.next();
+
+        // a decoded event keeps its value, the others can not be read once removed
+        Assert.assertEquals("e00", decoded.get());
+        try {
+            removed.get();
+            Assert.fail("a removed event must not be decoded");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(1001L, removed.getTimestamp());
+        Assert.assertEquals("e02", kept.get());
+
+        Event<String> unread = it.next();
+        queue.close();
+        try {
+            unread.get();
+            Assert.fail("an event must not be decoded after the queue is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertFalse(it.hasNext());
+    }
+}
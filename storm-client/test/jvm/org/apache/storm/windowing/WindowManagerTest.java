@@ -135,6 +135,142 @@ public class WindowManagerTest {
                 Assert.assertTrue(windowManager.queue.isEmpty());
         }
     }
+
+    /** collects the events of a window, so that the membership of the windows can be checked */
+    private static class ListAggregator implements WindowAggregator<Integer, List<Integer>> {
+        @Override
+        public List<Integer> init() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<Integer> apply(List<Integer> aggregate, Integer event) {
+            aggregate.add(event);
+            return aggregate;
+        }
+
+        @Override
+        public List<Integer> merge(List<Integer> aggregate1, List<Integer> aggregate2) {
+            aggregate1.addAll(aggregate2);
+            return aggregate1;
+        }
+    }
+
+    private static class InvertibleListAggregator extends ListAggregator implements InvertibleWindowAggregator<Integer, List<Integer>> {
+        @Override
+        public List<Integer> subtract(List<Integer> aggregate, List<Integer> partial) {
+            for (Integer event : partial) {
+                aggregate.remove(event);
+            }
+            return aggregate;
+        }
+    }
+
+    /** the activated windows, as "[start, end) events", with the events sorted since an invertible aggregator reorders them */
+    private static PaneWindowManager<Integer, List<Integer>> paneWindowManager(WindowAggregator<Integer, List<Integer>> aggregator,
+                                                                                 PaneWindowManager.Mode mode, long windowLength,
+                                                                                 long slidingInterval, List<String> windows) {
+        return new PaneWindowManager<>(aggregator, (aggregate, startTs, endTs) -> {
+            List<Integer> events = new ArrayList<>(aggregate);
+            Collections.sort(events);
+            windows.add(mode == PaneWindowManager.Mode.COUNT ? events.toString() : "[" + startTs + ", " + endTs + ") " + events);
+        }, mode, windowLength, slidingInterval);
+    }
+
+    private static List<WindowAggregator<Integer, List<Integer>>> paneAggregators() {
+        return Arrays.asList(new ListAggregator(), new InvertibleListAggregator());
+    }
+
+    @Test
+    public void testPaneCountWindows() {
+        for (WindowAggregator<Integer, List<Integer>> aggregator : paneAggregators()) {
+            List<String> windows = new ArrayList<>();
+            PaneWindowManager<Integer, List<Integer>> manager = paneWindowManager(aggregator, PaneWindowManager.Mode.COUNT, 4, 2, windows);
+            Assert.assertEquals(2, manager.getPaneLength());
+            for (int i = 1; i <= 10; i++) {
+                manager.add(i);
+            }
+            // watermarks have no effect on count based windows
+            manager.add(new WaterMarkEvent<>(Long.MAX_VALUE));
+            Assert.assertEquals(Arrays.asList("[1, 2]", "[1, 2, 3, 4]", "[3, 4, 5, 6]", "[5, 6, 7, 8]", "[7, 8, 9, 10]"), windows);
+
+            // a window length that is not a multiple of the sliding interval, in panes of one event
+            windows.clear();
+            manager = paneWindowManager(aggregator, PaneWindowManager.Mode.COUNT, 3, 2, windows);
+            Assert.assertEquals(1, manager.getPaneLength());
+            for (int i = 1; i <= 7; i++) {
+                manager.add(i);
+            }
+            Assert.assertEquals(Arrays.asList("[1, 2]", "[2, 3, 4]", "[4, 5, 6]"), windows);
+        }
+    }
+
+    @Test
+    public void testPaneEventTimeWindowsWithGapsAndLateEvents() {
+        for (WindowAggregator<Integer, List<Integer>> aggregator : paneAggregators()) {
+            List<String> windows = new ArrayList<>();
+            PaneWindowManager<Integer, List<Integer>> manager = paneWindowManager(aggregator, PaneWindowManager.Mode.EVENT_TIME, 20, 10,
+                                                                                 windows);
+            manager.add(1, 1);
+            manager.add(5, 5);
+            manager.add(12, 12);
+            // the windows are only activated by watermarks
+            Assert.assertTrue(windows.isEmpty());
+            manager.add(new WaterMarkEvent<>(20));
+            Assert.assertEquals(Arrays.asList("[-10, 10) [1, 5]", "[0, 20) [1, 5, 12]"), windows);
+
+            // the windows without events, [20, 40) and [30, 50), are skipped
+            windows.clear();
+            manager.add(55, 55);
+            manager.add(new WaterMarkEvent<>(70));
+            Assert.assertEquals(Arrays.asList("[10, 30) [12]", "[40, 60) [55]", "[50, 70) [55]"), windows);
+
+            // late events only count in the windows that were not activated yet, the ones before the oldest pane are dropped
+            windows.clear();
+            manager.add(45, 45);
+            manager.add(58, 58);
+            manager.add(65, 65);
+            manager.add(75, 75);
+            manager.add(new WaterMarkEvent<>(80));
+            Assert.assertEquals(Collections.singletonList("[60, 80) [65, 75]"), windows);
+            windows.clear();
+            manager.add(new WaterMarkEvent<>(100));
+            Assert.assertEquals(Collections.singletonList("[70, 90) [75]"), windows);
+        }
+    }
+
+    @Test
+    public void testPaneProcessingTimeWindows() throws InterruptedException {
+        for (WindowAggregator<Integer, List<Integer>> aggregator : paneAggregators()) {
+            List<String> windows = new ArrayList<>();
+            List<Integer> events = new ArrayList<>();
+            PaneWindowManager<Integer, List<Integer>> manager = new PaneWindowManager<>(aggregator, (aggregate, startTs, endTs) -> {
+                Assert.assertEquals(0, endTs % 50);
+                Assert.assertEquals(100, endTs - startTs);
+                windows.add("[" + startTs + ", " + endTs + ")");
+                events.addAll(aggregate);
+            }, PaneWindowManager.Mode.PROCESSING_TIME, 100, 50);
+            for (int i = 0; i < 5; i++) {
+                manager.add(i);
+            }
+            Thread.sleep(60);
+            for (int i = 5; i < 10; i++) {
+                manager.add(i);
+            }
+            // the timestamps of the events are ignored
+            manager.add(new EventImpl<>(10, 0L));
+            // in processing time the windows are only activated by the trigger
+            manager.add(new WaterMarkEvent<>(Long.MAX_VALUE));
+            Assert.assertTrue(windows.isEmpty());
+            // every event is in the two windows that contain its time, once they have ended
+            Thread.sleep(160);
+            Assert.assertTrue(manager.onTrigger());
+            for (int i = 0; i <= 10; i++) {
+                Assert.assertEquals("windows of event " + i + " in " + windows, 2, Collections.frequency(events, i));
+            }
+            Assert.assertFalse(manager.onTrigger());
+        }
+    }
 }
 
 
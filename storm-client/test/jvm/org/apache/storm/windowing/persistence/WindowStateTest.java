@@ -0,0 +1,269 @@
+package org.apache.storm.windowing.persistence;
+
+import org.apache.storm.state.InMemoryKeyValueState;
+import org.apache.storm.state.KeyValueState;
+import org.apache.storm.windowing.Event;
+import org.apache.storm.windowing.persistence.WindowState.WindowPartition;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.storm.windowing.persistence.WindowState.MAX_PARTITION_EVENTS;
+
+public class WindowStateTest {
+    private static final String PREFETCH_THREAD = "window-state-prefetch";
+    private static final String WRITE_BEHIND_THREAD = "window-state-write-behind";
+
+    /** records the threads the partitions are read and written on, and can hold up one read ahead */
+    private static class PartitionState extends InMemoryKeyValueState<Long, WindowPartition<Integer>> {
+        private final Map<Long, List<String>> reads = new ConcurrentHashMap<>();
+        private final Map<Long, List<String>> puts = new ConcurrentHashMap<>();
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile Long blockId;
+
+        @Override
+        public WindowPartition<Integer> get(Long key, WindowPartition<Integer> defaultValue) {
+            String thread = Thread.currentThread().getName();
+            reads.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(thread);
+            if (key.equals(blockId) && thread.startsWith(PREFETCH_THREAD)) {
+                blockId = null;
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // what the partition held before the rollback
+                return new WindowPartition<>(key);
+            }
+            return super.get(key, defaultValue);
+        }
+
+        @Override
+        public void put(Long key, WindowPartition<Integer> value) {
+            puts.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(Thread.currentThread().getName());
+            super.put(key, value);
+        }
+
+        List<String> reads(long id) {
+            return reads.getOrDefault(id, Collections.emptyList());
+        }
+
+        List<String> puts(long id) {
+            return puts.getOrDefault(id, Collections.emptyList());
+        }
+    }
+
+    private static class TestEvent implements Event<Integer> {
+        private final int value;
+
+        TestEvent(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return value;
+        }
+
+        @Override
+        public Integer get() {
+            return value;
+        }
+
+        @Override
+        public boolean isWatermark() {
+            return false;
+        }
+    }
+
+    private PartitionState partitionState;
+    private KeyValueState<String, Deque<Long>> partitionIdsState;
+    private KeyValueState<String, Optional<?>> systemState;
+    private final List<WindowState<Integer>> windowStates = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        partitionState = new PartitionState();
+        partitionIdsState = new InMemoryKeyValueState<>();
+        systemState = new InMemoryKeyValueState<>();
+    }
+
+    @After
+    public void tearDown() {
+        partitionState.release.countDown();
+        for (WindowState<Integer> windowState : windowStates) {
+            windowState.close();
+        }
+    }
+
+    /** a window state that holds the events of WindowState.MIN_PARTITIONS partitions in memory, and reads two partitions ahead */
+    private WindowState<Integer> windowState() {
+        WindowState<Integer> windowState = new WindowState<>(partitionState, partitionIdsState, systemState, Collections::emptyMap, 0, 2);
+        windowStates.add(windowState);
+        return windowState;
+    }
+
+    private static void add(WindowState<Integer> windowState, int from, int to) {
+        for (int i = from; i < to; i++) {
+            windowState.add(new TestEvent(i));
+        }
+    }
+
+    private static List<Integer> values(Iterator<Event<Integer>> it) {
+        List<Integer> values = new ArrayList<>();
+        while (it.hasNext()) {
+            values.add(it.next().get());
+        }
+        return values;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    /** checkpoints the events of more partitions than fit in memory, so that a new window state only has the latest one cached */
+    private void checkpointPartitions(int partitions) {
+        WindowState<Integer> windowState = windowState();
+        add(windowState, 0, partitions * MAX_PARTITION_EVENTS);
+        windowState.prepareCommit(1);
+        windowState.commit(1);
+        windowState.close();
+        partitionState.reads.clear();
+        partitionState.puts.clear();
+    }
+
+    private void awaitReads(long... ids) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        for (long id : ids) {
+            while (partitionState.reads(id).isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    @Test
+    public void testPrefetchedPartitionsAreUsed() throws InterruptedException {
+        checkpointPartitions(15);
+        WindowState<Integer> windowState = windowState();
+        Iterator<Event<Integer>> it = windowState.iterator();
+        // entering the first partition reads the next two ahead
+        Assert.assertTrue(it.hasNext());
+        awaitReads(1, 2);
+        Assert.assertEquals(Collections.singletonList(Thread.currentThread().getName()), partitionState.reads(0));
+        for (long id = 1; id <= 2; id++) {
+            Assert.assertEquals(1, partitionState.reads(id).size());
+            Assert.assertTrue(partitionState.reads(id).get(0).startsWith(PREFETCH_THREAD));
+        }
+
+        Assert.assertEquals(range(0, 15 * MAX_PARTITION_EVENTS), values(it));
+        // the partitions read ahead are not read again, the latest one was cached when the window state was created
+        for (long id = 0; id < 14; id++) {
+            Assert.assertEquals("reads of partition " + id, 1, partitionState.reads(id).size());
+        }
+        Assert.assertEquals(1, partitionState.reads(14).size());
+    }
+
+    @Test
+    public void testModifiedPartitionsAreNotReadStaleAfterEviction() {
+        WindowState<Integer> windowState = windowState();
+        int events = 15 * MAX_PARTITION_EVENTS;
+        add(windowState, 0, events);
+        partitionState.puts.clear();
+        List<Integer> odd = new ArrayList<>();
+        Iterator<Event<Integer>> it = windowState.iterator();
+        while (it.hasNext()) {
+            int value = it.next().get();
+            if (value % 2 == 0) {
+                it.remove();
+            } else {
+                odd.add(value);
+            }
+        }
+        // only ten partitions fit in memory, the ones modified and evicted while iterating are written
+        long evicted = partitionState.puts.values().stream()
+            .filter(threads -> threads.contains(Thread.currentThread().getName()))
+            .count();
+        Assert.assertTrue(evicted > 0);
+        // and read back, or read ahead, once they are written, not a stale copy
+        Assert.assertEquals(odd, values(windowState.iterator()));
+        Assert.assertEquals(odd, values(windowState.iterator()));
+
+        windowState.prepareCommit(1);
+        windowState.commit(1);
+        Assert.assertEquals(odd, values(windowState().iterator()));
+    }
+
+    @Test
+    public void testPartitionsWrittenBehindAreNotWrittenAgainOnCheckpoint() {
+        WindowState<Integer> windowState = windowState();
+        add(windowState, 0, 2 * MAX_PARTITION_EVENTS + MAX_PARTITION_EVENTS / 2);
+        windowState.prepareCommit(1);
+        // the full partitions were written in the background, so that only the latest one is written by the checkpoint
+        for (long id = 0; id < 2; id++) {
+            Assert.assertEquals(1, partitionState.puts(id).size());
+            Assert.assertTrue(partitionState.puts(id).get(0).startsWith(WRITE_BEHIND_THREAD));
+        }
+        Assert.assertEquals(Collections.singletonList(Thread.currentThread().getName()), partitionState.puts(2));
+        windowState.commit(1);
+
+        // a partition modified after it was written behind is written again by the next checkpoint
+        Iterator<Event<Integer>> it = windowState.iterator();
+        it.next();
+        it.remove();
+        windowState.prepareCommit(2);
+        Assert.assertEquals(2, partitionState.puts(0).size());
+        Assert.assertEquals(1, partitionState.puts(1).size());
+        windowState.commit(2);
+
+        Assert.assertEquals(range(1, 2 * MAX_PARTITION_EVENTS + MAX_PARTITION_EVENTS / 2), values(windowState().iterator()));
+    }
+
+    @Test
+    public void testRollbackDropsTheReadsInFlight() throws InterruptedException {
+        checkpointPartitions(15);
+        WindowState<Integer> windowState = windowState();
+        partitionState.blockId = 1L;
+        Assert.assertTrue(windowState.iterator().hasNext());
+        Assert.assertTrue(partitionState.blocked.await(10, TimeUnit.SECONDS));
+
+        // the partition read ahead before the rollback is not used once it completes
+        windowState.rollback(true);
+        partitionState.release.countDown();
+        Assert.assertEquals(range(0, 15 * MAX_PARTITION_EVENTS), values(windowState.iterator()));
+        Assert.assertEquals(2, partitionState.reads(1).size());
+    }
+
+    @Test
+    public void testCheckpointAfterClose() {
+        WindowState<Integer> windowState = windowState();
+        add(windowState, 0, MAX_PARTITION_EVENTS);
+        windowState.close();
+        // filling up a partition does not write it behind anymore, the checkpoint writes it
+        add(windowState, MAX_PARTITION_EVENTS, 2 * MAX_PARTITION_EVENTS + 1);
+        windowState.prepareCommit(1);
+        windowState.commit(1);
+        Assert.assertEquals(Collections.singletonList(Thread.currentThread().getName()), partitionState.puts(0));
+        Assert.assertEquals(range(0, 2 * MAX_PARTITION_EVENTS + 1), values(windowState.iterator()));
+        windowState.rollback(true);
+        Assert.assertEquals(range(0, 2 * MAX_PARTITION_EVENTS + 1), values(windowState.iterator()));
+    }
+}